@@ -0,0 +1,47 @@
+package model;
+
+// Represents a summary of everything that happened while advancing a Routine once, so that
+// the boundaries crossed (completed segments and cycles) can be reacted to all at once.
+public class AdvanceResult {
+    private final long segmentsCompleted;
+    private final long cyclesCompleted;
+    private final long unusedTime;
+    private final boolean routineCompleted;
+
+    // EFFECTS: Constructs a summary with the number of (time or manual) segments completed, the number of
+    //          repetition cycles completed, the time (in milliseconds) that could not be used, and whether the
+    //          routine was completed.
+    public AdvanceResult(long segmentsCompleted, long cyclesCompleted, long unusedTime, boolean routineCompleted) {
+        this.segmentsCompleted = segmentsCompleted;
+        this.cyclesCompleted = cyclesCompleted;
+        this.unusedTime = unusedTime;
+        this.routineCompleted = routineCompleted;
+    }
+
+    // EFFECTS: Returns the number of time and manual segments completed, counting each repetition
+    //          of a segment separately
+    public long getSegmentsCompleted() {
+        return segmentsCompleted;
+    }
+
+    // EFFECTS: Returns the number of repetition cycles completed in all repeat segments
+    public long getCyclesCompleted() {
+        return cyclesCompleted;
+    }
+
+    // EFFECTS: Returns the time (in milliseconds) left over because the routine was completed,
+    //          or because a manual segment is waiting to be completed
+    public long getUnusedTime() {
+        return unusedTime;
+    }
+
+    // EFFECTS: Returns true if the routine was completed by this advance
+    public boolean isRoutineCompleted() {
+        return routineCompleted;
+    }
+
+    // EFFECTS: Returns true if the current segment of the routine changed
+    public boolean hasCurrentSegmentChanged() {
+        return segmentsCompleted > 0;
+    }
+}
@@ -0,0 +1,42 @@
+package model;
+
+// Represents a problem found in a routine by RoutineAnalyser: an error if the routine cannot be run correctly,
+// or a warning if it can but probably was not meant to be that way
+public class AnalysisIssue {
+
+    // Represents how serious an issue is
+    public enum Severity {
+        ERROR,
+        WARNING
+    }
+
+    private final Severity severity;
+    private final Segment segment;
+    private final String message;
+
+    // EFFECTS: Constructs an issue of the given severity with the segment it was found in and a description
+    AnalysisIssue(Severity severity, Segment segment, String message) {
+        this.severity = severity;
+        this.segment = segment;
+        this.message = message;
+    }
+
+    public Severity getSeverity() {
+        return severity;
+    }
+
+    // EFFECTS: Returns the segment the issue was found in (the routine itself for issues with the whole routine)
+    public Segment getSegment() {
+        return segment;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    // EFFECTS: Returns the issue as a single line, e.g. "ERROR: Repeat segment loop is on cycle 5 of 3"
+    @Override
+    public String toString() {
+        return severity + ": " + message;
+    }
+}
@@ -0,0 +1,238 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static model.RoutineDefinition.saturatedAdd;
+import static model.RoutineDefinition.saturatedMultiply;
+
+// Represents the definition of a segment and all of its children/sub-children, without any progress. Blocks are
+// immutable and made by a BlockTable, which interns them: there is only ever one block for each distinct
+// structure in a table, so identical blocks (within one routine or across many) are stored once and shared.
+// Children are compared by identity, since they have already been interned by the time their parent is.
+// Progress is kept outside of the blocks, in the segments made by toSegment or in a RoutineProgress session.
+public final class Block {
+    private final SegmentType type;
+    private final String name;
+    private final long totalTime;    // total time of a TIME block, 0 otherwise
+    private final int repeats;       // total number of cycles of a REPEAT block, 0 otherwise
+    private final Block[] children;  // children of a REPEAT or ROUTINE block, empty otherwise
+    private final List<Block> childList;
+    private final long duration;     // total time it takes to run the block, including all cycles
+    private final long instructions; // number of instructions the block compiles to in a RoutineDefinition
+    private final int hash;
+
+    // REQUIRES: children have been interned in the same table, and are empty unless type is REPEAT or ROUTINE
+    // EFFECTS: Constructs a block with the given structure
+    Block(SegmentType type, String name, long totalTime, int repeats, Block[] children) {
+        this.type = type;
+        this.name = name;
+        this.totalTime = totalTime;
+        this.repeats = repeats;
+        this.children = children;
+        childList = Collections.unmodifiableList(Arrays.asList(children));
+
+        long childDuration = 0;
+        long childInstructions = 0;
+        int childHash = 1;
+        for (Block child : children) {
+            childDuration = saturatedAdd(childDuration, child.duration);
+            childInstructions = saturatedAdd(childInstructions, child.instructions);
+            childHash = 31 * childHash + child.hash;
+        }
+
+        switch (type) {
+            case TIME:
+                duration = totalTime;
+                instructions = 1;
+                break;
+            case MANUAL:
+                duration = 0;
+                instructions = 1;
+                break;
+            case REPEAT:
+                duration = saturatedMultiply(childDuration, repeats);
+                instructions = saturatedAdd(childInstructions, 2);
+                break;
+            default:
+                duration = childDuration;
+                instructions = childInstructions;
+                break;
+        }
+
+        hash = 31 * (31 * (31 * (31 * type.hashCode() + name.hashCode()) + Long.hashCode(totalTime)) + repeats)
+                + childHash;
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Public methods
+    // --------------------------------------------------------------------------------------------
+
+    public SegmentType getType() {
+        return type;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // EFFECTS: Returns the total time of a TIME block (0 for anything else)
+    public long getTotalTime() {
+        return totalTime;
+    }
+
+    // EFFECTS: Returns the total number of cycles of a REPEAT block (0 for anything else)
+    public int getTotalRepetitions() {
+        return repeats;
+    }
+
+    // EFFECTS: Returns the (unmodifiable) list of children of a REPEAT or ROUTINE block, empty otherwise
+    public List<Block> getChildren() {
+        return childList;
+    }
+
+    // EFFECTS: Returns the total time (in milliseconds) it takes to run the block, including all cycles
+    public long getDuration() {
+        return duration;
+    }
+
+    // EFFECTS: Returns a new segment (a Routine for a ROUTINE block) with this structure, and all progress
+    //          at the start. Every call makes new segments, so their progress is never shared.
+    public Segment toSegment() {
+        List<List<Segment>> openChildren = new ArrayList<>(); // children made so far for each open block
+        Segment[] root = new Segment[1];
+
+        walk(new Visitor() {
+            @Override
+            public void enter(Block block) {
+                if (block.type == SegmentType.REPEAT || block.type == SegmentType.ROUTINE) {
+                    openChildren.add(new ArrayList<>(block.children.length));
+                }
+            }
+
+            @Override
+            public void leave(Block block) {
+                Segment segment;
+                switch (block.type) {
+                    case TIME:
+                        segment = new TimeSegment(block.name, block.totalTime);
+                        break;
+                    case MANUAL:
+                        segment = new ManualSegment(block.name);
+                        break;
+                    case REPEAT:
+                        segment = new RepeatSegment(block.name, block.repeats,
+                                openChildren.remove(openChildren.size() - 1));
+                        break;
+                    default:
+                        Routine routine = new Routine(block.name);
+                        for (Segment child : openChildren.remove(openChildren.size() - 1)) {
+                            routine.addSegment(child);
+                        }
+                        segment = routine;
+                        break;
+                }
+
+                if (openChildren.isEmpty()) {
+                    root[0] = segment;
+                } else {
+                    openChildren.get(openChildren.size() - 1).add(segment);
+                }
+            }
+        });
+        return root[0];
+    }
+
+    // REQUIRES: getType() is ROUTINE
+    // EFFECTS: Compiles a definition of this routine, which any number of RoutineProgress sessions can be run
+    //          off without making any segments
+    public RoutineDefinition toDefinition() {
+        return new RoutineDefinition(this);
+    }
+
+    // EFFECTS: Returns true if the other object is a block with the same structure, i.e. the same values and
+    //          the same (identical) children
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Block)) {
+            return false;
+        }
+        Block other = (Block) o;
+        if (hash != other.hash || type != other.type || totalTime != other.totalTime || repeats != other.repeats
+                || !name.equals(other.name) || children.length != other.children.length) {
+            return false;
+        }
+        for (int i = 0; i < children.length; i++) {
+            if (children[i] != other.children[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Package-private methods
+    // --------------------------------------------------------------------------------------------
+
+    // EFFECTS: Returns the number of instructions the block compiles to in a RoutineDefinition (no END or
+    //          REPEAT instructions for a ROUTINE block)
+    long getInstructionCount() {
+        return instructions;
+    }
+
+    // EFFECTS: Returns the number of children
+    int getChildCount() {
+        return children.length;
+    }
+
+    // EFFECTS: Visits this block and all of its children/sub-children in order, each entered before its
+    //          children and left after them. Shared blocks are visited every time they appear. The open blocks
+    //          are kept on an explicit stack, the same way as SegmentWalker.
+    void walk(Visitor visitor) {
+        Block[] openBlocks = new Block[16];
+        int[] positions = new int[16]; // index of the next child to enter in each open block
+        int depth = 1;
+        openBlocks[0] = this;
+        visitor.enter(this);
+
+        while (depth > 0) {
+            Block block = openBlocks[depth - 1];
+            int position = positions[depth - 1];
+            if (position < block.children.length) {
+                positions[depth - 1] = position + 1;
+                Block child = block.children[position];
+                visitor.enter(child);
+                if (depth == openBlocks.length) {
+                    openBlocks = Arrays.copyOf(openBlocks, depth * 2);
+                    positions = Arrays.copyOf(positions, depth * 2);
+                }
+                openBlocks[depth] = child;
+                positions[depth] = 0;
+                depth++;
+            } else {
+                depth--;
+                openBlocks[depth] = null;
+                visitor.leave(block);
+            }
+        }
+    }
+
+    // Represents an operation applied to a block and all of its children/sub-children by walk
+    interface Visitor {
+        // EFFECTS: Called for each block before any of its children
+        void enter(Block block);
+
+        // EFFECTS: Called for each block after all of its children
+        void leave(Block block);
+    }
+}
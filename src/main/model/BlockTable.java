@@ -0,0 +1,86 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Represents a table of interned blocks, e.g. for a library of routines. Interning a segment finds (or adds)
+// the one block in the table for each part of its structure, so blocks repeated within a routine or across
+// routines are only stored once, and the memory used grows with the number of distinct blocks rather than
+// the total number of segments.
+public class BlockTable {
+    private final Map<Block, Block> blocks; // every distinct block in the table, mapped to itself
+
+    // EFFECTS: Constructs an empty table
+    public BlockTable() {
+        blocks = new HashMap<>();
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Public methods
+    // --------------------------------------------------------------------------------------------
+
+    // MODIFIES: this
+    // EFFECTS: Returns the block in this table for the structure of the given segment (a ROUTINE block for a
+    //          Routine), adding it and any of its children/sub-children which are not in the table yet. The
+    //          progress of the segments is ignored.
+    public Block intern(Segment segment) {
+        List<List<Block>> openChildren = new ArrayList<>(); // children interned so far for each open group
+        Block[] root = new Block[1];
+
+        SegmentWalker.walk(segment, new SegmentVisitor() {
+            @Override
+            public boolean enter(Segment segment) {
+                switch (segment.getType()) {
+                    case TIME:
+                        add(intern(new Block(SegmentType.TIME, segment.getName(),
+                                ((TimeSegment) segment).getTotalTime(), 0, new Block[0])));
+                        break;
+                    case MANUAL:
+                        add(intern(new Block(SegmentType.MANUAL, segment.getName(), 0, 0, new Block[0])));
+                        break;
+                    default:
+                        openChildren.add(new ArrayList<>(((SegmentGroup) segment).getChildren().size()));
+                        break;
+                }
+                return true;
+            }
+
+            @Override
+            public void leave(SegmentGroup group) {
+                Block[] children = openChildren.remove(openChildren.size() - 1).toArray(new Block[0]);
+                int repeats = group instanceof RepeatSegment ? ((RepeatSegment) group).getTotalRepetitions() : 0;
+                add(intern(new Block(group.getType(), group.getName(), 0, repeats, children)));
+            }
+
+            // MODIFIES: openChildren
+            // EFFECTS: Adds the block to the children of the innermost open group, or keeps it as the result
+            private void add(Block block) {
+                if (openChildren.isEmpty()) {
+                    root[0] = block;
+                } else {
+                    openChildren.get(openChildren.size() - 1).add(block);
+                }
+            }
+        });
+        return root[0];
+    }
+
+    // EFFECTS: Returns the number of distinct blocks in this table
+    public int size() {
+        return blocks.size();
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Private methods
+    // --------------------------------------------------------------------------------------------
+
+    // MODIFIES: this
+    // EFFECTS: Returns the block in this table with the same structure as the given one, adding the given
+    //          block if there is none
+    private Block intern(Block block) {
+        Block existing = blocks.putIfAbsent(block, block);
+        return existing == null ? block : existing;
+    }
+}
@@ -0,0 +1,9 @@
+package model;
+
+// Represents a source of time for running routines. Readings only make sense relative to each other (like
+// System.nanoTime, not the time of day), and never go backwards, so the time between ticks is unaffected by
+// changes to the system clock.
+public interface Clock {
+    // EFFECTS: Returns the current reading of the clock, in nanoseconds
+    long nanoTime();
+}
@@ -0,0 +1,519 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static model.RoutineDefinition.saturatedAdd;
+import static model.RoutineDefinition.saturatedMultiply;
+
+// Represents a routine stored compactly for very large (e.g. generated) routines. Instead of one object per
+// segment, every segment is a position in a set of parallel primitive arrays, in the same order as
+// getFlattenedSegments in Routine. The children of a RepeatSegment directly follow it, up to the end of its
+// subtree. Names are interned in a table, so repeated names (e.g. "Rest") are only stored once.
+// Segments can be read through lightweight SegmentView objects, which are only created when asked for.
+public class CompactRoutine {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private static final byte TIME = 0;
+    private static final byte MANUAL = 1;
+    private static final byte REPEAT = 2;
+
+    private final String name;
+    private int size;
+
+    // Segment columns
+    private byte[] types;
+    private int[] nameIds;         // index into the name table
+    private long[] totals;         // total time of a TimeSegment, total repetitions of a RepeatSegment
+    private long[] progress;       // elapsed time of a TimeSegment, 1 if a ManualSegment is finished,
+                                   // number of completed cycles of a RepeatSegment
+    private int[] subtreeEnds;     // index after the last child/sub-child of the segment
+    private long[] durations;      // total time to run the segment, including all cycles
+    private long[] cycleDurations; // time to run one cycle of a RepeatSegment
+    private long[] leafCounts;     // number of time and manual segments run in all cycles of the segment
+    private long[] cycleCounts;    // number of cycles run in the segment, including nested RepeatSegments
+    private boolean[] hasManual;   // true if the segment is (or contains) a ManualSegment
+
+    // Interned name table
+    private final List<String> names;
+    private final Map<String, Integer> nameIndex;
+
+    // RepeatSegments still being added to, i.e. not ended yet
+    private int[] openRepeats;
+    private int openDepth;
+
+    // Progress through the routine
+    private int cursor;           // index of the active (time or manual) segment, size when complete
+    private int[] activeRepeats;  // RepeatSegments enclosing the cursor, outermost first
+    private int activeDepth;
+
+    // EFFECTS: Constructs an empty compact routine with the given name
+    public CompactRoutine(String name) {
+        this.name = name;
+        size = 0;
+        types = new byte[INITIAL_CAPACITY];
+        nameIds = new int[INITIAL_CAPACITY];
+        totals = new long[INITIAL_CAPACITY];
+        progress = new long[INITIAL_CAPACITY];
+        subtreeEnds = new int[INITIAL_CAPACITY];
+        durations = new long[INITIAL_CAPACITY];
+        cycleDurations = new long[INITIAL_CAPACITY];
+        leafCounts = new long[INITIAL_CAPACITY];
+        cycleCounts = new long[INITIAL_CAPACITY];
+        hasManual = new boolean[INITIAL_CAPACITY];
+        names = new ArrayList<>();
+        nameIndex = new HashMap<>();
+        openRepeats = new int[INITIAL_CAPACITY];
+        openDepth = 0;
+        activeRepeats = new int[INITIAL_CAPACITY];
+        activeDepth = 0;
+        cursor = 0;
+    }
+
+    // EFFECTS: Returns a compact routine with the same name and structure as the given routine (no progress)
+    public static CompactRoutine of(Routine routine) {
+        CompactRoutine compactRoutine = new CompactRoutine(routine.getName());
+        compactRoutine.addAll(routine);
+        return compactRoutine;
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Building
+    // --------------------------------------------------------------------------------------------
+
+    // REQUIRES: totalTime >= 0
+    // MODIFIES: this
+    // EFFECTS: Adds a time segment with the given name and total time (in milliseconds) to the end of the
+    //          routine, or of the last RepeatSegment started and not ended yet
+    public void addTimeSegment(String name, long totalTime) {
+        int index = append(TIME, name, totalTime);
+        durations[index] = totalTime;
+        settleIfBuilt();
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Adds a manual segment with the given name to the end of the routine, or of the last
+    //          RepeatSegment started and not ended yet
+    public void addManualSegment(String name) {
+        int index = append(MANUAL, name, 0);
+        hasManual[index] = true;
+        settleIfBuilt();
+    }
+
+    // REQUIRES: numRepeats > 0
+    // MODIFIES: this
+    // EFFECTS: Starts a repeat segment with the given name and number of repetitions at the end of the
+    //          routine. All segments added until endRepeatSegment is called become its children.
+    public void startRepeatSegment(String name, int numRepeats) {
+        int index = append(REPEAT, name, numRepeats);
+        openRepeats = ensureCapacity(openRepeats, openDepth + 1);
+        openRepeats[openDepth++] = index;
+    }
+
+    // REQUIRES: a RepeatSegment was started and not ended yet, and at least one child was added to it
+    // MODIFIES: this
+    // EFFECTS: Ends the last repeat segment started, i.e. segments are added after it again
+    public void endRepeatSegment() {
+        int index = openRepeats[--openDepth];
+        subtreeEnds[index] = size;
+
+        long cycleDuration = 0;
+        long cycleLeafCount = 0;
+        long cycleCount = 1;
+        for (int child = index + 1; child < size; child = subtreeEnds[child]) {
+            cycleDuration = saturatedAdd(cycleDuration, durations[child]);
+            cycleLeafCount = saturatedAdd(cycleLeafCount, leafCounts[child]);
+            cycleCount = saturatedAdd(cycleCount, cycleCounts[child]);
+            hasManual[index] |= hasManual[child];
+        }
+        cycleDurations[index] = cycleDuration;
+        durations[index] = saturatedMultiply(cycleDuration, totals[index]);
+        leafCounts[index] = saturatedMultiply(cycleLeafCount, totals[index]);
+        cycleCounts[index] = saturatedMultiply(cycleCount, totals[index]);
+        settleIfBuilt();
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Running
+    // --------------------------------------------------------------------------------------------
+
+    // REQUIRES: every RepeatSegment started has been ended, milliseconds >= 0
+    // MODIFIES: this
+    // EFFECTS: Advances the active segment by the specified milliseconds if it is a time segment, carrying
+    //          any time left over into the following segments (and repetition cycles) until it is used up.
+    //          Returns a summary of the segments and cycles completed.
+    public AdvanceResult advance(long milliseconds) {
+        return run(milliseconds, false);
+    }
+
+    // REQUIRES: every RepeatSegment started has been ended
+    // MODIFIES: this
+    // EFFECTS: Completes the active segment if it is a manual segment. Returns a summary of the segments
+    //          completed.
+    public AdvanceResult advance() {
+        return run(0, true);
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Resets all segments to their initial states, with a single fill of the progress column
+    public void reset() {
+        Arrays.fill(progress, 0, size, 0);
+        cursor = 0;
+        activeDepth = 0;
+        settle();
+    }
+
+    // EFFECTS: Returns true if every segment has been run
+    public boolean isComplete() {
+        return cursor == size && activeDepth == 0;
+    }
+
+    // EFFECTS: Returns the time elapsed in the routine (in milliseconds), including all previous cycles
+    public long getElapsedTime() {
+        long time = 0;
+        for (int index = 0; index < size; index = subtreeEnds[index]) {
+            time = saturatedAdd(time, elapsedTimeOf(index));
+        }
+        return time;
+    }
+
+    // EFFECTS: Returns the total time (in milliseconds) it takes to run the routine, including all cycles
+    public long getDuration() {
+        long duration = 0;
+        for (int index = 0; index < size; index = subtreeEnds[index]) {
+            duration = saturatedAdd(duration, durations[index]);
+        }
+        return duration;
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Reading
+    // --------------------------------------------------------------------------------------------
+
+    public String getName() {
+        return name;
+    }
+
+    // EFFECTS: Returns the total number of segments, including all children/sub-children
+    public int size() {
+        return size;
+    }
+
+    // EFFECTS: Returns the number of different segment names stored
+    public int getNameCount() {
+        return names.size();
+    }
+
+    // REQUIRES: 0 <= index < size()
+    // EFFECTS: Returns a view of the segment at the given index (in the order of getFlattenedSegments)
+    public SegmentView getSegment(int index) {
+        return new SegmentView(this, index);
+    }
+
+    // EFFECTS: Returns views of the segments directly in the routine
+    public List<SegmentView> getSegments() {
+        return viewsBetween(0, size);
+    }
+
+    // REQUIRES: isComplete() is false
+    // EFFECTS: Returns a view of the exact segment that is currently active (i.e. not a RepeatSegment)
+    public SegmentView getExactCurrentSegment() {
+        return getSegment(cursor);
+    }
+
+    // EFFECTS: Returns a Routine with the same segments (and progress) as this compact routine
+    public Routine toRoutine() {
+        Routine routine = new Routine(name);
+        for (Segment segment : toSegments()) {
+            routine.addSegment(segment);
+        }
+        return routine;
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Package-private methods (used by SegmentView)
+    // --------------------------------------------------------------------------------------------
+
+    SegmentType getType(int index) {
+        switch (types[index]) {
+            case TIME:
+                return SegmentType.TIME;
+            case MANUAL:
+                return SegmentType.MANUAL;
+            default:
+                return SegmentType.REPEAT;
+        }
+    }
+
+    String getName(int index) {
+        return names.get(nameIds[index]);
+    }
+
+    long getTotal(int index) {
+        return totals[index];
+    }
+
+    long getProgress(int index) {
+        return progress[index];
+    }
+
+    long getDuration(int index) {
+        return durations[index];
+    }
+
+    // EFFECTS: Returns true if the segment at the given index is complete
+    boolean isComplete(int index) {
+        return types[index] == MANUAL ? progress[index] == 1 : progress[index] >= totals[index];
+    }
+
+    // EFFECTS: Returns views of the children of the segment at the given index
+    List<SegmentView> getChildren(int index) {
+        return types[index] == REPEAT ? viewsBetween(index + 1, subtreeEnds[index]) : new ArrayList<>();
+    }
+
+    // EFFECTS: Returns the time run in the segment at the given index, including all previous cycles. Scans its
+    //          subtree in order, only going into RepeatSegments part of the way through.
+    long elapsedTimeOf(int index) {
+        long time = 0;
+        int segment = index;
+        while (segment < subtreeEnds[index]) {
+            if (types[segment] == REPEAT && !isComplete(segment)) {
+                time = saturatedAdd(time, saturatedMultiply(progress[segment], cycleDurations[segment]));
+                segment++;
+            } else {
+                long segmentTime = types[segment] == MANUAL ? 0 : types[segment] == TIME ? progress[segment]
+                        : durations[segment];
+                time = saturatedAdd(time, segmentTime);
+                segment = subtreeEnds[segment];
+            }
+        }
+        return time;
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Private methods
+    // --------------------------------------------------------------------------------------------
+
+    // MODIFIES: this
+    // EFFECTS: Appends a segment of the given type, name and total to the columns. Returns its index.
+    private int append(byte type, String segmentName, long total) {
+        if (size == types.length) {
+            int capacity = size * 2;
+            types = Arrays.copyOf(types, capacity);
+            nameIds = Arrays.copyOf(nameIds, capacity);
+            totals = Arrays.copyOf(totals, capacity);
+            progress = Arrays.copyOf(progress, capacity);
+            subtreeEnds = Arrays.copyOf(subtreeEnds, capacity);
+            durations = Arrays.copyOf(durations, capacity);
+            cycleDurations = Arrays.copyOf(cycleDurations, capacity);
+            leafCounts = Arrays.copyOf(leafCounts, capacity);
+            cycleCounts = Arrays.copyOf(cycleCounts, capacity);
+            hasManual = Arrays.copyOf(hasManual, capacity);
+        }
+
+        int index = size++;
+        types[index] = type;
+        nameIds[index] = intern(segmentName);
+        totals[index] = total;
+        progress[index] = 0;
+        subtreeEnds[index] = index + 1;
+        durations[index] = 0;
+        cycleDurations[index] = 0;
+        leafCounts[index] = type == REPEAT ? 0 : 1;
+        cycleCounts[index] = 0;
+        hasManual[index] = false;
+        return index;
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Returns the index of the given name in the name table, adding it if it is not there yet
+    private int intern(String segmentName) {
+        Integer id = nameIndex.get(segmentName);
+        if (id == null) {
+            id = names.size();
+            names.add(segmentName);
+            nameIndex.put(segmentName, id);
+        }
+        return id;
+    }
+
+    // EFFECTS: Returns a copy of array with room for at least the given number of elements
+    private static int[] ensureCapacity(int[] array, int capacity) {
+        return capacity <= array.length ? array : Arrays.copyOf(array, Math.max(capacity, array.length * 2));
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Adds the segments of the routine (and their children) to the end of this routine, walking the
+    //          tree instead of recursing
+    private void addAll(Routine routine) {
+        SegmentWalker.walk(routine, new SegmentVisitor() {
+            @Override
+            public boolean enter(Segment segment) {
+                switch (segment.getType()) {
+                    case TIME:
+                        addTimeSegment(segment.getName(), ((TimeSegment) segment).getTotalTime());
+                        break;
+                    case MANUAL:
+                        addManualSegment(segment.getName());
+                        break;
+                    default:
+                        if (segment != routine) {
+                            startRepeatSegment(segment.getName(), ((RepeatSegment) segment).getTotalRepetitions());
+                        }
+                        break;
+                }
+                return true;
+            }
+
+            @Override
+            public void leave(SegmentGroup group) {
+                if (group != routine) {
+                    endRepeatSegment();
+                }
+            }
+        });
+    }
+
+    // EFFECTS: Returns views of the segments between the given indices that are not children of each other
+    private List<SegmentView> viewsBetween(int start, int end) {
+        List<SegmentView> views = new ArrayList<>();
+        for (int index = start; index < end; index = subtreeEnds[index]) {
+            views.add(getSegment(index));
+        }
+        return views;
+    }
+
+    // EFFECTS: Returns new segments for the segments directly in the routine (with their children), with the same
+    //          progress. Each RepeatSegment is only made once its subtree has been scanned, so its children are
+    //          kept in a stack of open lists instead of recursing.
+    private List<Segment> toSegments() {
+        List<List<Segment>> openChildren = new ArrayList<>();
+        int[] open = new int[INITIAL_CAPACITY]; // indices of the RepeatSegments being made
+        int depth = 0;
+        openChildren.add(new ArrayList<>());
+
+        for (int index = 0; index <= size; index++) {
+            while (depth > 0 && subtreeEnds[open[depth - 1]] == index) {
+                int repeat = open[--depth];
+                int cycle = (int) Math.min(progress[repeat] + 1, totals[repeat]);
+                List<Segment> children = openChildren.remove(depth + 1);
+                openChildren.get(depth).add(new RepeatSegment(getName(repeat), (int) totals[repeat], children,
+                        cycle));
+            }
+            if (index == size) {
+                break;
+            }
+
+            String segmentName = getName(index);
+            switch (types[index]) {
+                case TIME:
+                    openChildren.get(depth).add(new TimeSegment(segmentName, totals[index], progress[index]));
+                    break;
+                case MANUAL:
+                    openChildren.get(depth).add(new ManualSegment(segmentName, progress[index] == 1));
+                    break;
+                default:
+                    open = ensureCapacity(open, depth + 1);
+                    open[depth++] = index;
+                    openChildren.add(new ArrayList<>());
+                    break;
+            }
+        }
+        return openChildren.get(0);
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Moves the cursor past any segments that are already complete (e.g. take no time)
+    private void settle() {
+        run(0, false);
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Settles the cursor after a segment was added, unless a RepeatSegment is still being built
+    private void settleIfBuilt() {
+        if (openDepth == 0) {
+            settle();
+        }
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Runs the routine from the active segment, the same way as RoutinePlan does for a Routine.
+    //          Finishing the last child of a RepeatSegment completes a cycle; whole cycles are skipped with
+    //          arithmetic when there is enough time and no manual segments, and the next cycle is started
+    //          with a single fill of the progress of its children.
+    private AdvanceResult run(long milliseconds, boolean advanceManual) {
+        boolean wasComplete = cursor == size && activeDepth == 0;
+        long remainingTime = milliseconds;
+        boolean manualAvailable = advanceManual;
+        long segmentsCompleted = 0;
+        long cyclesCompleted = 0;
+
+        while (cursor < size || activeDepth > 0) {
+            if (activeDepth > 0 && cursor == subtreeEnds[activeRepeats[activeDepth - 1]]) {
+                int repeat = activeRepeats[activeDepth - 1];
+                progress[repeat]++;
+                long skippedCycles = cyclesToSkip(repeat, remainingTime);
+                progress[repeat] += skippedCycles;
+                remainingTime -= skippedCycles * cycleDurations[repeat];
+                segmentsCompleted = saturatedAdd(segmentsCompleted,
+                        saturatedMultiply(skippedCycles, leafCounts[repeat] / totals[repeat]));
+                cyclesCompleted = saturatedAdd(cyclesCompleted, saturatedAdd(skippedCycles + 1,
+                        saturatedMultiply(skippedCycles, cycleCounts[repeat] / totals[repeat] - 1)));
+
+                if (progress[repeat] < totals[repeat]) {
+                    Arrays.fill(progress, repeat + 1, subtreeEnds[repeat], 0);
+                    cursor = repeat + 1;
+                } else {
+                    activeDepth--;
+                }
+                continue;
+            }
+
+            if (types[cursor] == REPEAT) {
+                if (isComplete(cursor)) {
+                    cursor = subtreeEnds[cursor];
+                } else {
+                    activeRepeats = ensureCapacity(activeRepeats, activeDepth + 1);
+                    activeRepeats[activeDepth++] = cursor;
+                    cursor++;
+                }
+                continue;
+            }
+
+            if (types[cursor] == TIME) {
+                long timeLeft = totals[cursor] - progress[cursor];
+                long timeUsed = Math.min(timeLeft, remainingTime);
+                progress[cursor] += timeUsed;
+                remainingTime -= timeUsed;
+            } else if (manualAvailable && progress[cursor] == 0) {
+                progress[cursor] = 1;
+                manualAvailable = false;
+            }
+
+            if (!isComplete(cursor)) {
+                break;
+            }
+            segmentsCompleted = saturatedAdd(segmentsCompleted, 1);
+            cursor++;
+        }
+
+        return new AdvanceResult(segmentsCompleted, cyclesCompleted, remainingTime,
+                !wasComplete && cursor == size && activeDepth == 0);
+    }
+
+    // REQUIRES: the current cycle of the RepeatSegment at the given index has just been completed
+    // EFFECTS: Returns how many more whole cycles can be completed with the given time, without having to
+    //          run them one by one. Cycles containing a manual segment are never skipped.
+    private long cyclesToSkip(int repeat, long time) {
+        if (hasManual[repeat]) {
+            return 0;
+        }
+
+        long cyclesLeft = totals[repeat] - progress[repeat];
+        long cycleDuration = cycleDurations[repeat];
+        return cycleDuration == 0 ? cyclesLeft : Math.min(time / cycleDuration, cyclesLeft);
+    }
+}
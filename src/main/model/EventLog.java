@@ -3,50 +3,81 @@ package model;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
  * Represents a log of routine events.
  * We use the Singleton Design Pattern to ensure that there is only
  * one EventLog in the system and that the system has global access
  * to the single instance of the EventLog.
+ * Events can be logged from any thread. A thread can also keep its
+ * events out of the shared log (see startIsolating), so that many
+ * routines can be worked on at once without contending for it.
  */
 public class EventLog implements Iterable<Event> {
     /**
      * the only EventLog in the system (Singleton Design Pattern)
      */
-    private static EventLog theLog;
+    private static final EventLog theLog = new EventLog();
     private final Collection<Event> events;
+    private final ThreadLocal<List<Event>> isolatedEvents;
 
     /**
      * Prevent external construction.
      * (Singleton Design Pattern).
      */
     private EventLog() {
-        events = new ArrayList<Event>();
+        events = new ConcurrentLinkedQueue<Event>();
+        isolatedEvents = new ThreadLocal<List<Event>>();
     }
 
     /**
-     * Gets instance of EventLog - creates it
-     * if it doesn't already exist.
+     * Gets instance of EventLog, created when the class is loaded
+     * so that it is the same on every thread.
      * (Singleton Design Pattern)
      *
      * @return instance of EventLog
      */
     public static EventLog getInstance() {
-        if (theLog == null) {
-            theLog = new EventLog();
-        }
-
         return theLog;
     }
 
     /**
-     * Adds an event to the event log.
+     * Adds an event to the event log, or to the separate log of the
+     * current thread if it is isolated.
      *
      * @param e the event to be added
      */
     public void logEvent(Event e) {
-        events.add(e);
+        List<Event> isolated = isolatedEvents.get();
+        if (isolated != null) {
+            isolated.add(e);
+        } else {
+            events.add(e);
+        }
+    }
+
+    /**
+     * Starts keeping the events logged on the current thread in a
+     * separate log of its own instead of this one, until stopIsolating
+     * is called on the same thread.
+     */
+    public void startIsolating() {
+        isolatedEvents.set(new ArrayList<Event>());
+    }
+
+    /**
+     * Stops isolating the current thread, its events are logged in
+     * this log again.
+     *
+     * @return the events logged on the current thread since
+     *         startIsolating was called (empty if it was not)
+     */
+    public List<Event> stopIsolating() {
+        List<Event> isolated = isolatedEvents.get();
+        isolatedEvents.remove();
+        return isolated != null ? isolated : new ArrayList<Event>();
     }
 
     /**
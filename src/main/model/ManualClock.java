@@ -0,0 +1,34 @@
+package model;
+
+import java.util.concurrent.TimeUnit;
+
+// Represents a virtual clock which only moves when told to, e.g. to test the timing of the apps with exact
+// (and repeatable) delays between ticks
+public class ManualClock implements Clock {
+    private long nanoTime;
+
+    // EFFECTS: Constructs a clock reading 0
+    public ManualClock() {
+        nanoTime = 0;
+    }
+
+    // EFFECTS: Returns the current reading of the clock
+    @Override
+    public long nanoTime() {
+        return nanoTime;
+    }
+
+    // REQUIRES: nanoseconds >= 0
+    // MODIFIES: this
+    // EFFECTS: Moves the clock forward by the given number of nanoseconds
+    public void advanceNanos(long nanoseconds) {
+        nanoTime += nanoseconds;
+    }
+
+    // REQUIRES: milliseconds >= 0
+    // MODIFIES: this
+    // EFFECTS: Moves the clock forward by the given number of milliseconds
+    public void advanceMillis(long milliseconds) {
+        advanceNanos(TimeUnit.MILLISECONDS.toNanos(milliseconds));
+    }
+}
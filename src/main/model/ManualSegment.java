@@ -1,8 +1,10 @@
 package model;
 
-import org.json.JSONObject;
+import persistence.JsonSink;
 import persistence.RoutineJsonKey;
 
+import java.io.IOException;
+
 // Represents a Segment that is manually completed
 // i.e. the segment is only complete when it is manually set to be complete
 public class ManualSegment extends Segment {
@@ -31,6 +33,17 @@ public class ManualSegment extends Segment {
     // EFFECTS: Sets the segment to be complete
     public void setComplete() {
         finished = true;
+        notifyChanged(false);
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Package-private methods
+    // --------------------------------------------------------------------------------------------
+
+    // MODIFIES: this
+    // EFFECTS: Sets the completion state without notifying any containing groups
+    void setFinished(boolean finished) {
+        this.finished = finished;
     }
 
     // --------------------------------------------------------------------------------------------
@@ -48,10 +61,27 @@ public class ManualSegment extends Segment {
         return finished;
     }
 
+    // EFFECTS: Returns 0, manual segments do not take any time
+    @Override
+    public long getDuration() {
+        return 0;
+    }
+
+    // EFFECTS: Returns 0, manual segments do not take any time
+    @Override
+    public long getElapsedTime() {
+        return 0;
+    }
+
+    @Override
+    public long getManualCount() {
+        return 1;
+    }
+
     // MODIFIES: this
     // EFFECTS: Resets the segment to its initial state, i.e. not complete
     @Override
-    public void reset() {
+    void resetProgress() {
         finished = false;
     }
 
@@ -60,11 +90,11 @@ public class ManualSegment extends Segment {
     // --------------------------------------------------------------------------------------------
 
     @Override
-    public JSONObject encoded() {
-        JSONObject object = new JSONObject();
-        object.put(RoutineJsonKey.TYPE.toString(), getType().name());
-        object.put(RoutineJsonKey.NAME.toString(), getName());
-        object.put(RoutineJsonKey.FINISHED.toString(), finished);
-        return object;
+    public void encodeTo(JsonSink sink) throws IOException {
+        sink.beginObject(3);
+        sink.member(RoutineJsonKey.NAME, getName());
+        sink.member(RoutineJsonKey.FINISHED, finished);
+        sink.member(RoutineJsonKey.TYPE, getType().name());
+        sink.endObject();
     }
 }
@@ -0,0 +1,171 @@
+package model;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// Represents a snapshot of the progress through a routine, e.g. to resume a running routine after the app is
+// restarted without saving the whole routine. Only the path to the active segment is kept: its position in each
+// group down to it, the current cycle of each RepeatSegment on the way, and the time elapsed in it. Taking or
+// restoring a checkpoint only looks at the groups on that path, and its encoding has a fixed size for each depth:
+//
+//     int number of groups on the path (-1 if the routine is complete)
+//     int position in the group, int current cycle (for each RepeatSegment on the path, outermost first)
+//     int position of the active segment in its group
+//     long time elapsed in the active segment (in milliseconds)
+public final class ProgressCheckpoint {
+    private static final int COMPLETE = -1;
+
+    private final int[] positions; // position in the group at each level, the active segment last; empty if complete
+    private final int[] cycles;    // current cycle of the RepeatSegment at each level (one fewer than positions)
+    private final long activeTime;
+
+    // REQUIRES: positions is empty (a complete routine) or cycles has one fewer element than it
+    // EFFECTS: Constructs a checkpoint with the given path, cycles and time elapsed in the active segment
+    ProgressCheckpoint(int[] positions, int[] cycles, long activeTime) {
+        this.positions = positions;
+        this.cycles = cycles;
+        this.activeTime = activeTime;
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Public methods
+    // --------------------------------------------------------------------------------------------
+
+    // EFFECTS: Returns true if the routine was complete
+    public boolean isComplete() {
+        return positions.length == 0;
+    }
+
+    // EFFECTS: Returns the number of RepeatSegments enclosing the active segment (0 if complete)
+    public int getDepth() {
+        return cycles.length;
+    }
+
+    // EFFECTS: Returns the time (in milliseconds) elapsed in the active segment
+    public long getActiveTime() {
+        return activeTime;
+    }
+
+    // EFFECTS: Returns the number of bytes the checkpoint is encoded in
+    public int getEncodedSize() {
+        return isComplete() ? Integer.BYTES + Long.BYTES : encodedSize(getDepth());
+    }
+
+    // REQUIRES: buffer has at least getEncodedSize() bytes remaining
+    // MODIFIES: buffer
+    // EFFECTS: Writes the encoding of the checkpoint to the buffer, at its current position
+    public void writeTo(ByteBuffer buffer) {
+        buffer.putInt(isComplete() ? COMPLETE : getDepth());
+        for (int level = 0; level < cycles.length; level++) {
+            buffer.putInt(positions[level]);
+            buffer.putInt(cycles[level]);
+        }
+        if (!isComplete()) {
+            buffer.putInt(positions[cycles.length]);
+        }
+        buffer.putLong(activeTime);
+    }
+
+    // MODIFIES: buffer
+    // EFFECTS: Reads a checkpoint encoded with writeTo from the buffer, at its current position. Throws
+    //          IllegalArgumentException if the buffer does not hold a valid encoding.
+    public static ProgressCheckpoint readFrom(ByteBuffer buffer) {
+        try {
+            int depth = buffer.getInt();
+            if (depth == COMPLETE) {
+                return new ProgressCheckpoint(new int[0], new int[0], buffer.getLong());
+            }
+            if (depth < 0 || depth > (buffer.remaining() - Integer.BYTES - Long.BYTES) / (2 * Integer.BYTES)) {
+                throw new IllegalArgumentException("Invalid checkpoint depth " + depth);
+            }
+
+            int[] positions = new int[depth + 1];
+            int[] cycles = new int[depth];
+            for (int level = 0; level < depth; level++) {
+                positions[level] = buffer.getInt();
+                cycles[level] = buffer.getInt();
+            }
+            positions[depth] = buffer.getInt();
+            return new ProgressCheckpoint(positions, cycles, buffer.getLong());
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Checkpoint is cut off");
+        }
+    }
+
+    // EFFECTS: Returns the encoding of the checkpoint
+    public byte[] toBytes() {
+        ByteBuffer buffer = ByteBuffer.allocate(getEncodedSize());
+        writeTo(buffer);
+        return buffer.array();
+    }
+
+    // EFFECTS: Returns the checkpoint encoded in the given bytes. Throws IllegalArgumentException if they are
+    //          not a valid encoding.
+    public static ProgressCheckpoint fromBytes(byte[] bytes) {
+        return readFrom(ByteBuffer.wrap(bytes));
+    }
+
+    // EFFECTS: Returns true if the other object is a checkpoint of the same progress
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        ProgressCheckpoint other = (ProgressCheckpoint) o;
+        return activeTime == other.activeTime && Arrays.equals(positions, other.positions)
+                && Arrays.equals(cycles, other.cycles);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * Arrays.hashCode(positions) + Arrays.hashCode(cycles)) + Long.hashCode(activeTime);
+    }
+
+    // EFFECTS: Returns the checkpoint as text, e.g. "[1 (cycle 2), 0] +500ms", or "complete"
+    @Override
+    public String toString() {
+        if (isComplete()) {
+            return "complete";
+        }
+        StringBuilder builder = new StringBuilder("[");
+        for (int level = 0; level < cycles.length; level++) {
+            builder.append(positions[level]).append(" (cycle ").append(cycles[level]).append("), ");
+        }
+        return builder.append(positions[cycles.length]).append("] +").append(activeTime).append("ms").toString();
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Package-private methods
+    // --------------------------------------------------------------------------------------------
+
+    // REQUIRES: 0 <= level <= getDepth(), isComplete() is false
+    // EFFECTS: Returns the position in the group at the given level (the active segment at getDepth())
+    int getPosition(int level) {
+        return positions[level];
+    }
+
+    // REQUIRES: 0 <= level < getDepth()
+    // EFFECTS: Returns the current cycle of the RepeatSegment at the given level
+    int getCycle(int level) {
+        return cycles[level];
+    }
+
+    // EFFECTS: Returns true if the other checkpoint is at the same cycle of the same active segment (or both are
+    //          complete), whatever the time elapsed in it
+    boolean isAtSameSegment(ProgressCheckpoint other) {
+        return Arrays.equals(positions, other.positions) && Arrays.equals(cycles, other.cycles);
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Private methods
+    // --------------------------------------------------------------------------------------------
+
+    // EFFECTS: Returns the number of bytes a checkpoint of an active segment at the given depth is encoded in
+    private static int encodedSize(int depth) {
+        return Integer.BYTES + depth * 2 * Integer.BYTES + Integer.BYTES + Long.BYTES;
+    }
+}
@@ -0,0 +1,45 @@
+package model;
+
+// Represents the progress of a RoutineRunner at one moment, published by its timing thread. Snapshots never
+// change, so they can be handed to any other thread (e.g. to show the progress in the UI) without locking.
+public final class ProgressSnapshot {
+    private final long time;
+    private final ProgressCheckpoint checkpoint;
+    private final long elapsedTime;
+    private final long commandsRun;
+
+    // EFFECTS: Constructs a snapshot taken at the given clock reading, of the progress in the checkpoint with
+    //          the given time elapsed in the routine, after the given number of commands were run
+    ProgressSnapshot(long time, ProgressCheckpoint checkpoint, long elapsedTime, long commandsRun) {
+        this.time = time;
+        this.checkpoint = checkpoint;
+        this.elapsedTime = elapsedTime;
+        this.commandsRun = commandsRun;
+    }
+
+    // EFFECTS: Returns the reading of the clock (in nanoseconds) when the snapshot was taken
+    public long getTime() {
+        return time;
+    }
+
+    // EFFECTS: Returns the checkpoint of the progress, which can be restored into the routine being run
+    public ProgressCheckpoint getCheckpoint() {
+        return checkpoint;
+    }
+
+    // EFFECTS: Returns the time (in milliseconds) elapsed in the routine, including all previous cycles
+    public long getElapsedTime() {
+        return elapsedTime;
+    }
+
+    // EFFECTS: Returns true if the routine is complete
+    public boolean isComplete() {
+        return checkpoint.isComplete();
+    }
+
+    // EFFECTS: Returns the number of commands sent to the runner that had been run when the snapshot was taken,
+    //          i.e. the snapshot includes the command with each sequence number up to this one
+    public long getCommandsRun() {
+        return commandsRun;
+    }
+}
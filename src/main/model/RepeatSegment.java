@@ -1,12 +1,14 @@
 package model;
 
-import org.json.JSONArray;
-import org.json.JSONObject;
+import persistence.JsonSink;
 import persistence.RoutineJsonKey;
 
+import java.io.IOException;
 import java.util.List;
 
 import static java.lang.Math.min;
+import static model.RoutineDefinition.saturatedAdd;
+import static model.RoutineDefinition.saturatedMultiply;
 
 // Represents a Segment that repeats a list of children segments
 // for a certain number of times
@@ -29,11 +31,15 @@ public class RepeatSegment extends SegmentGroup {
     // REQUIRES: numRepeats > 0, children.size() > 0, 1 <= currentCycle <= numRepeats
     //           i.e. MUST have at least 1 child
     // EFFECTS: Constructs a partially completed repeat segment with the given name,
-    //          number of repetitions, list of children Segments, and current cycle number
+    //          number of repetitions, list of children Segments, and current cycle number.
+    //          Moves onto the next cycle straight away if all the children are already complete.
     public RepeatSegment(String name, int numRepeats, List<Segment> children, int currentCycle) {
         super(name, children);
         this.numRepeats = numRepeats;
         this.currentCycle = currentCycle;
+        if (isCycleFinished()) {
+            nextCycle();
+        }
     }
 
     // --------------------------------------------------------------------------------------------
@@ -44,40 +50,91 @@ public class RepeatSegment extends SegmentGroup {
         return numRepeats;
     }
 
-    // MODIFIES: this
-    // EFFECTS: Returns the current repetition cycle. First makes sure that the current repetition
-    //          is accurate.
     public int getCurrentRepetition() {
-        update();
         return currentCycle;
     }
 
+    // EFFECTS: Returns the duration (in milliseconds) of a single repetition cycle, added up from the children
+    //          (the total duration may have saturated, so it cannot be divided by the repetitions)
+    public long getCycleDuration() {
+        return super.computeDuration();
+    }
+
+    // EFFECTS: Returns the time (in milliseconds) left in the current repetition cycle
+    public long getRemainingCycleTime() {
+        long cycleDuration = getCycleDuration();
+        return cycleDuration - (getElapsedTime() - (currentCycle - 1) * cycleDuration);
+    }
+
     // MODIFIES: this
-    // EFFECTS: Sets the new number of total repetitions. First makes sure that the current repetition
-    //          is accurate, then ensures that the current repetition cycle does not exceed the new total.
+    // EFFECTS: Sets the new number of total repetitions. Ensures that the current repetition cycle does not
+    //          exceed the new total, and moves onto the next cycle if the current one was already finished.
     // NOTE: Will retain children segments, which may not be expected when newNumRepeats < currentCycle.
     //       E.g. If the segment was on cycle 9/12, some of the children will be incomplete. If the total
     //       number of repetitions is then set to something less than 9 (such as 4), then the segment will
     //       be on cycle 4/4 (the last cycle), but will still have the same incomplete children.
     public void setNewRepeats(int newNumRepeats) {
-        update();
         numRepeats = newNumRepeats;
         currentCycle = min(currentCycle, numRepeats);
+        if (isCycleFinished()) {
+            nextCycle();
+        }
+        notifyChanged(true);
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Package-private methods
+    // --------------------------------------------------------------------------------------------
+
+    // REQUIRES: 1 <= newCurrentCycle <= getTotalRepetitions()
+    // MODIFIES: this
+    // EFFECTS: Sets the current repetition cycle without notifying any containing groups
+    void setCurrentCycle(int newCurrentCycle) {
+        currentCycle = newCurrentCycle;
+        invalidateElapsedTime();
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Moves onto the next repetition cycle (resetting all children) if this is not already the
+    //          last cycle. Returns true if a new cycle was started. Does not notify any containing groups.
+    boolean nextCycle() {
+        if (currentCycle >= numRepeats) {
+            return false;
+        }
+        currentCycle++;
+        startCycle();
+        return true;
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Called when one of the children (or sub-children) has changed. If that finished the current
+    //          cycle, moves onto the next one before passing the change up to the containing group, so the
+    //          cycle number is always accurate when it is read.
+    @Override
+    void childChanged(Segment source, boolean structural) {
+        if (isCycleFinished()) {
+            nextCycle();
+        }
+        super.childChanged(source, structural);
     }
 
     // --------------------------------------------------------------------------------------------
     // Private methods
     // --------------------------------------------------------------------------------------------
 
+    // EFFECTS: Returns true if all the children are complete but this is not the last cycle yet
+    private boolean isCycleFinished() {
+        return currentCycle < numRepeats && areChildrenComplete();
+    }
+
     // MODIFIES: this
-    // EFFECTS: May increment the current cycle number to ensure that it is accurate (i.e. any mismatches between
-    //          the completion states of the children and the current cycle number). Increments the current
-    //          repetition cycle counter by one and resets all children
-    private void incrementCycleIfNecessary() {
-        if (currentCycle < numRepeats && super.isComplete()) {
-            currentCycle++;
-            super.reset();
+    // EFFECTS: Resets all children for the current cycle
+    private void startCycle() {
+        List<Segment> children = getChildren();
+        for (int i = 0; i < children.size(); i++) {
+            children.get(i).resetProgress();
         }
+        childrenReset();
     }
 
     // --------------------------------------------------------------------------------------------
@@ -89,28 +146,47 @@ public class RepeatSegment extends SegmentGroup {
         return SegmentType.REPEAT;
     }
 
-    // EFFECTS: Returns if the segment is complete, i.e. on the last cycle and the last
-    //          child is also complete.
+    // EFFECTS: Returns true if on the last cycle, i.e. the segment is complete once all the children are
     @Override
-    public boolean isComplete() {
-        return currentCycle == numRepeats && super.isComplete();
+    boolean isLastCycle() {
+        return currentCycle == numRepeats;
     }
 
     // MODIFIES: this
-    // EFFECTS: Resets the segment to its initial state, i.e. first cycle, all children reset.
+    // EFFECTS: Moves back to the first cycle, the children are then reset separately
     @Override
-    public void reset() {
+    void clearProgress() {
         currentCycle = 1;
-        super.reset();
     }
 
     // MODIFIES: this
-    // EFFECTS: Modifies the current cycle number to ensure that it is accurate. Ensures all children are
-    //          similarly updated to have accurate cycle numbers.
+    // EFFECTS: Called once all the children have been reset for a cycle. If they are complete straight away
+    //          (i.e. they take no time and have no manual segments) then so is every other cycle, so moves onto
+    //          the last cycle.
+    @Override
+    void childrenReset() {
+        super.childrenReset();
+        if (areChildrenComplete()) {
+            currentCycle = numRepeats;
+        }
+    }
+
+    // EFFECTS: Returns the total duration of all cycles
     @Override
-    public void update() {
-        incrementCycleIfNecessary();
-        super.update();
+    protected long computeDuration() {
+        return saturatedMultiply(super.computeDuration(), numRepeats);
+    }
+
+    // EFFECTS: Returns the time run in all previous cycles and the current one
+    @Override
+    protected long computeElapsedTime() {
+        return saturatedAdd(saturatedMultiply(currentCycle - 1, getCycleDuration()), super.computeElapsedTime());
+    }
+
+    // EFFECTS: Returns the number of manual segments in all cycles
+    @Override
+    protected long computeManualCount() {
+        return saturatedMultiply(super.computeManualCount(), numRepeats);
     }
 
     // --------------------------------------------------------------------------------------------
@@ -118,19 +194,17 @@ public class RepeatSegment extends SegmentGroup {
     // --------------------------------------------------------------------------------------------
 
     @Override
-    public JSONObject encoded() {
-        JSONObject object = new JSONObject();
-        object.put(RoutineJsonKey.TYPE.toString(), getType().name());
-        object.put(RoutineJsonKey.NAME.toString(), getName());
-        object.put(RoutineJsonKey.TOTAL_REPETITIONS.toString(), numRepeats);
-        object.put(RoutineJsonKey.CURRENT_REPETITIONS.toString(), currentCycle);
-
-        JSONArray children = new JSONArray();
-        for (Segment segment : getSegments()) {
-            children.put(segment.encoded());
-        }
-        object.put(RoutineJsonKey.CHILDREN.toString(), children);
+    protected void encodeOpeningTo(JsonSink sink) throws IOException {
+        sink.beginObject(5);
+        sink.member(RoutineJsonKey.CURRENT_REPETITIONS, currentCycle);
+        sink.name(RoutineJsonKey.CHILDREN.toString());
+    }
 
-        return object;
+    @Override
+    protected void encodeClosingTo(JsonSink sink) throws IOException {
+        sink.member(RoutineJsonKey.TOTAL_REPETITIONS, numRepeats);
+        sink.member(RoutineJsonKey.NAME, getName());
+        sink.member(RoutineJsonKey.TYPE, getType().name());
+        sink.endObject();
     }
 }
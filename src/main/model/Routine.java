@@ -1,18 +1,31 @@
 package model;
 
-import org.json.JSONArray;
-import org.json.JSONObject;
 import persistence.Encodable;
+import persistence.JsonSink;
 import persistence.RoutineJsonKey;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 // Represents a single routine which contains a procedure (list) of segments which can be,
 // added, inserted, deleted, advanced (by time or manually).
 public class Routine extends SegmentGroup {
+    private final Map<Long, Segment> segmentsById; // every segment in the routine (and sub-groups) by id
+    private RoutinePlan plan; // compiled on demand, null whenever the structure of the routine changes
+    private final List<RoutineListener> listeners;
+    private boolean changingStructure; // true while this routine is adding or removing segments itself
+    private RoutineTransaction transaction; // the batch of edits being applied, null if there is none
+
     // EFFECTS: Constructs a routine with the given name and an empty list of segments.
     public Routine(String name) {
         super(name);
+        segmentsById = new HashMap<>();
+        listeners = new ArrayList<>();
     }
 
     // --------------------------------------------------------------------------------------------
@@ -22,8 +35,10 @@ public class Routine extends SegmentGroup {
     // MODIFIES: this
     // EFFECTS: Adds the given segment to the end of segments
     public void addSegment(Segment segment) {
-        getSegments().add(segment);
+        attach(this, getChildren().size(), segment);
+        plan = null;
         EventLog.getInstance().logEvent(new Event("Added a segment with name: " + segment.getName()));
+        fireStructureChanged(StructureChange.INSERTED, segment);
     }
 
     // REQUIRES: segmentToInsertBefore is in segments (or one of its children/sub-children!)
@@ -31,10 +46,12 @@ public class Routine extends SegmentGroup {
     // EFFECTS: Inserts the given segment at the index in segments (or a sub-list) BEFORE the other
     //          specified segment.
     public void insertSegmentBefore(Segment segment, Segment segmentToInsertBefore) {
-        insertInSegmentList(segment, segmentToInsertBefore, getSegments(), false);
+        insertAround(segment, segmentToInsertBefore, false);
+        plan = null;
         EventLog.getInstance().logEvent(new Event(
                 "Inserted new segment with name: " + segment.getName() + ", before segment: "
                         + segmentToInsertBefore.getName()));
+        fireStructureChanged(StructureChange.INSERTED, segment);
     }
 
     // REQUIRES: segmentToInsertAfter is in segments (or one of its children/sub-children!)
@@ -42,10 +59,12 @@ public class Routine extends SegmentGroup {
     // EFFECTS: Inserts the given segment at the index in segments (or a sub-list) AFTER the other
     //          specified segment.
     public void insertSegmentAfter(Segment segment, Segment segmentToInsertAfter) {
-        insertInSegmentList(segment, segmentToInsertAfter, getSegments(), true);
+        insertAround(segment, segmentToInsertAfter, true);
+        plan = null;
         EventLog.getInstance().logEvent(new Event(
                 "Inserted new segment with name: " + segment.getName() + ", after segment: "
                         + segmentToInsertAfter.getName()));
+        fireStructureChanged(StructureChange.INSERTED, segment);
     }
 
     // REQUIRES: segment in segments (or one of its children/sub-children!)
@@ -53,119 +72,407 @@ public class Routine extends SegmentGroup {
     // EFFECTS: Removes the given segment from wherever it is in segments. ALSO removes any invalid
     //          repeat segments that would have no children after performing this operation.
     public void removeSegment(Segment segment) {
-        removeInSegmentList(segment, getSegments());
+        // The path has to be found before the segment (and any emptied groups) are removed
+        Segment removed = null;
+        int[] path = null;
+        if (!listeners.isEmpty()) {
+            removed = outermostRemoved(segment);
+            path = pathOf(removed);
+        }
+
+        removeFromParent(segment, null);
+        plan = null;
         EventLog.getInstance().logEvent(new Event("Removed segment with name: " + segment.getName()));
+        if (path != null) {
+            for (int i = 0; i < listeners.size(); i++) {
+                listeners.get(i).structureChanged(StructureChange.REMOVED, removed, path);
+            }
+        }
+    }
+
+    // REQUIRES: not called from within another edit
+    // MODIFIES: this
+    // EFFECTS: Applies all the changes made through the transaction given to the edit as a single change to
+    //          this routine. The totals are only computed again (and the active segment only found again) on
+    //          the next use after the edit, the listeners are told once that the whole routine has changed,
+    //          and a single summary is logged. If the edit throws an exception, every change made in it is
+    //          undone (along with any progress it caused, e.g. a repeat moving to its next cycle), nothing is
+    //          logged or told to the listeners, and the exception is passed on.
+    public void edit(RoutineEdit edit) {
+        if (transaction != null) {
+            throw new IllegalStateException("Routine is already being edited");
+        }
+
+        ProgressCheckpoint before = checkpoint();
+        RoutineTransaction currentTransaction = new RoutineTransaction(this);
+        transaction = currentTransaction;
+        try {
+            edit.apply(currentTransaction);
+        } catch (RuntimeException | Error e) {
+            currentTransaction.rollBack();
+            plan = null;
+            getPlan().restore(before);
+            throw e;
+        } finally {
+            currentTransaction.close();
+            transaction = null;
+            plan = null;
+        }
+
+        String summary = currentTransaction.getSummary();
+        EventLog.getInstance().logEvent(new Event("Edited routine " + getName() + ": " + summary));
+        for (int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).structureChanged(StructureChange.EDITED, this, new int[0]);
+        }
     }
 
     // REQUIRES: milliseconds >= 0
     // MODIFIES: this
     // EFFECTS: Advances the current segment by the specified milliseconds if
-    //          1. the routine is not complete, and 2. the current segment is a TimeSegment
-    public void advance(long milliseconds) {
-        advanceRoutine(milliseconds, false);
+    //          1. the routine is not complete, and 2. the current segment is a TimeSegment.
+    //          Any time left over moves onto the following segments (and repetition cycles) until it is
+    //          used up. Returns a summary of the segments and cycles completed.
+    public AdvanceResult advance(long milliseconds) {
+        return advanceRoutine(milliseconds, false);
     }
 
     // MODIFIES: this
     // EFFECTS: Advances the current segment if 1. the routine is not complete, and
-    //          2. the current segment is a ManualSegment
-    public void advance() {
-        advanceRoutine(0, true);
+    //          2. the current segment is a ManualSegment. Returns a summary of the segments completed.
+    public AdvanceResult advance() {
+        return advanceRoutine(0, true);
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Returns the time (in milliseconds) until the routine reaches the next segment boundary by itself,
+    //          i.e. the time left in the current segment if it is a TimeSegment. Returns -1 if there is no such
+    //          boundary, because the routine is complete or waiting for a ManualSegment to be completed.
+    public long getTimeToNextBoundary() {
+        Segment activeSegment = getPlan().getActiveSegment();
+        if (activeSegment == null || activeSegment.getType() != SegmentType.TIME) {
+            return -1;
+        }
+        return activeSegment.getRemainingTime();
+    }
+
+    // EFFECTS: Returns the time elapsed in the routine (in milliseconds), i.e. the time spent in every
+    //          TimeSegment so far, including all previous repetition cycles. The counterpart of seekTo.
+    public long elapsedTime() {
+        return getElapsedTime();
+    }
+
+    // REQUIRES: elapsedMilliseconds >= 0
+    // MODIFIES: this
+    // EFFECTS: Jumps to the given elapsed time (in milliseconds) in the routine. All segments before that
+    //          time are complete, and all segments after that time are reset. A manual segment at exactly
+    //          that time becomes the current segment. Seeking past the end completes the routine.
+    public void seekTo(long elapsedMilliseconds) {
+        getPlan().seekTo(elapsedMilliseconds);
+        fireSegmentProgressed(this, getElapsedTime());
+        fireCurrentSegmentChanged(getPlan().getActiveSegment());
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Returns a checkpoint of the progress through this routine, which can be restored later (e.g. after
+    //          the app is restarted) without saving the whole routine. Only the current segment and the groups
+    //          enclosing it are looked at.
+    public ProgressCheckpoint checkpoint() {
+        return getPlan().checkpoint();
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Moves the routine to the progress in the given checkpoint, like seekTo but with the exact current
+    //          segment and cycles taken from the checkpoint. Throws IllegalArgumentException (without changing the
+    //          routine) if the checkpoint does not fit the structure of this routine. A checkpoint further on in
+    //          the current TimeSegment is restored by just advancing it, e.g. for checkpoints taken while running.
+    public void restore(ProgressCheckpoint checkpoint) {
+        long timeAhead = getPlan().timeAheadInActive(checkpoint);
+        if (timeAhead >= 0) {
+            advance(timeAhead);
+            return;
+        }
+
+        getPlan().restore(checkpoint);
+        fireSegmentProgressed(this, getElapsedTime());
+        fireCurrentSegmentChanged(getPlan().getActiveSegment());
+    }
+
+    // EFFECTS: Returns the definition of the current structure of this routine, without any progress. The same
+    //          definition is returned until the structure changes, and any number of RoutineProgress sessions
+    //          can be run off it without changing this routine.
+    public RoutineDefinition getDefinition() {
+        return getPlan().getDefinition();
+    }
+
+    // EFFECTS: Returns a lazy stream of the occurrences of each time and manual segment still to be run, in order,
+    //          starting with the current segment in the current cycle of each RepeatSegment enclosing it. Use
+    //          getDefinition().timeline() for the whole routine.
+    public Stream<TimelineEntry> remainingTimeline() {
+        return StreamSupport.stream(getPlan().remainingTimeline(), false);
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Adds a listener which is told about every change to this routine from now on
+    public void addListener(RoutineListener listener) {
+        listeners.add(listener);
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Removes the given listener (if it was added), it is no longer told about any changes
+    public void removeListener(RoutineListener listener) {
+        listeners.remove(listener);
+    }
+
+    // EFFECTS: Returns the segment with the given id in this routine (or one of its children/sub-children!),
+    //          or null if there is none
+    public Segment getSegmentById(long id) {
+        return segmentsById.get(id);
     }
 
     // REQUIRES: isComplete() is false
     // MODIFIES: this
     // EFFECTS: Returns the exact segment that is currently active (i.e. not a RepeatSegment).
-    //          Ensures that all segments are updated.
     public Segment getExactCurrentSegment() {
-        Segment exactCurrentSegment = getCurrentSegment();
-
-        // Check all the way down until not a SegmentGroup
-        while (exactCurrentSegment instanceof SegmentGroup) {
-            SegmentGroup segmentGroup = (SegmentGroup) exactCurrentSegment;
-            exactCurrentSegment = segmentGroup.getCurrentSegment();
+        Segment exactCurrentSegment = getPlan().getActiveSegment();
+        if (exactCurrentSegment == null) {
+            throw new IllegalStateException("All segments were complete, violates requires clause");
         }
-
         return exactCurrentSegment;
     }
 
     // --------------------------------------------------------------------------------------------
-    // Private methods
+    // Package-private methods
     // --------------------------------------------------------------------------------------------
 
-    // REQUIRES: segment in segmentList (or one of its children/sub-children!)
-    // MODIFIES: segmentList
-    // EFFECTS: Removes the given segment from wherever it is in segmentList. ALSO removes any invalid
-    //          repeat segments that would have no children after performing this operation. Returns whether
-    //          to CHECK if you need to remove the parent too (i.e. child segment list is now empty).
-    private boolean removeInSegmentList(Segment segmentToRemove, List<Segment> segmentList) {
-        // Possible to remove the segment directly
-        if (segmentList.remove(segmentToRemove)) {
-            // Return true if this list is now empty (remove parent)
-            return segmentList.isEmpty();
-        }
-
-        // Search rest of the children/sub-children for it
-        Segment parentToRemove = null;
-        for (Segment child : segmentList) {
-            if (!(child instanceof SegmentGroup)) {
-                continue;
+    // EFFECTS: Returns true if the given segment is this routine, or one of its children/sub-children
+    boolean contains(Segment segment) {
+        return segment == this || segmentsById.get(segment.getId()) == segment;
+    }
+
+    // REQUIRES: 0 <= index <= number of children of parent, parent is in this routine
+    // MODIFIES: this, parent, segment
+    // EFFECTS: Inserts the given segment into the children of parent at the index, and adds it to the index
+    //          of segments. The listeners are not told about the change.
+    void attach(SegmentGroup parent, int index, Segment segment) {
+        changingStructure = true;
+        try {
+            parent.addChild(index, segment);
+        } finally {
+            changingStructure = false;
+        }
+        index(segment);
+    }
+
+    // REQUIRES: parent is in this routine
+    // MODIFIES: this, parent, segment
+    // EFFECTS: Removes the given segment from the children of parent, and from the index of segments. The
+    //          listeners are not told about the change. Returns true if the segment was removed.
+    boolean detach(SegmentGroup parent, Segment segment) {
+        boolean removed;
+        changingStructure = true;
+        try {
+            removed = parent.removeChild(segment);
+        } finally {
+            changingStructure = false;
+        }
+        if (removed) {
+            unindex(segment);
+        }
+        return removed;
+    }
+
+    // REQUIRES: segmentToRemove is in this routine (or one of its children/sub-children!)
+    // MODIFIES: this
+    // EFFECTS: Removes the given segment from the group containing it. ALSO removes any invalid
+    //          repeat segments that would have no children after performing this operation. If undoLog
+    //          is not null, adds an action to it for each segment removed that puts it back again.
+    void removeFromParent(Segment segmentToRemove, List<Runnable> undoLog) {
+        Segment segment = segmentToRemove;
+        SegmentGroup parent = findParent(segment);
+        while (parent != null) {
+            int index = indexOfChild(parent, segment);
+            if (!detach(parent, segment)) {
+                return;
             }
-            if (removeInSegmentList(segmentToRemove, ((SegmentGroup) child).getSegments())) {
-                parentToRemove = child;
-                break;
+            if (undoLog != null) {
+                SegmentGroup removedFrom = parent;
+                Segment removed = segment;
+                undoLog.add(() -> attach(removedFrom, index, removed));
+            }
+
+            // Remove the parent too if its list is now empty (but never the routine itself)
+            if (parent == this || !parent.getChildren().isEmpty()) {
+                return;
             }
+            segment = parent;
+            parent = findParent(segment);
         }
+    }
 
-        // Remove the parent if it needs to be done
-        if (segmentList.remove(parentToRemove)) {
-            // Return true if this list is now empty (remove grandparent)
-            return segmentList.isEmpty();
-        } else {
-            return false;
+    // EFFECTS: Returns the group in this routine which directly contains the given segment, or null if the
+    //          segment is not in this routine. Usually found directly from the parent of the segment, only
+    //          searches the routine if the segment is shared with a group outside of this routine.
+    SegmentGroup findParent(Segment segment) {
+        SegmentGroup parent = segment.getParent();
+        boolean parentInRoutine = parent == this
+                || (parent != null && segmentsById.get(parent.getId()) == parent);
+        if (parentInRoutine && indexOfChild(parent, segment) != -1) {
+            return parent;
+        }
+        return searchForParent(segment, this);
+    }
+
+    // EFFECTS: Returns the index of the given segment (the same object) in the children of group, or -1
+    static int indexOfChild(SegmentGroup group, Segment segment) {
+        List<Segment> children = group.getChildren();
+        for (int i = 0; i < children.size(); i++) {
+            if (children.get(i) == segment) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // EFFECTS: Tells all listeners that time was added to the given segment (see RoutineListener)
+    void fireSegmentProgressed(Segment segment, long elapsedTime) {
+        for (int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).segmentProgressed(segment, elapsedTime);
         }
     }
 
-    // REQUIRES: segmentToInsertAround is in segmentList (or one of its children/sub-children!)
-    // MODIFIES: segmentList
-    // EFFECTS: Inserts the given segment in segmentList (or a sub-list) at the index either
-    //          before or after the other segment given (which is already in the list).
-    private void insertInSegmentList(Segment segment, Segment segmentToInsertAround,
-                                     List<Segment> segmentList, boolean insertAfter) {
-        // Segment is directly in the given segmentList
-        if (segmentList.contains(segmentToInsertAround)) {
-            int index = segmentList.indexOf(segmentToInsertAround);
-            segmentList.add(index + (insertAfter ? 1 : 0), segment);
+    // EFFECTS: Tells all listeners that the given segment was completed
+    void fireSegmentCompleted(Segment segment) {
+        for (int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).segmentCompleted(segment);
+        }
+    }
+
+    // EFFECTS: Tells all listeners that the given repeat segment moved onto a new cycle
+    void fireCycleAdvanced(RepeatSegment segment, int currentCycle) {
+        for (int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).cycleAdvanced(segment, currentCycle);
+        }
+    }
+
+    // EFFECTS: Tells all listeners that the active segment is now the given one (null if complete)
+    void fireCurrentSegmentChanged(Segment currentSegment) {
+        for (int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).currentSegmentChanged(currentSegment);
+        }
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Private methods
+    // --------------------------------------------------------------------------------------------
+
+    // EFFECTS: Tells all listeners that the structure of the given segment (in this routine) has changed
+    private void fireStructureChanged(StructureChange change, Segment segment) {
+        if (listeners.isEmpty()) {
             return;
         }
+        int[] path = pathOf(segment);
+        for (int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).structureChanged(change, segment, path);
+        }
+    }
 
-        // Search rest of children/sub-children for it
-        for (Segment child : segmentList) {
-            if (child instanceof SegmentGroup) {
-                insertInSegmentList(segment, segmentToInsertAround,
-                        ((SegmentGroup) child).getSegments(), insertAfter);
+    // REQUIRES: segment is in this routine (or one of its children/sub-children!)
+    // EFFECTS: Returns the index of the segment in this routine, then in each group down to it
+    private int[] pathOf(Segment segment) {
+        List<Integer> indices = new ArrayList<>();
+        Segment current = segment;
+        SegmentGroup parent = findParent(current);
+        while (parent != null) {
+            indices.add(indexOfChild(parent, current));
+            if (parent == this) {
+                break;
             }
+            current = parent;
+            parent = findParent(current);
+        }
+
+        int[] path = new int[indices.size()];
+        for (int i = 0; i < path.length; i++) {
+            path[i] = indices.get(path.length - 1 - i);
         }
+        return path;
     }
 
-    // REQUIRES: milliseconds >= 0
+    // REQUIRES: segment is in this routine (or one of its children/sub-children!)
+    // EFFECTS: Returns the outermost segment that removing the given segment would remove, i.e. the segment
+    //          itself or the highest repeat segment that would be left with no children
+    private Segment outermostRemoved(Segment segment) {
+        Segment removed = segment;
+        SegmentGroup parent = findParent(removed);
+        while (parent != null && parent != this && parent.getChildren().size() == 1) {
+            removed = parent;
+            parent = findParent(removed);
+        }
+        return removed;
+    }
+
+    // EFFECTS: Returns the compiled plan for the current structure of this routine
+    private RoutinePlan getPlan() {
+        if (plan == null) {
+            plan = new RoutinePlan(this);
+        }
+        return plan;
+    }
+
+    // REQUIRES: segmentToInsertAround is in this routine (or one of its children/sub-children!)
     // MODIFIES: this
-    // EFFECTS: Advances the current segment by either time or manual activation if
-    //          the routine is not complete yet
-    private void advanceRoutine(long milliseconds, boolean advanceManual) {
-        if (isComplete()) {
+    // EFFECTS: Inserts the given segment in the group containing the other segment, at the index
+    //          either before or after it.
+    private void insertAround(Segment segment, Segment segmentToInsertAround, boolean insertAfter) {
+        SegmentGroup parent = findParent(segmentToInsertAround);
+        if (parent == null) {
             return;
         }
+        int index = indexOfChild(parent, segmentToInsertAround);
+        attach(parent, index + (insertAfter ? 1 : 0), segment);
+    }
 
-        Segment currentSegment = getExactCurrentSegment();
-
-        if (advanceManual && currentSegment.getType() == SegmentType.MANUAL) {
-            ((ManualSegment) currentSegment).setComplete();
-        } else if (currentSegment.getType() == SegmentType.TIME) {
-            long remainingTime = ((TimeSegment) currentSegment).addTime(milliseconds);
-            if (remainingTime != 0) {
-                advance(remainingTime);
+    // EFFECTS: Returns the group (group or one of its sub-groups) which directly contains the given segment,
+    //          or null if there is none.
+    private SegmentGroup searchForParent(Segment segment, SegmentGroup group) {
+        SegmentGroup[] parent = new SegmentGroup[1];
+        SegmentWalker.walk(group, child -> {
+            if (parent[0] != null || !(child instanceof SegmentGroup)) {
+                return false;
             }
-        }
+            if (indexOfChild((SegmentGroup) child, segment) != -1) {
+                parent[0] = (SegmentGroup) child;
+                return false;
+            }
+            return true;
+        });
+        return parent[0];
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Adds the given segment and all of its children/sub-children to the index of segments
+    private void index(Segment segment) {
+        SegmentWalker.walk(segment, child -> {
+            segmentsById.put(child.getId(), child);
+            return true;
+        });
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Removes the given segment and all of its children/sub-children from the index of segments
+    private void unindex(Segment segment) {
+        SegmentWalker.walk(segment, child -> {
+            segmentsById.remove(child.getId());
+            return true;
+        });
+    }
+
+    // REQUIRES: milliseconds >= 0
+    // MODIFIES: this
+    // EFFECTS: Advances the current segment by either time or manual activation if
+    //          the routine is not complete yet
+    private AdvanceResult advanceRoutine(long milliseconds, boolean advanceManual) {
+        return getPlan().advance(milliseconds, advanceManual);
     }
 
     // --------------------------------------------------------------------------------------------
@@ -177,21 +484,69 @@ public class Routine extends SegmentGroup {
         return SegmentType.ROUTINE;
     }
 
+    // MODIFIES: this
+    // EFFECTS: Resets all segments to their initial states, the active segment must then be found again
+    @Override
+    void resetProgress() {
+        super.resetProgress();
+        childChanged(this, false);
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Recompiles the plan on the next use if the structure of a segment has changed,
+    //          otherwise makes sure that the plan finds the active segment again. Tells the listeners
+    //          about the change, unless this routine is adding or removing segments itself.
+    @Override
+    void childChanged(Segment source, boolean structural) {
+        super.childChanged(source, structural);
+        if (structural) {
+            plan = null;
+        } else if (plan != null) {
+            plan.invalidateCursor();
+        }
+
+        if (changingStructure || transaction != null || listeners.isEmpty()) {
+            return;
+        }
+        if (structural) {
+            fireStructureChanged(StructureChange.EDITED, source);
+        } else {
+            fireSegmentProgressed(source, source.getElapsedTime());
+            if (source != this && source.isComplete()) {
+                fireSegmentCompleted(source);
+            }
+            fireCurrentSegmentChanged(getPlan().getActiveSegment());
+        }
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Adds the time to the cached elapsed time, and makes sure that the plan finds the active
+    //          segment again. Tells the listeners about the time added, unless it was added by the plan
+    //          (which tells them itself).
+    @Override
+    void childTimeAdded(Segment source, long milliseconds) {
+        super.childTimeAdded(source, milliseconds);
+        if (plan != null) {
+            plan.invalidateCursor();
+        }
+        if (plan == null || !plan.isExecuting()) {
+            fireSegmentProgressed(source, source.getElapsedTime());
+        }
+    }
+
     // --------------------------------------------------------------------------------------------
     // Encodable implementation
     // --------------------------------------------------------------------------------------------
 
     @Override
-    public JSONObject encoded() {
-        JSONObject object = new JSONObject();
-        object.put(RoutineJsonKey.NAME.toString(), getName());
-
-        JSONArray segments = new JSONArray();
-        for (Segment segment : getSegments()) {
-            segments.put(segment.encoded());
-        }
-        object.put(RoutineJsonKey.SEGMENTS.toString(), segments);
+    protected void encodeOpeningTo(JsonSink sink) throws IOException {
+        sink.beginObject(2);
+        sink.member(RoutineJsonKey.NAME, getName());
+        sink.name(RoutineJsonKey.SEGMENTS.toString());
+    }
 
-        return object;
+    @Override
+    protected void encodeClosingTo(JsonSink sink) throws IOException {
+        sink.endObject();
     }
 }
@@ -0,0 +1,172 @@
+package model;
+
+import model.AnalysisIssue.Severity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static model.RoutineDefinition.saturatedAdd;
+import static model.RoutineDefinition.saturatedMultiply;
+
+// Represents a check of a routine before it is run, e.g. after it is read or before it is saved. The routine is
+// walked once, with each segment checked as it is entered and the totals of each group worked out when it is
+// left. Cycles are multiplied out rather than unrolled, so the time taken only depends on the number of
+// segments, however many repetitions there are.
+public final class RoutineAnalyser implements SegmentVisitor {
+    public static final int LARGE_REPEATS = 1000000; // repetitions at which a repeat segment is warned about
+    public static final long LARGE_LOOP = 1000;      // runs at which a segment taking no time is warned about
+
+    private final Routine routine;
+    private final List<AnalysisIssue> issues;
+
+    private long[] openRuns;      // number of times each cycle of each open group is run, the routine first
+    private long[] openDurations; // total duration of one cycle of each open group, so far
+    private int open;             // number of open groups, i.e. entered but not left yet
+
+    private long totalDuration;
+    private long leafCount;
+    private long manualCount;
+    private int maxDepth;
+
+    // EFFECTS: Constructs an analyser for the given routine
+    private RoutineAnalyser(Routine routine) {
+        this.routine = routine;
+        issues = new ArrayList<>();
+        openRuns = new long[16];
+        openDurations = new long[16];
+    }
+
+    // EFFECTS: Checks the structure and progress of the given routine, and returns the issues found along with
+    //          a summary of the routine
+    public static RoutineAnalysis analyse(Routine routine) {
+        RoutineAnalyser analyser = new RoutineAnalyser(routine);
+        SegmentWalker.walk(routine, analyser);
+        return analyser.getAnalysis();
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // SegmentVisitor implementation
+    // --------------------------------------------------------------------------------------------
+
+    // MODIFIES: this
+    // EFFECTS: Checks the given segment and adds it to the totals of the group containing it, opening it if it
+    //          is a group
+    @Override
+    public boolean enter(Segment segment) {
+        if (open == 0) {
+            if (routine.getChildren().isEmpty()) {
+                warn(segment, "Routine " + segment.getName() + " has no segments");
+            }
+            push(1);
+            return true;
+        }
+
+        long runs = openRuns[open - 1];
+        switch (segment.getType()) {
+            case TIME:
+                enterTime((TimeSegment) segment, runs);
+                break;
+            case MANUAL:
+                leafCount = saturatedAdd(leafCount, runs);
+                manualCount = saturatedAdd(manualCount, runs);
+                break;
+            default:
+                enterRepeat((RepeatSegment) segment, runs);
+                break;
+        }
+        return true;
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Closes the given group, adding its total duration to the group containing it
+    @Override
+    public void leave(SegmentGroup group) {
+        open--;
+        long cycleDuration = openDurations[open];
+        if (open == 0) {
+            totalDuration = cycleDuration;
+            return;
+        }
+
+        int repeats = Math.max(((RepeatSegment) group).getTotalRepetitions(), 0);
+        openDurations[open - 1] = saturatedAdd(openDurations[open - 1], saturatedMultiply(cycleDuration, repeats));
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Private methods
+    // --------------------------------------------------------------------------------------------
+
+    // MODIFIES: this
+    // EFFECTS: Checks the given time segment, which is run the given number of times
+    private void enterTime(TimeSegment segment, long runs) {
+        long totalTime = segment.getTotalTime();
+        long currentTime = segment.getCurrentTime();
+        if (totalTime < 0) {
+            error(segment, "Time segment " + segment.getName() + " has a negative total time of " + totalTime);
+        } else if (currentTime < 0 || currentTime > totalTime) {
+            error(segment, "Time segment " + segment.getName() + " has " + currentTime + "ms elapsed of "
+                    + totalTime + "ms");
+        }
+        if (totalTime == 0 && runs >= LARGE_LOOP) {
+            warn(segment, "Time segment " + segment.getName() + " takes no time but is run " + runs + " times");
+        }
+
+        leafCount = saturatedAdd(leafCount, runs);
+        openDurations[open - 1] = saturatedAdd(openDurations[open - 1], Math.max(totalTime, 0));
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Checks the given repeat segment, each cycle of which is run the given number of times, and opens
+    //          it for its children
+    private void enterRepeat(RepeatSegment segment, long runs) {
+        int repeats = segment.getTotalRepetitions();
+        int currentCycle = segment.getCurrentRepetition();
+        if (repeats < 1) {
+            error(segment, "Repeat segment " + segment.getName() + " has " + repeats + " repetitions");
+        } else if (repeats >= LARGE_REPEATS) {
+            warn(segment, "Repeat segment " + segment.getName() + " repeats " + repeats + " times");
+        }
+        if (repeats >= 1 && (currentCycle < 1 || currentCycle > repeats)) {
+            error(segment, "Repeat segment " + segment.getName() + " is on cycle " + currentCycle + " of " + repeats);
+        }
+        if (segment.getChildren().isEmpty()) {
+            error(segment, "Repeat segment " + segment.getName() + " has no children");
+        }
+
+        push(saturatedMultiply(runs, Math.max(repeats, 0)));
+        maxDepth = Math.max(maxDepth, open - 1);
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Opens a group, each cycle of which is run the given number of times
+    private void push(long runs) {
+        if (open == openRuns.length) {
+            openRuns = Arrays.copyOf(openRuns, open * 2);
+            openDurations = Arrays.copyOf(openDurations, open * 2);
+        }
+        openRuns[open] = runs;
+        openDurations[open] = 0;
+        open++;
+    }
+
+    // EFFECTS: Returns the result of the walk, adding an error if the total duration is too long for a long
+    private RoutineAnalysis getAnalysis() {
+        if (totalDuration == Long.MAX_VALUE) {
+            error(routine, "Routine " + routine.getName() + " takes too long to be timed");
+        }
+        return new RoutineAnalysis(issues, totalDuration, leafCount, manualCount, maxDepth);
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Records an error in the given segment
+    private void error(Segment segment, String message) {
+        issues.add(new AnalysisIssue(Severity.ERROR, segment, message));
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Records a warning in the given segment
+    private void warn(Segment segment, String message) {
+        issues.add(new AnalysisIssue(Severity.WARNING, segment, message));
+    }
+}
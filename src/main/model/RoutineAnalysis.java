@@ -0,0 +1,70 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Represents the result of analysing a routine with RoutineAnalyser: the issues found, and a summary of the
+// routine with all cycles unrolled. Totals too large for a long are kept at Long.MAX_VALUE.
+public class RoutineAnalysis {
+    private final List<AnalysisIssue> issues;
+    private final long totalDuration;
+    private final long leafCount;
+    private final long manualCount;
+    private final int maxDepth;
+
+    // EFFECTS: Constructs an analysis with the given issues (in the order they were found) and totals
+    RoutineAnalysis(List<AnalysisIssue> issues, long totalDuration, long leafCount, long manualCount, int maxDepth) {
+        this.issues = Collections.unmodifiableList(issues);
+        this.totalDuration = totalDuration;
+        this.leafCount = leafCount;
+        this.manualCount = manualCount;
+        this.maxDepth = maxDepth;
+    }
+
+    // EFFECTS: Returns all issues found, in the order of the segments they were found in
+    public List<AnalysisIssue> getIssues() {
+        return issues;
+    }
+
+    // EFFECTS: Returns only the issues with the given severity
+    public List<AnalysisIssue> getIssues(AnalysisIssue.Severity severity) {
+        List<AnalysisIssue> matching = new ArrayList<>();
+        for (AnalysisIssue issue : issues) {
+            if (issue.getSeverity() == severity) {
+                matching.add(issue);
+            }
+        }
+        return matching;
+    }
+
+    // EFFECTS: Returns true if any errors were found, i.e. the routine cannot be run correctly
+    public boolean hasErrors() {
+        for (AnalysisIssue issue : issues) {
+            if (issue.getSeverity() == AnalysisIssue.Severity.ERROR) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // EFFECTS: Returns the total time (in milliseconds) it takes to run the routine, including all cycles
+    public long getTotalDuration() {
+        return totalDuration;
+    }
+
+    // EFFECTS: Returns the number of time and manual segments run, counting each repetition separately
+    public long getLeafCount() {
+        return leafCount;
+    }
+
+    // EFFECTS: Returns the number of times a manual segment has to be completed to run the routine
+    public long getManualCount() {
+        return manualCount;
+    }
+
+    // EFFECTS: Returns the largest number of repeat segments nested in each other
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+}
@@ -0,0 +1,509 @@
+package model;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+// Represents the structure of a Routine, without any progress, compiled into a flat array of instructions.
+// Every RepeatSegment becomes a REPEAT/END pair of instructions around the instructions of its children.
+// A definition never changes once compiled, so it can be shared by any number of RoutineProgress
+// sessions (or a RoutinePlan running the segments of the Routine itself).
+//
+// The definition also keeps a duration index: the start time of every instruction within one cycle of its
+// enclosing group (prefix sums of the durations of the previous siblings), so that a routine can be
+// sought to any time with arithmetic on the cycles instead of unrolling them.
+public final class RoutineDefinition {
+
+    // Represents the kinds of instructions in a definition
+    enum Op {
+        TIME,   // Advance a TimeSegment
+        MANUAL, // Wait for a ManualSegment to be completed
+        REPEAT, // Start of the children of a RepeatSegment, jumps past the matching END if complete
+        END     // End of the children of a RepeatSegment, jumps back to the matching REPEAT for the next cycle
+    }
+
+    private final Op[] ops;
+    private final int[] jumps;              // index of the matching REPEAT/END instruction, unused for leaves
+    private final String[] names;           // name of the segment (of the RepeatSegment for END)
+    private final int[] repeats;            // total number of cycles of a RepeatSegment
+    private final int[] depths;             // number of RepeatSegments enclosing the instruction
+
+    // Duration index, only meaningful for TIME, MANUAL, and REPEAT instructions
+    private final long[] durations;         // total duration of the segment (all cycles for a RepeatSegment)
+    private final long[] offsets;           // start time within one cycle of the enclosing group
+    private final long[] cycleDurations;    // duration of one cycle of a RepeatSegment
+    private final int[] enclosing;          // index of the REPEAT instruction of the enclosing group, -1 at the top
+    private final boolean[] endsWithManual; // true if a ManualSegment starts at the very end of the segment
+    private final boolean[] hasManual;      // true if a RepeatSegment contains a ManualSegment
+    private final long[] cycleLeafCounts;   // number of time and manual segments run in one cycle of a RepeatSegment
+    private final long[] cycleInnerCycles;  // number of cycles of nested RepeatSegments run in one cycle
+    private final int[][] children;         // instruction indices of the direct children of a RepeatSegment
+    private final int[] topLevel;           // instruction indices of the segments directly in the routine
+    private final long totalDuration;
+    private final int maxDepth;
+
+    // EFFECTS: Compiles a definition of the current structure of the given routine
+    RoutineDefinition(Routine routine) {
+        this(countInstructions(routine), compiler -> SegmentWalker.walk(routine, compiler));
+    }
+
+    // REQUIRES: routine is a ROUTINE block
+    // EFFECTS: Compiles a definition of the given block, with shared blocks compiled every time they appear
+    RoutineDefinition(Block routine) {
+        this(Math.toIntExact(routine.getInstructionCount()), routine::walk);
+    }
+
+    // EFFECTS: Compiles a definition with the given number of instructions, walking the segments (or blocks)
+    //          through the compiler with the given walk
+    private RoutineDefinition(int size, Consumer<Compiler> walk) {
+        ops = new Op[size];
+        jumps = new int[size];
+        names = new String[size];
+        repeats = new int[size];
+        depths = new int[size];
+        durations = new long[size];
+        offsets = new long[size];
+        cycleDurations = new long[size];
+        enclosing = new int[size];
+        endsWithManual = new boolean[size];
+        hasManual = new boolean[size];
+        cycleLeafCounts = new long[size];
+        cycleInnerCycles = new long[size];
+        children = new int[size][];
+
+        Compiler compiler = new Compiler(size);
+        walk.accept(compiler);
+        topLevel = compiler.topLevel;
+        totalDuration = groupDuration(topLevel);
+
+        int deepest = 0;
+        for (int i = 0; i < size; i++) {
+            if (ops[i] == Op.REPEAT) {
+                deepest = Math.max(deepest, depths[i] + 1);
+            }
+        }
+        maxDepth = deepest;
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Public methods
+    // --------------------------------------------------------------------------------------------
+
+    // EFFECTS: Returns the total time (in milliseconds) it takes to run the routine, including all cycles
+    public long getTotalDuration() {
+        return totalDuration;
+    }
+
+    // EFFECTS: Returns a lazy stream of every occurrence of each time and manual segment in the order they are
+    //          run, with all cycles unrolled. Occurrences are only worked out as the stream is consumed, so a
+    //          routine with a huge number of cycles can be streamed without storing its unrolled timeline.
+    public Stream<TimelineEntry> timeline() {
+        return StreamSupport.stream(new Timeline(this), false);
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Package-private methods
+    // --------------------------------------------------------------------------------------------
+
+    // EFFECTS: Returns the number of instructions
+    int getLength() {
+        return ops.length;
+    }
+
+    // EFFECTS: Returns the largest number of RepeatSegments nested in each other
+    int getMaxDepth() {
+        return maxDepth;
+    }
+
+    Op getOp(int index) {
+        return ops[index];
+    }
+
+    int getJump(int index) {
+        return jumps[index];
+    }
+
+    String getName(int index) {
+        return names[index];
+    }
+
+    // EFFECTS: Returns the total time of a TimeSegment (0 for anything else)
+    long getTotalTime(int index) {
+        return ops[index] == Op.TIME ? durations[index] : 0;
+    }
+
+    int getTotalRepetitions(int index) {
+        return repeats[index];
+    }
+
+    int getDepth(int index) {
+        return depths[index];
+    }
+
+    long getOffset(int index) {
+        return offsets[index];
+    }
+
+    long getCycleDuration(int index) {
+        return cycleDurations[index];
+    }
+
+    int getEnclosing(int index) {
+        return enclosing[index];
+    }
+
+    long getCycleLeafCount(int index) {
+        return cycleLeafCounts[index];
+    }
+
+    long getCycleInnerCycles(int index) {
+        return cycleInnerCycles[index];
+    }
+
+    // EFFECTS: Returns true if a cycle of the RepeatSegment takes no time and has no ManualSegments, i.e. each
+    //          cycle is complete as soon as it is started
+    boolean isInstantCycle(int index) {
+        return cycleDurations[index] == 0 && !hasManual[index];
+    }
+
+    int[] getChildren(int index) {
+        return children[index];
+    }
+
+    int[] getTopLevel() {
+        return topLevel;
+    }
+
+    // REQUIRES: cycles has the current cycle of each RepeatSegment enclosing the instruction, by depth
+    // EFFECTS: Returns the time (in milliseconds, from the start of the routine) the instruction at the given
+    //          index starts at in the given cycles
+    long startTimeOf(int index, int[] cycles) {
+        long time = offsets[index];
+        for (int group = enclosing[index]; group != -1; group = enclosing[group]) {
+            int previousCycles = cycles[depths[group]] - 1;
+            time += offsets[group] + previousCycles * cycleDurations[group];
+        }
+        return time;
+    }
+
+    // REQUIRES: index is a TIME or MANUAL instruction (or getLength() if the routine is complete), cycles has the
+    //          current cycle of each RepeatSegment enclosing it, by depth
+    // EFFECTS: Returns a checkpoint of the progress at the given instruction, with the given time elapsed in it.
+    //          Only the groups enclosing the instruction are looked at.
+    ProgressCheckpoint checkpointOf(int index, int[] cycles, long activeTime) {
+        if (index == ops.length) {
+            return new ProgressCheckpoint(new int[0], new int[0], 0);
+        }
+
+        int depth = depths[index];
+        int[] positions = new int[depth + 1];
+        int child = index;
+        for (int level = depth; level >= 0; level--) {
+            int group = enclosing[child];
+            positions[level] = Arrays.binarySearch(group == -1 ? topLevel : children[group], child);
+            child = group;
+        }
+        return new ProgressCheckpoint(positions, Arrays.copyOf(cycles, depth), activeTime);
+    }
+
+    // EFFECTS: Returns the index of the active instruction in the given checkpoint (getLength() if it is complete),
+    //          following its path down from the top level. Throws IllegalArgumentException if the checkpoint does
+    //          not fit this definition, i.e. the path, a cycle or the time elapsed is out of range.
+    int instructionOf(ProgressCheckpoint checkpoint) {
+        if (checkpoint.isComplete()) {
+            return ops.length;
+        }
+
+        int[] group = topLevel;
+        int depth = checkpoint.getDepth();
+        for (int level = 0; ; level++) {
+            int position = checkpoint.getPosition(level);
+            if (position < 0 || position >= group.length) {
+                throw new IllegalArgumentException("Checkpoint does not fit the routine, no segment at " + checkpoint);
+            }
+
+            int index = group[position];
+            if (level == depth) {
+                long activeTime = checkpoint.getActiveTime();
+                if (ops[index] == Op.REPEAT || activeTime < 0 || activeTime > getTotalTime(index)) {
+                    throw new IllegalArgumentException("Checkpoint does not fit the routine, at " + checkpoint);
+                }
+                return index;
+            }
+
+            int cycle = checkpoint.getCycle(level);
+            if (ops[index] != Op.REPEAT || cycle < 1 || cycle > repeats[index]) {
+                throw new IllegalArgumentException("Checkpoint does not fit the routine, at " + checkpoint);
+            }
+            group = children[index];
+        }
+    }
+
+    // REQUIRES: ops[start] is REPEAT, the given current cycle of the RepeatSegment has just been completed
+    // EFFECTS: Returns how many more whole cycles of the RepeatSegment can be completed with the given time,
+    //          without having to run them one by one. Cycles containing a ManualSegment are never skipped.
+    long cyclesToSkip(int start, int currentCycle, long time) {
+        if (hasManual[start]) {
+            return 0;
+        }
+
+        long cyclesLeft = repeats[start] - currentCycle;
+        if (cycleDurations[start] == 0) {
+            return Math.max(cyclesLeft, 0);
+        }
+        return Math.max(Math.min(time / cycleDurations[start], cyclesLeft), 0);
+    }
+
+    // EFFECTS: Returns the position (in the given group of instruction indices) of the first segment that is
+    //          not finished at the given time since the start of the group, or the size of the group if all of
+    //          them are. A segment is finished if it ends before the time, or ends exactly at the time without
+    //          a ManualSegment waiting at its end.
+    int firstUnfinished(int[] group, long time) {
+        int low = 0;
+        int high = group.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (endOf(group[middle]) < time) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        // Only segments that take no time can end at the same time as the first one found
+        while (low < group.length && endOf(group[low]) == time && !endsWithManual[group[low]]) {
+            low++;
+        }
+        return low;
+    }
+
+    // REQUIRES: ops[index] is REPEAT, the segment is not finished at the given time
+    // EFFECTS: Returns the number of whole cycles of the RepeatSegment at the given index that are run
+    //          before the given time since the start of the RepeatSegment.
+    int cyclesBefore(int index, long time) {
+        long cycleDuration = cycleDurations[index];
+        if (cycleDuration == 0) {
+            return 0;
+        }
+
+        long cycles = Math.min(time / cycleDuration, repeats[index] - 1);
+
+        // Stay on the previous cycle if a ManualSegment is waiting at its end
+        if (cycles > 0 && cycles * cycleDuration == time && endsWithManual[index]) {
+            cycles--;
+        }
+        return (int) cycles;
+    }
+
+    // REQUIRES: a >= 0, b >= 0
+    // EFFECTS: Returns a + b, or Long.MAX_VALUE if it would overflow
+    static long saturatedAdd(long a, long b) {
+        long sum = a + b;
+        return sum < 0 ? Long.MAX_VALUE : sum;
+    }
+
+    // REQUIRES: a >= 0, b >= 0
+    // EFFECTS: Returns a * b, or Long.MAX_VALUE if it would overflow
+    static long saturatedMultiply(long a, long b) {
+        if (a != 0 && b > Long.MAX_VALUE / a) {
+            return Long.MAX_VALUE;
+        }
+        return a * b;
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Private methods
+    // --------------------------------------------------------------------------------------------
+
+    // EFFECTS: Returns the end time of the segment at the given instruction within one cycle of its group
+    private long endOf(int index) {
+        return saturatedAdd(offsets[index], durations[index]);
+    }
+
+    // EFFECTS: Returns the duration of a group of instructions, i.e. the end time of the last one
+    private long groupDuration(int[] group) {
+        return group.length == 0 ? 0 : endOf(group[group.length - 1]);
+    }
+
+    // EFFECTS: Returns true if a ManualSegment starts at the very end of the given group of instructions
+    private boolean groupEndsWithManual(int[] group) {
+        boolean endsWithManual = false;
+        for (int index : group) {
+            if (durations[index] > 0) {
+                endsWithManual = this.endsWithManual[index];
+            } else {
+                endsWithManual |= this.endsWithManual[index];
+            }
+        }
+        return endsWithManual;
+    }
+
+    // EFFECTS: Returns the number of instructions needed for the segments in the given routine
+    private static int countInstructions(Routine routine) {
+        int[] count = new int[1];
+        SegmentWalker.walk(routine, segment -> {
+            if (segment != routine) {
+                count[0] += segment.getType() == SegmentType.REPEAT ? 2 : 1;
+            }
+            return true;
+        });
+        return count[0];
+    }
+
+    // Represents the compilation of the segments (or blocks) in a routine, walked in order. The REPEAT instruction
+    // of each group is written when it is entered, and the matching END instruction (along with the totals of the
+    // group) once all of its children have been.
+    private class Compiler implements SegmentVisitor, Block.Visitor {
+        private final int[] openStarts;    // index of the REPEAT instruction of each open group, -1 for the routine
+        private final long[] openOffsets;  // start time of the next child within one cycle of each open group
+        private final int[][] openIndices; // instruction indices of the children of each open group
+        private final int[] openPositions; // number of children of each open group written so far
+        private int open;                  // number of open groups, i.e. entered but not left yet
+        private int nextIndex;             // index of the next instruction to write
+        private int[] topLevel;            // instruction indices of the segments directly in the routine
+
+        // EFFECTS: Constructs a compiler for the given number of instructions (which bounds the depth)
+        Compiler(int size) {
+            openStarts = new int[size + 1];
+            openOffsets = new long[size + 1];
+            openIndices = new int[size + 1][];
+            openPositions = new int[size + 1];
+        }
+
+        @Override
+        public boolean enter(Segment segment) {
+            switch (segment.getType()) {
+                case TIME:
+                    enter(SegmentType.TIME, segment.getName(), ((TimeSegment) segment).getTotalTime(), 0, 0);
+                    break;
+                case MANUAL:
+                    enter(SegmentType.MANUAL, segment.getName(), 0, 0, 0);
+                    break;
+                case REPEAT:
+                    RepeatSegment repeat = (RepeatSegment) segment;
+                    enter(SegmentType.REPEAT, repeat.getName(), 0, repeat.getTotalRepetitions(),
+                            repeat.getChildren().size());
+                    break;
+                default:
+                    enter(SegmentType.ROUTINE, segment.getName(), 0, 0, ((SegmentGroup) segment).getChildren().size());
+                    break;
+            }
+            return true;
+        }
+
+        @Override
+        public void leave(SegmentGroup group) {
+            leave();
+        }
+
+        @Override
+        public void enter(Block block) {
+            enter(block.getType(), block.getName(), block.getTotalTime(), block.getTotalRepetitions(),
+                    block.getChildCount());
+        }
+
+        @Override
+        public void leave(Block block) {
+            if (block.getType() == SegmentType.REPEAT || block.getType() == SegmentType.ROUTINE) {
+                leave();
+            }
+        }
+
+        // MODIFIES: this, RoutineDefinition.this
+        // EFFECTS: Writes the instruction for a segment with the given structure after the last instruction
+        //          written so far (the REPEAT instruction for a RepeatSegment, which is then open). Nothing is
+        //          written for the routine itself, which is opened as the outermost group.
+        private void enter(SegmentType type, String name, long totalTime, int totalRepetitions, int childCount) {
+            if (open == 0) {
+                push(-1, childCount);
+                return;
+            }
+
+            int parent = open - 1;
+            int index = nextIndex++;
+            openIndices[parent][openPositions[parent]++] = index;
+            names[index] = name;
+            enclosing[index] = openStarts[parent];
+            depths[index] = parent;
+            offsets[index] = openOffsets[parent];
+
+            switch (type) {
+                case TIME:
+                    ops[index] = Op.TIME;
+                    durations[index] = totalTime;
+                    openOffsets[parent] = saturatedAdd(openOffsets[parent], durations[index]);
+                    break;
+                case MANUAL:
+                    ops[index] = Op.MANUAL;
+                    endsWithManual[index] = true;
+                    break;
+                default:
+                    ops[index] = Op.REPEAT;
+                    repeats[index] = totalRepetitions;
+                    push(index, childCount);
+                    break;
+            }
+        }
+
+        // MODIFIES: this, RoutineDefinition.this
+        // EFFECTS: Closes the innermost open group, writing the matching END instruction for a RepeatSegment,
+        //          or keeping the indices of the segments directly in the routine once it is closed
+        private void leave() {
+            open--;
+            int start = openStarts[open];
+            if (start == -1) {
+                topLevel = openIndices[open];
+                return;
+            }
+
+            children[start] = openIndices[open];
+            openIndices[open] = null;
+            compileEnd(start, nextIndex++, openStarts[open - 1], open - 1);
+            openOffsets[open - 1] = saturatedAdd(openOffsets[open - 1], durations[start]);
+        }
+
+        // MODIFIES: this
+        // EFFECTS: Opens a group with the given number of children, and the given index of its REPEAT instruction
+        //          (-1 for the routine)
+        private void push(int start, int childCount) {
+            openStarts[open] = start;
+            openOffsets[open] = 0;
+            openIndices[open] = new int[childCount];
+            openPositions[open] = 0;
+            open++;
+        }
+    }
+
+    // REQUIRES: the instructions of all the children of the RepeatSegment have been written
+    // MODIFIES: this
+    // EFFECTS: Writes the END instruction (at end) matching the REPEAT instruction at the given index, with
+    //          parent as the index of the enclosing REPEAT instruction (-1 if none) at the given depth. Works
+    //          out the totals of one cycle from those of the children.
+    private void compileEnd(int index, int end, int parent, int depth) {
+        ops[end] = Op.END;
+        names[end] = names[index];
+        repeats[end] = repeats[index];
+        enclosing[end] = parent;
+        depths[end] = depth;
+        jumps[index] = end;
+        jumps[end] = index;
+
+        cycleDurations[index] = groupDuration(children[index]);
+        durations[index] = saturatedMultiply(cycleDurations[index], repeats[index]);
+        endsWithManual[index] = groupEndsWithManual(children[index]);
+
+        for (int child : children[index]) {
+            if (ops[child] == Op.REPEAT) {
+                hasManual[index] |= hasManual[child];
+                cycleLeafCounts[index] = saturatedAdd(cycleLeafCounts[index],
+                        saturatedMultiply(cycleLeafCounts[child], repeats[child]));
+                cycleInnerCycles[index] = saturatedAdd(cycleInnerCycles[index],
+                        saturatedMultiply(saturatedAdd(cycleInnerCycles[child], 1), repeats[child]));
+            } else {
+                hasManual[index] |= ops[child] == Op.MANUAL;
+                cycleLeafCounts[index] = saturatedAdd(cycleLeafCounts[index], 1);
+            }
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package model;
+
+// Represents a batch of edits to a Routine, applied all at once with Routine.edit
+public interface RoutineEdit {
+    // MODIFIES: transaction
+    // EFFECTS: Makes all the edits through the given transaction
+    void apply(RoutineTransaction transaction);
+}
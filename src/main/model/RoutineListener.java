@@ -0,0 +1,26 @@
+package model;
+
+// Represents an object which is told about changes to a Routine as they happen, so that it only has to
+// update what was changed. Events only pass on the segments involved (no event objects are created), and
+// every segment is given by the object itself, which is still in the routine when the event is sent.
+public interface RoutineListener {
+    // EFFECTS: Called when time was added to a segment, with the new time elapsed in it (in milliseconds).
+    //          Called with the routine itself when the progress of many segments was set at once
+    //          (i.e. the routine was reset, or moved to a different time).
+    void segmentProgressed(Segment segment, long elapsedTime);
+
+    // EFFECTS: Called when a segment was completed
+    void segmentCompleted(Segment segment);
+
+    // EFFECTS: Called when a repeat segment moved onto a new cycle (all of its children were reset)
+    void cycleAdvanced(RepeatSegment segment, int currentCycle);
+
+    // EFFECTS: Called when the routine moved onto a different active segment, null if it is now complete
+    void currentSegmentChanged(Segment currentSegment);
+
+    // EFFECTS: Called when a segment was inserted, removed or edited (anything other than its progress).
+    //          The path is the index of the segment in the routine, then in each group down to it; for a
+    //          removed segment it is where the segment was before it was removed. Called once with the
+    //          routine itself (and an empty path) after a batch of edits made with Routine.edit.
+    void structureChanged(StructureChange change, Segment segment, int[] path);
+}
@@ -0,0 +1,351 @@
+package model;
+
+import model.RoutineDefinition.Op;
+
+import static model.RoutineDefinition.saturatedAdd;
+import static model.RoutineDefinition.saturatedMultiply;
+
+// Represents a compiled execution plan for a Routine, i.e. the definition of the routine with every
+// instruction bound to the segment it was compiled from. The current cycle of each RepeatSegment is used
+// as the loop counter between its REPEAT/END instructions. The segments remain the source of truth for all
+// progress; the plan only keeps track of which instruction is active so that advancing the routine never
+// has to search through the whole tree.
+class RoutinePlan {
+    private final Routine routine;
+    private final RoutineDefinition definition;
+    private final Segment[] segments;
+    private final int length;
+
+    private int cursor;           // index of the active instruction, length when the routine is complete
+    private boolean cursorValid;  // false when the segments have been changed outside of this plan
+    private boolean executing;    // true while this plan is changing the segments itself
+
+    // EFFECTS: Compiles a plan for the current structure of the given routine
+    RoutinePlan(Routine routine) {
+        this.routine = routine;
+        definition = new RoutineDefinition(routine);
+        length = definition.getLength();
+        segments = new Segment[length];
+        bind(routine);
+
+        cursorValid = false;
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Package-private methods
+    // --------------------------------------------------------------------------------------------
+
+    RoutineDefinition getDefinition() {
+        return definition;
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Marks the active instruction as out of date, unless the change was made by this plan
+    void invalidateCursor() {
+        if (!executing) {
+            cursorValid = false;
+        }
+    }
+
+    // EFFECTS: Returns true while this plan is changing the segments itself
+    boolean isExecuting() {
+        return executing;
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Returns the exact segment that is currently active (i.e. not a RepeatSegment), or null
+    //          if the routine is complete.
+    Segment getActiveSegment() {
+        syncCursor();
+        return cursor < length ? segments[cursor] : null;
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Returns a lazy walk through the occurrences of each time and manual segment still to be run,
+    //          starting with the active segment in the current cycle of each RepeatSegment enclosing it
+    Timeline remainingTimeline() {
+        syncCursor();
+        if (cursor == length) {
+            return new Timeline(definition, length, new int[0], definition.getTotalDuration());
+        }
+
+        int[] cycles = currentCycles();
+        return new Timeline(definition, cursor, cycles, definition.startTimeOf(cursor, cycles));
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Returns a checkpoint of the progress of the routine, looking only at the active segment and the
+    //          groups enclosing it
+    ProgressCheckpoint checkpoint() {
+        syncCursor();
+        if (cursor == length) {
+            return definition.checkpointOf(length, new int[0], 0);
+        }
+
+        long activeTime = definition.getOp(cursor) == Op.TIME ? ((TimeSegment) segments[cursor]).getCurrentTime() : 0;
+        return definition.checkpointOf(cursor, currentCycles(), activeTime);
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Returns the time (in milliseconds) the given checkpoint is ahead of the routine, if both are in the
+    //          same cycle of the same active TimeSegment and the checkpoint does not complete it. Otherwise -1.
+    long timeAheadInActive(ProgressCheckpoint checkpoint) {
+        ProgressCheckpoint current = checkpoint();
+        if (current.isComplete() || definition.getOp(cursor) != Op.TIME || !current.isAtSameSegment(checkpoint)) {
+            return -1;
+        }
+
+        long timeAhead = checkpoint.getActiveTime() - current.getActiveTime();
+        return timeAhead >= 0 && checkpoint.getActiveTime() < definition.getTotalTime(cursor) ? timeAhead : -1;
+    }
+
+    // MODIFIES: this, routine
+    // EFFECTS: Moves the routine to the progress in the given checkpoint, the same way as seekTo but with the
+    //          active segment and cycles taken straight from the checkpoint. Throws IllegalArgumentException
+    //          (without changing the routine) if the checkpoint does not fit the definition.
+    void restore(ProgressCheckpoint checkpoint) {
+        int target = definition.instructionOf(checkpoint);
+        if (target < length) {
+            for (int group = definition.getEnclosing(target); group != -1; group = definition.getEnclosing(group)) {
+                ((RepeatSegment) segments[group]).setCurrentCycle(checkpoint.getCycle(definition.getDepth(group)));
+            }
+        }
+        moveCursorTo(target, checkpoint.getActiveTime());
+    }
+
+    // REQUIRES: milliseconds >= 0
+    // MODIFIES: this, routine
+    // EFFECTS: Runs the plan from the active instruction. Adds the given time to the active segment if it is a
+    //          TimeSegment, carrying any time left over into the following segments, or completes the active
+    //          segment if it is a ManualSegment and advanceManual is true. Stops at the next segment that
+    //          cannot be completed with what is left. Returns a summary of the boundaries crossed, and tells
+    //          the listeners of the routine about each one as it is crossed.
+    AdvanceResult advance(long milliseconds, boolean advanceManual) {
+        syncCursor();
+        executing = true;
+        try {
+            return run(milliseconds, advanceManual);
+        } finally {
+            executing = false;
+        }
+    }
+
+    // REQUIRES: time >= 0
+    // MODIFIES: this, routine
+    // EFFECTS: Moves the routine to the given elapsed time (in milliseconds). Every segment before that time is
+    //          complete and every segment after it is reset. A ManualSegment at exactly that time becomes the
+    //          active segment, otherwise the active segment is the TimeSegment running at that time. The cycle
+    //          of each RepeatSegment is found by division, and the child within the cycle by binary search.
+    void seekTo(long time) {
+        int target = length;
+        long remainingTime = time;
+        int[] group = definition.getTopLevel();
+
+        while (true) {
+            int position = definition.firstUnfinished(group, remainingTime);
+            if (position == group.length) {
+                break;
+            }
+
+            int index = group[position];
+            remainingTime -= definition.getOffset(index);
+            if (definition.getOp(index) != Op.REPEAT) {
+                target = index;
+                break;
+            }
+
+            int previousCycles = definition.cyclesBefore(index, remainingTime);
+            remainingTime -= previousCycles * definition.getCycleDuration(index);
+            ((RepeatSegment) segments[index]).setCurrentCycle(previousCycles + 1);
+            group = definition.getChildren(index);
+        }
+
+        moveCursorTo(target, remainingTime);
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Private methods
+    // --------------------------------------------------------------------------------------------
+
+    // MODIFIES: this, routine
+    // EFFECTS: Steps through the instructions as described in advance, in a single loop. Whole cycles of a
+    //          RepeatSegment without any ManualSegments are skipped arithmetically when there is enough time left.
+    private AdvanceResult run(long milliseconds, boolean advanceManual) {
+        boolean wasComplete = cursor == length;
+        long remainingTime = milliseconds;
+        boolean manualAvailable = advanceManual;
+        long segmentsCompleted = 0;
+        long cyclesCompleted = 0;
+
+        boolean running = true;
+        while (running && cursor < length) {
+            Segment segment = segments[cursor];
+            switch (definition.getOp(cursor)) {
+                case TIME:
+                    TimeSegment timeSegment = (TimeSegment) segment;
+                    long timeBefore = remainingTime;
+                    remainingTime = timeSegment.runFor(remainingTime);
+                    if (remainingTime != timeBefore) {
+                        routine.fireSegmentProgressed(timeSegment, timeSegment.getCurrentTime());
+                    }
+                    break;
+                case MANUAL:
+                    if (!segment.isComplete() && manualAvailable) {
+                        ((ManualSegment) segment).setFinished(true);
+                        manualAvailable = false;
+                    }
+                    break;
+                case REPEAT:
+                    if (!segment.isComplete()) {
+                        cursor++;
+                        continue;
+                    }
+                    // Already complete (e.g. its cycles take no time), counted as if every cycle was run
+                    int repetitions = definition.getTotalRepetitions(cursor);
+                    segmentsCompleted = saturatedAdd(segmentsCompleted,
+                            saturatedMultiply(repetitions, definition.getCycleLeafCount(cursor)));
+                    cyclesCompleted = saturatedAdd(cyclesCompleted,
+                            saturatedMultiply(repetitions, saturatedAdd(definition.getCycleInnerCycles(cursor), 1)));
+                    cursor = definition.getJump(cursor) + 1;
+                    continue;
+                case END:
+                    RepeatSegment repeatSegment = (RepeatSegment) segment;
+                    int start = definition.getJump(cursor);
+                    long skippedCycles = definition.cyclesToSkip(start, repeatSegment.getCurrentRepetition(),
+                            remainingTime);
+                    repeatSegment.setCurrentCycle(repeatSegment.getCurrentRepetition() + (int) skippedCycles);
+                    remainingTime -= skippedCycles * definition.getCycleDuration(start);
+                    segmentsCompleted = saturatedAdd(segmentsCompleted,
+                            saturatedMultiply(skippedCycles, definition.getCycleLeafCount(start)));
+                    cyclesCompleted = saturatedAdd(cyclesCompleted, saturatedAdd(skippedCycles + 1,
+                            saturatedMultiply(skippedCycles, definition.getCycleInnerCycles(start))));
+                    if (repeatSegment.nextCycle()) {
+                        routine.fireCycleAdvanced(repeatSegment, repeatSegment.getCurrentRepetition());
+                        cursor = start + 1;
+                    } else {
+                        routine.fireSegmentCompleted(repeatSegment);
+                        cursor++;
+                    }
+                    continue;
+            }
+
+            // Only time and manual segments get here, move on only if they are complete
+            if (segment.isComplete()) {
+                segmentsCompleted = saturatedAdd(segmentsCompleted, 1);
+                routine.fireSegmentCompleted(segment);
+                cursor++;
+            } else {
+                running = false;
+            }
+        }
+
+        if (segmentsCompleted > 0 || cyclesCompleted > 0) {
+            routine.fireCurrentSegmentChanged(cursor < length ? segments[cursor] : null);
+        }
+
+        return new AdvanceResult(segmentsCompleted, cyclesCompleted, remainingTime,
+                !wasComplete && cursor == length);
+    }
+
+    // REQUIRES: cursor is the active instruction, and not past the end
+    // EFFECTS: Returns the current cycle of each RepeatSegment enclosing the active instruction, by depth
+    private int[] currentCycles() {
+        int[] cycles = new int[definition.getMaxDepth()];
+        for (int group = definition.getEnclosing(cursor); group != -1; group = definition.getEnclosing(group)) {
+            cycles[definition.getDepth(group)] = ((RepeatSegment) segments[group]).getCurrentRepetition();
+        }
+        return cycles;
+    }
+
+    // MODIFIES: this, routine
+    // EFFECTS: If the segments were changed outside of this plan, finds the active instruction again by
+    //          skipping over every complete segment (the same way as getCurrentSegment in SegmentGroup), so the
+    //          plan only runs off the end when the routine itself is complete. A RepeatSegment whose children
+    //          are all complete before its last cycle is moved on to its next cycle rather than stepped past.
+    private void syncCursor() {
+        if (cursorValid) {
+            return;
+        }
+
+        cursor = 0;
+        while (cursor < length) {
+            Op op = definition.getOp(cursor);
+            if (op == Op.END) {
+                cursor = ((RepeatSegment) segments[cursor]).nextCycle() ? definition.getJump(cursor) + 1 : cursor + 1;
+            } else if (segments[cursor].isComplete()) {
+                cursor = op == Op.REPEAT ? definition.getJump(cursor) + 1 : cursor + 1;
+            } else if (op == Op.REPEAT) {
+                cursor++;
+            } else {
+                break;
+            }
+        }
+        cursorValid = true;
+    }
+
+    // REQUIRES: the cycles of all RepeatSegments enclosing the target have already been set
+    // MODIFIES: this, routine
+    // EFFECTS: Makes the instruction at target the active one, with the given time elapsed in it. Completes every
+    //          segment before the target and resets every segment after it, other than the enclosing groups.
+    private void moveCursorTo(int target, long targetTime) {
+        for (int i = 0; i < length; i++) {
+            Op op = definition.getOp(i);
+            if (i == target) {
+                if (op == Op.TIME) {
+                    ((TimeSegment) segments[i]).setCurrentTime(targetTime);
+                } else {
+                    ((ManualSegment) segments[i]).setFinished(false);
+                }
+            } else if (op != Op.END && !(op == Op.REPEAT && i < target && definition.getJump(i) > target)) {
+                setFinished(i, i < target);
+            }
+        }
+        cursor = target;
+        cursorValid = true;
+    }
+
+    // MODIFIES: routine
+    // EFFECTS: Sets the segment at the given (non END) instruction to be either complete or reset. A reset
+    //          RepeatSegment whose cycles complete as soon as they start is left on its last cycle, the same
+    //          as resetting it directly.
+    private void setFinished(int index, boolean finished) {
+        Segment segment = segments[index];
+        switch (definition.getOp(index)) {
+            case TIME:
+                TimeSegment timeSegment = (TimeSegment) segment;
+                timeSegment.setCurrentTime(finished ? timeSegment.getTotalTime() : 0);
+                break;
+            case MANUAL:
+                ((ManualSegment) segment).setFinished(finished);
+                break;
+            default:
+                RepeatSegment repeatSegment = (RepeatSegment) segment;
+                boolean lastCycle = finished || definition.isInstantCycle(index);
+                repeatSegment.setCurrentCycle(lastCycle ? repeatSegment.getTotalRepetitions() : 1);
+                break;
+        }
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Binds the instructions to the segments in the given routine, in the same order as they were
+    //          compiled (a RepeatSegment is bound to both its REPEAT and matching END instructions)
+    private void bind(Routine routine) {
+        int[] next = new int[1];
+        SegmentWalker.walk(routine, new SegmentVisitor() {
+            @Override
+            public boolean enter(Segment segment) {
+                if (segment != routine) {
+                    segments[next[0]++] = segment;
+                }
+                return true;
+            }
+
+            @Override
+            public void leave(SegmentGroup group) {
+                if (group != routine) {
+                    segments[next[0]++] = group;
+                }
+            }
+        });
+    }
+}
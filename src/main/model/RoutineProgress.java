@@ -0,0 +1,232 @@
+package model;
+
+import model.RoutineDefinition.Op;
+
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static model.RoutineDefinition.saturatedAdd;
+import static model.RoutineDefinition.saturatedMultiply;
+
+// Represents one session of running a RoutineDefinition, i.e. only the progress through the routine: the
+// active instruction, the time elapsed in it, and the current cycle of each RepeatSegment enclosing it.
+// Many sessions can run off the same definition, without copying any of its segments.
+public class RoutineProgress {
+    private final RoutineDefinition definition;
+    private final int[] cycles;  // current cycle of each RepeatSegment enclosing the active instruction, by depth
+    private int cursor;          // index of the active instruction, the number of instructions when complete
+    private long activeTime;     // time elapsed in the active instruction if it is a TimeSegment
+
+    // EFFECTS: Constructs a new session at the start of the given definition
+    public RoutineProgress(RoutineDefinition definition) {
+        this.definition = definition;
+        cycles = new int[definition.getMaxDepth()];
+        reset();
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Public methods
+    // --------------------------------------------------------------------------------------------
+
+    public RoutineDefinition getDefinition() {
+        return definition;
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Moves the session back to the start of the routine
+    public void reset() {
+        cursor = 0;
+        activeTime = 0;
+        run(0, false);
+    }
+
+    // EFFECTS: Returns true if the whole routine has been run
+    public boolean isComplete() {
+        return cursor == definition.getLength();
+    }
+
+    // REQUIRES: milliseconds >= 0
+    // MODIFIES: this
+    // EFFECTS: Advances the active segment by the specified milliseconds if it is a TimeSegment, carrying
+    //          any time left over into the following segments (and repetition cycles) until it is used up.
+    //          Returns a summary of the segments and cycles completed.
+    public AdvanceResult advance(long milliseconds) {
+        return run(milliseconds, false);
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Completes the active segment if it is a ManualSegment. Returns a summary of the segments
+    //          completed.
+    public AdvanceResult advance() {
+        return run(0, true);
+    }
+
+    // EFFECTS: Returns the time (in milliseconds) until the session reaches the next segment boundary by itself,
+    //          the same way as getTimeToNextBoundary in Routine, or -1 if there is none
+    public long getTimeToNextBoundary() {
+        if (isComplete() || definition.getOp(cursor) != Op.TIME) {
+            return -1;
+        }
+        return definition.getTotalTime(cursor) - activeTime;
+    }
+
+    // EFFECTS: Returns the time elapsed in the routine (in milliseconds), including all previous cycles
+    public long getElapsedTime() {
+        if (isComplete()) {
+            return definition.getTotalDuration();
+        }
+
+        return definition.startTimeOf(cursor, cycles) + activeTime;
+    }
+
+    // EFFECTS: Returns a lazy stream of the occurrences of each time and manual segment still to be run in this
+    //          session, in order, starting with the active segment (the same way as timeline in RoutineDefinition)
+    public Stream<TimelineEntry> remainingTimeline() {
+        return StreamSupport.stream(new Timeline(definition, cursor, cycles.clone(),
+                isComplete() ? definition.getTotalDuration() : definition.startTimeOf(cursor, cycles)), false);
+    }
+
+    // REQUIRES: time >= 0
+    // MODIFIES: this
+    // EFFECTS: Moves the session to the given elapsed time (in milliseconds), the same way as seekTo in Routine
+    public void seekTo(long time) {
+        long remainingTime = time;
+        int[] group = definition.getTopLevel();
+        cursor = definition.getLength();
+        activeTime = 0;
+
+        while (true) {
+            int position = definition.firstUnfinished(group, remainingTime);
+            if (position == group.length) {
+                return;
+            }
+
+            int index = group[position];
+            remainingTime -= definition.getOffset(index);
+            if (definition.getOp(index) != Op.REPEAT) {
+                cursor = index;
+                activeTime = definition.getOp(index) == Op.TIME ? remainingTime : 0;
+                return;
+            }
+
+            int previousCycles = definition.cyclesBefore(index, remainingTime);
+            remainingTime -= previousCycles * definition.getCycleDuration(index);
+            cycles[definition.getDepth(index)] = previousCycles + 1;
+            group = definition.getChildren(index);
+        }
+    }
+
+    // EFFECTS: Returns a checkpoint of the progress of this session, looking only at the groups enclosing the
+    //          active segment
+    public ProgressCheckpoint checkpoint() {
+        return definition.checkpointOf(cursor, cycles, activeTime);
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Moves the session to the progress in the given checkpoint, looking only at the groups enclosing
+    //          its active segment. Throws IllegalArgumentException (without changing the session) if the
+    //          checkpoint does not fit the definition.
+    public void restore(ProgressCheckpoint checkpoint) {
+        int index = definition.instructionOf(checkpoint);
+        for (int level = 0; level < checkpoint.getDepth(); level++) {
+            cycles[level] = checkpoint.getCycle(level);
+        }
+        cursor = index;
+        activeTime = checkpoint.getActiveTime();
+    }
+
+    // REQUIRES: isComplete() is false
+    // EFFECTS: Returns the name of the active (time or manual) segment
+    public String getActiveName() {
+        return definition.getName(cursor);
+    }
+
+    // REQUIRES: isComplete() is false
+    // EFFECTS: Returns the type of the active segment, either TIME or MANUAL
+    public SegmentType getActiveType() {
+        return definition.getOp(cursor) == Op.TIME ? SegmentType.TIME : SegmentType.MANUAL;
+    }
+
+    // REQUIRES: isComplete() is false
+    // EFFECTS: Returns the time (in milliseconds) elapsed in the active segment
+    public long getActiveTime() {
+        return activeTime;
+    }
+
+    // REQUIRES: isComplete() is false
+    // EFFECTS: Returns the current cycles of the RepeatSegments enclosing the active segment, outermost first
+    public int[] getCurrentCycles() {
+        int[] currentCycles = new int[definition.getDepth(cursor)];
+        System.arraycopy(cycles, 0, currentCycles, 0, currentCycles.length);
+        return currentCycles;
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Private methods
+    // --------------------------------------------------------------------------------------------
+
+    // MODIFIES: this
+    // EFFECTS: Steps through the instructions from the active one, the same way as RoutinePlan does for the
+    //          segments of a Routine. Stops at the next segment that cannot be completed with what is left.
+    private AdvanceResult run(long milliseconds, boolean advanceManual) {
+        int length = definition.getLength();
+        boolean wasComplete = cursor == length;
+        long remainingTime = milliseconds;
+        boolean manualAvailable = advanceManual;
+        long segmentsCompleted = 0;
+        long cyclesCompleted = 0;
+
+        boolean running = true;
+        while (running && cursor < length) {
+            switch (definition.getOp(cursor)) {
+                case TIME:
+                    long timeLeft = definition.getTotalTime(cursor) - activeTime;
+                    if (remainingTime < timeLeft) {
+                        activeTime += remainingTime;
+                        remainingTime = 0;
+                        running = false;
+                    } else {
+                        remainingTime -= timeLeft;
+                        activeTime = 0;
+                        segmentsCompleted = saturatedAdd(segmentsCompleted, 1);
+                        cursor++;
+                    }
+                    break;
+                case MANUAL:
+                    if (manualAvailable) {
+                        manualAvailable = false;
+                        segmentsCompleted = saturatedAdd(segmentsCompleted, 1);
+                        cursor++;
+                    } else {
+                        running = false;
+                    }
+                    break;
+                case REPEAT:
+                    cycles[definition.getDepth(cursor)] = 1;
+                    cursor++;
+                    break;
+                case END:
+                    int start = definition.getJump(cursor);
+                    int depth = definition.getDepth(start);
+                    long skippedCycles = definition.cyclesToSkip(start, cycles[depth], remainingTime);
+                    cycles[depth] += (int) skippedCycles;
+                    remainingTime -= skippedCycles * definition.getCycleDuration(start);
+                    segmentsCompleted = saturatedAdd(segmentsCompleted,
+                            saturatedMultiply(skippedCycles, definition.getCycleLeafCount(start)));
+                    cyclesCompleted = saturatedAdd(cyclesCompleted, saturatedAdd(skippedCycles + 1,
+                            saturatedMultiply(skippedCycles, definition.getCycleInnerCycles(start))));
+
+                    if (cycles[depth] < definition.getTotalRepetitions(start)) {
+                        cycles[depth]++;
+                        cursor = start + 1;
+                    } else {
+                        cursor++;
+                    }
+                    break;
+            }
+        }
+
+        return new AdvanceResult(segmentsCompleted, cyclesCompleted, remainingTime,
+                !wasComplete && cursor == length);
+    }
+}
@@ -0,0 +1,187 @@
+package model;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+// Represents a session of a routine run on its own high priority timing thread, so that nothing else going on in
+// the app (e.g. a slow layout pass or a modal dialog in the UI) can delay or skew its timing. The thread sleeps
+// until the exact clock reading of the next segment boundary (see RoutineTimer), or the next display refresh.
+//
+// The session (a RoutineProgress of the definition) is only ever touched by the timing thread. Other threads
+// change it by sending commands, which the thread runs in the order they were sent, and see it through
+// immutable snapshots, published after every command, every segment boundary and every refresh.
+public class RoutineRunner {
+    private final RoutineProgress progress;          // only used by the timing thread
+    private final RoutineTimer timer;                // only used by the timing thread
+    private final Clock clock;
+    private final Consumer<ProgressSnapshot> publisher;
+    private final Queue<Runnable> commands;
+    private final AtomicLong commandsSent;
+    private final Thread thread;
+
+    private long refreshInterval; // nanoseconds between snapshots while running, 0 for none (timing thread only)
+    private long commandsRun;     // timing thread only
+    private volatile boolean stopped;
+    private volatile ProgressSnapshot latest;
+
+    // REQUIRES: refreshesPerSecond >= 0
+    // EFFECTS: Constructs a runner for a new session at the start of the given definition, timed from the given
+    //          clock. While running, a snapshot is also published the given number of times per second (0 for
+    //          only at changes). The publisher is called on the timing thread, so it must return quickly.
+    public RoutineRunner(RoutineDefinition definition, Clock clock, int refreshesPerSecond,
+                         Consumer<ProgressSnapshot> publisher) {
+        progress = new RoutineProgress(definition);
+        timer = new RoutineTimer(progress, clock);
+        this.clock = clock;
+        this.publisher = publisher;
+        commands = new ConcurrentLinkedQueue<>();
+        commandsSent = new AtomicLong();
+        refreshInterval = refreshIntervalOf(refreshesPerSecond);
+
+        thread = new Thread(this::loop, "routine-timing");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MAX_PRIORITY);
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Public methods
+    // --------------------------------------------------------------------------------------------
+
+    // REQUIRES: start has not been called before
+    // MODIFIES: this
+    // EFFECTS: Starts running the session on the timing thread, timed from now
+    public void start() {
+        timer.restart();
+        thread.start();
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Stops the timing thread, waiting for it to finish, and returns the last snapshot published
+    //          (null if it never ran). Commands sent before are all run first.
+    public ProgressSnapshot stop() throws InterruptedException {
+        stopped = true;
+        LockSupport.unpark(thread);
+        if (thread.isAlive()) {
+            thread.join();
+        }
+        return latest;
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Sends a command to complete the active segment if it is a ManualSegment. Returns the sequence
+    //          number of the command.
+    public long completeManual() {
+        return send(() -> progress.advance());
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Sends a command to move the session back to the start of the routine. Returns the sequence number
+    //          of the command.
+    public long reset() {
+        return send(() -> progress.reset());
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Sends a command to move the session to the progress in the given checkpoint. A checkpoint that does
+    //          not fit the definition is ignored. Returns the sequence number of the command.
+    public long restore(ProgressCheckpoint checkpoint) {
+        return send(() -> {
+            try {
+                progress.restore(checkpoint);
+            } catch (IllegalArgumentException e) {
+                // Keep the current progress
+            }
+        });
+    }
+
+    // REQUIRES: refreshesPerSecond >= 0
+    // MODIFIES: this
+    // EFFECTS: Sends a command to change how many times per second a snapshot is published between boundaries
+    //          (0 for only at changes, e.g. while nothing is shown). Returns the sequence number of the command.
+    public long setRefreshRate(int refreshesPerSecond) {
+        return send(() -> refreshInterval = refreshIntervalOf(refreshesPerSecond));
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Private methods
+    // --------------------------------------------------------------------------------------------
+
+    // MODIFIES: this
+    // EFFECTS: Queues the given command to be run on the timing thread, then wakes it up. Returns the sequence
+    //          number of the command, commands are numbered in the order they are queued.
+    private long send(Runnable command) {
+        long sequenceNumber;
+        synchronized (commands) {
+            sequenceNumber = commandsSent.incrementAndGet();
+            commands.add(command);
+        }
+        LockSupport.unpark(thread);
+        return sequenceNumber;
+    }
+
+    // MODIFIES: this
+    // EFFECTS: The timing thread: advances the session up to now, runs any commands sent, publishes a snapshot if
+    //          anything changed (or a refresh is due), then sleeps until the next boundary or refresh (or until
+    //          woken up by a command). Exits once stopped, after running the commands left and publishing the
+    //          final progress.
+    private void loop() {
+        long nextRefresh = clock.nanoTime();
+        boolean changed = true;
+
+        while (true) {
+            AdvanceResult result = timer.advance();
+            changed |= result.hasCurrentSegmentChanged();
+            for (Runnable command = commands.poll(); command != null; command = commands.poll()) {
+                command.run();
+                commandsRun++;
+                changed = true;
+            }
+
+            long now = clock.nanoTime();
+            boolean refreshDue = refreshInterval > 0 && now - nextRefresh >= 0;
+            if (changed || refreshDue || stopped) {
+                publish(now);
+                nextRefresh = now + refreshInterval;
+                changed = false;
+            }
+
+            if (stopped && commands.isEmpty()) {
+                return;
+            }
+            long nextBoundary = timer.getNextBoundary();
+            sleepUntil(refreshInterval > 0 ? Math.min(nextBoundary, nextRefresh) : nextBoundary);
+        }
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Publishes a snapshot of the session taken at the given clock reading
+    private void publish(long now) {
+        latest = new ProgressSnapshot(now, progress.checkpoint(), progress.getElapsedTime(), commandsRun);
+        publisher.accept(latest);
+    }
+
+    // EFFECTS: Parks the timing thread until the given clock reading (forever for Long.MAX_VALUE), or until it is
+    //          woken up by a command or stop. It may also wake up early, in which case the loop just runs again.
+    private void sleepUntil(long deadline) {
+        if (stopped || !commands.isEmpty()) {
+            return;
+        }
+        if (deadline == Long.MAX_VALUE) {
+            LockSupport.park(this);
+        } else {
+            long delay = deadline - clock.nanoTime();
+            if (delay > 0) {
+                LockSupport.parkNanos(this, delay);
+            }
+        }
+    }
+
+    // EFFECTS: Returns the nanoseconds between refreshes at the given rate, 0 for none
+    private static long refreshIntervalOf(int refreshesPerSecond) {
+        return refreshesPerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / refreshesPerSecond : 0;
+    }
+}
@@ -0,0 +1,127 @@
+package model;
+
+import model.SimulationEvent.Kind;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static model.RoutineDefinition.saturatedAdd;
+import static model.RoutineDefinition.saturatedMultiply;
+
+// Represents a headless run of a routine against a virtual clock, as fast as possible, e.g. to check the timing
+// of a long routine in a test without waiting for it. The clock ticks the same way as the timer in the app, with
+// each tick advancing the routine by the tick length, and manual segments are completed at scripted times.
+//
+// Nothing happens to the routine between its segment boundaries other than time passing, so the simulation
+// jumps from one boundary to the next along the lazy timeline of the definition instead of stepping through
+// every tick. Its cost depends on the number of segments run, not the number of ticks simulated.
+public class RoutineSimulator {
+    private final RoutineDefinition definition;
+    private final long tickLength;
+    private final List<Long> completions; // scripted times to complete a waiting manual segment at
+    private long manualDelay;             // time after which a manual segment completes by itself, -1 if never
+
+    // REQUIRES: tickLength > 0
+    // EFFECTS: Constructs a simulator of the given definition, with a virtual clock ticking every tickLength
+    //          milliseconds, and no manual completions scripted yet
+    public RoutineSimulator(RoutineDefinition definition, long tickLength) {
+        this.definition = definition;
+        this.tickLength = tickLength;
+        completions = new ArrayList<>();
+        manualDelay = -1;
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Public methods
+    // --------------------------------------------------------------------------------------------
+
+    // REQUIRES: time >= 0
+    // MODIFIES: this
+    // EFFECTS: Scripts a manual completion at the given time (in milliseconds on the virtual clock). Like
+    //          pressing the button in the app, it takes effect on the next tick, and only completes a manual
+    //          segment that is already waiting by then.
+    public void completeManualAt(long time) {
+        completions.add(time);
+    }
+
+    // REQUIRES: delay >= 0
+    // MODIFIES: this
+    // EFFECTS: Makes every manual segment with no completion scripted after it is reached complete on the
+    //          first tick at least delay milliseconds after it is reached, instead of stopping the run there
+    public void setManualDelay(long delay) {
+        manualDelay = delay;
+    }
+
+    // REQUIRES: until >= 0
+    // EFFECTS: Runs the routine from the start until it is complete, the virtual clock reaches the given time,
+    //          or a manual segment is reached with no completion scripted after it (and no manual delay set).
+    //          Returns the trace of every segment start and end up to then.
+    public SimulationTrace run(long until) {
+        long[] scripted = new long[completions.size()];
+        for (int i = 0; i < scripted.length; i++) {
+            scripted[i] = completions.get(i);
+        }
+        Arrays.sort(scripted);
+        int nextCompletion = 0;
+
+        List<SimulationEvent> events = new ArrayList<>();
+        Timeline timeline = new Timeline(definition);
+        TimelineEntry[] next = new TimelineEntry[1];
+        long waited = 0; // total time spent waiting for manual segments, i.e. the clock minus the routine time
+
+        while (timeline.tryAdvance(entry -> next[0] = entry)) {
+            TimelineEntry entry = next[0];
+            long start = saturatedAdd(entry.getStartTime(), waited);
+            if (start > until) {
+                return stop(events, until);
+            }
+            events.add(new SimulationEvent(Kind.STARTED, start, entry));
+
+            long end;
+            if (entry.getType() == SegmentType.TIME) {
+                end = saturatedAdd(entry.getEndTime(), waited);
+            } else {
+                // Completions before the segment is reached do nothing, as in the app
+                while (nextCompletion < scripted.length && scripted[nextCompletion] < start) {
+                    nextCompletion++;
+                }
+                if (nextCompletion < scripted.length) {
+                    end = nextTick(scripted[nextCompletion++]);
+                } else if (manualDelay >= 0) {
+                    end = nextTick(saturatedAdd(start, manualDelay));
+                } else {
+                    return stop(events, start);
+                }
+                waited = saturatedAdd(waited, end - start);
+            }
+
+            if (end > until) {
+                return stop(events, until);
+            }
+            events.add(new SimulationEvent(Kind.ENDED, end, entry));
+        }
+
+        long endTime = saturatedAdd(definition.getTotalDuration(), waited);
+        return new SimulationTrace(events, endTime, ticksTo(endTime), true);
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Private methods
+    // --------------------------------------------------------------------------------------------
+
+    // EFFECTS: Returns the trace of an incomplete run which stopped at the given time
+    private SimulationTrace stop(List<SimulationEvent> events, long endTime) {
+        return new SimulationTrace(events, endTime, ticksTo(endTime), false);
+    }
+
+    // EFFECTS: Returns the time of the first tick at or after the given time
+    private long nextTick(long time) {
+        return saturatedMultiply(ticksTo(time), tickLength);
+    }
+
+    // EFFECTS: Returns the number of ticks needed for the clock to reach the given time
+    private long ticksTo(long time) {
+        return time / tickLength + (time % tickLength == 0 ? 0 : 1);
+    }
+}
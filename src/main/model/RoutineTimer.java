@@ -0,0 +1,63 @@
+package model;
+
+import java.util.function.LongFunction;
+import java.util.function.LongSupplier;
+
+// Represents the timing of a running Routine (or RoutineProgress session) from a Clock. Instead of advancing the
+// routine on every tick of a fixed rate timer, the app only needs to advance it at the exact clock reading of the
+// next segment boundary (and whenever it wants to show the progress in between). Time is measured with a
+// Stopwatch, so the routine is always advanced by exactly the time passed on the clock, however late or often it
+// is advanced.
+public class RoutineTimer {
+    private static final long NANOS_PER_MILLI = 1000000;
+    private static final long MAX_MILLIS = Long.MAX_VALUE / NANOS_PER_MILLI / 4; // keeps readings from overflowing
+
+    private final LongFunction<AdvanceResult> advancer;  // advances the routine by the given milliseconds
+    private final LongSupplier timeToNextBoundary;        // time until the next boundary, -1 if there is none
+    private final Stopwatch stopwatch;
+
+    // EFFECTS: Constructs a timer for the given routine, timed from the given clock and started now
+    public RoutineTimer(Routine routine, Clock clock) {
+        this(routine::advance, routine::getTimeToNextBoundary, clock);
+    }
+
+    // EFFECTS: Constructs a timer for the given session, timed from the given clock and started now
+    public RoutineTimer(RoutineProgress progress, Clock clock) {
+        this(progress::advance, progress::getTimeToNextBoundary, clock);
+    }
+
+    // EFFECTS: Constructs a timer advancing a routine with the given functions, timed from the given clock
+    private RoutineTimer(LongFunction<AdvanceResult> advancer, LongSupplier timeToNextBoundary, Clock clock) {
+        this.advancer = advancer;
+        this.timeToNextBoundary = timeToNextBoundary;
+        stopwatch = new Stopwatch(clock);
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Starts timing again from now, e.g. when the routine is resumed, so that the time since the routine
+    //          was last advanced is not counted
+    public void restart() {
+        stopwatch.restart();
+    }
+
+    // MODIFIES: this, routine
+    // EFFECTS: Advances the routine by the time passed on the clock since it was last advanced (or the timer was
+    //          restarted), and returns the summary of the advance
+    public AdvanceResult advance() {
+        return advancer.apply(stopwatch.lap());
+    }
+
+    // MODIFIES: routine
+    // EFFECTS: Returns the reading of the clock (in nanoseconds) at which the routine reaches its next segment
+    //          boundary by itself, i.e. when advancing it completes the current TimeSegment. Returns
+    //          Long.MAX_VALUE if there is no such boundary (the routine is complete or waiting for a
+    //          ManualSegment), in which case the routine does not need to be advanced until something else
+    //          happens to it.
+    public long getNextBoundary() {
+        long timeToBoundary = timeToNextBoundary.getAsLong();
+        if (timeToBoundary < 0) {
+            return Long.MAX_VALUE;
+        }
+        return stopwatch.getLapStart() + Math.min(timeToBoundary, MAX_MILLIS) * NANOS_PER_MILLI;
+    }
+}
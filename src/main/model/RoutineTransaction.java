@@ -0,0 +1,173 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Represents the edits being made to a Routine in a single call to Routine.edit. Each edit is applied straight
+// away (so later edits can refer to segments added by earlier ones), but the routine only passes the changes on
+// once all edits are done. Every edit records how to undo it, so that the whole batch can be rolled back.
+public class RoutineTransaction {
+    private final Routine routine;
+    private final List<Runnable> undoLog; // actions which undo each change made, in the order they were made
+    private boolean open;                  // false once the edit is finished, no more changes can be made
+
+    private int segmentsAdded;
+    private int segmentsRemoved;
+    private int segmentsChanged;
+
+    // EFFECTS: Constructs a new (open) transaction for edits to the given routine
+    RoutineTransaction(Routine routine) {
+        this.routine = routine;
+        undoLog = new ArrayList<>();
+        open = true;
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Structural edits
+    // --------------------------------------------------------------------------------------------
+
+    // MODIFIES: this, routine
+    // EFFECTS: Adds the given segment to the end of the routine
+    public void addSegment(Segment segment) {
+        checkOpen();
+        addAt(routine, routine.getChildren().size(), segment);
+    }
+
+    // MODIFIES: this, routine
+    // EFFECTS: Inserts the given segment BEFORE the other specified segment, in the group containing it.
+    //          Throws IllegalArgumentException if the other segment is not in the routine.
+    public void insertSegmentBefore(Segment segment, Segment segmentToInsertBefore) {
+        insertAround(segment, segmentToInsertBefore, false);
+    }
+
+    // MODIFIES: this, routine
+    // EFFECTS: Inserts the given segment AFTER the other specified segment, in the group containing it.
+    //          Throws IllegalArgumentException if the other segment is not in the routine.
+    public void insertSegmentAfter(Segment segment, Segment segmentToInsertAfter) {
+        insertAround(segment, segmentToInsertAfter, true);
+    }
+
+    // MODIFIES: this, routine
+    // EFFECTS: Removes the given segment from wherever it is in the routine, along with any repeat segments
+    //          that would have no children after it is removed. Throws IllegalArgumentException if the
+    //          segment is not in the routine.
+    public void removeSegment(Segment segment) {
+        checkOpen();
+        checkInRoutine(segment);
+        routine.removeFromParent(segment, undoLog);
+        segmentsRemoved++;
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Value edits
+    // --------------------------------------------------------------------------------------------
+
+    // MODIFIES: this, segment
+    // EFFECTS: Sets the name of the given segment (or the routine itself). Throws IllegalArgumentException
+    //          if the segment is not in the routine.
+    public void setName(Segment segment, String newName) {
+        checkOpen();
+        checkInRoutine(segment);
+        String oldName = segment.getName();
+        segment.setName(newName);
+        undoLog.add(() -> segment.setName(oldName));
+        segmentsChanged++;
+    }
+
+    // REQUIRES: newTotalTime >= 0
+    // MODIFIES: this, segment
+    // EFFECTS: Sets a new total time for the given time segment, the same way as setTotalTime in TimeSegment.
+    //          Throws IllegalArgumentException if the segment is not in the routine.
+    public void setTotalTime(TimeSegment segment, long newTotalTime) {
+        checkOpen();
+        checkInRoutine(segment);
+        long oldTotalTime = segment.getTotalTime();
+        long oldCurrentTime = segment.getCurrentTime();
+        segment.setTotalTime(newTotalTime);
+        undoLog.add(() -> {
+            segment.setTotalTime(oldTotalTime);
+            segment.setCurrentTime(oldCurrentTime);
+        });
+        segmentsChanged++;
+    }
+
+    // REQUIRES: newNumRepeats > 0
+    // MODIFIES: this, segment
+    // EFFECTS: Sets a new number of repetitions for the given repeat segment, the same way as setNewRepeats in
+    //          RepeatSegment. Throws IllegalArgumentException if the segment is not in the routine.
+    public void setNewRepeats(RepeatSegment segment, int newNumRepeats) {
+        checkOpen();
+        checkInRoutine(segment);
+        int oldNumRepeats = segment.getTotalRepetitions();
+        int oldCurrentCycle = segment.getCurrentRepetition();
+        segment.setNewRepeats(newNumRepeats);
+        undoLog.add(() -> {
+            segment.setNewRepeats(oldNumRepeats);
+            segment.setCurrentCycle(oldCurrentCycle);
+        });
+        segmentsChanged++;
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Package-private methods
+    // --------------------------------------------------------------------------------------------
+
+    // MODIFIES: this, routine
+    // EFFECTS: Undoes every change made in this transaction, latest first
+    void rollBack() {
+        for (int i = undoLog.size() - 1; i >= 0; i--) {
+            undoLog.get(i).run();
+        }
+        undoLog.clear();
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Finishes the transaction, any further edits through it throw IllegalStateException
+    void close() {
+        open = false;
+    }
+
+    // EFFECTS: Returns a short summary of the changes made, e.g. "3 added, 1 removed, 0 changed"
+    String getSummary() {
+        return segmentsAdded + " added, " + segmentsRemoved + " removed, " + segmentsChanged + " changed";
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Private methods
+    // --------------------------------------------------------------------------------------------
+
+    // MODIFIES: this, routine
+    // EFFECTS: Inserts the given segment in the group containing the other segment, at the index
+    //          either before or after it
+    private void insertAround(Segment segment, Segment segmentToInsertAround, boolean insertAfter) {
+        checkOpen();
+        SegmentGroup parent = routine.findParent(segmentToInsertAround);
+        if (parent == null) {
+            throw new IllegalArgumentException("Segment " + segmentToInsertAround.getName() + " is not in the routine");
+        }
+        int index = Routine.indexOfChild(parent, segmentToInsertAround);
+        addAt(parent, index + (insertAfter ? 1 : 0), segment);
+    }
+
+    // MODIFIES: this, routine
+    // EFFECTS: Inserts the given segment into the children of parent at the index
+    private void addAt(SegmentGroup parent, int index, Segment segment) {
+        routine.attach(parent, index, segment);
+        undoLog.add(() -> routine.detach(parent, segment));
+        segmentsAdded++;
+    }
+
+    // EFFECTS: Throws IllegalStateException if the edit this transaction was made for is finished
+    private void checkOpen() {
+        if (!open) {
+            throw new IllegalStateException("Transaction can only be used during the edit");
+        }
+    }
+
+    // EFFECTS: Throws IllegalArgumentException if the given segment is not in the routine
+    private void checkInRoutine(Segment segment) {
+        if (!routine.contains(segment)) {
+            throw new IllegalArgumentException("Segment " + segment.getName() + " is not in the routine");
+        }
+    }
+}
@@ -2,28 +2,100 @@ package model;
 
 import persistence.Encodable;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 // Classes which implement Segment represents one segment of a procedure in a
 // Routine instance (or other class which implements SegmentGroup).
 // I.e. Each segment of the procedure implements the following methods.
 public abstract class Segment implements Encodable {
+    private static final AtomicLong NEXT_ID = new AtomicLong();
+
+    private final long id;
     private String name;
+    private SegmentGroup parent; // null until the segment is added to a group
 
-    // EFFECTS: Constructs a new segment with the given name
+    // EFFECTS: Constructs a new segment with the given name, and a new unique id
     public Segment(String name) {
+        this.id = NEXT_ID.getAndIncrement();
         this.name = name;
     }
 
+    // EFFECTS: Returns the id of the segment, unique to this segment and never changed
+    public long getId() {
+        return id;
+    }
+
     public String getName() {
         return name;
     }
 
+    // MODIFIES: this
+    // EFFECTS: Sets the name of the segment, and notifies any containing groups
     public void setName(String newName) {
         this.name = newName;
+        notifyChanged(true);
+    }
+
+    // EFFECTS: Returns the group that directly contains this segment, or null if it is not in one
+    public SegmentGroup getParent() {
+        return parent;
+    }
+
+    void setParent(SegmentGroup parent) {
+        this.parent = parent;
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Resets the segment to its initial state, and notifies any containing groups
+    public void reset() {
+        resetProgress();
+        notifyChanged(false);
+    }
+
+    // EFFECTS: Returns the time (in milliseconds) left until the segment is complete, not including
+    //          any time spent waiting for manual segments
+    public long getRemainingTime() {
+        return getDuration() - getElapsedTime();
     }
 
-    // EFFECTS: Updates the state of the segment (only used for SegmentGroup instances)
-    public void update() {
-        // do nothing
+    // EFFECTS: Notifies the group containing this segment (if any) that this segment has changed.
+    //          A structural change alters how the segment is run (e.g. its duration), otherwise
+    //          only the progress of the segment has changed.
+    protected void notifyChanged(boolean structural) {
+        notifyChanged(this, structural);
+    }
+
+    // EFFECTS: Notifies every group containing this segment (innermost first) that the given segment (this
+    //          segment or one of its children/sub-children) has changed
+    void notifyChanged(Segment source, boolean structural) {
+        for (SegmentGroup group = parent; group != null; group = group.getParent()) {
+            group.childChanged(source, structural);
+        }
+    }
+
+    // REQUIRES: milliseconds >= 0
+    // EFFECTS: Notifies the group containing this segment (if any) that the given time was added to it
+    protected void notifyTimeAdded(long milliseconds) {
+        notifyTimeAdded(this, milliseconds);
+    }
+
+    // REQUIRES: milliseconds >= 0
+    // EFFECTS: Notifies every group containing this segment (innermost first) that the given time was added
+    //          to the given segment (this segment or one of its children/sub-children)
+    void notifyTimeAdded(Segment source, long milliseconds) {
+        for (SegmentGroup group = parent; group != null; group = group.getParent()) {
+            group.childTimeAdded(source, milliseconds);
+        }
+    }
+
+    // EFFECTS: Marks the elapsed time cached by the containing groups (if any) as out of date, without
+    //          notifying them of a change. Used when the progress of the segment is set directly. Stops at the
+    //          first group already out of date, since the groups containing it are computed from it.
+    void invalidateElapsedTime() {
+        SegmentGroup group = parent;
+        while (group != null && group.markElapsedTimeOutOfDate()) {
+            group = group.getParent();
+        }
     }
 
     // --------------------------------------------------------------------------------------------
@@ -34,5 +106,16 @@ public abstract class Segment implements Encodable {
 
     public abstract boolean isComplete();
 
-    public abstract void reset();
+    // EFFECTS: Returns the total time (in milliseconds) it takes to run the segment, including all cycles
+    public abstract long getDuration();
+
+    // EFFECTS: Returns the time (in milliseconds) run in the segment so far, including all previous cycles
+    public abstract long getElapsedTime();
+
+    // EFFECTS: Returns the number of times a manual segment has to be completed to run the segment
+    public abstract long getManualCount();
+
+    // MODIFIES: this
+    // EFFECTS: Resets the segment to its initial state without notifying any containing groups
+    abstract void resetProgress();
 }
@@ -1,13 +1,60 @@
 package model;
 
+import persistence.JsonSink;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
+import static model.RoutineDefinition.saturatedAdd;
+
 // Classes which implement SegmentGroup represents objects that contain a list
 // of segments (instances of classes which implement Segment).
+// Operations on all children/sub-children walk the tree with SegmentWalker instead of recursing, so groups
+// can be nested as deeply as the heap allows.
 public abstract class SegmentGroup extends Segment {
+    private static final long OUT_OF_DATE = -1;
+
+    // Resets each group before its children and finishes resetting it after them, resets the other segments
+    private static final SegmentVisitor PROGRESS_RESETTER = new SegmentVisitor() {
+        @Override
+        public boolean enter(Segment segment) {
+            if (segment instanceof SegmentGroup) {
+                ((SegmentGroup) segment).clearProgress();
+            } else {
+                segment.resetProgress();
+            }
+            return true;
+        }
+
+        @Override
+        public void leave(SegmentGroup group) {
+            group.childrenReset();
+        }
+    };
+
+    // Computes the out of date totals of each group after those of its children, skipping up to date groups
+    private static final SegmentVisitor CACHE_UPDATER = new SegmentVisitor() {
+        @Override
+        public boolean enter(Segment segment) {
+            return segment instanceof SegmentGroup && ((SegmentGroup) segment).isAnyCacheOutOfDate();
+        }
+
+        @Override
+        public void leave(SegmentGroup group) {
+            group.updateCaches();
+        }
+    };
+
     private final List<Segment> children;
 
+    // Totals of all children, OUT_OF_DATE until computed again after a change to one of the children
+    private long cachedDuration = OUT_OF_DATE;
+    private long cachedElapsedTime = OUT_OF_DATE;
+    private long cachedManualCount = OUT_OF_DATE;
+
     // EFFECTS: Constructs a SegmentGroup with no children elements
     public SegmentGroup(String name) {
         this(name, new ArrayList<>());
@@ -17,36 +64,34 @@ public abstract class SegmentGroup extends Segment {
     public SegmentGroup(String name, List<Segment> children) {
         super(name);
         this.children = children;
+        for (Segment child : children) {
+            child.setParent(this);
+        }
     }
 
     // --------------------------------------------------------------------------------------------
     // Public methods
     // --------------------------------------------------------------------------------------------
 
-    // MODIFIES: this
-    // EFFECTS: Returns the list of child segments, ensuring they are all updated
+    // EFFECTS: Returns the list of child segments
     public List<Segment> getSegments() {
-        update();
         return children;
     }
 
-    // MODIFIES: this
-    // EFFECTS: Returns a flattened list of all child segments, ensuring they are all updated.
+    // EFFECTS: Returns a flattened list of all child segments, each followed by its own children
     public List<Segment> getFlattenedSegments() {
         List<Segment> allSegments = new ArrayList<>();
-        for (Segment segment : getSegments()) {
-            allSegments.add(segment);
-            if (segment instanceof SegmentGroup) {
-                SegmentGroup segmentGroup = (SegmentGroup) segment;
-                allSegments.addAll(segmentGroup.getFlattenedSegments());
+        SegmentWalker.walk(this, segment -> {
+            if (segment != this) {
+                allSegments.add(segment);
             }
-        }
+            return true;
+        });
         return allSegments;
     }
 
     // REQUIRES: isComplete() is false;
-    // MODIFIES: this
-    // EFFECTS: Returns the segment that is currently active. Ensures all segments are updated
+    // EFFECTS: Returns the segment that is currently active
     public Segment getCurrentSegment() {
         for (Segment segment : getSegments()) {
             if (!segment.isComplete()) {
@@ -57,35 +102,304 @@ public abstract class SegmentGroup extends Segment {
     }
 
     // --------------------------------------------------------------------------------------------
-    // Segment implementation
+    // Package-private methods
     // --------------------------------------------------------------------------------------------
 
+    // EFFECTS: Returns the list of child segments
+    List<Segment> getChildren() {
+        return children;
+    }
+
+    // REQUIRES: 0 <= index <= number of children
+    // MODIFIES: this, child
+    // EFFECTS: Inserts the given child at the index in the list of children and adopts it
+    void addChild(int index, Segment child) {
+        children.add(index, child);
+        child.setParent(this);
+        notifyChildrenChanged(child);
+    }
+
+    // MODIFIES: this, child
+    // EFFECTS: Removes the given child from the list of children (if it is there). Returns true
+    //          if the child was removed.
+    boolean removeChild(Segment child) {
+        if (!children.remove(child)) {
+            return false;
+        }
+        if (child.getParent() == this) {
+            child.setParent(null);
+        }
+        notifyChildrenChanged(child);
+        return true;
+    }
+
     // MODIFIES: this
-    // EFFECTS: Resets all segments to their initial states.
-    @Override
-    public void reset() {
-        for (Segment segment : children) {
-            segment.reset();
+    // EFFECTS: Called when the given segment (one of the children or sub-children) has changed, marks the
+    //          cached totals as out of date (only the elapsed time for a non structural change). The change is
+    //          passed on to each containing group in turn by the segment that changed.
+    void childChanged(Segment source, boolean structural) {
+        invalidateCaches(structural);
+    }
+
+    // REQUIRES: milliseconds >= 0
+    // MODIFIES: this
+    // EFFECTS: Called when time was added to the given segment (one of the children or sub-children), adds
+    //          it to the cached elapsed time.
+    void childTimeAdded(Segment source, long milliseconds) {
+        if (cachedElapsedTime != OUT_OF_DATE) {
+            cachedElapsedTime = saturatedAdd(cachedElapsedTime, milliseconds);
+        }
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Marks the cached elapsed time of this group as out of date. Returns false if it already was.
+    boolean markElapsedTimeOutOfDate() {
+        if (cachedElapsedTime == OUT_OF_DATE) {
+            return false;
+        }
+        cachedElapsedTime = OUT_OF_DATE;
+        return true;
+    }
+
+    // EFFECTS: Returns true if this is the last run through the children, i.e. the group is complete once
+    //          they are
+    boolean isLastCycle() {
+        return true;
+    }
+
+    // EFFECTS: Returns true if every child (and sub-child) is complete, with each group among them on its last
+    //          cycle. Checks from the last child back, keeping the groups being checked on an explicit stack, so
+    //          it stops straight away at a child still to be run in the usual case.
+    boolean areChildrenComplete() {
+        SegmentGroup[] groups = {this};
+        int[] remaining = {children.size()}; // number of children of each group still to be checked
+        int depth = 1;
+        while (depth > 0) {
+            int position = --remaining[depth - 1];
+            if (position < 0) {
+                depth--;
+                continue;
+            }
+
+            Segment child = groups[depth - 1].children.get(position);
+            if (!(child instanceof SegmentGroup)) {
+                if (!child.isComplete()) {
+                    return false;
+                }
+            } else {
+                SegmentGroup group = (SegmentGroup) child;
+                if (!group.isLastCycle()) {
+                    return false;
+                }
+                if (depth == groups.length) {
+                    groups = Arrays.copyOf(groups, depth * 2);
+                    remaining = Arrays.copyOf(remaining, depth * 2);
+                }
+                groups[depth] = group;
+                remaining[depth] = group.children.size();
+                depth++;
+            }
         }
+        return true;
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Resets the progress of this group only, its children are reset separately
+    void clearProgress() {
     }
 
     // MODIFIES: this
-    // EFFECTS: Returns if the segment is complete, i.e. either no segments or the last
-    //          child segment is complete.
+    // EFFECTS: Called once all the children have been reset, marks the elapsed time as out of date
+    void childrenReset() {
+        invalidateElapsedTime();
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Marks the cached elapsed time of this group and all containing groups as out of date. If it
+    //          already is, then so are the containing groups (they are computed from this one).
     @Override
-    public boolean isComplete() {
-        if (children.isEmpty()) {
-            return true;
+    void invalidateElapsedTime() {
+        if (markElapsedTimeOutOfDate()) {
+            super.invalidateElapsedTime();
         }
-        return children.get(children.size() - 1).isComplete();
     }
 
     // MODIFIES: this
-    // EFFECTS: Updates all children segments.
+    // EFFECTS: Marks the cached totals as out of date (only the elapsed time for a non structural change),
+    //          then notifies the containing groups.
     @Override
-    public void update() {
+    void notifyChanged(Segment source, boolean structural) {
+        invalidateCaches(structural);
+        super.notifyChanged(source, structural);
+    }
+
+    // EFFECTS: Returns the total duration of one run through all children, saturated at Long.MAX_VALUE the same
+    //          way as in RoutineDefinition
+    protected long computeDuration() {
+        long duration = 0;
         for (Segment child : children) {
-            child.update();
+            duration = saturatedAdd(duration, child.getDuration());
+        }
+        return duration;
+    }
+
+    // EFFECTS: Returns the total time run in all children
+    protected long computeElapsedTime() {
+        long elapsedTime = 0;
+        for (Segment child : children) {
+            elapsedTime = saturatedAdd(elapsedTime, child.getElapsedTime());
+        }
+        return elapsedTime;
+    }
+
+    // EFFECTS: Returns the total number of manual segments in one run through all children
+    protected long computeManualCount() {
+        long manualCount = 0;
+        for (Segment child : children) {
+            manualCount = saturatedAdd(manualCount, child.getManualCount());
+        }
+        return manualCount;
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Segment implementation
+    // --------------------------------------------------------------------------------------------
+
+    // MODIFIES: this
+    // EFFECTS: Resets all segments to their initial states.
+    @Override
+    void resetProgress() {
+        SegmentWalker.walk(this, PROGRESS_RESETTER);
+    }
+
+    // EFFECTS: Returns if the segment is complete, i.e. on its last cycle with every child segment complete
+    //          (not just the last one, which may take no time at all)
+    @Override
+    public boolean isComplete() {
+        return isLastCycle() && areChildrenComplete();
+    }
+
+    // EFFECTS: Returns the total duration of the group, only computed again if any children have changed
+    @Override
+    public long getDuration() {
+        if (cachedDuration == OUT_OF_DATE) {
+            SegmentWalker.walk(this, CACHE_UPDATER);
+        }
+        return cachedDuration;
+    }
+
+    // EFFECTS: Returns the time run in the group, only computed again if the progress of any children
+    //          was set directly (time added to a child is added to the cached time).
+    @Override
+    public long getElapsedTime() {
+        if (cachedElapsedTime == OUT_OF_DATE) {
+            SegmentWalker.walk(this, CACHE_UPDATER);
+        }
+        return cachedElapsedTime;
+    }
+
+    // EFFECTS: Returns the number of manual segments in the group, only computed again if any children
+    //          have changed
+    @Override
+    public long getManualCount() {
+        if (cachedManualCount == OUT_OF_DATE) {
+            SegmentWalker.walk(this, CACHE_UPDATER);
+        }
+        return cachedManualCount;
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Encodable implementation
+    // --------------------------------------------------------------------------------------------
+
+    // MODIFIES: sink
+    // EFFECTS: Writes this group and all of its children/sub-children to the sink as an encoded object (JSON),
+    //          walking the tree instead of recursing
+    @Override
+    public void encodeTo(JsonSink sink) throws IOException {
+        try {
+            SegmentWalker.walk(this, new SegmentVisitor() {
+                @Override
+                public boolean enter(Segment segment) {
+                    try {
+                        if (segment instanceof SegmentGroup) {
+                            SegmentGroup group = (SegmentGroup) segment;
+                            group.encodeOpeningTo(sink);
+                            sink.beginArray(group.getChildren().size());
+                        } else {
+                            segment.encodeTo(sink);
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    return true;
+                }
+
+                @Override
+                public void leave(SegmentGroup group) {
+                    try {
+                        sink.endArray();
+                        group.encodeClosingTo(sink);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    // MODIFIES: sink
+    // EFFECTS: Begins the encoded object of this group in the sink, writing the members before its children and
+    //          then the name they are stored under
+    protected abstract void encodeOpeningTo(JsonSink sink) throws IOException;
+
+    // MODIFIES: sink
+    // EFFECTS: Ends the encoded object of this group in the sink, writing the members after its children first
+    protected abstract void encodeClosingTo(JsonSink sink) throws IOException;
+
+    // --------------------------------------------------------------------------------------------
+    // Private methods
+    // --------------------------------------------------------------------------------------------
+
+    // MODIFIES: this
+    // EFFECTS: Tells this group, then every group containing it, that the children have changed
+    private void notifyChildrenChanged(Segment child) {
+        childChanged(child, true);
+        super.notifyChanged(child, true);
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Marks the cached totals of this group as out of date (only the elapsed time for a non
+    //          structural change)
+    private void invalidateCaches(boolean structural) {
+        if (structural) {
+            cachedDuration = OUT_OF_DATE;
+            cachedManualCount = OUT_OF_DATE;
+        }
+        cachedElapsedTime = OUT_OF_DATE;
+    }
+
+    // EFFECTS: Returns true if any of the cached totals are out of date
+    private boolean isAnyCacheOutOfDate() {
+        return cachedDuration == OUT_OF_DATE || cachedElapsedTime == OUT_OF_DATE
+                || cachedManualCount == OUT_OF_DATE;
+    }
+
+    // REQUIRES: the cached totals of all children are up to date
+    // MODIFIES: this
+    // EFFECTS: Computes the cached totals which are out of date, the duration first since the others can
+    //          depend on it
+    private void updateCaches() {
+        if (cachedDuration == OUT_OF_DATE) {
+            cachedDuration = computeDuration();
+        }
+        if (cachedElapsedTime == OUT_OF_DATE) {
+            cachedElapsedTime = computeElapsedTime();
+        }
+        if (cachedManualCount == OUT_OF_DATE) {
+            cachedManualCount = computeManualCount();
         }
     }
 }
@@ -0,0 +1,91 @@
+package model;
+
+import java.util.List;
+
+// Represents a read-only view of one segment stored in a CompactRoutine. A view only holds the position of
+// the segment, so it is cheap to create and always shows the current state of the compact routine.
+public class SegmentView {
+    private final CompactRoutine routine;
+    private final int index;
+
+    // EFFECTS: Constructs a view of the segment at the given index in the given compact routine
+    SegmentView(CompactRoutine routine, int index) {
+        this.routine = routine;
+        this.index = index;
+    }
+
+    // EFFECTS: Returns the position of the segment in the compact routine (in the order of
+    //          getFlattenedSegments in Routine)
+    public int getIndex() {
+        return index;
+    }
+
+    public String getName() {
+        return routine.getName(index);
+    }
+
+    public SegmentType getType() {
+        return routine.getType(index);
+    }
+
+    public boolean isComplete() {
+        return routine.isComplete(index);
+    }
+
+    // EFFECTS: Returns the total time (in milliseconds) it takes to run the segment, including all cycles
+    public long getDuration() {
+        return routine.getDuration(index);
+    }
+
+    // EFFECTS: Returns the time (in milliseconds) run in the segment so far, including all previous cycles
+    public long getElapsedTime() {
+        return routine.elapsedTimeOf(index);
+    }
+
+    // REQUIRES: getType() is TIME
+    // EFFECTS: Returns the total time of the time segment (in milliseconds)
+    public long getTotalTime() {
+        return routine.getTotal(index);
+    }
+
+    // REQUIRES: getType() is TIME
+    // EFFECTS: Returns the elapsed time of the time segment (in milliseconds)
+    public long getCurrentTime() {
+        return routine.getProgress(index);
+    }
+
+    // REQUIRES: getType() is REPEAT
+    // EFFECTS: Returns the total number of repetitions of the repeat segment
+    public int getTotalRepetitions() {
+        return (int) routine.getTotal(index);
+    }
+
+    // REQUIRES: getType() is REPEAT
+    // EFFECTS: Returns the current repetition cycle of the repeat segment
+    public int getCurrentRepetition() {
+        return (int) Math.min(routine.getProgress(index) + 1, routine.getTotal(index));
+    }
+
+    // EFFECTS: Returns views of the children of the segment (none unless it is a repeat segment)
+    public List<SegmentView> getSegments() {
+        return routine.getChildren(index);
+    }
+
+    // EFFECTS: Returns true if the other object is a view of the same segment
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (other == null || getClass() != other.getClass()) {
+            return false;
+        }
+        SegmentView view = (SegmentView) other;
+        return index == view.index && routine == view.routine;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * System.identityHashCode(routine) + index;
+    }
+}
@@ -0,0 +1,12 @@
+package model;
+
+// Represents an operation applied to a segment and all of its children/sub-children by SegmentWalker
+public interface SegmentVisitor {
+    // EFFECTS: Called for each segment before any of its children. Returns false to skip the children of a
+    //          group (leave is then not called for it).
+    boolean enter(Segment segment);
+
+    // EFFECTS: Called for each group after all of its children
+    default void leave(SegmentGroup group) {
+    }
+}
@@ -0,0 +1,73 @@
+package model;
+
+import java.util.List;
+
+// Represents a depth first walk through a segment and all of its children/sub-children, with each segment
+// entered before its children and each group left after them. The groups being walked are kept on an explicit
+// stack instead of the call stack, so the depth of the tree is only limited by the heap, and nothing is
+// allocated for each segment visited (only when the stack has to grow).
+public final class SegmentWalker {
+    private static final int INITIAL_DEPTH = 16;
+
+    private SegmentGroup[] groups; // groups being walked, outermost first
+    private int[] positions;       // index of the next child to enter in each group being walked
+    private int depth;             // number of groups being walked
+
+    // EFFECTS: Constructs a walker with an empty stack
+    private SegmentWalker() {
+        groups = new SegmentGroup[INITIAL_DEPTH];
+        positions = new int[INITIAL_DEPTH];
+    }
+
+    // EFFECTS: Visits the given segment and all of its children/sub-children in order with the given visitor
+    public static void walk(Segment root, SegmentVisitor visitor) {
+        new SegmentWalker().run(root, visitor);
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Private methods
+    // --------------------------------------------------------------------------------------------
+
+    // MODIFIES: this
+    // EFFECTS: Visits the given segment and all of its children/sub-children in order with the given visitor
+    private void run(Segment root, SegmentVisitor visitor) {
+        if (!visitor.enter(root) || !(root instanceof SegmentGroup)) {
+            return;
+        }
+        push((SegmentGroup) root);
+
+        while (depth > 0) {
+            SegmentGroup group = groups[depth - 1];
+            List<Segment> children = group.getChildren();
+            int position = positions[depth - 1];
+
+            if (position < children.size()) {
+                positions[depth - 1] = position + 1;
+                Segment child = children.get(position);
+                if (visitor.enter(child) && child instanceof SegmentGroup) {
+                    push((SegmentGroup) child);
+                }
+            } else {
+                depth--;
+                groups[depth] = null;
+                visitor.leave(group);
+            }
+        }
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Starts walking the children of the given group, growing the stack if it is full
+    private void push(SegmentGroup group) {
+        if (depth == groups.length) {
+            SegmentGroup[] newGroups = new SegmentGroup[depth * 2];
+            int[] newPositions = new int[depth * 2];
+            System.arraycopy(groups, 0, newGroups, 0, depth);
+            System.arraycopy(positions, 0, newPositions, 0, depth);
+            groups = newGroups;
+            positions = newPositions;
+        }
+        groups[depth] = group;
+        positions[depth] = 0;
+        depth++;
+    }
+}
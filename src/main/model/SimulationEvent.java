@@ -0,0 +1,46 @@
+package model;
+
+import java.util.Arrays;
+
+// Represents a segment starting or ending in a RoutineSimulator run, at a time on the virtual clock
+public class SimulationEvent {
+
+    // Represents the kinds of events in a simulation
+    public enum Kind {
+        STARTED,
+        ENDED
+    }
+
+    private final Kind kind;
+    private final long time;
+    private final TimelineEntry entry;
+
+    // EFFECTS: Constructs an event of the given kind, at the given time (in milliseconds on the virtual clock),
+    //          for the given occurrence of a segment
+    SimulationEvent(Kind kind, long time, TimelineEntry entry) {
+        this.kind = kind;
+        this.time = time;
+        this.entry = entry;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    // EFFECTS: Returns the time (in milliseconds on the virtual clock) the event happened at, which includes
+    //          any time spent waiting for manual segments
+    public long getTime() {
+        return time;
+    }
+
+    // EFFECTS: Returns the occurrence of the segment which started or ended
+    public TimelineEntry getEntry() {
+        return entry;
+    }
+
+    // EFFECTS: Returns the event as a single line, e.g. "12000 ENDED work [2, 1]"
+    @Override
+    public String toString() {
+        return time + " " + kind + " " + entry.getName() + " " + Arrays.toString(entry.getCycles());
+    }
+}
@@ -0,0 +1,43 @@
+package model;
+
+import java.util.Collections;
+import java.util.List;
+
+// Represents the result of a RoutineSimulator run: every segment start and end in order, and where the
+// simulation stopped
+public class SimulationTrace {
+    private final List<SimulationEvent> events;
+    private final long endTime;
+    private final long ticks;
+    private final boolean complete;
+
+    // EFFECTS: Constructs a trace with the given events, the time the simulation stopped at, the number of
+    //          ticks of the virtual clock simulated, and whether the routine was completed
+    SimulationTrace(List<SimulationEvent> events, long endTime, long ticks, boolean complete) {
+        this.events = Collections.unmodifiableList(events);
+        this.endTime = endTime;
+        this.ticks = ticks;
+        this.complete = complete;
+    }
+
+    // EFFECTS: Returns all events, in the order they happened
+    public List<SimulationEvent> getEvents() {
+        return events;
+    }
+
+    // EFFECTS: Returns the time (in milliseconds on the virtual clock) the simulation stopped at
+    public long getEndTime() {
+        return endTime;
+    }
+
+    // EFFECTS: Returns the number of ticks of the virtual clock simulated
+    public long getTicks() {
+        return ticks;
+    }
+
+    // EFFECTS: Returns true if the routine was completed, false if the simulation stopped first (at the time
+    //          limit, or at a manual segment with no completion scripted for it)
+    public boolean isComplete() {
+        return complete;
+    }
+}
@@ -0,0 +1,42 @@
+package model;
+
+// Represents a stopwatch measuring the time between the ticks of an app from a Clock, in the whole milliseconds
+// a Routine is advanced by. The part of a millisecond left over on each tick is carried on to the next one
+// rather than dropped, so that the total time measured never drifts from the clock.
+public class Stopwatch {
+    private static final long NANOS_PER_MILLI = 1000000;
+
+    private final Clock clock;
+    private long lastReading;  // reading of the clock when the time was last measured up to
+    private long leftoverNanos; // time measured but not yet returned, always less than a millisecond
+
+    // EFFECTS: Constructs a stopwatch reading from the given clock, started at its current time
+    public Stopwatch(Clock clock) {
+        this.clock = clock;
+        restart();
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Starts measuring again from the current time of the clock
+    public void restart() {
+        lastReading = clock.nanoTime();
+        leftoverNanos = 0;
+    }
+
+    // EFFECTS: Returns the reading of the clock that the time returned by lap so far was measured up to, i.e. the
+    //          reading at the previous lap (or restart) less the leftover fraction of a millisecond
+    public long getLapStart() {
+        return lastReading - leftoverNanos;
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Returns the whole number of milliseconds passed since the previous lap (or restart), with any
+    //          leftover fraction of a millisecond counted towards the next lap
+    public long lap() {
+        long reading = clock.nanoTime();
+        long elapsed = Math.max(0, reading - lastReading) + leftoverNanos;
+        lastReading = reading;
+        leftoverNanos = elapsed % NANOS_PER_MILLI;
+        return elapsed / NANOS_PER_MILLI;
+    }
+}
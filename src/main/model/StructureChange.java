@@ -0,0 +1,8 @@
+package model;
+
+// Represents the kinds of changes to the structure of a Routine reported to a RoutineListener
+public enum StructureChange {
+    INSERTED,
+    REMOVED,
+    EDITED
+}
@@ -0,0 +1,11 @@
+package model;
+
+// Represents the monotonic clock of the JVM (System.nanoTime), used to time routines in the apps
+public class SystemClock implements Clock {
+
+    // EFFECTS: Returns the current reading of System.nanoTime
+    @Override
+    public long nanoTime() {
+        return System.nanoTime();
+    }
+}
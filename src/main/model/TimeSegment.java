@@ -1,8 +1,10 @@
 package model;
 
-import org.json.JSONObject;
+import persistence.JsonSink;
 import persistence.RoutineJsonKey;
 
+import java.io.IOException;
+
 import static java.lang.Math.min;
 
 // Represents a Segment that is completed after a certain amount of time
@@ -39,10 +41,14 @@ public class TimeSegment extends Segment {
     // EFFECTS: Adds the given milliseconds to the current elapsed time, but only until
     //          the elapsed time = the total time of the segment. Returns any unused milliseconds
     //          that were not added to the elapsed time (0 if all the milliseconds were used).
+    //          Notifies any containing groups if this completes the segment.
     public long addTime(long milliseconds) {
-        long newTime = currentTime + milliseconds;
-        currentTime = min(totalTime, newTime);
-        return newTime - currentTime;
+        boolean wasComplete = isComplete();
+        long unusedTime = runFor(milliseconds);
+        if (!wasComplete && isComplete()) {
+            notifyChanged(false);
+        }
+        return unusedTime;
     }
 
     // REQUIRES: newTotalTime >= 0
@@ -52,6 +58,7 @@ public class TimeSegment extends Segment {
     public void setTotalTime(long newTotalTime) {
         totalTime = newTotalTime;
         currentTime = min(currentTime, newTotalTime);
+        notifyChanged(true);
     }
 
     public long getCurrentTime() {
@@ -62,6 +69,30 @@ public class TimeSegment extends Segment {
         return totalTime;
     }
 
+    // --------------------------------------------------------------------------------------------
+    // Package-private methods
+    // --------------------------------------------------------------------------------------------
+
+    // REQUIRES: milliseconds >= 0
+    // MODIFIES: this
+    // EFFECTS: Same as addTime, but only passes the time added up to the containing groups, not the
+    //          segment completing (used by RoutinePlan, which moves onto the next cycles itself)
+    long runFor(long milliseconds) {
+        long newTime = currentTime + milliseconds;
+        long oldTime = currentTime;
+        currentTime = min(totalTime, newTime);
+        notifyTimeAdded(currentTime - oldTime);
+        return newTime - currentTime;
+    }
+
+    // REQUIRES: 0 <= newCurrentTime <= getTotalTime()
+    // MODIFIES: this
+    // EFFECTS: Sets the elapsed time without notifying any containing groups
+    void setCurrentTime(long newCurrentTime) {
+        currentTime = newCurrentTime;
+        invalidateElapsedTime();
+    }
+
     // --------------------------------------------------------------------------------------------
     // Segment methods
     // --------------------------------------------------------------------------------------------
@@ -78,11 +109,27 @@ public class TimeSegment extends Segment {
         return currentTime >= totalTime;
     }
 
+    @Override
+    public long getDuration() {
+        return totalTime;
+    }
+
+    @Override
+    public long getElapsedTime() {
+        return currentTime;
+    }
+
+    @Override
+    public long getManualCount() {
+        return 0;
+    }
+
     // MODIFIES: this
     // EFFECTS: Resets the segment to its initial state, i.e. no time elapsed
     @Override
-    public void reset() {
+    void resetProgress() {
         currentTime = 0;
+        invalidateElapsedTime();
     }
 
     // --------------------------------------------------------------------------------------------
@@ -90,12 +137,12 @@ public class TimeSegment extends Segment {
     // --------------------------------------------------------------------------------------------
 
     @Override
-    public JSONObject encoded() {
-        JSONObject object = new JSONObject();
-        object.put(RoutineJsonKey.TYPE.toString(), getType().name());
-        object.put(RoutineJsonKey.NAME.toString(), getName());
-        object.put(RoutineJsonKey.TOTAL_TIME.toString(), totalTime);
-        object.put(RoutineJsonKey.CURRENT_TIME.toString(), currentTime);
-        return object;
+    public void encodeTo(JsonSink sink) throws IOException {
+        sink.beginObject(4);
+        sink.member(RoutineJsonKey.CURRENT_TIME, currentTime);
+        sink.member(RoutineJsonKey.TOTAL_TIME, totalTime);
+        sink.member(RoutineJsonKey.NAME, getName());
+        sink.member(RoutineJsonKey.TYPE, getType().name());
+        sink.endObject();
     }
 }
@@ -0,0 +1,90 @@
+package model;
+
+import model.RoutineDefinition.Op;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+import static model.RoutineDefinition.saturatedAdd;
+
+// Represents a lazy walk through the unrolled timeline of a RoutineDefinition, i.e. every occurrence of each
+// time and manual segment in the order they are run, with the cycles of the RepeatSegments unrolled. Only the
+// current position is kept (the instruction, the time and the cycle at each depth), so the unrolled timeline
+// is never stored however many cycles there are.
+class Timeline implements Spliterator<TimelineEntry> {
+    private final RoutineDefinition definition;
+    private final int[] cycles; // current cycle of each RepeatSegment enclosing the current instruction, by depth
+    private int cursor;         // index of the next instruction to step through
+    private long time;          // start time of the next occurrence (in milliseconds)
+
+    // REQUIRES: cursor is a TIME or MANUAL instruction (or the number of instructions), cycles has the current
+    //           cycle of each RepeatSegment enclosing it and at least getMaxDepth() elements, time is its start time
+    // EFFECTS: Constructs a timeline of the given definition starting from the given position
+    Timeline(RoutineDefinition definition, int cursor, int[] cycles, long time) {
+        this.definition = definition;
+        this.cursor = cursor;
+        this.cycles = cycles;
+        this.time = time;
+    }
+
+    // EFFECTS: Constructs a timeline of the whole of the given definition
+    Timeline(RoutineDefinition definition) {
+        this(definition, 0, new int[definition.getMaxDepth()], 0);
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Steps through the instructions up to the next time or manual segment, and passes its occurrence
+    //          to the given action. Returns false if the end of the routine has been reached.
+    @Override
+    public boolean tryAdvance(Consumer<? super TimelineEntry> action) {
+        int length = definition.getLength();
+        while (cursor < length) {
+            Op op = definition.getOp(cursor);
+            switch (op) {
+                case REPEAT:
+                    cycles[definition.getDepth(cursor)] = 1;
+                    cursor++;
+                    break;
+                case END:
+                    int start = definition.getJump(cursor);
+                    int depth = definition.getDepth(start);
+                    if (cycles[depth] < definition.getTotalRepetitions(start)) {
+                        cycles[depth]++;
+                        cursor = start + 1;
+                    } else {
+                        cursor++;
+                    }
+                    break;
+                default:
+                    long endTime = saturatedAdd(time, definition.getTotalTime(cursor));
+                    int[] entryCycles = new int[definition.getDepth(cursor)];
+                    System.arraycopy(cycles, 0, entryCycles, 0, entryCycles.length);
+                    SegmentType type = op == Op.TIME ? SegmentType.TIME : SegmentType.MANUAL;
+                    String name = definition.getName(cursor);
+                    long startTime = time;
+                    time = endTime;
+                    cursor++;
+                    action.accept(new TimelineEntry(name, type, startTime, endTime, entryCycles));
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    // EFFECTS: Returns null, the timeline is only walked in order
+    @Override
+    public Spliterator<TimelineEntry> trySplit() {
+        return null;
+    }
+
+    // EFFECTS: Returns Long.MAX_VALUE, the number of occurrences left is not worked out in advance
+    @Override
+    public long estimateSize() {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | NONNULL | IMMUTABLE;
+    }
+}
@@ -0,0 +1,56 @@
+package model;
+
+// Represents one occurrence of a time or manual segment in the unrolled timeline of a routine, i.e. the
+// segment as run in one particular cycle of each RepeatSegment enclosing it
+public final class TimelineEntry {
+    private final String name;
+    private final SegmentType type;
+    private final long startTime;
+    private final long endTime;
+    private final int[] cycles;
+
+    // EFFECTS: Constructs an occurrence of the segment with the given name and type (TIME or MANUAL), running
+    //          between the given start and end times (in milliseconds, from the start of the routine), in the
+    //          given cycles of the enclosing RepeatSegments (outermost first)
+    TimelineEntry(String name, SegmentType type, long startTime, long endTime, int[] cycles) {
+        this.name = name;
+        this.type = type;
+        this.startTime = startTime;
+        this.endTime = endTime;
+        this.cycles = cycles;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // EFFECTS: Returns the type of the segment, either TIME or MANUAL
+    public SegmentType getType() {
+        return type;
+    }
+
+    // EFFECTS: Returns the time (in milliseconds, from the start of the routine) this occurrence starts at
+    public long getStartTime() {
+        return startTime;
+    }
+
+    // EFFECTS: Returns the time (in milliseconds, from the start of the routine) this occurrence ends at,
+    //          the same as the start time for a manual segment
+    public long getEndTime() {
+        return endTime;
+    }
+
+    public long getDuration() {
+        return endTime - startTime;
+    }
+
+    // EFFECTS: Returns the cycle of each RepeatSegment enclosing the segment in this occurrence, outermost first
+    public int[] getCycles() {
+        return cycles.clone();
+    }
+
+    // EFFECTS: Returns the depth of the segment, i.e. the number of RepeatSegments enclosing it
+    public int getDepth() {
+        return cycles.length;
+    }
+}
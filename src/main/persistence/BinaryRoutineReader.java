@@ -0,0 +1,213 @@
+package persistence;
+
+import model.*;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Represents a reader that reads files storing routines in the compact binary format (see BinaryRoutineWriter).
+// Each RepeatSegment is constructed once all of its children have been read, with the groups still being read
+// kept on an explicit stack instead of recursing.
+public class BinaryRoutineReader {
+    private static final int MIN_SEGMENT_SIZE = 2; // a tag and a name index
+
+    private final String sourceFilepath;
+
+    // EFFECTS: Constructs reader to read from source filepath (relative)
+    public BinaryRoutineReader(String sourceFilepath) {
+        this.sourceFilepath = sourceFilepath;
+    }
+
+    // EFFECTS: Reads routine from file and returns it;
+    //          throws IOException if an error occurs reading data from file
+    //          (i.e. does not conform to expected structure, or RoutineAnalyser finds errors in it).
+    //          Errors in the structure give the byte offset where they were found.
+    public Routine read() throws IOException {
+        return decode(ByteBuffer.wrap(Files.readAllBytes(Paths.get(sourceFilepath))));
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Package-private methods
+    // --------------------------------------------------------------------------------------------
+
+    // MODIFIES: buffer
+    // EFFECTS: Reads the routine encoded in the remaining bytes of the buffer and returns it;
+    //          throws IOException if they do not conform to expected structure, or RoutineAnalyser finds errors
+    //          in the routine. Errors in the structure give the offset (from the start of the buffer) where they
+    //          were found.
+    static Routine decode(ByteBuffer buffer) throws IOException {
+        Routine routine;
+        try {
+            routine = readRoutine(buffer);
+        } catch (BufferUnderflowException e) {
+            throw error("Unexpected end of file", buffer);
+        }
+
+        // Reject routines which could not be run correctly, e.g. with more cycles done than there are
+        RoutineAnalysis analysis = RoutineAnalyser.analyse(routine);
+        if (analysis.hasErrors()) {
+            throw new IOException(analysis.getIssues(AnalysisIssue.Severity.ERROR).get(0).getMessage());
+        }
+
+        return routine;
+    }
+
+    // EFFECTS: Returns true if the bytes start with the magic header of the binary format
+    static boolean hasMagic(byte[] header) {
+        return header.length >= BinaryRoutineWriter.MAGIC.length
+                && Arrays.equals(Arrays.copyOf(header, BinaryRoutineWriter.MAGIC.length), BinaryRoutineWriter.MAGIC);
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Private methods
+    // --------------------------------------------------------------------------------------------
+
+    // MODIFIES: buffer
+    // EFFECTS: Reads the whole file from the buffer and constructs the routine it encodes;
+    //          throws IOException if it does not conform to expected structure
+    private static Routine readRoutine(ByteBuffer buffer) throws IOException {
+        byte[] magic = new byte[BinaryRoutineWriter.MAGIC.length];
+        buffer.get(magic);
+        if (!hasMagic(magic)) {
+            throw error("Not a binary routine file", buffer);
+        }
+        int version = buffer.get();
+        if (version != BinaryRoutineWriter.VERSION) {
+            throw error("Unsupported binary routine version " + version, buffer);
+        }
+        String[] strings = readStrings(buffer);
+
+        List<OpenGroup> openGroups = new ArrayList<>();
+        openGroups.add(new OpenGroup(readString(buffer, strings), 0, 0, readCount(buffer)));
+
+        while (true) {
+            OpenGroup group = openGroups.get(openGroups.size() - 1);
+            if (group.children.size() < group.size) {
+                int tag = buffer.get();
+                String name = readString(buffer, strings);
+                if (tag == BinaryRoutineWriter.TAG_TIME) {
+                    group.children.add(new TimeSegment(name, readSigned(buffer), readSigned(buffer)));
+                } else if (tag == BinaryRoutineWriter.TAG_MANUAL || tag == BinaryRoutineWriter.TAG_MANUAL_DONE) {
+                    group.children.add(new ManualSegment(name, tag == BinaryRoutineWriter.TAG_MANUAL_DONE));
+                } else if (tag == BinaryRoutineWriter.TAG_REPEAT) {
+                    openGroups.add(new OpenGroup(name, readInt(buffer), readInt(buffer), readCount(buffer)));
+                } else {
+                    throw error("Invalid segment tag " + tag, buffer);
+                }
+            } else {
+                openGroups.remove(openGroups.size() - 1);
+                if (openGroups.isEmpty()) {
+                    if (buffer.hasRemaining()) {
+                        throw error("Unexpected data after the routine", buffer);
+                    }
+                    return constructRoutine(group);
+                }
+                openGroups.get(openGroups.size() - 1).children.add(
+                        new RepeatSegment(group.name, group.totalRepetitions, group.children,
+                                group.currentRepetitions));
+            }
+        }
+    }
+
+    // EFFECTS: Constructs the routine from its (complete) group
+    private static Routine constructRoutine(OpenGroup group) {
+        Routine routine = new Routine(group.name);
+        for (Segment segment : group.children) {
+            routine.addSegment(segment);
+        }
+        return routine;
+    }
+
+    // MODIFIES: buffer
+    // EFFECTS: Reads the string table
+    private static String[] readStrings(ByteBuffer buffer) throws IOException {
+        String[] strings = new String[readCount(buffer)];
+        for (int i = 0; i < strings.length; i++) {
+            byte[] bytes = new byte[readCount(buffer)];
+            buffer.get(bytes);
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return strings;
+    }
+
+    // MODIFIES: buffer
+    // EFFECTS: Reads an index into the string table and returns the string
+    private static String readString(ByteBuffer buffer, String[] strings) throws IOException {
+        long index = readVarint(buffer);
+        if (index < 0 || index >= strings.length) {
+            throw error("Invalid string index " + index, buffer);
+        }
+        return strings[(int) index];
+    }
+
+    // MODIFIES: buffer
+    // EFFECTS: Reads a count of strings, bytes or segments, which can't be more than the bytes left to read
+    private static int readCount(ByteBuffer buffer) throws IOException {
+        long count = readVarint(buffer);
+        if (count < 0 || count > buffer.remaining()) {
+            throw error("Invalid count " + count, buffer);
+        }
+        return (int) count;
+    }
+
+    // MODIFIES: buffer
+    // EFFECTS: Reads a zigzag encoded int
+    private static int readInt(ByteBuffer buffer) throws IOException {
+        long value = readSigned(buffer);
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw error("Number " + value + " is out of range", buffer);
+        }
+        return (int) value;
+    }
+
+    // MODIFIES: buffer
+    // EFFECTS: Reads a zigzag encoded long
+    private static long readSigned(ByteBuffer buffer) throws IOException {
+        long value = readVarint(buffer);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    // MODIFIES: buffer
+    // EFFECTS: Reads a varint (as an unsigned long)
+    private static long readVarint(ByteBuffer buffer) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw error("Varint is too long", buffer);
+    }
+
+    // EFFECTS: Returns an IOException with the given message and the offset of the byte just read
+    private static IOException error(String message, ByteBuffer buffer) {
+        return new IOException(message + " at byte " + Math.max(0, buffer.position() - 1));
+    }
+
+    // Represents a RepeatSegment (or the routine itself) whose children are still being read
+    private static class OpenGroup {
+        private final String name;
+        private final int totalRepetitions;
+        private final int currentRepetitions;
+        private final int size;               // number of children
+        private final List<Segment> children; // the children read so far
+
+        // EFFECTS: Constructs a group with the given fields and number of children, none read yet
+        private OpenGroup(String name, int totalRepetitions, int currentRepetitions, int size) {
+            this.name = name;
+            this.totalRepetitions = totalRepetitions;
+            this.currentRepetitions = currentRepetitions;
+            this.size = size;
+            children = new ArrayList<>();
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package persistence;
+
+import model.ManualSegment;
+import model.RepeatSegment;
+import model.Routine;
+import model.Segment;
+import model.SegmentGroup;
+import model.SegmentVisitor;
+import model.SegmentWalker;
+import model.TimeSegment;
+
+import java.io.BufferedOutputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Represents a writer that writes files storing routines in the compact binary format, which holds the same
+// fields as the JSON format (see RoutineJsonKey) without repeating keys or writing numbers as text:
+//
+//     magic "WTRB", byte version
+//     varint number of strings, then each as varint length and UTF-8 bytes (every distinct name, once)
+//     varint index of the routine name, varint number of segments
+//     each segment in order, children straight after their RepeatSegment:
+//         byte tag, varint index of the name, then by tag
+//         TIME:            zigzag totalTime, zigzag currentTime
+//         MANUAL(_DONE):   nothing (finished is in the tag)
+//         REPEAT:          zigzag totalRepetitions, zigzag currentRepetitions, varint number of children
+//
+// Varints hold 7 bits per byte, least significant first, with the high bit set on all but the last byte.
+// Signed numbers are zigzag encoded first so small negative values stay short and every value round trips.
+public class BinaryRoutineWriter {
+    static final byte[] MAGIC = {'W', 'T', 'R', 'B'};
+    static final int VERSION = 1;
+
+    static final int TAG_TIME = 1;
+    static final int TAG_MANUAL = 2;
+    static final int TAG_MANUAL_DONE = 3;
+    static final int TAG_REPEAT = 4;
+
+    private static final int BUFFER_SIZE = 8192;
+    private OutputStream out;
+    private final String destinationFilepath;
+
+    // EFFECTS: constructs writer to write to destination file
+    public BinaryRoutineWriter(String destinationFilepath) {
+        this.destinationFilepath = destinationFilepath;
+    }
+
+    // MODIFIES: this
+    // EFFECTS: opens writer; throws FileNotFoundException if destination file cannot be opened for writing
+    public void open() throws FileNotFoundException {
+        out = new BufferedOutputStream(new FileOutputStream(destinationFilepath), BUFFER_SIZE);
+    }
+
+    // MODIFIES: this
+    // EFFECTS: writes binary representation of routine to file; throws IOException if it cannot be written
+    public void write(Routine routine) throws IOException {
+        encode(routine, out);
+    }
+
+    // MODIFIES: this
+    // EFFECTS: closes writer, writing out anything still buffered; throws IOException if it cannot be written
+    public void close() throws IOException {
+        out.close();
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Package-private methods
+    // --------------------------------------------------------------------------------------------
+
+    // MODIFIES: out
+    // EFFECTS: Writes the binary representation of routine to the stream; throws IOException if it cannot be
+    //          written
+    static void encode(Routine routine, OutputStream out) throws IOException {
+        Map<String, Integer> strings = internNames(routine);
+
+        out.write(MAGIC);
+        out.write(VERSION);
+        writeVarint(out, strings.size());
+        for (String string : strings.keySet()) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            writeVarint(out, bytes.length);
+            out.write(bytes);
+        }
+
+        try {
+            SegmentWalker.walk(routine, segment -> {
+                try {
+                    writeSegment(out, segment, strings);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return true;
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Private methods
+    // --------------------------------------------------------------------------------------------
+
+    // EFFECTS: Returns every distinct name in the routine (including its own) mapped to its index in the string
+    //          table, in the order they are first found
+    private static Map<String, Integer> internNames(Routine routine) {
+        Map<String, Integer> strings = new LinkedHashMap<>();
+        SegmentWalker.walk(routine, segment -> {
+            strings.putIfAbsent(segment.getName(), strings.size());
+            return true;
+        });
+        return strings;
+    }
+
+    // EFFECTS: Writes the tag and fields of the segment (the name and number of segments for the routine)
+    private static void writeSegment(OutputStream out, Segment segment, Map<String, Integer> strings)
+            throws IOException {
+        if (segment instanceof Routine) {
+            writeVarint(out, strings.get(segment.getName()));
+            writeVarint(out, ((SegmentGroup) segment).getSegments().size());
+        } else if (segment instanceof TimeSegment) {
+            TimeSegment time = (TimeSegment) segment;
+            out.write(TAG_TIME);
+            writeVarint(out, strings.get(segment.getName()));
+            writeVarint(out, zigzag(time.getTotalTime()));
+            writeVarint(out, zigzag(time.getCurrentTime()));
+        } else if (segment instanceof ManualSegment) {
+            out.write(segment.isComplete() ? TAG_MANUAL_DONE : TAG_MANUAL);
+            writeVarint(out, strings.get(segment.getName()));
+        } else {
+            RepeatSegment repeat = (RepeatSegment) segment;
+            out.write(TAG_REPEAT);
+            writeVarint(out, strings.get(segment.getName()));
+            writeVarint(out, zigzag(repeat.getTotalRepetitions()));
+            writeVarint(out, zigzag(repeat.getCurrentRepetition()));
+            writeVarint(out, ((SegmentGroup) segment).getSegments().size());
+        }
+    }
+
+    // EFFECTS: Returns the value zigzag encoded (0, -1, 1, -2, ... as 0, 1, 2, 3, ...)
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    // EFFECTS: Writes the value (taken as unsigned) as a varint
+    private static void writeVarint(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+}
@@ -0,0 +1,10 @@
+package persistence;
+
+// Represents how hard RoutineSaver tries to make sure a saved routine survives a crash, from fastest to safest
+public enum Durability {
+    NONE,  // write straight over the file: a crash while saving can leave it cut off
+    FLUSH, // write a temporary file and move it over the file: a crash of the app leaves the old or the new
+           // routine, but one of the operating system may still lose what it had not written to disk yet
+    FSYNC  // as FLUSH, but force the temporary file (and then the directory) to disk: the old or the new
+           // routine survives a power cut too
+}
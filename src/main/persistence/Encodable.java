@@ -1,8 +1,11 @@
 package persistence;
 
-import org.json.JSONObject;
+import java.io.IOException;
 
 public interface Encodable {
-    // EFFECTS: Returns this as an encoded object (JSON)
-    JSONObject encoded();
+    // MODIFIES: sink
+    // EFFECTS: Writes this to the sink as an encoded object (JSON); throws IOException if the sink cannot be
+    //          written to. Members are written in the order org.json used to write them in, so files saved before
+    //          the writer was streamed stay byte-for-byte the same.
+    void encodeTo(JsonSink sink) throws IOException;
 }
@@ -0,0 +1,59 @@
+package persistence;
+
+import java.io.IOException;
+
+// Classes which implement JsonSink receive JSON text as a sequence of tokens (e.g. from Encodable.encodeTo), and
+// write or otherwise handle each one as it arrives instead of building the whole document first. The number of
+// members of each object and elements of each array is given when it begins, since the pretty layout of the
+// existing files depends on it.
+public interface JsonSink {
+    // REQUIRES: size >= 0, a value is expected (at the start, after a name, or in an array)
+    // EFFECTS: Begins an object which will have the given number of members
+    void beginObject(int size) throws IOException;
+
+    // REQUIRES: all members of the innermost object have been written
+    // EFFECTS: Ends the innermost object
+    void endObject() throws IOException;
+
+    // REQUIRES: size >= 0, a value is expected
+    // EFFECTS: Begins an array which will have the given number of elements
+    void beginArray(int size) throws IOException;
+
+    // REQUIRES: all elements of the innermost array have been written
+    // EFFECTS: Ends the innermost array
+    void endArray() throws IOException;
+
+    // REQUIRES: the innermost container is an object with members left to write
+    // EFFECTS: Writes the name of the next member; its value is written next
+    void name(String name) throws IOException;
+
+    // REQUIRES: a value is expected
+    // EFFECTS: Writes a string value
+    void value(String value) throws IOException;
+
+    // REQUIRES: a value is expected
+    // EFFECTS: Writes a number value
+    void value(long value) throws IOException;
+
+    // REQUIRES: a value is expected
+    // EFFECTS: Writes a boolean value
+    void value(boolean value) throws IOException;
+
+    // EFFECTS: Writes a member with the given name and value
+    default void member(RoutineJsonKey key, String value) throws IOException {
+        name(key.toString());
+        value(value);
+    }
+
+    // EFFECTS: Writes a member with the given name and value
+    default void member(RoutineJsonKey key, long value) throws IOException {
+        name(key.toString());
+        value(value);
+    }
+
+    // EFFECTS: Writes a member with the given name and value
+    default void member(RoutineJsonKey key, boolean value) throws IOException {
+        name(key.toString());
+        value(value);
+    }
+}
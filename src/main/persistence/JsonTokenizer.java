@@ -0,0 +1,462 @@
+package persistence;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Represents a pull parser splitting JSON text read from a channel into tokens, one at a time. Bytes are read
+// through a fixed size buffer, and only the token being read (a name, string or number) is kept, so the memory
+// used depends on how deeply the objects and arrays are nested, not on the size of the text. The grammar is
+// checked as the tokens are read; any error is reported as an IOException with the byte offset and line of the
+// offending character.
+final class JsonTokenizer {
+    private static final int BUFFER_SIZE = 8192;
+    private static final int MAX_NUMBER_LENGTH = 64;
+
+    // Represents the kinds of tokens read
+    enum Token {
+        BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, TRUE, FALSE, NULL, END_DOCUMENT
+    }
+
+    // Represents what the grammar allows next
+    private enum State {
+        VALUE,              // any value (at the start, after a name, or after a comma in an array)
+        VALUE_OR_END_ARRAY, // any value or the end of the array just started
+        NAME,               // a name (after a comma in an object)
+        NAME_OR_END_OBJECT, // a name or the end of the object just started
+        COMMA_OR_END,       // a comma or the end of the enclosing object or array
+        END_DOCUMENT        // nothing (after the top level value)
+    }
+
+    private final ReadableByteChannel channel;
+    private final ByteBuffer buffer;
+    private boolean endOfInput;
+
+    private long position;      // offset of the next byte to be read
+    private int line;           // line of the next byte to be read
+    private long tokenPosition; // offset of the first byte of the last token read
+    private int tokenLine;      // line of the first byte of the last token read
+
+    private State state;
+    private boolean[] inObject; // for each enclosing object or array, true if it is an object
+    private int depth;
+
+    private byte[] text;        // bytes of the last name, string or number read
+    private int textLength;
+
+    // EFFECTS: Constructs a tokenizer reading JSON text from the start of the given channel
+    JsonTokenizer(ReadableByteChannel channel) {
+        this.channel = channel;
+        buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        buffer.flip();
+        line = 1;
+        state = State.VALUE;
+        inObject = new boolean[16];
+        text = new byte[64];
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Package-private methods
+    // --------------------------------------------------------------------------------------------
+
+    // MODIFIES: this
+    // EFFECTS: Reads and returns the next token; throws IOException if the text cannot be read or the token is not
+    //          allowed by the grammar at this point
+    Token next() throws IOException {
+        skipWhitespace();
+        tokenPosition = position;
+        tokenLine = line;
+        int c = peek();
+
+        switch (state) {
+            case NAME_OR_END_OBJECT:
+                if (c == '}') {
+                    return end(Token.END_OBJECT);
+                }
+                return readName(c);
+            case NAME:
+                return readName(c);
+            case VALUE_OR_END_ARRAY:
+                if (c == ']') {
+                    return end(Token.END_ARRAY);
+                }
+                return readValue(c);
+            case COMMA_OR_END:
+                boolean object = inObject[depth - 1];
+                if (c == ',') {
+                    read();
+                    state = object ? State.NAME : State.VALUE;
+                    return next();
+                }
+                if (c == (object ? '}' : ']')) {
+                    return end(object ? Token.END_OBJECT : Token.END_ARRAY);
+                }
+                throw error(object ? "Expected ',' or '}'" : "Expected ',' or ']'");
+            case END_DOCUMENT:
+                if (c != -1) {
+                    throw error("Unexpected text after the end of the document");
+                }
+                return Token.END_DOCUMENT;
+            default:
+                return readValue(c);
+        }
+    }
+
+    // REQUIRES: the last token read was a NAME, STRING or NUMBER
+    // EFFECTS: Returns the text of the last token read
+    String getString() {
+        return new String(text, 0, textLength, StandardCharsets.UTF_8);
+    }
+
+    // REQUIRES: the last token read was a NUMBER
+    // EFFECTS: Returns the value of the last number read, with any fraction dropped; throws IOException if it is
+    //          too large for a long
+    long getLong() throws IOException {
+        String number = getString();
+        try {
+            if (number.indexOf('.') < 0 && number.indexOf('e') < 0 && number.indexOf('E') < 0) {
+                return Long.parseLong(number);
+            }
+            BigDecimal value = new BigDecimal(number);
+            return value.toBigInteger().longValueExact();
+        } catch (NumberFormatException | ArithmeticException e) {
+            throw errorAtToken("Number " + number + " is out of range");
+        }
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Skips the value starting with the given token (already read), including everything nested in it
+    void skipValue(Token token) throws IOException {
+        if (token != Token.BEGIN_OBJECT && token != Token.BEGIN_ARRAY) {
+            return;
+        }
+        int startDepth = depth - 1;
+        while (depth > startDepth) {
+            next();
+        }
+    }
+
+    // EFFECTS: Returns the byte offset of the first byte of the last token read
+    long getTokenPosition() {
+        return tokenPosition;
+    }
+
+    // EFFECTS: Returns the line of the first byte of the last token read
+    int getTokenLine() {
+        return tokenLine;
+    }
+
+    // EFFECTS: Returns an IOException with the given message and the position of the last token read
+    IOException errorAtToken(String message) {
+        return errorAt(message, tokenPosition, tokenLine);
+    }
+
+    // EFFECTS: Returns an IOException with the given message and position
+    static IOException errorAt(String message, long position, int line) {
+        return new IOException(message + " at byte " + position + " (line " + line + ")");
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Private methods
+    // --------------------------------------------------------------------------------------------
+
+    // MODIFIES: this
+    // EFFECTS: Reads a name and the colon after it, starting at the given character
+    private Token readName(int c) throws IOException {
+        if (c != '"') {
+            throw error("Expected a name");
+        }
+        readString();
+        skipWhitespace();
+        if (peek() != ':') {
+            throw error("Expected ':'");
+        }
+        read();
+        state = State.VALUE;
+        return Token.NAME;
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Reads a value starting at the given character
+    private Token readValue(int c) throws IOException {
+        switch (c) {
+            case '{':
+                read();
+                push(true);
+                state = State.NAME_OR_END_OBJECT;
+                return Token.BEGIN_OBJECT;
+            case '[':
+                read();
+                push(false);
+                state = State.VALUE_OR_END_ARRAY;
+                return Token.BEGIN_ARRAY;
+            case '"':
+                readString();
+                return afterValue(Token.STRING);
+            case 't':
+                readLiteral("true");
+                return afterValue(Token.TRUE);
+            case 'f':
+                readLiteral("false");
+                return afterValue(Token.FALSE);
+            case 'n':
+                readLiteral("null");
+                return afterValue(Token.NULL);
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    readNumber();
+                    return afterValue(Token.NUMBER);
+                }
+                throw error(c == -1 ? "Unexpected end of the document" : "Expected a value");
+        }
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Closes the innermost object or array, and returns the given token ending it
+    private Token end(Token token) throws IOException {
+        read();
+        depth--;
+        return afterValue(token);
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Moves on to what is allowed after a complete value, and returns the given token
+    private Token afterValue(Token token) {
+        state = depth == 0 ? State.END_DOCUMENT : State.COMMA_OR_END;
+        return token;
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Opens a new object (or array) inside the current one
+    private void push(boolean object) {
+        if (depth == inObject.length) {
+            inObject = Arrays.copyOf(inObject, depth * 2);
+        }
+        inObject[depth++] = object;
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Reads a string (starting at its opening quote) into text, decoding any escapes
+    private void readString() throws IOException {
+        read();
+        textLength = 0;
+        while (true) {
+            int c = read();
+            if (c == '"') {
+                return;
+            } else if (c == '\\') {
+                readEscape();
+            } else if (c == -1) {
+                throw error("Unterminated string");
+            } else if (c < 0x20) {
+                throw error("Control character in string");
+            } else {
+                appendText(c);
+            }
+        }
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Reads an escape sequence (after its backslash) and appends the character to text, in UTF-8
+    private void readEscape() throws IOException {
+        int c = read();
+        switch (c) {
+            case '"':
+            case '\\':
+            case '/':
+                appendText(c);
+                break;
+            case 'b':
+                appendText('\b');
+                break;
+            case 'f':
+                appendText('\f');
+                break;
+            case 'n':
+                appendText('\n');
+                break;
+            case 'r':
+                appendText('\r');
+                break;
+            case 't':
+                appendText('\t');
+                break;
+            case 'u':
+                appendCodePoint(readUnicodeEscape());
+                break;
+            default:
+                throw error("Invalid escape sequence");
+        }
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Reads the four hex digits of a \\u escape, and the low surrogate escape after it if it is a high
+    //          surrogate, and returns the code point
+    private int readUnicodeEscape() throws IOException {
+        int value = readHex();
+        if (Character.isHighSurrogate((char) value) && peek() == '\\') {
+            read();
+            if (read() != 'u') {
+                throw error("Expected a low surrogate escape");
+            }
+            int low = readHex();
+            if (Character.isLowSurrogate((char) low)) {
+                return Character.toCodePoint((char) value, (char) low);
+            }
+            appendCodePoint(value);
+            return low;
+        }
+        return value;
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Reads four hex digits and returns their value
+    private int readHex() throws IOException {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            int digit = Character.digit(read(), 16);
+            if (digit < 0) {
+                throw error("Invalid unicode escape");
+            }
+            value = value * 16 + digit;
+        }
+        return value;
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Reads a number into text, checking that it is well formed
+    private void readNumber() throws IOException {
+        textLength = 0;
+        if (peek() == '-') {
+            appendText(read());
+        }
+        if (!readDigits()) {
+            throw error("Expected a digit");
+        }
+        if (peek() == '.') {
+            appendText(read());
+            if (!readDigits()) {
+                throw error("Expected a digit");
+            }
+        }
+        if (peek() == 'e' || peek() == 'E') {
+            appendText(read());
+            if (peek() == '+' || peek() == '-') {
+                appendText(read());
+            }
+            if (!readDigits()) {
+                throw error("Expected a digit");
+            }
+        }
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Reads any digits into text, returns true if there was at least one
+    private boolean readDigits() throws IOException {
+        boolean any = false;
+        while (peek() >= '0' && peek() <= '9') {
+            if (textLength == MAX_NUMBER_LENGTH) {
+                throw error("Number is too long");
+            }
+            appendText(read());
+            any = true;
+        }
+        return any;
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Reads the given literal (true, false or null)
+    private void readLiteral(String literal) throws IOException {
+        for (int i = 0; i < literal.length(); i++) {
+            if (read() != literal.charAt(i)) {
+                throw errorAtToken("Expected " + literal);
+            }
+        }
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Skips spaces, tabs, carriage returns and newlines
+    private void skipWhitespace() throws IOException {
+        int c = peek();
+        while (c == ' ' || c == '\t' || c == '\r' || c == '\n') {
+            read();
+            c = peek();
+        }
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Appends the UTF-8 encoding of the given code point to text
+    private void appendCodePoint(int codePoint) {
+        if (codePoint < 0x80) {
+            appendText(codePoint);
+        } else if (codePoint < 0x800) {
+            appendText(0xC0 | (codePoint >> 6));
+            appendText(0x80 | (codePoint & 0x3F));
+        } else if (codePoint < 0x10000) {
+            appendText(0xE0 | (codePoint >> 12));
+            appendText(0x80 | ((codePoint >> 6) & 0x3F));
+            appendText(0x80 | (codePoint & 0x3F));
+        } else {
+            appendText(0xF0 | (codePoint >> 18));
+            appendText(0x80 | ((codePoint >> 12) & 0x3F));
+            appendText(0x80 | ((codePoint >> 6) & 0x3F));
+            appendText(0x80 | (codePoint & 0x3F));
+        }
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Appends the given byte to text
+    private void appendText(int b) {
+        if (textLength == text.length) {
+            text = Arrays.copyOf(text, textLength * 2);
+        }
+        text[textLength++] = (byte) b;
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Returns the next byte without consuming it, or -1 at the end of the input
+    private int peek() throws IOException {
+        if (!buffer.hasRemaining() && !fill()) {
+            return -1;
+        }
+        return buffer.get(buffer.position()) & 0xFF;
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Consumes and returns the next byte, or -1 at the end of the input
+    private int read() throws IOException {
+        if (!buffer.hasRemaining() && !fill()) {
+            return -1;
+        }
+        int b = buffer.get() & 0xFF;
+        position++;
+        if (b == '\n') {
+            line++;
+        }
+        return b;
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Reads more bytes from the channel into the (empty) buffer, returns false at the end of the input
+    private boolean fill() throws IOException {
+        while (!endOfInput) {
+            buffer.clear();
+            int read = channel.read(buffer);
+            buffer.flip();
+            if (read < 0) {
+                endOfInput = true;
+            } else if (read > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // EFFECTS: Returns an IOException with the given message and the position of the next byte
+    private IOException error(String message) {
+        return errorAt(message, position, line);
+    }
+}
@@ -0,0 +1,219 @@
+package persistence;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+// Represents a JsonSink writing JSON text to a character stream as the tokens arrive. The pretty layout is the
+// one org.json uses with an indent of four (and so that of every routine saved so far), including its
+// quirks: objects and arrays with exactly one member are opened and closed on the same line as it, and "</" is
+// written as "<\/". The compact layout has no whitespace at all. Only the containers still open are kept, so
+// the memory used depends on how deeply they are nested, not on the length of the text.
+public class JsonWriter implements JsonSink {
+    private static final int INDENT = 4;
+    private static final int INITIAL_DEPTH = 16;
+
+    private final Writer out;
+    private final boolean pretty;
+
+    private int[] sizes;         // number of members/elements of each open container, outermost first
+    private int[] written;       // number of members/elements written so far in each open container
+    private int[] indents;       // indent of the closing bracket of each open container
+    private boolean[] isObject;  // true if the open container is an object
+    private int depth;           // number of open containers
+    private boolean expectValue; // true after a name, until its value is written
+    private boolean started;     // true once the top level value has begun
+
+    // EFFECTS: Constructs a writer writing to the given stream, pretty (indented like the existing files) or
+    //          compact (no whitespace)
+    public JsonWriter(Writer out, boolean pretty) {
+        this.out = out;
+        this.pretty = pretty;
+        sizes = new int[INITIAL_DEPTH];
+        written = new int[INITIAL_DEPTH];
+        indents = new int[INITIAL_DEPTH];
+        isObject = new boolean[INITIAL_DEPTH];
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Public methods
+    // --------------------------------------------------------------------------------------------
+
+    @Override
+    public void beginObject(int size) throws IOException {
+        beginContainer(size, true, '{');
+    }
+
+    @Override
+    public void endObject() throws IOException {
+        endContainer(true, '}');
+    }
+
+    @Override
+    public void beginArray(int size) throws IOException {
+        beginContainer(size, false, '[');
+    }
+
+    @Override
+    public void endArray() throws IOException {
+        endContainer(false, ']');
+    }
+
+    @Override
+    public void name(String name) throws IOException {
+        if (depth == 0 || !isObject[depth - 1] || expectValue) {
+            throw new IllegalStateException("Name " + name + " is not allowed here");
+        }
+        nextEntry();
+        quote(name);
+        out.write(pretty ? ": " : ":");
+        expectValue = true;
+    }
+
+    @Override
+    public void value(String value) throws IOException {
+        beforeValue();
+        quote(value);
+    }
+
+    @Override
+    public void value(long value) throws IOException {
+        beforeValue();
+        out.write(Long.toString(value));
+    }
+
+    @Override
+    public void value(boolean value) throws IOException {
+        beforeValue();
+        out.write(value ? "true" : "false");
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Private methods
+    // --------------------------------------------------------------------------------------------
+
+    // MODIFIES: this
+    // EFFECTS: Writes the opening bracket of a new container with the given number of entries
+    private void beginContainer(int size, boolean object, char bracket) throws IOException {
+        int indent = depth == 0 ? 0 : contentIndent(depth - 1);
+        beforeValue();
+        out.write(bracket);
+
+        if (depth == sizes.length) {
+            sizes = Arrays.copyOf(sizes, depth * 2);
+            written = Arrays.copyOf(written, depth * 2);
+            indents = Arrays.copyOf(indents, depth * 2);
+            isObject = Arrays.copyOf(isObject, depth * 2);
+        }
+        sizes[depth] = size;
+        written[depth] = 0;
+        indents[depth] = indent;
+        isObject[depth] = object;
+        depth++;
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Writes the closing bracket of the innermost container, which must be complete
+    private void endContainer(boolean object, char bracket) throws IOException {
+        int top = depth - 1;
+        if (depth == 0 || isObject[top] != object || expectValue || written[top] != sizes[top]) {
+            throw new IllegalStateException("Cannot end " + (object ? "object" : "array") + " here");
+        }
+        if (pretty && sizes[top] > 1) {
+            newLine(indents[top]);
+        }
+        out.write(bracket);
+        depth--;
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Checks that a value is allowed next and writes what goes before it
+    private void beforeValue() throws IOException {
+        if (expectValue) {
+            expectValue = false;
+        } else if (depth > 0 && !isObject[depth - 1]) {
+            nextEntry();
+        } else if (depth > 0 || started) {
+            throw new IllegalStateException("A value is not allowed here");
+        }
+        started = true;
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Writes the separator before the next entry of the innermost container, and counts it
+    private void nextEntry() throws IOException {
+        int top = depth - 1;
+        if (written[top] == sizes[top]) {
+            throw new IllegalStateException("Container has more entries than its size");
+        }
+        if (written[top] > 0) {
+            out.write(',');
+        }
+        if (pretty && sizes[top] > 1) {
+            newLine(indents[top] + INDENT);
+        }
+        written[top]++;
+    }
+
+    // EFFECTS: Returns the indent of the entries of the open container at the given level (one entry stays
+    //          at the indent of the container itself)
+    private int contentIndent(int level) {
+        return pretty && sizes[level] > 1 ? indents[level] + INDENT : indents[level];
+    }
+
+    // EFFECTS: Starts a new line indented by the given number of spaces
+    private void newLine(int indent) throws IOException {
+        out.write('\n');
+        for (int i = 0; i < indent; i++) {
+            out.write(' ');
+        }
+    }
+
+    // EFFECTS: Writes the string in quotes, escaped the same way as org.json
+    private void quote(String string) throws IOException {
+        out.write('"');
+        char previous = 0;
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            switch (c) {
+                case '\\':
+                case '"':
+                    out.write('\\');
+                    out.write(c);
+                    break;
+                case '/':
+                    if (previous == '<') {
+                        out.write('\\');
+                    }
+                    out.write(c);
+                    break;
+                case '\b':
+                    out.write("\\b");
+                    break;
+                case '\t':
+                    out.write("\\t");
+                    break;
+                case '\n':
+                    out.write("\\n");
+                    break;
+                case '\f':
+                    out.write("\\f");
+                    break;
+                case '\r':
+                    out.write("\\r");
+                    break;
+                default:
+                    if (c < 0x20 || (c >= 0x80 && c < 0xa0) || (c >= 0x2000 && c < 0x2100)) {
+                        String hex = Integer.toHexString(c);
+                        out.write("\\u");
+                        out.write("0000", 0, 4 - hex.length());
+                        out.write(hex);
+                    } else {
+                        out.write(c);
+                    }
+            }
+            previous = c;
+        }
+        out.write('"');
+    }
+}
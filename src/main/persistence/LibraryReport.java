@@ -0,0 +1,69 @@
+package persistence;
+
+import model.AnalysisIssue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Represents the result of validating a library of saved routines with LibraryValidator: the report of each
+// routine, ordered by file, and totals over all of them. Totals too large for a long are kept at Long.MAX_VALUE.
+public class LibraryReport {
+    private final List<RoutineReport> reports;
+
+    // EFFECTS: Constructs a report of the library with the given routine reports, sorted by file
+    LibraryReport(List<RoutineReport> reports) {
+        List<RoutineReport> sorted = new ArrayList<>(reports);
+        sorted.sort((r1, r2) -> r1.getFile().compareTo(r2.getFile()));
+        this.reports = Collections.unmodifiableList(sorted);
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Public methods
+    // --------------------------------------------------------------------------------------------
+
+    // EFFECTS: Returns the report of every routine, ordered by file
+    public List<RoutineReport> getReports() {
+        return reports;
+    }
+
+    // EFFECTS: Returns the reports of the routines which could not be read, ordered by file
+    public List<RoutineReport> getFailures() {
+        List<RoutineReport> failures = new ArrayList<>();
+        for (RoutineReport report : reports) {
+            if (report.isFailed()) {
+                failures.add(report);
+            }
+        }
+        return failures;
+    }
+
+    // EFFECTS: Returns the reports of the routines with issues of the given severity, ordered by file
+    public List<RoutineReport> getReportsWithIssues(AnalysisIssue.Severity severity) {
+        List<RoutineReport> matching = new ArrayList<>();
+        for (RoutineReport report : reports) {
+            if (report.hasIssues(severity)) {
+                matching.add(report);
+            }
+        }
+        return matching;
+    }
+
+    // EFFECTS: Returns the total time (in milliseconds) of the simulated runs of all routines read
+    public long getTotalSimulatedTime() {
+        long total = 0;
+        for (RoutineReport report : reports) {
+            total = report.getSimulatedTime() > Long.MAX_VALUE - total
+                    ? Long.MAX_VALUE : total + report.getSimulatedTime();
+        }
+        return total;
+    }
+
+    // EFFECTS: Returns a short summary of the library, e.g. "3 routines, 1 failed, 2 with warnings, 5000ms total"
+    public String getSummary() {
+        return reports.size() + " routines, "
+                + getFailures().size() + " failed, "
+                + getReportsWithIssues(AnalysisIssue.Severity.WARNING).size() + " with warnings, "
+                + getTotalSimulatedTime() + "ms total";
+    }
+}
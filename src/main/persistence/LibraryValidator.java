@@ -0,0 +1,131 @@
+package persistence;
+
+import model.EventLog;
+import model.Routine;
+import model.RoutineAnalyser;
+import model.RoutineAnalysis;
+import model.RoutineSimulator;
+import model.SimulationTrace;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Represents a batch job which validates a whole library of saved routines, e.g. everything in data/savedroutines,
+// by reading, analysing and simulating each routine end to end. Routines are independent of each other, so the
+// files are split between the workers of a fork/join pool and each is validated on its own, with the events
+// logged while reading it kept out of the shared EventLog.
+public class LibraryValidator {
+    private static final int FILES_PER_TASK = 4; // split the files until each task has at most this many
+
+    private final ForkJoinPool pool;
+    private final long tickLength;
+    private final long manualDelay;
+
+    // REQUIRES: tickLength > 0, manualDelay >= 0
+    // EFFECTS: Constructs a validator running on the given pool, simulating each routine with a clock ticking
+    //          every tickLength milliseconds and completing each manual segment manualDelay milliseconds after
+    //          it is reached
+    public LibraryValidator(ForkJoinPool pool, long tickLength, long manualDelay) {
+        this.pool = pool;
+        this.tickLength = tickLength;
+        this.manualDelay = manualDelay;
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Public methods
+    // --------------------------------------------------------------------------------------------
+
+    // EFFECTS: Validates every routine (.json or .wtr file) directly in the given directory and returns the report;
+    //          throws IOException if the directory cannot be listed
+    public LibraryReport validateDirectory(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return validate(files.filter(file -> RoutineFormat.forExtension(file.getFileName().toString()) != null)
+                    .collect(Collectors.toList()));
+        }
+    }
+
+    // EFFECTS: Validates the routine in each of the given files and returns the report
+    public LibraryReport validate(List<Path> files) {
+        return new LibraryReport(pool.invoke(new ValidateTask(files, 0, files.size())));
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Package-private methods
+    // --------------------------------------------------------------------------------------------
+
+    // EFFECTS: Returns the routine saved in the given file, in whichever format it is in;
+    //          throws IOException if it cannot be read
+    Routine read(Path file) throws IOException {
+        return RoutineFormat.readAny(file.toString());
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Private methods
+    // --------------------------------------------------------------------------------------------
+
+    // EFFECTS: Reads, analyses and simulates the routine in the given file and returns its report. Any events
+    //          logged on this thread while doing so are kept out of the shared EventLog. A routine which cannot be
+    //          read, or which breaks the reader or simulator, gets a failed report rather than failing the library.
+    private RoutineReport validateFile(Path file) {
+        EventLog.getInstance().startIsolating();
+        try {
+            Routine routine = read(file);
+            RoutineAnalysis analysis = RoutineAnalyser.analyse(routine);
+
+            RoutineSimulator simulator = new RoutineSimulator(routine.getDefinition(), tickLength);
+            simulator.setManualDelay(manualDelay);
+            SimulationTrace trace = simulator.run(Long.MAX_VALUE);
+
+            return new RoutineReport(file, routine.getName(), analysis, trace.getEndTime(), trace.isComplete(),
+                    EventLog.getInstance().stopIsolating().size());
+        } catch (IOException e) {
+            return new RoutineReport(file, e.getMessage());
+        } catch (RuntimeException e) {
+            return new RoutineReport(file, "Unexpected error: " + e);
+        } finally {
+            EventLog.getInstance().stopIsolating();
+        }
+    }
+
+    // Represents the validation of a range of the files, split in half until it is small enough to do directly
+    private class ValidateTask extends RecursiveTask<List<RoutineReport>> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Path> files;
+        private final int from; // inclusive
+        private final int to;   // exclusive
+
+        // EFFECTS: Constructs a task validating the files from index from (inclusive) to index to (exclusive)
+        private ValidateTask(List<Path> files, int from, int to) {
+            this.files = files;
+            this.from = from;
+            this.to = to;
+        }
+
+        // EFFECTS: Returns the reports of the files in the range, in order
+        @Override
+        protected List<RoutineReport> compute() {
+            if (to - from <= FILES_PER_TASK) {
+                List<RoutineReport> reports = new ArrayList<>();
+                for (int i = from; i < to; i++) {
+                    reports.add(validateFile(files.get(i)));
+                }
+                return reports;
+            }
+
+            int middle = (from + to) >>> 1;
+            ValidateTask second = new ValidateTask(files, middle, to);
+            second.fork();
+            List<RoutineReport> reports = new ValidateTask(files, from, middle).compute();
+            reports.addAll(second.join());
+            return reports;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package persistence;
+
+import model.Routine;
+
+import java.io.IOException;
+
+// Represents a converter between the routine formats. Both formats hold exactly the same fields, so a routine
+// converted to binary and back is written out the same as before.
+public final class RoutineConverter {
+
+    // EFFECTS: Not instantiable
+    private RoutineConverter() {
+    }
+
+    // EFFECTS: Reads the routine in the source file (in whichever format it is in) and writes it to the destination
+    //          file in the format of its extension; throws IOException if the source cannot be read, the
+    //          destination cannot be written, or the destination has no known extension
+    public static void convert(String sourceFilepath, String destinationFilepath) throws IOException {
+        RoutineFormat format = RoutineFormat.forExtension(destinationFilepath);
+        if (format == null) {
+            throw new IOException("Unknown routine format for " + destinationFilepath);
+        }
+        Routine routine = RoutineFormat.readAny(sourceFilepath);
+        format.write(routine, destinationFilepath);
+    }
+}
@@ -0,0 +1,119 @@
+package persistence;
+
+import model.Routine;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+// Represents the formats routines can be saved in: the (pretty) JSON format, and the compact binary format with
+// the same fields. Files are written in the format their extension asks for, and read in the format their first
+// bytes show, so a file renamed to the wrong extension can still be opened.
+public enum RoutineFormat {
+    JSON(".json") {
+        @Override
+        public Routine read(String filepath) throws IOException {
+            return new RoutineReader(filepath).read();
+        }
+
+        @Override
+        public void encode(Routine routine, OutputStream out) throws IOException {
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            routine.encodeTo(new JsonWriter(writer, true));
+            writer.flush();
+        }
+
+        @Override
+        public void write(Routine routine, String filepath) throws IOException {
+            RoutineWriter writer = new RoutineWriter(filepath);
+            writer.open();
+            try {
+                writer.write(routine);
+            } finally {
+                writer.close();
+            }
+        }
+    },
+    BINARY(".wtr") {
+        @Override
+        public Routine read(String filepath) throws IOException {
+            return new BinaryRoutineReader(filepath).read();
+        }
+
+        @Override
+        public void encode(Routine routine, OutputStream out) throws IOException {
+            BinaryRoutineWriter.encode(routine, out);
+        }
+
+        @Override
+        public void write(Routine routine, String filepath) throws IOException {
+            BinaryRoutineWriter writer = new BinaryRoutineWriter(filepath);
+            writer.open();
+            try {
+                writer.write(routine);
+            } finally {
+                writer.close();
+            }
+        }
+    };
+
+    private final String extension;
+
+    // EFFECTS: Constructs a format for files with the given extension
+    RoutineFormat(String extension) {
+        this.extension = extension;
+    }
+
+    // EFFECTS: Returns the extension of files in this format, e.g. ".json"
+    public String getExtension() {
+        return extension;
+    }
+
+    // EFFECTS: Reads routine from the file in this format and returns it;
+    //          throws IOException if an error occurs reading data from file
+    public abstract Routine read(String filepath) throws IOException;
+
+    // MODIFIES: out
+    // EFFECTS: Writes routine to the stream in this format (without closing it);
+    //          throws IOException if the stream cannot be written
+    public abstract void encode(Routine routine, OutputStream out) throws IOException;
+
+    // EFFECTS: Writes routine to the file in this format;
+    //          throws IOException if the file cannot be written
+    public abstract void write(Routine routine, String filepath) throws IOException;
+
+    // EFFECTS: Returns the format with the extension of the given file, or null if there is none
+    public static RoutineFormat forExtension(String filepath) {
+        for (RoutineFormat format : values()) {
+            if (filepath.endsWith(format.extension)) {
+                return format;
+            }
+        }
+        return null;
+    }
+
+    // EFFECTS: Returns the format of the routine in the given file, from its magic header (JSON if it has none);
+    //          throws IOException if the file cannot be read
+    public static RoutineFormat detect(String filepath) throws IOException {
+        byte[] header = new byte[BinaryRoutineWriter.MAGIC.length];
+        int length = 0;
+        try (InputStream in = Files.newInputStream(Paths.get(filepath))) {
+            int read;
+            while (length < header.length && (read = in.read(header, length, header.length - length)) > 0) {
+                length += read;
+            }
+        }
+        return length == header.length && BinaryRoutineReader.hasMagic(header) ? BINARY : JSON;
+    }
+
+    // EFFECTS: Reads routine from the file in whichever format it is in and returns it;
+    //          throws IOException if an error occurs reading data from file
+    public static Routine readAny(String filepath) throws IOException {
+        return detect(filepath).read(filepath);
+    }
+}
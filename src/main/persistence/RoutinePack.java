@@ -0,0 +1,470 @@
+package persistence;
+
+import model.Routine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Represents a library of routines kept in a single pack file, instead of one file per routine. The file is only
+// ever appended to: each change appends the routines it adds (each in the binary format, see BinaryRoutineWriter),
+// then a new index of every routine in the library, then a trailer pointing at that index:
+//
+//     magic "WTRL", int version
+//     records and indexes, in the order they were appended
+//     long offset of the latest index, int its length, magic "WTRI"
+//
+// An index holds an int number of entries, then for each (sorted by name) an int name length, the UTF-8 name,
+// long offset and int length of its record, long duration and int number of segments. Only the latest index is
+// read; the records and indexes it no longer refers to are garbage until the library is compacted. The records and
+// index of a change are forced to disk before its trailer is written, so if a change is cut off (e.g. by a crash)
+// the file ends with the trailer of the previous change, and is cut back to it when opened. The file is mapped into
+// memory, so listing the library only reads the index, and reading a routine only decodes its record. Not safe for
+// use by several threads (or processes) at once.
+public class RoutinePack {
+    private static final byte[] MAGIC = {'W', 'T', 'R', 'L'};
+    private static final byte[] TRAILER_MAGIC = {'W', 'T', 'R', 'I'};
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = MAGIC.length + Integer.BYTES;
+    private static final int TRAILER_SIZE = Long.BYTES + Integer.BYTES + TRAILER_MAGIC.length;
+    private static final int ENTRY_SIZE = Integer.BYTES + Long.BYTES + Integer.BYTES + Long.BYTES + Integer.BYTES;
+
+    private final Path file;
+    private FileChannel channel;
+    private MappedByteBuffer mapped;
+    private List<Entry> entries; // sorted by name
+    private long indexLength;
+
+    // EFFECTS: Constructs a pack for the given file, not opened yet
+    private RoutinePack(Path file) {
+        this.file = file;
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Public methods
+    // --------------------------------------------------------------------------------------------
+
+    // EFFECTS: Opens the library in the given pack file, creating an empty one if there is no such file;
+    //          throws IOException if it cannot be read or created, or is not a valid pack file
+    public static RoutinePack open(Path file) throws IOException {
+        RoutinePack pack = new RoutinePack(file);
+        pack.openChannel();
+        return pack;
+    }
+
+    // EFFECTS: Returns the entry of every routine in the library, sorted by name
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    // EFFECTS: Returns the entry of the routine with the given name, or null if there is none
+    public Entry find(String name) {
+        int index = search(entries, name);
+        return index >= 0 ? entries.get(index) : null;
+    }
+
+    // EFFECTS: Reads the routine with the given name and returns it;
+    //          throws IOException if there is no such routine or its record cannot be read
+    public Routine read(String name) throws IOException {
+        return BinaryRoutineReader.decode(record(findExisting(name)));
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Adds the routine to the library, replacing any routine with the same name;
+    //          throws IOException if it cannot be written
+    public void put(Routine routine) throws IOException {
+        putAll(Collections.singletonList(routine));
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Adds the routines to the library (in one change), each replacing any routine with the same name
+    //          (a later routine in the list replacing an earlier one); throws IOException if they cannot be written
+    public void putAll(List<Routine> routines) throws IOException {
+        List<Entry> newEntries = new ArrayList<>(entries);
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        long offset = channel.size();
+
+        for (Routine routine : routines) {
+            int start = records.size();
+            BinaryRoutineWriter.encode(routine, records);
+            Entry entry = new Entry(routine.getName(), offset + start, records.size() - start,
+                    routine.getDuration(), routine.getFlattenedSegments().size());
+
+            int index = search(newEntries, entry.name);
+            if (index >= 0) {
+                newEntries.set(index, entry);
+            } else {
+                newEntries.add(-index - 1, entry);
+            }
+        }
+        append(records.toByteArray(), newEntries);
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Removes the routine with the given name from the library, returns true if there was one;
+    //          throws IOException if the change cannot be written
+    public boolean remove(String name) throws IOException {
+        int index = search(entries, name);
+        if (index < 0) {
+            return false;
+        }
+        List<Entry> newEntries = new ArrayList<>(entries);
+        newEntries.remove(index);
+        append(new byte[0], newEntries);
+        return true;
+    }
+
+    // EFFECTS: Returns the size of the pack file in bytes
+    public long getFileSize() throws IOException {
+        return channel.size();
+    }
+
+    // EFFECTS: Returns the number of bytes in the pack file no longer used by the library (removed or replaced
+    //          routines, and old indexes), which compact() would free
+    public long getGarbageSize() throws IOException {
+        long live = HEADER_SIZE + indexLength + TRAILER_SIZE;
+        for (Entry entry : entries) {
+            live += entry.length;
+        }
+        return channel.size() - live;
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Rewrites the pack file with only the routines in the library, in order of name, replacing the old
+    //          file only once the new one is complete; throws IOException if it cannot be written, leaving the
+    //          library open on the old file
+    public void compact() throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            List<Entry> newEntries = new ArrayList<>();
+            try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                writeFully(out, header());
+                for (Entry entry : entries) {
+                    long offset = out.position();
+                    writeFully(out, record(entry));
+                    newEntries.add(new Entry(entry.name, offset, entry.length, entry.duration, entry.segmentCount));
+                }
+                writeFully(out, indexAndTrailer(out.position(), newEntries));
+                out.force(true);
+            }
+
+            close();
+            try {
+                RoutineSaver.move(temporary, file);
+            } finally {
+                openChannel();
+            }
+        } catch (IOException | RuntimeException e) {
+            try {
+                Files.deleteIfExists(temporary);
+            } catch (IOException other) {
+                e.addSuppressed(other);
+            }
+            throw e;
+        }
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Adds every routine (.json or .wtr file) directly in the given directory to the library, in one
+    //          change, and returns how many were added; throws IOException if the directory cannot be listed or
+    //          a routine cannot be read (nothing is added then)
+    public int importDirectory(Path directory) throws IOException {
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing.filter(path -> RoutineFormat.forExtension(path.getFileName().toString()) != null)
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+
+        List<Routine> routines = new ArrayList<>();
+        for (Path path : files) {
+            try {
+                routines.add(RoutineFormat.readAny(path.toString()));
+            } catch (IOException e) {
+                throw new IOException(path.getFileName() + ": " + e.getMessage(), e);
+            }
+        }
+        putAll(routines);
+        return routines.size();
+    }
+
+    // EFFECTS: Writes every routine in the library to its own file (named after it) in the given directory, in
+    //          the given format, and returns how many were written; throws IOException if one cannot be written
+    public int exportDirectory(Path directory, RoutineFormat format) throws IOException {
+        for (Entry entry : entries) {
+            Path destination = directory.resolve(entry.name + format.getExtension());
+            if (format == RoutineFormat.BINARY) {
+                ByteBuffer record = record(entry);
+                byte[] bytes = new byte[record.remaining()];
+                record.get(bytes);
+                Files.write(destination, bytes);
+            } else {
+                format.write(read(entry.name), destination.toString());
+            }
+        }
+        return entries.size();
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Closes the pack file; throws IOException if it cannot be closed
+    public void close() throws IOException {
+        mapped = null;
+        channel.close();
+    }
+
+    // Represents the entry of a routine in the index of the library: where its record is, and enough about the
+    // routine to list it without reading the record
+    public static final class Entry {
+        private final String name;
+        private final long offset;
+        private final int length;
+        private final long duration;
+        private final int segmentCount;
+
+        // EFFECTS: Constructs an entry for the record with the given offset and length
+        private Entry(String name, long offset, int length, long duration, int segmentCount) {
+            this.name = name;
+            this.offset = offset;
+            this.length = length;
+            this.duration = duration;
+            this.segmentCount = segmentCount;
+        }
+
+        // EFFECTS: Returns the name of the routine
+        public String getName() {
+            return name;
+        }
+
+        // EFFECTS: Returns the number of bytes the routine is encoded in
+        public int getLength() {
+            return length;
+        }
+
+        // EFFECTS: Returns the total duration of the routine (in milliseconds)
+        public long getDuration() {
+            return duration;
+        }
+
+        // EFFECTS: Returns the number of segments in the routine, including those in RepeatSegments
+        public int getSegmentCount() {
+            return segmentCount;
+        }
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Private methods
+    // --------------------------------------------------------------------------------------------
+
+    // MODIFIES: this
+    // EFFECTS: Opens the pack file (creating an empty one if there is none), maps it and reads its index
+    private void openChannel() throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            if (channel.size() == 0) {
+                writeFully(channel, header());
+                writeFully(channel, indexAndTrailer(HEADER_SIZE, Collections.emptyList()));
+            }
+            map();
+            readIndex();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Appends the records and then an index of the given entries, which become the library. The trailer
+    //          is only written once the rest is on disk, so it never points at an index which is not there.
+    private void append(byte[] records, List<Entry> newEntries) throws IOException {
+        long offset = channel.size();
+        channel.position(offset);
+        writeFully(channel, ByteBuffer.wrap(records));
+        ByteBuffer index = indexAndTrailer(offset + records.length, newEntries);
+        int trailer = index.limit() - TRAILER_SIZE;
+        index.limit(trailer);
+        writeFully(channel, index);
+        channel.force(false);
+        index.limit(trailer + TRAILER_SIZE);
+        writeFully(channel, index);
+        channel.force(false);
+
+        map();
+        entries = Collections.unmodifiableList(newEntries);
+        indexLength = trailer;
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Maps the whole pack file into memory
+    private void map() throws IOException {
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Library pack " + file + " is too large to map");
+        }
+        mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Checks the header and reads the latest index from the mapped file. If the last change was cut off,
+    //          searches back for the trailer of the last complete change and cuts the file back to it.
+    private void readIndex() throws IOException {
+        int size = mapped.capacity();
+        if (size < HEADER_SIZE + TRAILER_SIZE || !hasMagic(mapped, 0, MAGIC)) {
+            throw new IOException("Not a library pack file: " + file);
+        }
+        if (mapped.getInt(MAGIC.length) != VERSION) {
+            throw new IOException("Unsupported library pack version " + mapped.getInt(MAGIC.length));
+        }
+
+        for (int end = size; end >= HEADER_SIZE + TRAILER_SIZE; end--) {
+            if (hasMagic(mapped, end - TRAILER_MAGIC.length, TRAILER_MAGIC) && readIndexEndingAt(end)) {
+                if (end < size) {
+                    channel.truncate(end);
+                    channel.force(false);
+                    map();
+                }
+                return;
+            }
+        }
+        throw new IOException("No complete index in library pack " + file);
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Reads the index whose trailer ends at the given offset of the mapped file, and returns true;
+    //          returns false if there is no valid index there
+    private boolean readIndexEndingAt(int end) {
+        long indexOffset = mapped.getLong(end - TRAILER_SIZE);
+        int length = mapped.getInt(end - TRAILER_SIZE + Long.BYTES);
+        if (indexOffset < HEADER_SIZE || length < Integer.BYTES || indexOffset + length != end - TRAILER_SIZE) {
+            return false;
+        }
+
+        ByteBuffer index = slice((int) indexOffset, length);
+        try {
+            int count = index.getInt();
+            if (count < 0 || count > index.remaining() / ENTRY_SIZE) {
+                return false;
+            }
+            List<Entry> newEntries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                byte[] name = new byte[index.getInt()];
+                index.get(name);
+                Entry entry = new Entry(new String(name, StandardCharsets.UTF_8), index.getLong(), index.getInt(),
+                        index.getLong(), index.getInt());
+                if (entry.offset < HEADER_SIZE || entry.length < 0 || entry.offset + entry.length > indexOffset) {
+                    return false;
+                }
+                newEntries.add(entry);
+            }
+            if (index.hasRemaining()) {
+                return false;
+            }
+            entries = Collections.unmodifiableList(newEntries);
+            indexLength = length;
+            return true;
+        } catch (RuntimeException e) {
+            // BufferUnderflowException or NegativeArraySizeException from a damaged index
+            return false;
+        }
+    }
+
+    // EFFECTS: Returns the entry of the routine with the given name; throws IOException if there is none
+    private Entry findExisting(String name) throws IOException {
+        Entry entry = find(name);
+        if (entry == null) {
+            throw new IOException("No routine named " + name + " in library pack " + file);
+        }
+        return entry;
+    }
+
+    // EFFECTS: Returns the record of the entry, from the mapped file
+    private ByteBuffer record(Entry entry) {
+        return slice((int) entry.offset, entry.length);
+    }
+
+    // EFFECTS: Returns the given range of the mapped file, as a buffer of its own
+    private ByteBuffer slice(int offset, int length) {
+        ByteBuffer buffer = mapped.duplicate();
+        buffer.position(offset);
+        buffer.limit(offset + length);
+        return buffer.slice();
+    }
+
+    // EFFECTS: Returns the header of a pack file
+    private static ByteBuffer header() {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.put(MAGIC).putInt(VERSION);
+        header.flip();
+        return header;
+    }
+
+    // EFFECTS: Returns the index of the entries followed by the trailer, for an index written at the given offset
+    private static ByteBuffer indexAndTrailer(long offset, List<Entry> entries) {
+        List<byte[]> names = new ArrayList<>(entries.size());
+        int length = Integer.BYTES;
+        for (Entry entry : entries) {
+            byte[] name = entry.name.getBytes(StandardCharsets.UTF_8);
+            names.add(name);
+            length += ENTRY_SIZE + name.length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(length + TRAILER_SIZE);
+        buffer.putInt(entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            Entry entry = entries.get(i);
+            buffer.putInt(names.get(i).length).put(names.get(i));
+            buffer.putLong(entry.offset).putInt(entry.length).putLong(entry.duration).putInt(entry.segmentCount);
+        }
+        buffer.putLong(offset).putInt(length).put(TRAILER_MAGIC);
+        buffer.flip();
+        return buffer;
+    }
+
+    // EFFECTS: Returns the position of the entry with the given name in the sorted entries, or
+    //          (-(insertion point) - 1) if there is none
+    private static int search(List<Entry> entries, String name) {
+        int low = 0;
+        int high = entries.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = entries.get(middle).name.compareTo(name);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    // EFFECTS: Returns true if the buffer has the given magic bytes at the given offset
+    private static boolean hasMagic(ByteBuffer buffer, int offset, byte[] magic) {
+        byte[] bytes = new byte[magic.length];
+        for (int i = 0; i < magic.length; i++) {
+            bytes[i] = buffer.get(offset + i);
+        }
+        return Arrays.equals(bytes, magic);
+    }
+
+    // EFFECTS: Writes all remaining bytes of the buffer to the channel, at its position
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
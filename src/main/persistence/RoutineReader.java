@@ -1,19 +1,22 @@
 package persistence;
 
 import model.*;
-import org.json.JSONException;
-import org.json.JSONObject;
+import persistence.JsonTokenizer.Token;
 
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
+import java.nio.channels.FileChannel;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Stream;
 
 // Represents a reader that reads files to extract encoded (JSON) routines
 // Based directly from the examples given in JSONSerializationDemo
+//
+// The file is read as a stream of tokens (see JsonTokenizer) and each segment is constructed as soon as its object
+// ends, so neither the text nor a tree of JSON objects for the whole file is ever held. The objects still open are
+// kept on an explicit stack, so besides the routine itself the memory used depends only on how deeply the segments
+// are nested. Keys may appear in any order, and unknown keys are skipped.
 public class RoutineReader {
     private final String sourceFilepath;
 
@@ -24,69 +27,192 @@ public class RoutineReader {
 
     // EFFECTS: Reads routine from file and returns it;
     //          throws IOException if an error occurs reading data from file
-    //          (i.e. does not conform to expected structure)
+    //          (i.e. does not conform to expected structure, or RoutineAnalyser finds errors in it).
+    //          Errors in the structure give the byte offset and line where they were found.
     public Routine read() throws IOException {
-        try {
-            String jsonData = readFile(sourceFilepath);
-            JSONObject jsonObject = new JSONObject(jsonData);
+        Routine routine;
+        try (FileChannel channel = FileChannel.open(Paths.get(sourceFilepath), StandardOpenOption.READ)) {
+            routine = readRoutine(new JsonTokenizer(channel));
+        }
 
-            String name = jsonObject.getString(RoutineJsonKey.NAME.toString());
-            Routine routine = new Routine(name);
+        // Reject routines which could not be run correctly, e.g. with more cycles done than there are
+        RoutineAnalysis analysis = RoutineAnalyser.analyse(routine);
+        if (analysis.hasErrors()) {
+            throw new IOException(analysis.getIssues(AnalysisIssue.Severity.ERROR).get(0).getMessage());
+        }
 
-            for (Object object : jsonObject.getJSONArray(RoutineJsonKey.SEGMENTS.toString())) {
-                Segment segment = readSegmentFromJson((JSONObject) object);
-                routine.addSegment(segment);
-            }
+        return routine;
+    }
 
-            return routine;
-        } catch (JSONException e) {
-            // Catch JSONException and rethrow as IOException
-            throw new IOException(e.getMessage());
+    // --------------------------------------------------------------------------------------------
+    // Private methods
+    // --------------------------------------------------------------------------------------------
+
+    // MODIFIES: tokenizer
+    // EFFECTS: Reads the whole document from the tokenizer and constructs the routine it encodes, with each
+    //          segment constructed when its object ends;
+    //          throws IOException if the document does not conform to expected structure
+    private Routine readRoutine(JsonTokenizer tokenizer) throws IOException {
+        if (tokenizer.next() != Token.BEGIN_OBJECT) {
+            throw tokenizer.errorAtToken("Expected a routine object");
         }
-    }
+        List<OpenObject> openObjects = new ArrayList<>();
+        openObjects.add(new OpenObject(tokenizer, RoutineJsonKey.SEGMENTS));
 
-    // EFFECTS: Reads and constructs a Segment from the provided JSON object
-    //          throws IOException if an error occurs reading data from the object
-    //          (i.e. does not conform to expected structure)
-    private Segment readSegmentFromJson(JSONObject object) throws IOException {
-        try {
-            String name = object.getString(RoutineJsonKey.NAME.toString());
-            String typeString = object.getString(RoutineJsonKey.TYPE.toString());
-            SegmentType type = SegmentType.valueOf(typeString);
-
-            if (type == SegmentType.TIME) {
-                long totalTime = object.getLong(RoutineJsonKey.TOTAL_TIME.toString());
-                long currentTime = object.getLong(RoutineJsonKey.CURRENT_TIME.toString());
-                return new TimeSegment(name, totalTime, currentTime);
-            }
+        while (true) {
+            OpenObject object = openObjects.get(openObjects.size() - 1);
+            Token token = tokenizer.next();
 
-            if (type == SegmentType.MANUAL) {
-                boolean finished = object.getBoolean(RoutineJsonKey.FINISHED.toString());
-                return new ManualSegment(name, finished);
+            if (object.readingChildren) {
+                if (token == Token.BEGIN_OBJECT) {
+                    openObjects.add(new OpenObject(tokenizer, RoutineJsonKey.CHILDREN));
+                } else if (token == Token.END_ARRAY) {
+                    object.readingChildren = false;
+                } else {
+                    throw tokenizer.errorAtToken("Expected a segment object");
+                }
+            } else if (token == Token.NAME) {
+                readField(tokenizer, object);
+            } else {
+                openObjects.remove(openObjects.size() - 1);
+                if (openObjects.isEmpty()) {
+                    tokenizer.next();
+                    return constructRoutine(object);
+                }
+                openObjects.get(openObjects.size() - 1).children.add(constructSegment(object));
             }
+        }
+    }
+
+    // REQUIRES: the last token read from the tokenizer is the name of a field of the object
+    // MODIFIES: tokenizer, object
+    // EFFECTS: Reads the value of the field into the object, starting the array of its children if it is one;
+    //          throws IOException if the value is not of the expected type or the field was already read
+    private void readField(JsonTokenizer tokenizer, OpenObject object) throws IOException {
+        String key = tokenizer.getString();
+        Token token = tokenizer.next();
 
-            // Must be SegmentType.REPEAT since type is never null (would throw otherwise)
-            int totalRepetitions = object.getInt(RoutineJsonKey.TOTAL_REPETITIONS.toString());
-            int currentRepetitions = object.getInt(RoutineJsonKey.CURRENT_REPETITIONS.toString());
-            List<Segment> children = new ArrayList<>();
-            for (Object subObject : object.getJSONArray(RoutineJsonKey.CHILDREN.toString())) {
-                children.add(readSegmentFromJson((JSONObject) subObject));
+        if (key.equals(object.childrenKey.toString())) {
+            expect(tokenizer, token, Token.BEGIN_ARRAY, key);
+            object.readingChildren = true;
+            object.children = object.children == null ? new ArrayList<>() : duplicate(tokenizer, key);
+        } else if (key.equals(RoutineJsonKey.NAME.toString())) {
+            expect(tokenizer, token, Token.STRING, key);
+            object.name = object.name == null ? tokenizer.getString() : duplicate(tokenizer, key);
+        } else if (key.equals(RoutineJsonKey.TYPE.toString())) {
+            expect(tokenizer, token, Token.STRING, key);
+            object.type = object.type == null ? tokenizer.getString() : duplicate(tokenizer, key);
+        } else if (key.equals(RoutineJsonKey.TOTAL_TIME.toString())) {
+            object.totalTime = object.totalTime == null ? readLong(tokenizer, token, key) : duplicate(tokenizer, key);
+        } else if (key.equals(RoutineJsonKey.CURRENT_TIME.toString())) {
+            object.currentTime = object.currentTime == null
+                    ? readLong(tokenizer, token, key) : duplicate(tokenizer, key);
+        } else if (key.equals(RoutineJsonKey.TOTAL_REPETITIONS.toString())) {
+            object.totalRepetitions = object.totalRepetitions == null
+                    ? readInt(tokenizer, token, key) : duplicate(tokenizer, key);
+        } else if (key.equals(RoutineJsonKey.CURRENT_REPETITIONS.toString())) {
+            object.currentRepetitions = object.currentRepetitions == null
+                    ? readInt(tokenizer, token, key) : duplicate(tokenizer, key);
+        } else if (key.equals(RoutineJsonKey.FINISHED.toString())) {
+            if (token != Token.TRUE && token != Token.FALSE) {
+                throw tokenizer.errorAtToken("Expected a boolean for \"" + key + "\"");
             }
-            return new RepeatSegment(name, totalRepetitions, children, currentRepetitions);
-        } catch (Exception e) {
-            // Catch JSONException and IllegalArgumentException and rethrow as IOException
-            throw new IOException(e.getMessage());
+            object.finished = object.finished == null ? token == Token.TRUE : duplicate(tokenizer, key);
+        } else {
+            tokenizer.skipValue(token);
+        }
+    }
+
+    // EFFECTS: Constructs the routine from its object and its children;
+    //          throws IOException if it is missing its name or segments
+    private Routine constructRoutine(OpenObject object) throws IOException {
+        Routine routine = new Routine(require(object, object.name, RoutineJsonKey.NAME));
+        require(object, object.children, RoutineJsonKey.SEGMENTS);
+        for (Segment segment : object.children) {
+            routine.addSegment(segment);
+        }
+        return routine;
+    }
+
+    // EFFECTS: Constructs a TimeSegment, ManualSegment or RepeatSegment (with its children) from its object;
+    //          throws IOException if the type is not one of these or a field it needs is missing
+    private Segment constructSegment(OpenObject object) throws IOException {
+        String name = require(object, object.name, RoutineJsonKey.NAME);
+        String type = require(object, object.type, RoutineJsonKey.TYPE);
+
+        if (type.equals(SegmentType.TIME.name())) {
+            return new TimeSegment(name, require(object, object.totalTime, RoutineJsonKey.TOTAL_TIME),
+                    require(object, object.currentTime, RoutineJsonKey.CURRENT_TIME));
+        } else if (type.equals(SegmentType.MANUAL.name())) {
+            return new ManualSegment(name, require(object, object.finished, RoutineJsonKey.FINISHED));
+        } else if (type.equals(SegmentType.REPEAT.name())) {
+            return new RepeatSegment(name, require(object, object.totalRepetitions, RoutineJsonKey.TOTAL_REPETITIONS),
+                    require(object, object.children, RoutineJsonKey.CHILDREN),
+                    require(object, object.currentRepetitions, RoutineJsonKey.CURRENT_REPETITIONS));
+        }
+        throw JsonTokenizer.errorAt("Invalid segment type \"" + type + "\"", object.position, object.line);
+    }
+
+    // EFFECTS: Returns the value of the field, unless it is null (never read);
+    //          throws IOException naming the field and the object missing it
+    private static <T> T require(OpenObject object, T value, RoutineJsonKey key) throws IOException {
+        if (value == null) {
+            throw JsonTokenizer.errorAt("Missing \"" + key + "\" in object", object.position, object.line);
         }
+        return value;
     }
 
-    // EFFECTS: Reads source file as string and returns it
-    private String readFile(String source) throws IOException {
-        StringBuilder contentBuilder = new StringBuilder();
+    // EFFECTS: Throws IOException for a field read twice in the same object
+    private static <T> T duplicate(JsonTokenizer tokenizer, String key) throws IOException {
+        throw tokenizer.errorAtToken("Duplicate \"" + key + "\"");
+    }
 
-        try (Stream<String> stream = Files.lines(Paths.get(source), StandardCharsets.UTF_8)) {
-            stream.forEach(contentBuilder::append);
+    // EFFECTS: Throws IOException if the token (the value of the given field) is not the expected one
+    private static void expect(JsonTokenizer tokenizer, Token token, Token expected, String key) throws IOException {
+        if (token != expected) {
+            throw tokenizer.errorAtToken("Expected " + expected + " for \"" + key + "\", found " + token);
         }
+    }
 
-        return contentBuilder.toString();
+    // EFFECTS: Returns the number read as the value of the given field;
+    //          throws IOException if the token is not a number or is out of range
+    private static long readLong(JsonTokenizer tokenizer, Token token, String key) throws IOException {
+        expect(tokenizer, token, Token.NUMBER, key);
+        return tokenizer.getLong();
+    }
+
+    // EFFECTS: Returns the number read as the value of the given field;
+    //          throws IOException if the token is not a number or is out of range for an int
+    private static int readInt(JsonTokenizer tokenizer, Token token, String key) throws IOException {
+        long value = readLong(tokenizer, token, key);
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw tokenizer.errorAtToken("Number " + value + " is out of range");
+        }
+        return (int) value;
+    }
+
+    // Represents an encoded segment (or the routine itself) whose object is still being read: the fields read
+    // from it so far (null if not read yet) and the segments of its children constructed so far
+    private static class OpenObject {
+        private final RoutineJsonKey childrenKey; // SEGMENTS for the routine, CHILDREN for a segment
+        private final long position;              // byte offset where the object starts
+        private final int line;                   // line where the object starts
+
+        private String name;
+        private String type;
+        private Long totalTime;
+        private Long currentTime;
+        private Boolean finished;
+        private Integer totalRepetitions;
+        private Integer currentRepetitions;
+        private List<Segment> children;
+        private boolean readingChildren;          // true while inside the array of children
+
+        // EFFECTS: Constructs an object starting at the last token read, with nothing read from it yet
+        private OpenObject(JsonTokenizer tokenizer, RoutineJsonKey childrenKey) {
+            this.childrenKey = childrenKey;
+            position = tokenizer.getTokenPosition();
+            line = tokenizer.getTokenLine();
+        }
     }
 }
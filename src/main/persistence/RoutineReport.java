@@ -0,0 +1,103 @@
+package persistence;
+
+import model.AnalysisIssue;
+import model.RoutineAnalysis;
+
+import java.nio.file.Path;
+
+// Represents the result of validating a single saved routine with LibraryValidator: either the reason it could
+// not be read, or its analysis and how a simulated run of it went
+public class RoutineReport {
+    private final Path file;
+    private final String name;             // null if the routine could not be read
+    private final String failure;          // null if the routine was read
+    private final RoutineAnalysis analysis; // null if the routine could not be read
+    private final long simulatedTime;
+    private final boolean completed;
+    private final int eventCount;
+
+    // EFFECTS: Constructs a report of a routine which could not be read from the given file, for the given reason
+    RoutineReport(Path file, String failure) {
+        this(file, null, failure, null, 0, false, 0);
+    }
+
+    // EFFECTS: Constructs a report of the routine read from the given file, with its name and analysis, the time
+    //          a simulated run of it took, whether the run completed, and the number of events logged reading it
+    RoutineReport(Path file, String name, RoutineAnalysis analysis, long simulatedTime, boolean completed,
+                  int eventCount) {
+        this(file, name, null, analysis, simulatedTime, completed, eventCount);
+    }
+
+    // EFFECTS: Constructs a report with all the given fields
+    private RoutineReport(Path file, String name, String failure, RoutineAnalysis analysis, long simulatedTime,
+                          boolean completed, int eventCount) {
+        this.file = file;
+        this.name = name;
+        this.failure = failure;
+        this.analysis = analysis;
+        this.simulatedTime = simulatedTime;
+        this.completed = completed;
+        this.eventCount = eventCount;
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Public methods
+    // --------------------------------------------------------------------------------------------
+
+    // EFFECTS: Returns the file the routine was read from
+    public Path getFile() {
+        return file;
+    }
+
+    // EFFECTS: Returns the name of the routine, or null if it could not be read
+    public String getName() {
+        return name;
+    }
+
+    // EFFECTS: Returns true if the routine could not be read (i.e. the file is invalid, or the routine has errors)
+    public boolean isFailed() {
+        return failure != null;
+    }
+
+    // EFFECTS: Returns the reason the routine could not be read, or null if it was read
+    public String getFailure() {
+        return failure;
+    }
+
+    // EFFECTS: Returns the analysis of the routine, or null if it could not be read
+    public RoutineAnalysis getAnalysis() {
+        return analysis;
+    }
+
+    // EFFECTS: Returns true if the routine was read, and the analysis found issues with the given severity
+    public boolean hasIssues(AnalysisIssue.Severity severity) {
+        return analysis != null && !analysis.getIssues(severity).isEmpty();
+    }
+
+    // EFFECTS: Returns the time (in milliseconds) the simulated run of the routine took, including the time
+    //          spent waiting for manual segments, or 0 if it could not be read
+    public long getSimulatedTime() {
+        return simulatedTime;
+    }
+
+    // EFFECTS: Returns true if the simulated run of the routine completed
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    // EFFECTS: Returns the number of events logged while reading the routine, kept out of the shared EventLog
+    public int getEventCount() {
+        return eventCount;
+    }
+
+    // EFFECTS: Returns a single line summary of the report, e.g. "General.json: General (1000ms, 1 warnings)"
+    @Override
+    public String toString() {
+        if (isFailed()) {
+            return file.getFileName() + ": FAILED " + failure;
+        }
+        return file.getFileName() + ": " + name + " (" + simulatedTime + "ms"
+                + (completed ? "" : ", incomplete")
+                + ", " + analysis.getIssues(AnalysisIssue.Severity.WARNING).size() + " warnings)";
+    }
+}
@@ -0,0 +1,196 @@
+package persistence;
+
+import model.Routine;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Represents the way routines are saved to files, so that a crash or a full disk while saving never destroys
+// the routine already saved. Unless the durability is NONE, the routine is written to a temporary file next to
+// the destination, (with FSYNC) forced to disk, and only then moved over the destination in one step, so the
+// destination always holds either the old or the new routine in full. The last few versions saved can also be
+// kept as backups next to the destination ("name.json.1" the newest); they are only rotated once the new routine
+// has been saved.
+public class RoutineSaver {
+    private static final int BUFFER_SIZE = 8192;
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    private final Durability durability;
+    private final int backups;
+
+    // REQUIRES: backups >= 0
+    // EFFECTS: Constructs a saver with the given durability, keeping the given number of previous versions of each
+    //          file as backups
+    public RoutineSaver(Durability durability, int backups) {
+        this.durability = durability;
+        this.backups = backups;
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Public methods
+    // --------------------------------------------------------------------------------------------
+
+    // EFFECTS: Returns the durability of each save
+    public Durability getDurability() {
+        return durability;
+    }
+
+    // MODIFIES: destination file
+    // EFFECTS: Saves the routine to the destination file in the format of its extension (JSON if it has none).
+    //          Throws IOException if it cannot be saved, e.g. the directory does not exist or the disk is full;
+    //          unless the durability is NONE the destination is then left as it was.
+    public void save(Routine routine, Path destination) throws IOException {
+        RoutineFormat format = RoutineFormat.forExtension(destination.getFileName().toString());
+        save(routine, destination, format == null ? RoutineFormat.JSON : format);
+    }
+
+    // MODIFIES: destination file
+    // EFFECTS: Saves the routine to the destination file in the given format, as above
+    public void save(Routine routine, Path destination, RoutineFormat format) throws IOException {
+        Path previous = keepPrevious(destination);
+        try {
+            if (durability == Durability.NONE) {
+                try (FileChannel channel = FileChannel.open(destination, StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    writeTo(channel, routine, format);
+                }
+            } else {
+                replace(routine, destination, format);
+            }
+            if (previous != null) {
+                rotateBackups(destination, previous);
+            }
+        } catch (IOException | RuntimeException e) {
+            if (previous != null) {
+                Files.deleteIfExists(previous);
+            }
+            throw e;
+        }
+    }
+
+    // EFFECTS: Returns the path of the given backup (1 the newest) of the destination file
+    public static Path backupOf(Path destination, int backup) {
+        return destination.resolveSibling(destination.getFileName() + "." + backup);
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Package-private methods
+    // --------------------------------------------------------------------------------------------
+
+    // MODIFIES: destination file
+    // EFFECTS: Moves the temporary file over the destination, in one step if the file system allows it
+    static void move(Path temporary, Path destination) throws IOException {
+        try {
+            Files.move(temporary, destination, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, destination, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Private methods
+    // --------------------------------------------------------------------------------------------
+
+    // MODIFIES: destination file
+    // EFFECTS: Writes the routine to a new temporary file next to the destination, with the same permissions as
+    //          the destination (or the default ones if it is new), and moves it over the destination
+    private void replace(Routine routine, Path destination, RoutineFormat format) throws IOException {
+        Path temporary = temporaryFor(destination);
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.WRITE)) {
+                copyPermissions(destination, temporary);
+                writeTo(channel, routine, format);
+                if (durability == Durability.FSYNC) {
+                    channel.force(true);
+                }
+            }
+            move(temporary, destination);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+
+        if (durability == Durability.FSYNC) {
+            forceDirectory(destination.toAbsolutePath().getParent());
+        }
+    }
+
+    // MODIFIES: channel
+    // EFFECTS: Writes the routine to the channel in the given format, through a buffer
+    private static void writeTo(FileChannel channel, Routine routine, RoutineFormat format) throws IOException {
+        OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+        format.encode(routine, out);
+        out.flush();
+    }
+
+    // MODIFIES: this file system
+    // EFFECTS: If backups are kept and the destination file exists, keeps its current contents under a new
+    //          temporary name and returns it, otherwise returns null. The contents are hard linked where possible,
+    //          as the destination is replaced rather than written over, and copied otherwise.
+    private Path keepPrevious(Path destination) throws IOException {
+        if (backups == 0 || !Files.exists(destination)) {
+            return null;
+        }
+        Path previous = temporaryFor(destination);
+        if (durability != Durability.NONE) {
+            try {
+                return Files.createLink(previous, destination);
+            } catch (IOException | UnsupportedOperationException e) {
+                // Hard links not supported here, copy it instead
+            }
+        }
+        return Files.copy(destination, previous, StandardCopyOption.COPY_ATTRIBUTES);
+    }
+
+    // MODIFIES: backups of the destination file
+    // EFFECTS: Makes the previous contents of the destination file the newest backup, shifting the older backups
+    //          along and dropping the oldest. Only done once the new routine is saved, so a failed save leaves the
+    //          backups as they were.
+    private void rotateBackups(Path destination, Path previous) throws IOException {
+        Files.deleteIfExists(backupOf(destination, backups));
+        for (int backup = backups - 1; backup >= 1; backup--) {
+            Path older = backupOf(destination, backup);
+            if (Files.exists(older)) {
+                Files.move(older, backupOf(destination, backup + 1));
+            }
+        }
+        Files.move(previous, backupOf(destination, 1), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // EFFECTS: Returns a new, unused temporary path next to the destination file, hidden where dot files are
+    private static Path temporaryFor(Path destination) {
+        String unique = Long.toUnsignedString(ThreadLocalRandom.current().nextLong(), Character.MAX_RADIX);
+        return destination.resolveSibling("." + destination.getFileName() + "." + unique + TEMPORARY_SUFFIX);
+    }
+
+    // MODIFIES: file
+    // EFFECTS: Gives the file the same permissions as the original file, if it exists and the file system has
+    //          POSIX permissions; otherwise the file keeps the permissions it was created with
+    private static void copyPermissions(Path original, Path file) {
+        try {
+            Files.setPosixFilePermissions(file, Files.getPosixFilePermissions(original));
+        } catch (IOException | UnsupportedOperationException e) {
+            // No original file, or no POSIX permissions here
+        }
+    }
+
+    // EFFECTS: Forces the directory entry of the moved file to disk, where the platform allows opening a directory
+    //          (it does not on Windows, where the move is already durable)
+    private static void forceDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Not supported on this platform
+        }
+    }
+}
@@ -1,46 +1,55 @@
 package persistence;
 
 import model.Routine;
-import org.json.JSONObject;
 
+import java.io.BufferedWriter;
 import java.io.FileNotFoundException;
-import java.io.PrintWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 
 // Represents a writer that writes constructs files to store encoded (JSON) routines
 // Based directly from the examples given in JSONSerializationDemo
+//
+// The routine is encoded straight into a buffered stream to the file with Encodable.encodeTo, so no JSON objects
+// or text for the whole routine are built first. Pretty files are laid out exactly as they always have been.
 public class RoutineWriter {
-    private static final int TAB = 4;
-    private PrintWriter writer;
+    private static final int BUFFER_SIZE = 8192;
+    private Writer writer;
     private final String destinationFilepath;
+    private final boolean pretty;
 
-    // EFFECTS: constructs writer to write to destination file
+    // EFFECTS: constructs writer to write to destination file, indented for reading
     public RoutineWriter(String destinationFilepath) {
+        this(destinationFilepath, true);
+    }
+
+    // EFFECTS: constructs writer to write to destination file, indented for reading (pretty) or without any
+    //          whitespace (compact)
+    public RoutineWriter(String destinationFilepath, boolean pretty) {
         this.destinationFilepath = destinationFilepath;
+        this.pretty = pretty;
     }
 
     // MODIFIES: this
     // EFFECTS: opens writer; throws FileNotFoundException if destination file cannot
     // be opened for writing
     public void open() throws FileNotFoundException {
-        writer = new PrintWriter(destinationFilepath);
+        writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(destinationFilepath),
+                StandardCharsets.UTF_8), BUFFER_SIZE);
     }
 
     // MODIFIES: this
-    // EFFECTS: writes JSON representation of workroom to file
-    public void write(Routine routine) {
-        JSONObject json = routine.encoded();
-        saveToFile(json.toString(TAB));
+    // EFFECTS: writes JSON representation of routine to file; throws IOException if it cannot be written
+    public void write(Routine routine) throws IOException {
+        routine.encodeTo(new JsonWriter(writer, pretty));
     }
 
     // MODIFIES: this
-    // EFFECTS: closes writer
-    public void close() {
+    // EFFECTS: closes writer, writing out anything still buffered; throws IOException if it cannot be written
+    public void close() throws IOException {
         writer.close();
     }
-
-    // MODIFIES: this
-    // EFFECTS: writes string to file
-    private void saveToFile(String json) {
-        writer.print(json);
-    }
 }
@@ -0,0 +1,148 @@
+package ui;
+
+import model.Clock;
+import model.ProgressSnapshot;
+import model.Routine;
+import model.RoutineRunner;
+import model.SystemClock;
+
+import javax.swing.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Runs a Routine shown on the Swing event thread, with the timing done by a RoutineRunner on its own thread.
+// The runner advances its session exactly at each segment boundary (and at an optional display refresh rate)
+// however busy the event thread is. Its snapshots are handed to the event thread and restored into the routine,
+// skipping any that were replaced before the event thread got to them. Changes to the progress made through this
+// timer while running are sent to the runner as commands, and only show up in the routine with the next snapshot.
+public class BoundaryTimer {
+    private final Routine routine;
+    private final Clock clock;
+    private final ProgressListener listener;
+    private final AtomicReference<ProgressSnapshot> pending; // latest snapshot not yet restored, null if none
+
+    private int refreshesPerSecond;
+    private boolean refreshing;
+    private RoutineRunner runner; // null while stopped
+    private long lastCommand;     // sequence number of the last command sent to the runner
+
+    // EFFECTS: Constructs a stopped timer for the given routine on the system clock, refreshing the display the
+    //          given number of times per second while running (0 to only update at segment boundaries). The
+    //          listener is told about every update to the routine.
+    public BoundaryTimer(Routine routine, int refreshesPerSecond, ProgressListener listener) {
+        this(routine, refreshesPerSecond, listener, new SystemClock());
+    }
+
+    // EFFECTS: Constructs a stopped timer as above, timed from the given clock
+    public BoundaryTimer(Routine routine, int refreshesPerSecond, ProgressListener listener, Clock clock) {
+        this.routine = routine;
+        this.clock = clock;
+        this.listener = listener;
+        this.refreshesPerSecond = refreshesPerSecond;
+        pending = new AtomicReference<>();
+        refreshing = true;
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Public methods
+    // --------------------------------------------------------------------------------------------
+
+    // MODIFIES: this
+    // EFFECTS: Starts running the routine from its current progress (and current structure), timed from now
+    public void start() {
+        if (runner != null) {
+            return;
+        }
+        runner = new RoutineRunner(routine.getDefinition(), clock, refreshing ? refreshesPerSecond : 0,
+                this::publish);
+        lastCommand = runner.restore(routine.checkpoint());
+        runner.start();
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Stops running the routine, bringing it up to the final progress of the runner. The time until it
+    //          is started again is not counted.
+    public void stop() {
+        if (runner == null) {
+            return;
+        }
+        try {
+            ProgressSnapshot last = runner.stop();
+            pending.set(null);
+            if (last != null) {
+                apply(last);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        runner = null;
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Turns the display refresh on or off (e.g. off while the window is minimised). The routine is still
+    //          updated at every segment boundary either way.
+    public void setRefreshing(boolean refreshing) {
+        this.refreshing = refreshing;
+        if (runner != null) {
+            runner.setRefreshRate(refreshing ? refreshesPerSecond : 0);
+        }
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Completes the current segment if it is a ManualSegment, through the runner if running
+    public void completeManual() {
+        if (runner != null) {
+            lastCommand = runner.completeManual();
+        } else {
+            listener.progressed(routine.advance().isRoutineCompleted());
+        }
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Moves the routine back to the start, through the runner if running
+    public void reset() {
+        routine.reset();
+        if (runner != null) {
+            lastCommand = runner.reset();
+        }
+        listener.progressed(false);
+    }
+
+    // Objects which implement ProgressListener can be passed into the constructor for
+    // BoundaryTimer and are told (on the event thread) every time the routine is updated.
+    public interface ProgressListener {
+        void progressed(boolean routineCompleted);
+    }
+
+    // --------------------------------------------------------------------------------------------
+    // Private methods
+    // --------------------------------------------------------------------------------------------
+
+    // EFFECTS: Called on the timing thread with each new snapshot. Hands it to the event thread, unless one is
+    //          already on its way there, in which case that one is just replaced.
+    private void publish(ProgressSnapshot snapshot) {
+        if (pending.getAndSet(snapshot) == null) {
+            SwingUtilities.invokeLater(this::applyPending);
+        }
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Restores the latest snapshot into the routine, on the event thread
+    private void applyPending() {
+        ProgressSnapshot snapshot = pending.getAndSet(null);
+        if (snapshot != null && runner != null) {
+            apply(snapshot);
+        }
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Restores the snapshot into the routine and tells the listener, unless it was taken before the
+    //          last command sent was run (the routine may already have been changed past it)
+    private void apply(ProgressSnapshot snapshot) {
+        if (snapshot.getCommandsRun() < lastCommand) {
+            return;
+        }
+        boolean wasComplete = routine.isComplete();
+        routine.restore(snapshot.getCheckpoint());
+        listener.progressed(!wasComplete && routine.isComplete());
+    }
+}
@@ -9,26 +9,29 @@ import com.googlecode.lanterna.input.KeyType;
 import com.googlecode.lanterna.screen.Screen;
 import com.googlecode.lanterna.terminal.DefaultTerminalFactory;
 import model.*;
+import persistence.Durability;
 import persistence.RoutineReader;
-import persistence.RoutineWriter;
+import persistence.RoutineSaver;
 
-import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 // Represents a terminal-based app for WorkoutTimer
-public class TerminalWorkoutTimerApp {
+// Listens to the active routine so that the screen is only rendered again when something has changed
+public class TerminalWorkoutTimerApp implements RoutineListener {
     private static final String JSON_STORE = "./data/routine.json";
     private static final int ESTIMATED_TICKS_PER_SECOND = 30;
     private static final TextColor COLOUR_ERROR = new TextColor.RGB(237, 64, 78);
     private static final TextColor COLOUR_COMPLETE = new TextColor.RGB(143, 242, 107);
     private static final TextColor COLOUR_ACTIVE = new TextColor.RGB(50, 200, 235);
 
-    private final RoutineWriter writer;
+    private final RoutineSaver saver;
     private final RoutineReader reader;
+    private final Clock clock;
 
     private Screen screen;
     private TerminalSize terminalSize;
@@ -36,6 +39,7 @@ public class TerminalWorkoutTimerApp {
     private String applicationState; // One of: "main_menu", "routine", "running"
     private Routine activeRoutine; // null during the main_menu, set during routine and running states
     private boolean displaySegmentIndices = false;
+    private boolean screenOutOfDate = true; // true when the screen has to be rendered again on the next tick
 
     // NOT FOR USE BY ANY FUNCTION EXCEPT getCommandWithRenderDisplay, renderCommandPromptAndInput
     private String commandPrompt; // Can have newline characters, ALWAYS null unless actively getting input from user
@@ -46,10 +50,16 @@ public class TerminalWorkoutTimerApp {
     // Public methods
     // --------------------------------------------------------------------------------------------
 
-    // EFFECTS: Initializes reader/writer for application
+    // EFFECTS: Initializes reader/saver for application, timed by the system clock
     public TerminalWorkoutTimerApp() {
-        writer = new RoutineWriter(JSON_STORE);
+        this(new SystemClock());
+    }
+
+    // EFFECTS: Initializes reader/saver for application, timed by the given clock
+    public TerminalWorkoutTimerApp(Clock clock) {
+        saver = new RoutineSaver(Durability.FSYNC, 0);
         reader = new RoutineReader(JSON_STORE);
+        this.clock = clock;
     }
 
     // MODIFIES: this
@@ -77,13 +87,9 @@ public class TerminalWorkoutTimerApp {
     //          function returns false.
     private void applicationLoop() throws IOException, InterruptedException {
         long estimatedMilliseconds = 1000L / ESTIMATED_TICKS_PER_SECOND;
+        Stopwatch stopwatch = new Stopwatch(clock);
 
-        long prevTime = 0;
-        long diffTime = estimatedMilliseconds;
-
-        while (tick(diffTime)) {
-            diffTime = System.currentTimeMillis() - prevTime;
-            prevTime = System.currentTimeMillis();
+        while (tick(stopwatch.lap())) {
             Thread.sleep(estimatedMilliseconds);
         }
 
@@ -100,20 +106,51 @@ public class TerminalWorkoutTimerApp {
         if (applicationState.equals("running")) {
             activeRoutine.advance(milliseconds);
         }
-        renderScreen();
+
+        // Only render again if the routine, the user input, or the size of the terminal has changed
+        if (resizeIfNecessary()) {
+            screenOutOfDate = true;
+        }
+        if (screenOutOfDate) {
+            renderScreen();
+        }
 
         return keepGoing;
     }
 
+    // MODIFIES: this
+    // EFFECTS: Resizes the screen and adjusts the global terminalSize variable if the size of the terminal has
+    //          changed. Returns true if it did.
+    private boolean resizeIfNecessary() {
+        if (screen.doResizeIfNecessary() == null) {
+            return false;
+        }
+        terminalSize = screen.getTerminalSize();
+        return true;
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Sets the active routine (may be null), and listens to it instead of the previous one
+    private void setActiveRoutine(Routine routine) {
+        if (activeRoutine != null) {
+            activeRoutine.removeListener(this);
+        }
+        activeRoutine = routine;
+        if (activeRoutine != null) {
+            activeRoutine.addListener(this);
+        }
+    }
+
     // REQUIRES: newState is one of "main_menu", "routine", "running"
     // MODIFIES: this
     // EFFECTS: Changes the application state to the given new state. Ensures that
     //          activeRoutine is consistent with this requested change. Returns true
     //          if the application state is successfully changed, false otherwise.
     private boolean changeApplicationState(String newState) {
+        screenOutOfDate = true;
         switch (newState) {
             case "main_menu":
-                activeRoutine = null;
+                setActiveRoutine(null);
                 applicationState = "main_menu";
                 return true;
             case "routine":
@@ -147,6 +184,7 @@ public class TerminalWorkoutTimerApp {
         if (stroke == null) {
             return true;
         }
+        screenOutOfDate = true;
 
         switch (applicationState) {
             case "main_menu":
@@ -170,12 +208,12 @@ public class TerminalWorkoutTimerApp {
 
         switch (stroke.getCharacter()) {
             case 'n': // new
-                activeRoutine = makeRoutineFromInput();
+                setActiveRoutine(makeRoutineFromInput());
                 changeApplicationState("routine");
                 break;
             case 'l': // load
                 try {
-                    activeRoutine = reader.read();
+                    setActiveRoutine(reader.read());
                     changeApplicationState("routine");
                 } catch (IOException e) {
                     // TODO
@@ -252,13 +290,12 @@ public class TerminalWorkoutTimerApp {
 
     // MODIFIES: this (only temporary getCommandWithRenderDisplay variables though)
     // EFFECTS: Procedure to save routine to the filesystem
-    private void saveRoutine() {
+    //          If it cannot be saved, says why and waits for ENTER; the saved file is then left as it was.
+    private void saveRoutine() throws IOException {
         try {
-            writer.open();
-            writer.write(activeRoutine);
-            writer.close();
-        } catch (FileNotFoundException e) {
-            // TODO
+            saver.save(activeRoutine, Paths.get(JSON_STORE));
+        } catch (IOException e) {
+            getCommandWithRenderDisplay("Press ENTER to continue", "Could not save routine: " + e.getMessage());
         }
     }
 
@@ -423,6 +460,7 @@ public class TerminalWorkoutTimerApp {
         // Input is complete when the enter key is pressed
         while (true) {
             // Render the screen on each button press so that the user can see what they are typing
+            resizeIfNecessary();
             renderScreen();
 
             KeyStroke stroke = screen.readInput();
@@ -553,17 +591,13 @@ public class TerminalWorkoutTimerApp {
 
     // MODIFIES: this
     // EFFECTS: Renders the application onto the global screen variable, using the appropriate corresponding
-    //          render methods for each application state. Adjusts the global terminalSize variable if the
-    //          screen size changes.
+    //          render methods for each application state. The screen must already have been resized (see
+    //          resizeIfNecessary) if the size of the terminal changed.
     private void renderScreen() throws IOException {
+        screenOutOfDate = false;
         screen.setCursorPosition(TerminalPosition.TOP_LEFT_CORNER);
         screen.clear();
 
-        // Adjust terminal size if necessary
-        if (screen.doResizeIfNecessary() != null) {
-            terminalSize = screen.getTerminalSize();
-        }
-
         // Render state specific stuff
         switch (applicationState) {
             case "main_menu":
@@ -640,7 +674,10 @@ public class TerminalWorkoutTimerApp {
         TextGraphics draw = screen.newTextGraphics();
         draw.putString(position, "Press command: (c)lose (s)ave (p)lay (r)estart (a)dd (i)nsert (d)elete (e)dit");
         draw.putString(position.withRelativeRow(1), "Title: " + activeRoutine.getName());
-        advanceCursorBy(screen, 3);
+        draw.putString(position.withRelativeRow(2), "Time left: "
+                + millisecondsToPrettyTime(activeRoutine.getRemainingTime(), false)
+                + " of " + millisecondsToPrettyTime(activeRoutine.getDuration(), false));
+        advanceCursorBy(screen, 4);
 
         List<Segment> topLayerSegments = activeRoutine.getSegments();
         if (topLayerSegments.isEmpty()) {
@@ -660,7 +697,10 @@ public class TerminalWorkoutTimerApp {
         TextGraphics draw = screen.newTextGraphics();
         draw.putString(position, "Press command: (p)ause");
         draw.putString(position.withRelativeRow(1), "Title: " + activeRoutine.getName());
-        advanceCursorBy(screen, 3);
+        draw.putString(position.withRelativeRow(2), "Time left: "
+                + millisecondsToPrettyTime(activeRoutine.getRemainingTime(), false)
+                + " of " + millisecondsToPrettyTime(activeRoutine.getDuration(), false));
+        advanceCursorBy(screen, 4);
 
         renderSegmentLayer(screen, activeRoutine.getSegments(), true, 0);
     }
@@ -761,4 +801,43 @@ public class TerminalWorkoutTimerApp {
         output += includeDecimalOutput ? "." + deciseconds : "";
         return output;
     }
+
+    // --------------------------------------------------------------------------------------------
+    // RoutineListener implementation
+    // --------------------------------------------------------------------------------------------
+
+    // MODIFIES: this
+    // EFFECTS: Marks the screen to be rendered again, the time in the segment has changed
+    @Override
+    public void segmentProgressed(Segment segment, long elapsedTime) {
+        screenOutOfDate = true;
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Marks the screen to be rendered again, the segment is now shown as complete
+    @Override
+    public void segmentCompleted(Segment segment) {
+        screenOutOfDate = true;
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Marks the screen to be rendered again, the cycle number has changed
+    @Override
+    public void cycleAdvanced(RepeatSegment segment, int currentCycle) {
+        screenOutOfDate = true;
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Marks the screen to be rendered again, a different segment is highlighted as active
+    @Override
+    public void currentSegmentChanged(Segment currentSegment) {
+        screenOutOfDate = true;
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Marks the screen to be rendered again, the list of segments has changed
+    @Override
+    public void structureChanged(StructureChange change, Segment segment, int[] path) {
+        screenOutOfDate = true;
+    }
 }
@@ -14,10 +14,12 @@ import java.awt.event.WindowListener;
 
 // Represents a UI based application for Workout Timer
 public class WorkoutTimerApp extends JFrame implements WindowListener {
-    public static final int TICKS_PER_SECOND = 30;
+    public static final int DISPLAY_REFRESHES_PER_SECOND = 30;
     private static final int MIN_WIDTH = 520;
     private static final int MIN_HEIGHT = 600;
 
+    private Screen currentScreen;
+
     // --------------------------------------------------------------------------------------------
     // Constructor
     // --------------------------------------------------------------------------------------------
@@ -68,6 +70,7 @@ public class WorkoutTimerApp extends JFrame implements WindowListener {
     // MODIFIES: this
     // EFFECTS: Puts the given Screen on the UI window, clears the previous screen.
     private void setScreen(Screen newScreen) {
+        currentScreen = newScreen;
         getContentPane().removeAll();
         getContentPane().add(newScreen);
         getContentPane().revalidate();
@@ -95,14 +98,16 @@ public class WorkoutTimerApp extends JFrame implements WindowListener {
         // Do nothing
     }
 
+    // EFFECTS: Tells the current screen that the window is no longer shown
     @Override
     public void windowIconified(WindowEvent e) {
-        // Do nothing
+        currentScreen.windowShown(false);
     }
 
+    // EFFECTS: Tells the current screen that the window is shown again
     @Override
     public void windowDeiconified(WindowEvent e) {
-        // Do nothing
+        currentScreen.windowShown(true);
     }
 
     @Override
@@ -1,7 +1,7 @@
 package ui.components.mainmenu;
 
 import model.Routine;
-import persistence.RoutineReader;
+import persistence.RoutineFormat;
 import ui.components.ScrollableComponent;
 
 import javax.swing.*;
@@ -33,8 +33,8 @@ public class SavedRoutinesList extends ScrollableComponent {
     private void render() {
         body.removeAll();
 
-        // Pattern to only detect json files
-        Pattern jsonPattern = Pattern.compile(".+(?=\\.json$)");
+        // Pattern to only detect routine files (json or binary)
+        Pattern routinePattern = Pattern.compile(".+(?=\\.(json|wtr)$)");
 
         // Pre-determined directory to store all saved routines
         Path savedRoutinesPathname = Paths.get("data", "savedroutines");
@@ -44,11 +44,11 @@ public class SavedRoutinesList extends ScrollableComponent {
             for (Path path : stream) {
                 if (!Files.isDirectory(path)) {
                     String filename = path.getFileName().toString();
-                    Matcher jsonMatcher = jsonPattern.matcher(filename);
+                    Matcher routineMatcher = routinePattern.matcher(filename);
 
-                    // Check if the file is a .json file, then assume it must be a routine!
-                    if (jsonMatcher.find(0)) {
-                        body.add(new RoutineListItem(jsonMatcher.group(), filename));
+                    // Check if the file is a .json or .wtr file, then assume it must be a routine!
+                    if (routineMatcher.find(0)) {
+                        body.add(new RoutineListItem(routineMatcher.group(), filename));
                     }
                 }
             }
@@ -83,11 +83,10 @@ public class SavedRoutinesList extends ScrollableComponent {
         private ClickableLink makeRoutineLink(String name, String filename) {
             return new ClickableLink(name, () -> {
                 String filepath = Paths.get("data", "savedroutines", filename).toString();
-                RoutineReader routineReader = new RoutineReader(filepath);
 
-                // Read routine at the filepath and pass it to the callback to open routine
+                // Read routine at the filepath (in whichever format it is in) and pass it to the callback to open it
                 try {
-                    Routine routine = routineReader.read();
+                    Routine routine = RoutineFormat.readAny(filepath);
                     receiver.receiveRoutine(routine);
                 } catch (IOException e) {
                     JOptionPane.showMessageDialog(null, "Error in reading routine file!");
@@ -5,7 +5,6 @@ import java.awt.*;
 
 // Represents a view that contains a progress bar with a certain amount of completion
 // The colour is set depending on the percentage and whether the bar is in an active state
-// Meant to be a fixed representation of the progress bar, should be recreated when the segment changes
 public class ProgressBar extends JComponent {
     private static final int UNIT_SIZE = 8;
     private static final int PROGRESS_BAR_HEIGHT = 12;
@@ -14,7 +13,7 @@ public class ProgressBar extends JComponent {
     private static final Color COMPLETE_PROGRESS_COLOR = new Color(148, 237, 145);
     private static final Color CURRENT_PROGRESS_COLOR = new Color(76, 167, 237);
 
-    private final double percentage;
+    private double percentage;
     private final boolean isActive;
 
     // REQUIRES: 0 <= percentage <= 1
@@ -26,6 +25,16 @@ public class ProgressBar extends JComponent {
         this.isActive = isActive;
     }
 
+    // REQUIRES: 0 <= newPercentage <= 1
+    // MODIFIES: this
+    // EFFECTS: Sets the percentage complete, and repaints the progress bar if it has changed
+    public void setPercentage(double newPercentage) {
+        if (newPercentage != percentage) {
+            percentage = newPercentage;
+            repaint();
+        }
+    }
+
     // EFFECTS: Sets the default size of the progress bar to be PROGRESS_BAR_HEIGHT high,
     //          and however wide it needs to be to fill up the container it's in
     @Override
@@ -1,18 +1,29 @@
 package ui.components.routine;
 
+import model.RepeatSegment;
 import model.Routine;
+import model.RoutineListener;
 import model.Segment;
+import model.StructureChange;
 import ui.components.ScrollableComponent;
 import ui.handlers.SegmentMouseHandler;
 import ui.screens.RoutineScreenState;
 
 import javax.swing.*;
 import javax.swing.border.Border;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
-// Represents a scrollable view that displays a Routine with a list of children Segments
-public class RoutineDisplay extends ScrollableComponent {
+// Represents a scrollable view that displays a Routine with a list of children Segments.
+// Listens to the routine so that only the segments which made progress are updated, the whole
+// view is only rebuilt when the structure of the routine changes.
+public class RoutineDisplay extends ScrollableComponent implements RoutineListener {
     private final Routine routine;
     private final SegmentMouseHandler mouseHandler;
+    private final Map<Segment, SegmentDisplay> displays; // the view of every segment in the routine
+    private RoutineScreenState routineState;
+    private SegmentDisplay currentDisplay; // the view of the active segment, null if there is none
 
     // EFFECTS: Constructs the routine display with the given routine, whether the routine
     //          is currently running or not, and a mouse handler to attach to the children segments
@@ -21,6 +32,7 @@ public class RoutineDisplay extends ScrollableComponent {
         super();
         this.routine = routine;
         this.mouseHandler = mouseHandler;
+        displays = new HashMap<>();
 
         body.setLayout(new BoxLayout(body, BoxLayout.Y_AXIS));
 
@@ -31,19 +43,96 @@ public class RoutineDisplay extends ScrollableComponent {
     // EFFECTS: Refreshes the routine display to show any changes made to the stored Routine
     //          objects. Completely replaces all the children SegmentDisplay views on each refresh
     public void refresh(RoutineScreenState routineState) {
+        this.routineState = routineState;
         body.removeAll();
+        displays.clear();
         if (routine.getSegments().isEmpty()) {
             addCenteredLabel("No segments yet!");
         } else {
             for (Segment segment : routine.getSegments()) {
                 SegmentDisplay segmentDisplay = new SegmentDisplay(routine, segment, routineState, mouseHandler);
+                addDisplays(segmentDisplay);
                 body.add(segmentDisplay);
             }
         }
+        currentDisplay = routine.isComplete() ? null : displays.get(routine.getExactCurrentSegment());
         repaint();
         revalidate();
     }
 
+    // MODIFIES: this
+    // EFFECTS: Updates the view of the segment if time was added to it, or every view if the progress of
+    //          the whole routine was set at once
+    @Override
+    public void segmentProgressed(Segment segment, long elapsedTime) {
+        if (segment == routine) {
+            for (Segment child : routine.getSegments()) {
+                refreshProgress(child, true);
+            }
+        } else {
+            refreshProgress(segment, false);
+        }
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Updates the view of the completed segment
+    @Override
+    public void segmentCompleted(Segment segment) {
+        refreshProgress(segment, false);
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Updates the view of the repeat segment and all its children, which were reset for the new cycle
+    @Override
+    public void cycleAdvanced(RepeatSegment segment, int currentCycle) {
+        refreshProgress(segment, true);
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Updates the views of the previous and the new active segments
+    @Override
+    public void currentSegmentChanged(Segment currentSegment) {
+        if (currentDisplay != null) {
+            currentDisplay.refreshProgress();
+        }
+        currentDisplay = currentSegment == null ? null : displays.get(currentSegment);
+        if (currentDisplay != null) {
+            currentDisplay.refreshProgress();
+        }
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Rebuilds the whole view, since segments were added, removed or changed
+    @Override
+    public void structureChanged(StructureChange change, Segment segment, int[] path) {
+        refresh(routineState);
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Adds the given view and the views of all its children/sub-children to the map of views
+    private void addDisplays(SegmentDisplay segmentDisplay) {
+        displays.put(segmentDisplay.getSegment(), segmentDisplay);
+        List<SegmentDisplay> childDisplays = segmentDisplay.getChildDisplays();
+        for (SegmentDisplay childDisplay : childDisplays) {
+            addDisplays(childDisplay);
+        }
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Updates the view of the given segment (and its children if includeChildren is true), if it
+    //          is shown
+    private void refreshProgress(Segment segment, boolean includeChildren) {
+        SegmentDisplay segmentDisplay = displays.get(segment);
+        if (segmentDisplay == null) {
+            return;
+        }
+        if (includeChildren) {
+            segmentDisplay.refreshAllProgress();
+        } else {
+            segmentDisplay.refreshProgress();
+        }
+    }
+
     // EFFECTS: Adds a JLabel with the specified text to the center of the screen
     private void addCenteredLabel(String text) {
         JPanel horizontalBox = new JPanel();
@@ -10,9 +10,11 @@ import ui.screens.RoutineScreenState;
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
 
 // Represents a view that contains a Segment in a Routine
-// Meant to be a fixed representation of the segment, should be recreated when the segment changes
+// The progress shown is updated in place, but it should be recreated when the structure of the segment changes
 public class SegmentDisplay extends JComponent {
 
     // Represents the possible states of the segment display
@@ -38,6 +40,8 @@ public class SegmentDisplay extends JComponent {
     private Dimension mouseLocation = null; // only set when mouse is currently over this view
 
     private final JLabel infoText = new JLabel();
+    private ProgressBar progressBar; // null for a manual segment
+    private final List<SegmentDisplay> childDisplays = new ArrayList<>();
 
     // REQUIRES: segment is in routine
     // EFFECTS: Constructs a view for a given segment in the given routine,
@@ -110,51 +114,36 @@ public class SegmentDisplay extends JComponent {
     // MODIFIES: this
     // EFFECTS: Sets the layout for the bottom section specific for a manual segment
     private void initManualSegment() {
-        if (routineState == RoutineScreenState.RUNNING && segmentState == State.CURRENT) {
-            infoText.setText("Press space to complete!");
-        }
+        refreshInfo();
     }
 
     // MODIFIES: this
     // EFFECTS: Sets the layout for the bottom section specific for a time segment
     private void initTimeSegment() {
-        TimeSegment timeSegment = (TimeSegment) segment;
-        long currentTime = timeSegment.getCurrentTime();
-        long totalTime = timeSegment.getTotalTime();
-
-        infoText.setText(millisecondsToPrettyTime(currentTime, true) + "/"
-                + millisecondsToPrettyTime(totalTime, false));
-
         // Progress bar in continuous amount
+        progressBar = new ProgressBar(0.0, routineState == RoutineScreenState.RUNNING);
         add(Box.createRigidArea(new Dimension(0, UNIT_SIZE / 2)));
-        add(new ProgressBar(getAccuratePercentage(currentTime, totalTime),
-                routineState == RoutineScreenState.RUNNING));
+        add(progressBar);
+        refreshInfo();
     }
 
     // MODIFIES: this
     // EFFECTS: Sets the layout for the bottom section specific for a repeat segment
     private void initRepeatSegment() {
-        RepeatSegment repeatSegment = (RepeatSegment) segment;
-        int currentCycle = repeatSegment.getCurrentRepetition();
-        int totalCycles = repeatSegment.getTotalRepetitions();
-
-        // Set the current cycle as the info text
-        infoText.setText(currentCycle + "/" + totalCycles);
-
         // Percentage bar in discrete amounts
-        double percentage = 1.0;
-        if (segmentState != State.COMPLETE) {
-            percentage = getAccuratePercentage(currentCycle - 1, totalCycles);
-        }
+        progressBar = new ProgressBar(0.0, routineState == RoutineScreenState.RUNNING);
         add(Box.createRigidArea(new Dimension(0, UNIT_SIZE / 2)));
-        add(new ProgressBar(percentage, routineState == RoutineScreenState.RUNNING));
+        add(progressBar);
+        refreshInfo();
 
         // Children segments
         JPanel childrenDisplay = new JPanel();
         childrenDisplay.setOpaque(false);
         childrenDisplay.setLayout(new BoxLayout(childrenDisplay, BoxLayout.PAGE_AXIS));
-        for (Segment child : repeatSegment.getSegments()) {
-            childrenDisplay.add(new SegmentDisplay(routine, child, routineState, mouseHandler));
+        for (Segment child : ((RepeatSegment) segment).getSegments()) {
+            SegmentDisplay childDisplay = new SegmentDisplay(routine, child, routineState, mouseHandler);
+            childDisplays.add(childDisplay);
+            childrenDisplay.add(childDisplay);
         }
         add(childrenDisplay);
 
@@ -162,6 +151,59 @@ public class SegmentDisplay extends JComponent {
         add(Box.createRigidArea(new Dimension(0, (int) (UNIT_SIZE * 1.2))));
     }
 
+    // MODIFIES: this
+    // EFFECTS: Sets the info text and progress bar to show the current progress of the segment
+    private void refreshInfo() {
+        switch (segment.getType()) {
+            case MANUAL:
+                boolean waiting = routineState == RoutineScreenState.RUNNING && segmentState == State.CURRENT;
+                infoText.setText(waiting ? "Press space to complete!" : "");
+                break;
+            case TIME:
+                TimeSegment timeSegment = (TimeSegment) segment;
+                long currentTime = timeSegment.getCurrentTime();
+                long totalTime = timeSegment.getTotalTime();
+                infoText.setText(millisecondsToPrettyTime(currentTime, true) + "/"
+                        + millisecondsToPrettyTime(totalTime, false));
+                progressBar.setPercentage(getAccuratePercentage(currentTime, totalTime));
+                break;
+            case REPEAT:
+                RepeatSegment repeatSegment = (RepeatSegment) segment;
+                int currentCycle = repeatSegment.getCurrentRepetition();
+                int totalCycles = repeatSegment.getTotalRepetitions();
+                infoText.setText(currentCycle + "/" + totalCycles);
+                progressBar.setPercentage(segmentState == State.COMPLETE
+                        ? 1.0 : getAccuratePercentage(currentCycle - 1, totalCycles));
+                break;
+        }
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Updates the view in place to show the current progress of the segment (not its children)
+    void refreshProgress() {
+        State previousState = segmentState;
+        determineSegmentState();
+        refreshInfo();
+        if (segmentState != previousState) {
+            repaint();
+        }
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Updates the view in place to show the current progress of the segment and all of its
+    //          children/sub-children
+    void refreshAllProgress() {
+        refreshProgress();
+        for (SegmentDisplay childDisplay : childDisplays) {
+            childDisplay.refreshAllProgress();
+        }
+    }
+
+    // EFFECTS: Returns the views of the children of the segment (none unless it is a repeat segment)
+    List<SegmentDisplay> getChildDisplays() {
+        return childDisplays;
+    }
+
     // MODIFIES: this
     // EFFECTS: Sets the current state depending on whether the segment for this view
     //          is complete or if its currently active
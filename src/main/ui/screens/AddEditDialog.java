@@ -17,6 +17,7 @@ public class AddEditDialog extends JDialog implements Updatable, Validatable {
     private static final int UNIT_SIZE = 8;
 
     private final SegmentReceiver receiver;
+    private final Routine routine; // the routine containing the segment to edit, null when adding
     private final Segment segmentToEdit;
 
     private final JPanel container = new JPanel();
@@ -28,11 +29,13 @@ public class AddEditDialog extends JDialog implements Updatable, Validatable {
     // Constructors
     // --------------------------------------------------------------------------------------------
 
-    // EFFECTS: Constructs a new 'editing' dialog box, using the given segment to edit.
+    // REQUIRES: segmentToEdit is in routine
+    // EFFECTS: Constructs a new 'editing' dialog box, using the given segment to edit in the given routine.
     //          Can only be called from the root frame when the user clicks the edit button.
-    public AddEditDialog(Frame parent, Segment segmentToEdit) {
+    public AddEditDialog(Frame parent, Routine routine, Segment segmentToEdit) {
         super(parent, "Editing: " + segmentToEdit.getName(), ModalityType.DOCUMENT_MODAL);
         this.receiver = null;
+        this.routine = routine;
         this.segmentToEdit = segmentToEdit;
         init();
 
@@ -45,6 +48,7 @@ public class AddEditDialog extends JDialog implements Updatable, Validatable {
     public AddEditDialog(Frame parent, SegmentReceiver receiver) {
         super(parent, "Adding new segment", ModalityType.DOCUMENT_MODAL);
         this.receiver = receiver;
+        this.routine = null;
         this.segmentToEdit = null;
         init();
 
@@ -59,6 +63,7 @@ public class AddEditDialog extends JDialog implements Updatable, Validatable {
     public AddEditDialog(Dialog parent, SegmentReceiver receiver) {
         super(parent, "Adding new sub-segment", ModalityType.DOCUMENT_MODAL);
         this.receiver = receiver;
+        this.routine = null;
         this.segmentToEdit = null;
         init();
 
@@ -222,26 +227,26 @@ public class AddEditDialog extends JDialog implements Updatable, Validatable {
     }
 
     // REQUIRES: checkValid is true, segmentToEdit is not null
-    // EFFECTS: Edits the segment to edit based on all the validated user input
+    // EFFECTS: Edits the segment to edit based on all the validated user input, as a single edit to the routine
     private void editSegment() {
         assert (checkValid());
         assert (segmentToEdit != null);
 
-        segmentToEdit.setName(nameField.getText().trim());
-
-        switch (segmentTypeOptions.getState()) {
-            case TIME:
-                TimeSegment timeSegmentToEdit = (TimeSegment) segmentToEdit;
-                timeSegmentToEdit.setTotalTime(segmentTypeOptions.getTime());
-                break;
-            case MANUAL:
-                break;
-            case REPEAT:
-                RepeatSegment repeatSegmentToEdit = (RepeatSegment) segmentToEdit;
-                repeatSegmentToEdit.setNewRepeats(segmentTypeOptions.getNumCycles());
-                break;
-            default:
-                throw new IllegalStateException("Segment type is invalid");
-        }
+        routine.edit(transaction -> {
+            transaction.setName(segmentToEdit, nameField.getText().trim());
+
+            switch (segmentTypeOptions.getState()) {
+                case TIME:
+                    transaction.setTotalTime((TimeSegment) segmentToEdit, segmentTypeOptions.getTime());
+                    break;
+                case MANUAL:
+                    break;
+                case REPEAT:
+                    transaction.setNewRepeats((RepeatSegment) segmentToEdit, segmentTypeOptions.getNumCycles());
+                    break;
+                default:
+                    throw new IllegalStateException("Segment type is invalid");
+            }
+        });
     }
 }
@@ -2,8 +2,9 @@ package ui.screens;
 
 import model.Routine;
 import model.Segment;
-import persistence.RoutineWriter;
-import ui.PreciceTimer;
+import persistence.Durability;
+import persistence.RoutineSaver;
+import ui.BoundaryTimer;
 import ui.WorkoutTimerApp;
 import ui.components.routine.InfoDisplay;
 import ui.components.routine.RoutineDisplay;
@@ -14,20 +15,22 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.KeyEvent;
-import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 
 // Represents the routine screen of the Workout Timer application.
 // Centered around one Routine object which contains all the information to be shown.
 public class RoutineScreen extends Screen {
+    private static final RoutineSaver SAVER = new RoutineSaver(Durability.FSYNC, 0);
 
     private final Routine routine;
-    private final Timer timer;
+    private final BoundaryTimer timer;
 
     private RoutineScreenState state;
 
     private RoutineToolbar routineToolbar;
+    private JLabel routineTimeLabel;
     private RoutineDisplay routineDisplay;
     private InfoDisplay infoDisplay;
 
@@ -45,23 +48,14 @@ public class RoutineScreen extends Screen {
         this.routine = routine;
         this.state = RoutineScreenState.DEFAULT;
 
-        // Set up routine timer for precise interval
-        timer = new PreciceTimer(WorkoutTimerApp.TICKS_PER_SECOND, milliseconds -> {
-            if (state == RoutineScreenState.RUNNING) {
-                routine.advance(milliseconds);
-                refresh();
-
-                // Check if complete
-                if (routine.isComplete()) {
-                    infoDisplay.displaySuccess("Routine complete!");
-                } else {
-                    infoDisplay.clear();
-                }
-            }
-        });
+        // Set up routine timer to run the routine on its own thread, refreshing the display in between boundaries
+        timer = new BoundaryTimer(routine, WorkoutTimerApp.DISPLAY_REFRESHES_PER_SECOND, this::handleProgress);
 
         initLayout();
         initKeyBindings();
+
+        // The routine display only updates the segments that change as the routine runs
+        routine.addListener(routineDisplay);
     }
 
     // MODIFIES: this
@@ -79,9 +73,17 @@ public class RoutineScreen extends Screen {
         titleContainer.add(routineTitle);
         titleContainer.setAlignmentX(Component.LEFT_ALIGNMENT);
 
+        // Time left in the routine, below the title
+        routineTimeLabel = new JLabel();
+        refreshRoutineTime();
+        JPanel timeContainer = new JPanel();
+        timeContainer.add(routineTimeLabel);
+        timeContainer.setAlignmentX(Component.LEFT_ALIGNMENT);
+
         routineToolbar = new RoutineToolbar(this);
 
         topArea.add(titleContainer);
+        topArea.add(timeContainer);
         topArea.add(routineToolbar);
         add(topArea, BorderLayout.NORTH);
 
@@ -188,7 +190,7 @@ public class RoutineScreen extends Screen {
     // MODIFIES: this
     // EFFECTS: Starts the editing dialog for a certain segment in the routine
     private void beginEditSegment(Segment segmentToEdit) {
-        new AddEditDialog(app, segmentToEdit);
+        new AddEditDialog(app, routine, segmentToEdit);
         changeState(RoutineScreenState.DEFAULT);
     }
 
@@ -252,16 +254,26 @@ public class RoutineScreen extends Screen {
     // MODIFIES: this
     // EFFECTS: Resets the routine to have all segments incomplete
     public void resetRoutine() {
-        routine.reset();
-        refresh();
+        timer.reset();
+        infoDisplay.clear();
     }
 
     // MODIFIES: this
     // EFFECTS: Advances the routine if it is running and on a manual segment
     public void advanceRoutineManual() {
         if (state == RoutineScreenState.RUNNING) {
-            routine.advance();
-            refresh();
+            timer.completeManual();
+        }
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Updates the time left after the routine was updated by the timer (the routine display is told
+    //          about the segments that changed by the routine itself), and displays a message once when the
+    //          routine is completed
+    private void handleProgress(boolean routineCompleted) {
+        refreshRoutineTime();
+        if (routineCompleted) {
+            infoDisplay.displaySuccess("Routine complete!");
         }
     }
 
@@ -286,10 +298,41 @@ public class RoutineScreen extends Screen {
         }
     }
 
+    // MODIFIES: this
+    // EFFECTS: Only refreshes the progress of the running routine between segment boundaries while the window
+    //          is shown
+    @Override
+    public void windowShown(boolean shown) {
+        timer.setRefreshing(shown);
+    }
+
     // MODIFIES: this
     // EFFECTS: Refreshes the routine display to update any changes
     public void refresh() {
         routineDisplay.refresh(state);
+        refreshRoutineTime();
+    }
+
+    // MODIFIES: this
+    // EFFECTS: Updates the time left in the routine shown below the title
+    private void refreshRoutineTime() {
+        routineTimeLabel.setText(millisecondsToPrettyTime(routine.getRemainingTime()) + " left of "
+                + millisecondsToPrettyTime(routine.getDuration()));
+    }
+
+    // REQUIRES: milliseconds >= 0
+    // EFFECTS: Returns a fancy string representation of the given time (in milliseconds). The string
+    //          representation will be of the form X:YY if there's at least one minute, Y if there is less
+    //          than 1 minute (for X minutes, Y seconds in the given time, rounded up).
+    private String millisecondsToPrettyTime(long milliseconds) {
+        long totalSeconds = (milliseconds + 999) / 1000;
+        long minutes = totalSeconds / 60;
+        long seconds = totalSeconds % 60;
+
+        if (minutes > 0) {
+            return minutes + ":" + String.format("%02d", seconds);
+        }
+        return Long.toString(seconds);
     }
 
     // MODIFIES: this
@@ -306,24 +349,22 @@ public class RoutineScreen extends Screen {
             save();
         }
 
+        timer.stop();
+        routine.removeListener(routineDisplay);
         app.closeRoutine();
     }
 
     // MODIFIES: this
-    // EFFECTS: Saves the routine to the filesystem
+    // EFFECTS: Saves the routine to the filesystem, leaving the saved file as it was if saving fails
     public void save() {
         // TODO: make more robust, don't assume the filename is the same as routine name
         Path pathname = Paths.get("data", "savedroutines", routine.getName() + ".json");
-        RoutineWriter routineWriter = new RoutineWriter(pathname.toString());
 
         try {
-            routineWriter.open();
-            routineWriter.write(routine);
-            routineWriter.close();
-
+            SAVER.save(routine, pathname);
             infoDisplay.displaySuccess("Saved!");
-        } catch (FileNotFoundException e) {
-            JOptionPane.showMessageDialog(null, "Error in saving file!");
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(null, "Error in saving file: " + e.getMessage());
         }
     }
 }
@@ -15,4 +15,11 @@ public abstract class Screen extends JPanel {
         super(new BorderLayout());
         this.app = app;
     }
+
+    // MODIFIES: this
+    // EFFECTS: Called when the window is minimised (shown is false) or restored (shown is true),
+    //          does nothing by default
+    public void windowShown(boolean shown) {
+        // Do nothing
+    }
 }
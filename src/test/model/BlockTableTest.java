@@ -0,0 +1,135 @@
+package model;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BlockTableTest {
+    private BlockTable table;
+
+    @BeforeEach
+    public void runBefore() {
+        table = new BlockTable();
+    }
+
+    @Test
+    public void testInternSharesIdenticalBlocks() {
+        Block first = table.intern(makeTabata());
+        Block second = table.intern(makeTabata());
+        assertSame(first, second);
+        assertEquals(3, table.size()); // work, rest, and the repeat
+
+        assertEquals(SegmentType.REPEAT, first.getType());
+        assertEquals("tabata", first.getName());
+        assertEquals(8, first.getTotalRepetitions());
+        assertEquals(320000, first.getDuration());
+        assertEquals(2, first.getChildren().size());
+        assertEquals(30000, first.getChildren().get(0).getTotalTime());
+
+        // Progress is not part of the structure
+        RepeatSegment started = makeTabata();
+        Routine routine = new Routine("started");
+        routine.addSegment(started);
+        routine.advance(75000);
+        assertSame(first, table.intern(started));
+    }
+
+    @Test
+    public void testDifferentStructuresNotShared() {
+        Block tabata = table.intern(makeTabata());
+        Block longerWork = table.intern(new RepeatSegment("tabata", 8, new ArrayList<>(Arrays.asList(
+                new TimeSegment("work", 40000), new TimeSegment("rest", 10000)))));
+        Block fewerRounds = table.intern(new RepeatSegment("tabata", 4, new ArrayList<>(Arrays.asList(
+                new TimeSegment("work", 30000), new TimeSegment("rest", 10000)))));
+        Block manual = table.intern(new ManualSegment("work"));
+
+        assertNotSame(tabata, longerWork);
+        assertNotSame(tabata, fewerRounds);
+        assertNotEquals(tabata, fewerRounds);
+        assertSame(tabata.getChildren().get(1), longerWork.getChildren().get(1));
+        assertNotSame(tabata.getChildren().get(0), manual);
+        assertEquals(7, table.size()); // work (30s), rest, tabata, work (40s), tabata (40s), tabata (x4), manual
+    }
+
+    @Test
+    public void testLibraryScalesWithDistinctBlocks() {
+        List<Block> library = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            Routine routine = new Routine("routine " + (i % 2));
+            routine.addSegment(makeWarmUp());
+            for (int j = 0; j < 20; j++) {
+                routine.addSegment(makeTabata());
+            }
+            library.add(table.intern(routine));
+        }
+
+        // warm up (2 leaves + group), tabata (2 leaves + group), and the two distinct routines
+        assertEquals(8, table.size());
+        assertSame(library.get(0), library.get(198));
+        assertSame(library.get(0).getChildren().get(1), library.get(1).getChildren().get(20));
+    }
+
+    @Test
+    public void testToSegment() {
+        Routine original = new Routine("original");
+        original.addSegment(makeWarmUp());
+        original.addSegment(makeTabata());
+        original.addSegment(makeTabata());
+        Block block = table.intern(original);
+
+        Routine first = (Routine) block.toSegment();
+        Routine second = (Routine) block.toSegment();
+        assertEquals("original", first.getName());
+        assertEquals(original.getFlattenedSegments().size(), first.getFlattenedSegments().size());
+        assertEquals(original.getDuration(), first.getDuration());
+        assertSame(block, table.intern(first));
+
+        // Each copy keeps its own progress
+        first.advance(100000);
+        assertEquals(100000, first.getElapsedTime());
+        assertEquals(0, second.getElapsedTime());
+        assertNotSame(first.getChildren().get(1), first.getChildren().get(2));
+    }
+
+    @Test
+    public void testToDefinition() {
+        Routine original = new Routine("original");
+        original.addSegment(makeWarmUp());
+        original.addSegment(makeTabata());
+        original.addSegment(makeTabata());
+        RoutineDefinition fromRoutine = original.getDefinition();
+        RoutineDefinition fromBlock = table.intern(original).toDefinition();
+
+        assertEquals(fromRoutine.getLength(), fromBlock.getLength());
+        assertEquals(fromRoutine.getTotalDuration(), fromBlock.getTotalDuration());
+        assertEquals(timelineOf(fromRoutine), timelineOf(fromBlock));
+
+        RoutineProgress progress = new RoutineProgress(fromBlock);
+        progress.seekTo(200000);
+        assertEquals(200000, progress.getElapsedTime());
+    }
+
+    // EFFECTS: Returns a new 8 round 30/10 Tabata block
+    private RepeatSegment makeTabata() {
+        return new RepeatSegment("tabata", 8, new ArrayList<>(Arrays.asList(
+                new TimeSegment("work", 30000), new TimeSegment("rest", 10000))));
+    }
+
+    // EFFECTS: Returns a new warm up block
+    private RepeatSegment makeWarmUp() {
+        return new RepeatSegment("warm up", 1, new ArrayList<>(Arrays.asList(
+                new TimeSegment("jog", 300000), new ManualSegment("stretch"))));
+    }
+
+    // EFFECTS: Returns the name and start time of every occurrence in the timeline of the definition
+    private List<String> timelineOf(RoutineDefinition definition) {
+        return definition.timeline().map(entry -> entry.getName() + "@" + entry.getStartTime())
+                .collect(Collectors.toList());
+    }
+}
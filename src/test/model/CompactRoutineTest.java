@@ -0,0 +1,171 @@
+package model;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompactRoutineTest {
+    private Routine routine;
+    private CompactRoutine compact;
+
+    @BeforeEach
+    public void runBefore() {
+        // outer (x2) --- inner (x3) --- t1 (1000)
+        //            |              \-- m1
+        //            \-- t2 (500)
+        // t3 (2000)
+        RepeatSegment inner = new RepeatSegment("inner", 3, new ArrayList<>(Arrays.asList(
+                new TimeSegment("time 1", 1000), new ManualSegment("man 1"))));
+        RepeatSegment outer = new RepeatSegment("outer", 2, new ArrayList<>(Arrays.asList(
+                inner, new TimeSegment("time 2", 500))));
+        routine = new Routine("compact routine");
+        routine.addSegment(outer);
+        routine.addSegment(new TimeSegment("time 3", 2000));
+
+        compact = CompactRoutine.of(routine);
+    }
+
+    @Test
+    public void testConstruction() {
+        assertEquals("compact routine", compact.getName());
+        assertEquals(6, compact.size());
+        assertEquals(9000, compact.getDuration());
+        assertFalse(compact.isComplete());
+
+        List<SegmentView> top = compact.getSegments();
+        assertEquals(2, top.size());
+        assertEquals("outer", top.get(0).getName());
+        assertEquals(SegmentType.REPEAT, top.get(0).getType());
+        assertEquals(2, top.get(0).getTotalRepetitions());
+        assertEquals(1, top.get(0).getCurrentRepetition());
+        assertEquals("time 3", top.get(1).getName());
+        assertEquals(2000, top.get(1).getTotalTime());
+
+        SegmentView inner = top.get(0).getSegments().get(0);
+        assertEquals("inner", inner.getName());
+        assertEquals(Arrays.asList(compact.getSegment(2), compact.getSegment(3)), inner.getSegments());
+        assertTrue(compact.getSegment(3).getSegments().isEmpty());
+    }
+
+    @Test
+    public void testAdvanceMatchesRoutine() {
+        long[] steps = {700, 0, 400, -1, 2500, -1, 1000, -1, 100, 900, -1, 5000, -1, 6000, -1, 6000, -1, 250, 3000};
+
+        for (long step : steps) {
+            AdvanceResult expected = step == -1 ? routine.advance() : routine.advance(step);
+            AdvanceResult actual = step == -1 ? compact.advance() : compact.advance(step);
+
+            assertEquals(expected.getSegmentsCompleted(), actual.getSegmentsCompleted());
+            assertEquals(expected.getCyclesCompleted(), actual.getCyclesCompleted());
+            assertEquals(expected.getUnusedTime(), actual.getUnusedTime());
+            assertEquals(expected.isRoutineCompleted(), actual.isRoutineCompleted());
+            assertEquals(routine.elapsedTime(), compact.getElapsedTime());
+            assertEquals(routine.isComplete(), compact.isComplete());
+            if (!routine.isComplete()) {
+                assertEquals(routine.getExactCurrentSegment().getName(),
+                        compact.getExactCurrentSegment().getName());
+            }
+        }
+        assertTrue(compact.isComplete());
+    }
+
+    @Test
+    public void testReset() {
+        compact.advance(1000);
+        compact.advance();
+        compact.advance(700);
+        assertEquals(2, compact.getSegment(1).getCurrentRepetition());
+        assertEquals(700, compact.getSegment(2).getCurrentTime());
+
+        compact.reset();
+        assertEquals(0, compact.getElapsedTime());
+        assertEquals(1, compact.getSegment(1).getCurrentRepetition());
+        assertEquals(0, compact.getSegment(2).getCurrentTime());
+        assertFalse(compact.getSegment(3).isComplete());
+        assertEquals("time 1", compact.getExactCurrentSegment().getName());
+    }
+
+    @Test
+    public void testToRoutine() {
+        compact.advance(1000);
+        compact.advance();
+        compact.advance(300);
+
+        Routine copy = compact.toRoutine();
+        assertEquals("compact routine", copy.getName());
+        assertEquals(routine.getFlattenedSegments().size(), copy.getFlattenedSegments().size());
+        assertEquals(9000, copy.getDuration());
+        assertEquals(1300, copy.elapsedTime());
+        assertEquals(300, ((TimeSegment) copy.getExactCurrentSegment()).getCurrentTime());
+        assertEquals(2, ((RepeatSegment) copy.getFlattenedSegments().get(1)).getCurrentRepetition());
+    }
+
+    @Test
+    public void testZeroLengthSegments() {
+        CompactRoutine zeroes = new CompactRoutine("zeroes");
+        zeroes.addTimeSegment("zero", 0);
+        zeroes.startRepeatSegment("zero loop", Integer.MAX_VALUE);
+        zeroes.addTimeSegment("zero", 0);
+        zeroes.endRepeatSegment();
+        assertTrue(zeroes.isComplete());
+
+        zeroes.addTimeSegment("last", 100);
+        assertFalse(zeroes.isComplete());
+        assertEquals("last", zeroes.getExactCurrentSegment().getName());
+        assertEquals(3, zeroes.getNameCount());
+    }
+
+    @Test
+    public void testLargeGeneratedRoutine() {
+        CompactRoutine large = new CompactRoutine("large");
+        for (int i = 0; i < 100000; i++) {
+            large.startRepeatSegment("Round", 2);
+            for (int j = 0; j < 4; j++) {
+                large.addTimeSegment("Work", 30);
+                large.addTimeSegment("Rest", 10);
+            }
+            large.endRepeatSegment();
+        }
+        assertEquals(900000, large.size());
+        assertEquals(3, large.getNameCount());
+        assertEquals(100000L * 2 * 4 * 40, large.getDuration());
+
+        large.advance(large.getDuration() / 2 + 5);
+        assertEquals(large.getDuration() / 2 + 5, large.getElapsedTime());
+        assertEquals("Work", large.getExactCurrentSegment().getName());
+        assertEquals(5, large.getExactCurrentSegment().getCurrentTime());
+
+        large.reset();
+        assertEquals(0, large.getElapsedTime());
+        large.advance(large.getDuration());
+        assertTrue(large.isComplete());
+    }
+
+    @Test
+    public void testHugeRoutineSaturates() {
+        RepeatSegment inner = new RepeatSegment("inner", Integer.MAX_VALUE, new ArrayList<>(Arrays.asList(
+                new TimeSegment("time", 4000000))));
+        Routine huge = new Routine("huge");
+        huge.addSegment(new RepeatSegment("outer", Integer.MAX_VALUE, new ArrayList<>(Arrays.asList(inner))));
+        CompactRoutine compactHuge = CompactRoutine.of(huge);
+        RoutineProgress progress = new RoutineProgress(huge.getDefinition());
+        assertEquals(Long.MAX_VALUE, compactHuge.getDuration());
+
+        // Cycles are skipped by the length of one cycle, even though the whole routine is too long to add up
+        for (int i = 0; i < 2; i++) {
+            AdvanceResult expected = progress.advance(Long.MAX_VALUE / 2);
+            AdvanceResult actual = compactHuge.advance(Long.MAX_VALUE / 2);
+            assertEquals(expected.getSegmentsCompleted(), actual.getSegmentsCompleted());
+            assertEquals(expected.getCyclesCompleted(), actual.getCyclesCompleted());
+            assertEquals(expected.getUnusedTime(), actual.getUnusedTime());
+            assertEquals(progress.getElapsedTime(), compactHuge.getElapsedTime());
+        }
+        assertEquals(Long.MAX_VALUE / 2 * 2, compactHuge.getElapsedTime());
+        assertFalse(compactHuge.isComplete());
+    }
+}
@@ -0,0 +1,247 @@
+package model;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ProgressCheckpointTest {
+    private Routine routine;
+    private RoutineDefinition definition;
+
+    @BeforeEach
+    public void runBefore() {
+        routine = makeRoutine();
+        definition = routine.getDefinition();
+    }
+
+    @Test
+    public void testCheckpointOfProgress() {
+        RoutineProgress progress = new RoutineProgress(definition);
+        assertEquals("[0 (cycle 1), 0 (cycle 1), 0] +0ms", progress.checkpoint().toString());
+
+        progress.seekTo(4800); // second cycle of outer, second cycle of inner, 300ms into time 1
+        ProgressCheckpoint checkpoint = progress.checkpoint();
+        assertEquals("[0 (cycle 2), 0 (cycle 2), 0] +300ms", checkpoint.toString());
+        assertFalse(checkpoint.isComplete());
+        assertEquals(2, checkpoint.getDepth());
+        assertEquals(300, checkpoint.getActiveTime());
+
+        progress.seekTo(4500);
+        assertEquals("[0 (cycle 2), 0 (cycle 1), 1] +0ms", progress.checkpoint().toString());
+        progress.seekTo(7000);
+        assertEquals("[1] +0ms", progress.checkpoint().toString());
+        progress.seekTo(9000);
+        assertEquals("complete", progress.checkpoint().toString());
+    }
+
+    @Test
+    public void testRestoreProgress() {
+        RoutineProgress progress = new RoutineProgress(definition);
+        progress.seekTo(4800);
+        ProgressCheckpoint checkpoint = progress.checkpoint();
+
+        RoutineProgress restored = new RoutineProgress(definition);
+        restored.restore(checkpoint);
+        assertEquals(4800, restored.getElapsedTime());
+        assertEquals("time 1", restored.getActiveName());
+        assertArrayEquals(new int[] {2, 2}, restored.getCurrentCycles());
+        assertEquals(checkpoint, restored.checkpoint());
+
+        // Both carry on the same way
+        progress.advance(700);
+        restored.advance(700);
+        assertEquals(progress.checkpoint(), restored.checkpoint());
+        assertEquals("man 1", restored.getActiveName());
+
+        restored.restore(new RoutineProgress(definition).checkpoint());
+        assertEquals(0, restored.getElapsedTime());
+    }
+
+    @Test
+    public void testRoutineMatchesProgress() {
+        RoutineProgress progress = new RoutineProgress(definition);
+        for (long time : new long[] {0, 1000, 2300, 4500, 4800, 7000, 8999, 9000}) {
+            routine.seekTo(time);
+            progress.seekTo(time);
+            assertEquals(progress.checkpoint(), routine.checkpoint());
+
+            // Restoring into another routine with the same structure gives the same progress
+            Routine other = makeRoutine();
+            other.restore(routine.checkpoint());
+            assertEquals(time, other.elapsedTime());
+            assertEquals(routine.checkpoint(), other.checkpoint());
+            assertEquals(routine.isComplete(), other.isComplete());
+            if (!routine.isComplete()) {
+                assertEquals(routine.getExactCurrentSegment().getName(), other.getExactCurrentSegment().getName());
+            }
+        }
+    }
+
+    @Test
+    public void testRestoreManualAtBoundary() {
+        // At 1000ms both seekTo and the checkpoint stop on the manual segment, but after completing it the
+        // checkpoint keeps the exact segment (time 1 of the next cycle) rather than the time
+        routine.seekTo(1000);
+        routine.advance();
+        ProgressCheckpoint checkpoint = routine.checkpoint();
+        assertEquals("[0 (cycle 1), 0 (cycle 2), 0] +0ms", checkpoint.toString());
+
+        Routine other = makeRoutine();
+        other.restore(checkpoint);
+        assertEquals("time 1", other.getExactCurrentSegment().getName());
+        assertEquals(checkpoint, other.checkpoint());
+    }
+
+    @Test
+    public void testRestoreWithinActiveSegment() {
+        routine.seekTo(4800);
+        ProgressCheckpoint later = routine.checkpoint();
+        routine.seekTo(4500);
+        routine.advance();
+        routine.advance(100);
+
+        // Restored by just advancing the active segment, so only it is reported as progressed
+        List<String> progressed = new ArrayList<>();
+        routine.addListener(new RoutineListener() {
+            @Override
+            public void segmentProgressed(Segment segment, long elapsedTime) {
+                progressed.add(segment.getName() + " " + elapsedTime);
+            }
+
+            @Override
+            public void segmentCompleted(Segment segment) {
+                progressed.add("completed " + segment.getName());
+            }
+
+            @Override
+            public void cycleAdvanced(RepeatSegment segment, int currentCycle) {
+                progressed.add("cycle " + segment.getName());
+            }
+
+            @Override
+            public void currentSegmentChanged(Segment currentSegment) {
+                progressed.add("current " + currentSegment.getName());
+            }
+
+            @Override
+            public void structureChanged(StructureChange change, Segment segment, int[] path) {
+                progressed.add("changed " + segment.getName());
+            }
+        });
+        routine.restore(later);
+        assertEquals(Arrays.asList("time 1 300"), progressed);
+        assertEquals(4800, routine.elapsedTime());
+
+        // Going back within the segment moves the whole routine
+        routine.seekTo(4900);
+        progressed.clear();
+        routine.restore(later);
+        assertEquals(4800, routine.elapsedTime());
+        assertEquals(Arrays.asList("checkpoint routine 4800", "current time 1"), progressed);
+    }
+
+    @Test
+    public void testEncoding() {
+        RoutineProgress progress = new RoutineProgress(definition);
+        progress.seekTo(4800);
+        ProgressCheckpoint checkpoint = progress.checkpoint();
+        byte[] bytes = checkpoint.toBytes();
+        assertEquals(32, bytes.length);
+        assertEquals(32, checkpoint.getEncodedSize());
+        assertEquals(checkpoint, ProgressCheckpoint.fromBytes(bytes));
+        assertEquals(checkpoint.hashCode(), ProgressCheckpoint.fromBytes(bytes).hashCode());
+
+        progress.seekTo(7000);
+        assertEquals(16, progress.checkpoint().toBytes().length);
+        progress.seekTo(9000);
+        ProgressCheckpoint complete = progress.checkpoint();
+        assertEquals(12, complete.toBytes().length);
+        assertTrue(ProgressCheckpoint.fromBytes(complete.toBytes()).isComplete());
+
+        // Many checkpoints written one after another into the same buffer
+        ByteBuffer buffer = ByteBuffer.allocate(checkpoint.getEncodedSize() + complete.getEncodedSize());
+        checkpoint.writeTo(buffer);
+        complete.writeTo(buffer);
+        buffer.flip();
+        assertEquals(checkpoint, ProgressCheckpoint.readFrom(buffer));
+        assertEquals(complete, ProgressCheckpoint.readFrom(buffer));
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    public void testInvalidEncoding() {
+        RoutineProgress progress = new RoutineProgress(definition);
+        byte[] bytes = progress.checkpoint().toBytes();
+        try {
+            ProgressCheckpoint.fromBytes(Arrays.copyOf(bytes, bytes.length - 1));
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            // pass
+        }
+
+        bytes[3] = 100; // depth of 100 with only 2 levels of bytes
+        try {
+            ProgressCheckpoint.fromBytes(bytes);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            // pass
+        }
+    }
+
+    @Test
+    public void testCheckpointDoesNotFit() {
+        routine.seekTo(2300);
+        ProgressCheckpoint before = routine.checkpoint();
+
+        assertDoesNotFit(new ProgressCheckpoint(new int[] {2}, new int[0], 0));          // no third segment
+        assertDoesNotFit(new ProgressCheckpoint(new int[] {0}, new int[0], 0));          // outer is not a leaf
+        assertDoesNotFit(new ProgressCheckpoint(new int[] {1, 0}, new int[] {1}, 0));    // time 3 is not a group
+        assertDoesNotFit(new ProgressCheckpoint(new int[] {0, 1}, new int[] {3}, 0));    // outer only has 2 cycles
+        assertDoesNotFit(new ProgressCheckpoint(new int[] {1}, new int[0], 2001));       // time 3 is only 2000ms
+        assertDoesNotFit(new ProgressCheckpoint(new int[] {0, 0, 1}, new int[] {1, 1}, 1)); // time in a manual
+
+        assertEquals(before, routine.checkpoint());
+        assertEquals(2300, routine.elapsedTime());
+    }
+
+    // EFFECTS: Asserts that the checkpoint cannot be restored into the routine or a session of its definition
+    private void assertDoesNotFit(ProgressCheckpoint checkpoint) {
+        try {
+            routine.restore(checkpoint);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            // pass
+        }
+        try {
+            new RoutineProgress(definition).restore(checkpoint);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            // pass
+        }
+    }
+
+    // EFFECTS: Returns a new routine:
+    //          outer (x2) --- inner (x3) --- t1 (1000)
+    //                     |              \-- m1
+    //                     \-- t2 (500)
+    //          t3 (2000)
+    private static Routine makeRoutine() {
+        TimeSegment t1 = new TimeSegment("time 1", 1000);
+        ManualSegment m1 = new ManualSegment("man 1");
+        TimeSegment t2 = new TimeSegment("time 2", 500);
+        TimeSegment t3 = new TimeSegment("time 3", 2000);
+        RepeatSegment inner = new RepeatSegment("inner", 3, new ArrayList<>(Arrays.asList(t1, m1)));
+        RepeatSegment outer = new RepeatSegment("outer", 2, new ArrayList<>(Arrays.asList(inner, t2)));
+
+        Routine routine = new Routine("checkpoint routine");
+        routine.addSegment(outer);
+        routine.addSegment(t3);
+        return routine;
+    }
+}
@@ -10,7 +10,7 @@ import static org.junit.jupiter.api.Assertions.*;
 
 public class RepeatSegmentTest {
     private RepeatSegment r1, r2, r3, r31, r32, r4;
-    private ManualSegment m1, m2;
+    private ManualSegment m1, m2, m3, m4;
     private TimeSegment t1, t2;
 
     @BeforeEach
@@ -20,9 +20,11 @@ public class RepeatSegmentTest {
         r1 = new RepeatSegment("only child parent", 1, Arrays.asList(m1));
 
         // RepeatSegment with three children, 2 repetitions
+        // (each group has its own children, completing a child moves on the group that contains it)
+        m3 = new ManualSegment("child 1");
         t1 = new TimeSegment("child 2", 2000);
         t2 = new TimeSegment("child 3", 1000);
-        r2 = new RepeatSegment("parent of 3 kids", 2, Arrays.asList(m1, t1, t2));
+        r2 = new RepeatSegment("parent of 3 kids", 2, Arrays.asList(m3, t1, t2));
 
         // RepeatSegment 4 layers deep, 2 repeats
         m2 = new ManualSegment("level 4");
@@ -31,7 +33,8 @@ public class RepeatSegmentTest {
         r3 = new RepeatSegment("level 1", 2, Arrays.asList(r31));
 
         // RepeatSegment with partially completed cycles
-        r4 = new RepeatSegment("partially complete", 3, Arrays.asList(m1), 2);
+        m4 = new ManualSegment("child 1");
+        r4 = new RepeatSegment("partially complete", 3, Arrays.asList(m4), 2);
     }
 
     @Test
@@ -47,7 +50,7 @@ public class RepeatSegmentTest {
         assertEquals(SegmentType.REPEAT, r2.getType());
         assertEquals(1, r2.getCurrentRepetition());
         assertEquals(2, r2.getTotalRepetitions());
-        assertEquals(Arrays.asList(m1, t1, t2), r2.getSegments());
+        assertEquals(Arrays.asList(m3, t1, t2), r2.getSegments());
         assertFalse(r2.isComplete());
 
         assertEquals("level 1", r3.getName());
@@ -61,7 +64,7 @@ public class RepeatSegmentTest {
         assertEquals(SegmentType.REPEAT, r4.getType());
         assertEquals(2, r4.getCurrentRepetition());
         assertEquals(3, r4.getTotalRepetitions());
-        assertEquals(Arrays.asList(m1), r4.getSegments());
+        assertEquals(Arrays.asList(m4), r4.getSegments());
         assertFalse(r4.isComplete());
     }
 
@@ -81,7 +84,7 @@ public class RepeatSegmentTest {
 
         // current cycle = new num repetitions
         ((ManualSegment) r1.getSegments().get(0)).setComplete();
-        r1.update(); // should be on cycle 2 now
+        assertEquals(2, r1.getCurrentRepetition()); // on cycle 2 straight away
         r1.setNewRepeats(2);
         assertEquals(2, r1.getTotalRepetitions());
         assertEquals(2, r1.getCurrentRepetition());
@@ -99,23 +102,20 @@ public class RepeatSegmentTest {
         List<Segment> kids = r2.getSegments();
 
         // No children complete, does NOT need to increase cycle number
-        r2.update();
         assertEquals(1, r2.getCurrentRepetition());
         assertFalse(r2.isComplete());
 
         // Only some children complete, does NOT need to increase cycle number
         ((ManualSegment) kids.get(0)).setComplete();          // first child complete
         ((TimeSegment) kids.get(1)).addTime(2000); // second child complete
-        r2.update();
         assertEquals(1, r2.getCurrentRepetition());
         assertFalse(r2.isComplete());
         assertTrue(kids.get(0).isComplete()); // Only first two kids are complete
         assertTrue(kids.get(1).isComplete());
         assertFalse(kids.get(2).isComplete());
 
-        // All children are complete, does need to increase
+        // All children are complete, does need to increase (as soon as the last child is complete)
         ((TimeSegment) kids.get(2)).addTime(1000); // third child complete
-        r2.update();
         assertEquals(2, r2.getCurrentRepetition());
         assertFalse(r2.isComplete());
         assertFalse(kids.get(0).isComplete()); // Should reset states of the kids
@@ -126,7 +126,6 @@ public class RepeatSegmentTest {
         ((ManualSegment) kids.get(0)).setComplete();          // first child complete again
         ((TimeSegment) kids.get(1)).addTime(2000); // second child complete again
         ((TimeSegment) kids.get(2)).addTime(1000); // third child complete again
-        r2.update();
         assertEquals(2, r2.getCurrentRepetition());
         assertTrue(r2.isComplete());
         assertTrue(kids.get(0).isComplete()); // Should reset states of the kids
@@ -161,7 +160,7 @@ public class RepeatSegmentTest {
         ((ManualSegment) kids.get(0)).setComplete();          // first child complete
         ((TimeSegment) kids.get(1)).addTime(2000); // second child complete
         ((TimeSegment) kids.get(2)).addTime(1000); // third child complete
-        r2.update(); // now on cycle 2/2
+        assertEquals(2, r2.getCurrentRepetition()); // now on cycle 2/2
         r2.reset();
         assertEquals(1, r2.getCurrentRepetition());
         assertEquals(2, r2.getTotalRepetitions());
@@ -174,7 +173,7 @@ public class RepeatSegmentTest {
         ((ManualSegment) kids.get(0)).setComplete();          // first child complete
         ((TimeSegment) kids.get(1)).addTime(2000); // second child complete
         ((TimeSegment) kids.get(2)).addTime(1000); // third child complete
-        r2.update(); // now on cycle 2/2
+        assertEquals(2, r2.getCurrentRepetition()); // now on cycle 2/2
         ((ManualSegment) kids.get(0)).setComplete();          // first child complete again
         ((TimeSegment) kids.get(1)).addTime(2000); // second child complete again
         assertFalse(r2.isComplete());
@@ -190,7 +189,7 @@ public class RepeatSegmentTest {
         ((ManualSegment) kids.get(0)).setComplete();          // first child complete
         ((TimeSegment) kids.get(1)).addTime(2000); // second child complete
         ((TimeSegment) kids.get(2)).addTime(1000); // third child complete
-        r2.update(); // now on cycle 2/2
+        assertEquals(2, r2.getCurrentRepetition()); // now on cycle 2/2
         ((ManualSegment) kids.get(0)).setComplete();          // first child complete again
         ((TimeSegment) kids.get(1)).addTime(2000); // second child complete again
         ((TimeSegment) kids.get(2)).addTime(1000); // third child complete again
@@ -204,11 +203,45 @@ public class RepeatSegmentTest {
         assertFalse(kids.get(2).isComplete());
     }
 
+    @Test
+    public void testTotals() {
+        assertEquals(6000, r2.getDuration());
+        assertEquals(3000, r2.getCycleDuration());
+        assertEquals(2, r2.getManualCount());
+        assertEquals(0, r2.getElapsedTime());
+        assertEquals(2, r3.getManualCount());
+        assertEquals(0, r3.getDuration());
+
+        // Time added to the children is added to the totals
+        t1.addTime(500);
+        assertEquals(500, r2.getElapsedTime());
+        assertEquals(5500, r2.getRemainingTime());
+        assertEquals(2500, r2.getRemainingCycleTime());
+
+        // Previous cycles are included
+        m3.setComplete();
+        t1.addTime(1500);
+        t2.addTime(1000);
+        assertEquals(2, r2.getCurrentRepetition());
+        assertEquals(3000, r2.getElapsedTime());
+        assertEquals(3000, r2.getRemainingCycleTime());
+
+        // Changes to the children are picked up
+        t2.setTotalTime(2000);
+        r2.setNewRepeats(3);
+        assertEquals(12000, r2.getDuration());
+        assertEquals(3, r2.getManualCount());
+        assertEquals(4000, r2.getElapsedTime());
+
+        r2.reset();
+        assertEquals(0, r2.getElapsedTime());
+    }
+
     @Test
     public void testGetFlattenedSegments() {
         // Already flat
-        assertEquals(Arrays.asList(m1, t1, t2), r2.getSegments());
-        assertEquals(Arrays.asList(m1, t1, t2), r2.getFlattenedSegments());
+        assertEquals(Arrays.asList(m3, t1, t2), r2.getSegments());
+        assertEquals(Arrays.asList(m3, t1, t2), r2.getFlattenedSegments());
 
         // Flatten 3 layer deep
         assertEquals(Arrays.asList(r31), r3.getSegments());
@@ -218,7 +251,7 @@ public class RepeatSegmentTest {
     @Test
     public void testGetCurrentSegment() {
         // First child is incomplete
-        assertEquals(m1, r2.getCurrentSegment());
+        assertEquals(m3, r2.getCurrentSegment());
 
         // Second child is incomplete
         ((ManualSegment) r2.getSegments().get(0)).setComplete();          // first child complete
@@ -232,7 +265,6 @@ public class RepeatSegmentTest {
 
         // IMPOSSIBLE CONDITION ALL CHILDREN COMPLETE ON FINAL CYCLE (VIOLATES REQUIRES CLAUSE)
         ((TimeSegment) r2.getSegments().get(2)).addTime(800);  // third child complete
-        r2.update();
         ((ManualSegment) r2.getSegments().get(0)).setComplete();          // first child complete again
         ((TimeSegment) r2.getSegments().get(1)).addTime(2000); // second child complete again
         ((TimeSegment) r2.getSegments().get(2)).addTime(1000); // third child complete again
@@ -244,4 +276,47 @@ public class RepeatSegmentTest {
             // should be here
         }
     }
+
+    @Test
+    public void testCompletionPushedUp() {
+        // Completing the last segment moves on every level straight away
+        m2.setComplete();
+        assertEquals(2, r3.getCurrentRepetition());
+        assertEquals(1, r31.getCurrentRepetition());
+        assertFalse(m2.isComplete());
+        assertFalse(r3.isComplete());
+
+        m2.setComplete();
+        assertTrue(r32.isComplete());
+        assertTrue(r3.isComplete());
+        assertEquals(2, r3.getCurrentRepetition());
+
+        // Cycles without any time or manual segments are complete as soon as they are started
+        RepeatSegment zero = new RepeatSegment("zero", 5, Arrays.asList(new TimeSegment("zero time", 0)));
+        assertEquals(5, zero.getCurrentRepetition());
+        assertTrue(zero.isComplete());
+        zero.reset();
+        assertTrue(zero.isComplete());
+    }
+
+    @Test
+    public void testHugeTotalsSaturate() {
+        RepeatSegment inner = new RepeatSegment("inner", Integer.MAX_VALUE,
+                Arrays.asList(new TimeSegment("time", 4000000), new ManualSegment("manual")));
+        RepeatSegment outer = new RepeatSegment("outer", Integer.MAX_VALUE, Arrays.asList(inner));
+        Routine huge = new Routine("huge");
+        huge.addSegment(outer);
+
+        // The same totals as the compiled plan, with the length of a cycle still exact
+        assertEquals(Long.MAX_VALUE, huge.getDuration());
+        assertEquals(huge.getDefinition().getTotalDuration(), huge.getDuration());
+        assertEquals(Long.MAX_VALUE, outer.getDuration());
+        assertEquals(Integer.MAX_VALUE * 4000000L, outer.getCycleDuration());
+        assertEquals(4000000, inner.getCycleDuration());
+        assertEquals((long) Integer.MAX_VALUE * Integer.MAX_VALUE, huge.getManualCount());
+
+        huge.seekTo(Integer.MAX_VALUE * 4000000L + 4000000);
+        assertEquals(2, outer.getCurrentRepetition());
+        assertEquals(Integer.MAX_VALUE * 4000000L + 4000000, huge.getElapsedTime());
+    }
 }
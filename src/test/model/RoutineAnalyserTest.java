@@ -0,0 +1,109 @@
+package model;
+
+import model.AnalysisIssue.Severity;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RoutineAnalyserTest {
+    private Routine routine;
+    private RepeatSegment outer, inner;
+    private TimeSegment t1, t2, t3;
+    private ManualSegment m1;
+
+    @BeforeEach
+    public void runBefore() {
+        // outer (x2) --- inner (x3) --- t1 (1000)
+        //            |              \-- m1
+        //            \-- t2 (500)
+        // t3 (2000)
+        t1 = new TimeSegment("time 1", 1000);
+        m1 = new ManualSegment("man 1");
+        t2 = new TimeSegment("time 2", 500);
+        t3 = new TimeSegment("time 3", 2000);
+        inner = new RepeatSegment("inner", 3, new ArrayList<>(Arrays.asList(t1, m1)));
+        outer = new RepeatSegment("outer", 2, new ArrayList<>(Arrays.asList(inner, t2)));
+
+        routine = new Routine("analysed routine");
+        routine.addSegment(outer);
+        routine.addSegment(t3);
+    }
+
+    @Test
+    public void testSummary() {
+        RoutineAnalysis analysis = RoutineAnalyser.analyse(routine);
+        assertTrue(analysis.getIssues().isEmpty());
+        assertFalse(analysis.hasErrors());
+        assertEquals(9000, analysis.getTotalDuration());
+        assertEquals(routine.getDuration(), analysis.getTotalDuration());
+        assertEquals(15, analysis.getLeafCount());
+        assertEquals(6, analysis.getManualCount());
+        assertEquals(2, analysis.getMaxDepth());
+    }
+
+    @Test
+    public void testEmptyRoutine() {
+        RoutineAnalysis analysis = RoutineAnalyser.analyse(new Routine("empty"));
+        assertFalse(analysis.hasErrors());
+        assertEquals(1, analysis.getIssues(Severity.WARNING).size());
+        assertEquals("WARNING: Routine empty has no segments", analysis.getIssues().get(0).toString());
+        assertEquals(0, analysis.getTotalDuration());
+        assertEquals(0, analysis.getMaxDepth());
+    }
+
+    @Test
+    public void testErrors() {
+        inner.setCurrentCycle(3);
+        routine.addSegment(new TimeSegment("over time", 100, 250));
+        routine.addSegment(new RepeatSegment("no children", 2, new ArrayList<>()));
+        routine.addSegment(new RepeatSegment("past the end", 3, new ArrayList<>(Arrays.asList(
+                new ManualSegment("child"))), 5));
+
+        RoutineAnalysis analysis = RoutineAnalyser.analyse(routine);
+        assertTrue(analysis.hasErrors());
+        List<AnalysisIssue> errors = analysis.getIssues(Severity.ERROR);
+        assertEquals(3, errors.size());
+        assertEquals("Time segment over time has 250ms elapsed of 100ms", errors.get(0).getMessage());
+        assertEquals("Repeat segment no children has no children", errors.get(1).getMessage());
+        assertEquals("past the end", errors.get(2).getSegment().getName());
+        assertTrue(analysis.getIssues(Severity.WARNING).isEmpty());
+    }
+
+    @Test
+    public void testHugeRepetitions() {
+        // 2,000,000,000 ^ 3 cycles of an hour, far too long to time (and far too many to ever unroll)
+        TimeSegment hour = new TimeSegment("hour", 3600000);
+        TimeSegment instant = new TimeSegment("instant", 0);
+        RepeatSegment r3 = new RepeatSegment("r3", 2000000000, new ArrayList<>(Arrays.asList(hour, instant)));
+        RepeatSegment r2 = new RepeatSegment("r2", 2000000000, new ArrayList<>(Arrays.asList(r3)));
+        RepeatSegment r1 = new RepeatSegment("r1", 2000000000, new ArrayList<>(Arrays.asList(r2)));
+        Routine huge = new Routine("huge");
+        huge.addSegment(r1);
+
+        RoutineAnalysis analysis = RoutineAnalyser.analyse(huge);
+        List<AnalysisIssue> warnings = analysis.getIssues(Severity.WARNING);
+        assertEquals(4, warnings.size());
+        assertSame(r1, warnings.get(0).getSegment());
+        assertSame(instant, warnings.get(3).getSegment());
+
+        List<AnalysisIssue> errors = analysis.getIssues(Severity.ERROR);
+        assertEquals(1, errors.size());
+        assertEquals("Routine huge takes too long to be timed", errors.get(0).getMessage());
+        assertEquals(Long.MAX_VALUE, analysis.getTotalDuration());
+        assertEquals(Long.MAX_VALUE, analysis.getLeafCount());
+        assertEquals(3, analysis.getMaxDepth());
+    }
+
+    @Test
+    public void testZeroLengthInSmallLoopNotWarned() {
+        inner.addChild(0, new TimeSegment("instant", 0));
+        RoutineAnalysis analysis = RoutineAnalyser.analyse(routine);
+        assertTrue(analysis.getIssues().isEmpty());
+        assertEquals(21, analysis.getLeafCount());
+    }
+}
@@ -0,0 +1,470 @@
+package model;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RoutinePlanTest {
+    private Routine routine;
+    private RepeatSegment outer, inner;
+    private TimeSegment t1, t2, t3;
+    private ManualSegment m1;
+
+    @BeforeEach
+    public void runBefore() {
+        // outer (x2) --- inner (x3) --- t1 (1000)
+        //            |              \-- m1
+        //            \-- t2 (500)
+        // t3 (2000)
+        t1 = new TimeSegment("time 1", 1000);
+        m1 = new ManualSegment("man 1");
+        t2 = new TimeSegment("time 2", 500);
+        t3 = new TimeSegment("time 3", 2000);
+        inner = new RepeatSegment("inner", 3, new ArrayList<>(Arrays.asList(t1, m1)));
+        outer = new RepeatSegment("outer", 2, new ArrayList<>(Arrays.asList(inner, t2)));
+
+        routine = new Routine("plan routine");
+        routine.addSegment(outer);
+        routine.addSegment(t3);
+    }
+
+    @Test
+    public void testAdvanceThroughLoops() {
+        for (int outerCycle = 1; outerCycle <= 2; outerCycle++) {
+            for (int innerCycle = 1; innerCycle <= 3; innerCycle++) {
+                routine.advance(1000);
+                assertEquals(m1, routine.getExactCurrentSegment());
+                assertEquals(innerCycle, inner.getCurrentRepetition());
+                assertEquals(outerCycle, outer.getCurrentRepetition());
+                routine.advance();
+            }
+            assertEquals(t2, routine.getExactCurrentSegment());
+            routine.advance(500);
+        }
+
+        // Only the last segment is left
+        assertEquals(t3, routine.getExactCurrentSegment());
+        routine.advance(5000);
+        assertTrue(routine.isComplete());
+        assertEquals(2000, t3.getCurrentTime());
+
+        // Nothing happens once complete
+        routine.advance(1000);
+        routine.advance();
+        assertTrue(routine.isComplete());
+    }
+
+    @Test
+    public void testAdvanceCarriesTimeIntoNextCycle() {
+        // Skip the manual segment in every inner cycle
+        inner.setNewRepeats(1);
+        routine.advance(1000);
+        routine.advance();
+
+        // t2 (500) + next outer cycle t1 (1000)
+        routine.advance(500 + 1000);
+        assertEquals(2, outer.getCurrentRepetition());
+        assertEquals(m1, routine.getExactCurrentSegment());
+        assertTrue(t1.isComplete());
+        assertFalse(t2.isComplete());
+    }
+
+    @Test
+    public void testZeroLengthSegmentsAreSkipped() {
+        Routine zeroes = new Routine("zeroes");
+        TimeSegment last = new TimeSegment("last", 100);
+        zeroes.addSegment(new TimeSegment("zero 1", 0));
+        zeroes.addSegment(new RepeatSegment("zero loop", 50, new ArrayList<>(Arrays.asList(
+                new TimeSegment("zero 2", 0), new TimeSegment("zero 3", 0)))));
+        zeroes.addSegment(last);
+
+        assertEquals(last, zeroes.getExactCurrentSegment());
+        zeroes.advance(40);
+        assertEquals(40, last.getCurrentTime());
+    }
+
+    @Test
+    public void testZeroLengthLastChild() {
+        TimeSegment work = new TimeSegment("work", 100);
+        RepeatSegment sets = new RepeatSegment("sets", 3, new ArrayList<>(Arrays.asList(
+                work, new TimeSegment("marker", 0))));
+        Routine marked = new Routine("marked");
+        marked.addSegment(sets);
+
+        // The marker is complete from the start, but the cycle is not until the work is done
+        assertEquals(1, sets.getCurrentRepetition());
+        assertFalse(marked.isComplete());
+        assertEquals(work, marked.getExactCurrentSegment());
+
+        AdvanceResult result = marked.advance(150);
+        assertFalse(result.isRoutineCompleted());
+        assertEquals(150, marked.getElapsedTime());
+        assertEquals(2, sets.getCurrentRepetition());
+        assertEquals(50, work.getCurrentTime());
+
+        marked.reset();
+        assertEquals(1, sets.getCurrentRepetition());
+        assertEquals(0, marked.getElapsedTime());
+
+        // Completing the work directly moves onto the next cycle too
+        work.addTime(100);
+        assertEquals(2, sets.getCurrentRepetition());
+        assertEquals(0, work.getCurrentTime());
+        assertEquals(100, marked.getElapsedTime());
+    }
+
+    @Test
+    public void testZeroLengthLastChildAfterManual() {
+        ManualSegment ready = new ManualSegment("ready");
+        RepeatSegment sets = new RepeatSegment("sets", 2, new ArrayList<>(Arrays.asList(
+                new TimeSegment("work", 100), ready, new TimeSegment("marker", 0))));
+        Routine marked = new Routine("marked");
+        marked.addSegment(sets);
+        marked.addSegment(new TimeSegment("cool down", 300));
+
+        marked.advance(178);
+        assertEquals(ready, marked.getExactCurrentSegment());
+        assertEquals(100, marked.getElapsedTime());
+        marked.advance();
+        assertEquals(2, sets.getCurrentRepetition());
+        assertEquals(100, marked.getElapsedTime());
+        assertFalse(sets.isComplete());
+    }
+
+    @Test
+    public void testMatchesRoutineProgress() {
+        List<Routine> routines = new ArrayList<>();
+        routines.add(routine);
+        routines.add(makeZeroLengthRoutine());
+        for (Routine subject : routines) {
+            RoutineProgress progress = new RoutineProgress(subject.getDefinition());
+            Random random = new Random(210);
+            for (int step = 0; step < 300 && !progress.isComplete(); step++) {
+                AdvanceResult expected;
+                AdvanceResult actual;
+                if (random.nextInt(4) == 0) {
+                    actual = subject.advance();
+                    expected = progress.advance();
+                } else {
+                    long milliseconds = random.nextInt(400);
+                    actual = subject.advance(milliseconds);
+                    expected = progress.advance(milliseconds);
+                }
+                String context = subject.getName() + " step " + step;
+                assertEquals(expected.getSegmentsCompleted(), actual.getSegmentsCompleted(), context);
+                assertEquals(expected.getCyclesCompleted(), actual.getCyclesCompleted(), context);
+                assertEquals(expected.getUnusedTime(), actual.getUnusedTime(), context);
+                assertEquals(expected.isRoutineCompleted(), actual.isRoutineCompleted(), context);
+                assertEquals(progress.checkpoint(), subject.checkpoint(), context);
+                assertEquals(progress.getElapsedTime(), subject.getElapsedTime(), context);
+                assertEquals(progress.isComplete(), subject.isComplete(), context);
+            }
+            assertTrue(subject.isComplete(), subject.getName());
+        }
+    }
+
+    @Test
+    public void testAdvanceResult() {
+        AdvanceResult result = routine.advance(700);
+        assertEquals(0, result.getSegmentsCompleted());
+        assertFalse(result.hasCurrentSegmentChanged());
+
+        // t1 completes and the manual segment stops the rest of the time from being used
+        result = routine.advance(1000);
+        assertEquals(1, result.getSegmentsCompleted());
+        assertEquals(700, result.getUnusedTime());
+        assertFalse(result.isRoutineCompleted());
+
+        // m1 completes, and so does the first inner cycle
+        result = routine.advance();
+        assertEquals(1, result.getSegmentsCompleted());
+        assertEquals(1, result.getCyclesCompleted());
+
+        routine.seekTo(8000);
+        result = routine.advance(5000);
+        assertEquals(1, result.getSegmentsCompleted());
+        assertEquals(4000, result.getUnusedTime());
+        assertTrue(result.isRoutineCompleted());
+
+        // Only reported once
+        result = routine.advance(5000);
+        assertFalse(result.isRoutineCompleted());
+        assertEquals(5000, result.getUnusedTime());
+    }
+
+    @Test
+    public void testAdvanceByHugeTime() {
+        TimeSegment short1 = new TimeSegment("short 1", 10);
+        TimeSegment short2 = new TimeSegment("short 2", 20);
+        RepeatSegment innerBlock = new RepeatSegment("inner block", 100000,
+                new ArrayList<>(Arrays.asList(short1, short2)));
+        RepeatSegment outerBlock = new RepeatSegment("outer block", 10000,
+                new ArrayList<>(Arrays.asList(innerBlock)));
+        TimeSegment last = new TimeSegment("last", 1000);
+        Routine big = new Routine("big");
+        big.addSegment(outerBlock);
+        big.addSegment(last);
+
+        // Over 8 hours into the routine at once, the cycles are skipped instead of run one by one
+        long eightHours = 8 * 60 * 60 * 1000;
+        AdvanceResult result = big.advance(eightHours + 15);
+        assertEquals(eightHours + 15, big.elapsedTime());
+        assertEquals(short2, big.getExactCurrentSegment());
+        assertEquals(5, short2.getCurrentTime());
+        assertEquals(10, outerBlock.getCurrentRepetition());
+        assertEquals(60001, innerBlock.getCurrentRepetition());
+        assertEquals(2 * (9 * 100000L + 60000) + 1, result.getSegmentsCompleted());
+        assertEquals(9 * 100000L + 60000 + 9, result.getCyclesCompleted());
+
+        // Then all the way to the end
+        result = big.advance(Long.MAX_VALUE / 2);
+        assertTrue(result.isRoutineCompleted());
+        assertTrue(big.isComplete());
+        assertEquals(1000, last.getCurrentTime());
+        assertEquals(10000 * 100000L * 30 + 1000, big.elapsedTime());
+    }
+
+    @Test
+    public void testAdvanceThroughManyZeroLengthSegments() {
+        Routine zeroes = new Routine("zeroes");
+        zeroes.addSegment(new TimeSegment("first", 10));
+        for (int i = 0; i < 100000; i++) {
+            zeroes.addSegment(new TimeSegment("zero " + i, 0));
+        }
+        zeroes.addSegment(new RepeatSegment("zero loop", Integer.MAX_VALUE, new ArrayList<>(Arrays.asList(
+                new TimeSegment("zero loop 1", 0), new TimeSegment("zero loop 2", 0)))));
+        TimeSegment last = new TimeSegment("last", 100);
+        zeroes.addSegment(last);
+
+        AdvanceResult result = zeroes.advance(10 + 40);
+        assertEquals(40, last.getCurrentTime());
+        // The loop was already complete before advancing (all of its cycles are complete as soon as they start),
+        // so it is skipped at once but still counted as every cycle run
+        assertEquals(1 + 100000 + 2L * Integer.MAX_VALUE, result.getSegmentsCompleted());
+        assertEquals(Integer.MAX_VALUE, result.getCyclesCompleted());
+        assertTrue(zeroes.getSegments().get(100001).isComplete());
+        assertEquals(result.getSegmentsCompleted(),
+                new RoutineProgress(zeroes.getDefinition()).advance(10 + 40).getSegmentsCompleted());
+    }
+
+    @Test
+    public void testPlanRecompiledAfterEdits() {
+        routine.advance(1000);
+        assertEquals(m1, routine.getExactCurrentSegment());
+
+        // Inserting a new segment before the active one makes it active
+        ManualSegment m2 = new ManualSegment("man 2");
+        routine.insertSegmentBefore(m2, outer);
+        assertEquals(m2, routine.getExactCurrentSegment());
+        routine.advance();
+        assertEquals(m1, routine.getExactCurrentSegment());
+
+        // Making a completed segment longer makes it active again
+        t1.setTotalTime(3000);
+        assertEquals(t1, routine.getExactCurrentSegment());
+        routine.advance(2500);
+        assertEquals(3000, t1.getCurrentTime());
+        assertEquals(m1, routine.getExactCurrentSegment());
+
+        // Removing the active segment moves onto the next one
+        routine.removeSegment(m1);
+        assertEquals(t1, routine.getExactCurrentSegment());
+        assertEquals(2, inner.getCurrentRepetition());
+    }
+
+    @Test
+    public void testEditThenAdvanceAgreesOnComplete() {
+        while (!routine.isComplete()) {
+            routine.advance(100000);
+            routine.advance();
+        }
+
+        // A new segment inside a finished group makes the routine incomplete again
+        TimeSegment t4 = new TimeSegment("time 4", 300);
+        routine.insertSegmentBefore(t4, t1);
+        assertFalse(routine.isComplete());
+        assertEquals(t4, routine.getExactCurrentSegment());
+        assertEquals(3, inner.getCurrentRepetition());
+        AdvanceResult result = routine.advance(1000);
+        assertEquals(700, result.getUnusedTime());
+        assertTrue(result.isRoutineCompleted());
+        assertTrue(routine.isComplete());
+
+        // Removing the only unfinished child of a group on an earlier cycle moves it on to its next cycle
+        routine.reset();
+        routine.advance(1300);
+        assertEquals(m1, routine.getExactCurrentSegment());
+        routine.removeSegment(m1);
+        assertFalse(routine.isComplete());
+        assertEquals(t4, routine.getExactCurrentSegment());
+        assertEquals(2, inner.getCurrentRepetition());
+        assertEquals(1300, routine.elapsedTime());
+
+        result = routine.advance(100000);
+        assertTrue(result.isRoutineCompleted());
+        assertTrue(routine.isComplete());
+        assertEquals(3 * 1300 * 2 + 500 * 2 + 2000, routine.elapsedTime());
+    }
+
+    @Test
+    public void testPlanFollowsSegmentsChangedDirectly() {
+        routine.advance(1000);
+        m1.setComplete();
+        assertEquals(t1, routine.getExactCurrentSegment());
+        assertEquals(2, inner.getCurrentRepetition());
+
+        routine.advance(1000);
+        routine.reset();
+        assertEquals(t1, routine.getExactCurrentSegment());
+        assertEquals(0, t1.getCurrentTime());
+        assertEquals(1, inner.getCurrentRepetition());
+    }
+
+    @Test
+    public void testElapsedTime() {
+        assertEquals(0, routine.elapsedTime());
+        routine.advance(700);
+        assertEquals(700, routine.elapsedTime());
+
+        // Time spent in previous cycles is included
+        routine.advance(300);
+        routine.advance();
+        routine.advance(1000);
+        routine.advance();
+        routine.advance(250);
+        assertEquals(2250, routine.elapsedTime());
+
+        routine.seekTo(100000);
+        assertEquals(9000, routine.elapsedTime());
+    }
+
+    @Test
+    public void testCachedTotals() {
+        assertEquals(9000, routine.getDuration());
+        assertEquals(6, routine.getManualCount());
+        assertEquals(3500, outer.getCycleDuration());
+
+        routine.advance(1000);
+        routine.advance();
+        routine.advance(700);
+        assertEquals(1700, routine.getElapsedTime());
+        assertEquals(7300, routine.getRemainingTime());
+        assertEquals(1800, outer.getRemainingCycleTime());
+
+        // Structural changes deep in the routine are passed up
+        inner.setNewRepeats(1);
+        assertEquals(5000, routine.getDuration());
+        assertEquals(2, routine.getManualCount());
+        routine.removeSegment(t3);
+        assertEquals(3000, routine.getDuration());
+        routine.insertSegmentAfter(new TimeSegment("time 4", 250), t2);
+        assertEquals(3500, routine.getDuration());
+
+        // Seeking and resetting set the progress directly
+        routine.seekTo(2000);
+        assertEquals(2000, routine.getElapsedTime());
+        assertEquals(2, outer.getCurrentRepetition());
+        routine.reset();
+        assertEquals(0, routine.getElapsedTime());
+        assertEquals(0, outer.getElapsedTime());
+    }
+
+    @Test
+    public void testSeekTo() {
+        // Into the middle of a time segment in a later cycle
+        routine.seekTo(1500);
+        assertEquals(t1, routine.getExactCurrentSegment());
+        assertEquals(500, t1.getCurrentTime());
+        assertEquals(2, inner.getCurrentRepetition());
+        assertFalse(m1.isComplete());
+        assertEquals(1500, routine.elapsedTime());
+
+        // Exactly at a manual segment, it becomes the current segment
+        routine.seekTo(3000);
+        assertEquals(m1, routine.getExactCurrentSegment());
+        assertEquals(3, inner.getCurrentRepetition());
+        assertTrue(t1.isComplete());
+
+        // Past the inner repeat, it is complete
+        routine.seekTo(3200);
+        assertEquals(t2, routine.getExactCurrentSegment());
+        assertEquals(200, t2.getCurrentTime());
+        assertTrue(inner.isComplete());
+
+        // Into the second outer cycle, can go backwards too
+        routine.seekTo(4800);
+        routine.seekTo(3500 + 1300);
+        assertEquals(t1, routine.getExactCurrentSegment());
+        assertEquals(300, t1.getCurrentTime());
+        assertEquals(2, outer.getCurrentRepetition());
+        assertEquals(2, inner.getCurrentRepetition());
+        assertFalse(t2.isComplete());
+
+        // End of the last outer cycle
+        routine.seekTo(7000);
+        assertEquals(t3, routine.getExactCurrentSegment());
+        assertTrue(outer.isComplete());
+
+        // Past the end, everything is complete
+        routine.seekTo(20000);
+        assertTrue(routine.isComplete());
+
+        // Back to the start is the same as a reset
+        routine.seekTo(0);
+        assertEquals(t1, routine.getExactCurrentSegment());
+        assertEquals(0, t1.getCurrentTime());
+        assertEquals(1, outer.getCurrentRepetition());
+        assertEquals(1, inner.getCurrentRepetition());
+        assertFalse(t3.isComplete());
+    }
+
+    @Test
+    public void testSeekToInHeavilyRepeatedBlock() {
+        TimeSegment short1 = new TimeSegment("short 1", 10);
+        TimeSegment short2 = new TimeSegment("short 2", 20);
+        RepeatSegment innerBlock = new RepeatSegment("inner block", 1000,
+                new ArrayList<>(Arrays.asList(short1, short2)));
+        RepeatSegment outerBlock = new RepeatSegment("outer block", 1000,
+                new ArrayList<>(Arrays.asList(innerBlock)));
+        Routine big = new Routine("big");
+        big.addSegment(outerBlock);
+
+        big.seekTo(12345678);
+        assertEquals(short2, big.getExactCurrentSegment());
+        assertEquals(8, short2.getCurrentTime());
+        assertEquals(412, outerBlock.getCurrentRepetition());
+        assertEquals(523, innerBlock.getCurrentRepetition());
+        assertEquals(12345678, big.elapsedTime());
+
+        // Advancing carries on from the new position
+        big.advance(12 + 5);
+        assertEquals(short1, big.getExactCurrentSegment());
+        assertEquals(5, short1.getCurrentTime());
+        assertEquals(524, innerBlock.getCurrentRepetition());
+        assertEquals(12345678 + 17, big.elapsedTime());
+    }
+
+    // EFFECTS: Returns a routine with zero length segments at the start and end of its repeats, and a repeat
+    //          whose cycles take no time at all
+    private static Routine makeZeroLengthRoutine() {
+        RepeatSegment innerLoop = new RepeatSegment("inner", 3, new ArrayList<>(Arrays.asList(
+                new TimeSegment("start marker", 0), new TimeSegment("work", 70), new TimeSegment("end marker", 0))));
+        RepeatSegment outerLoop = new RepeatSegment("outer", 4, new ArrayList<>(Arrays.asList(
+                innerLoop, new ManualSegment("ready"), new TimeSegment("marker", 0))));
+        RepeatSegment instantLoop = new RepeatSegment("instant", 5, new ArrayList<>(Arrays.asList(
+                new TimeSegment("zero 1", 0), new TimeSegment("zero 2", 0))));
+
+        Routine zeroes = new Routine("zero length");
+        zeroes.addSegment(outerLoop);
+        zeroes.addSegment(instantLoop);
+        zeroes.addSegment(new TimeSegment("cool down", 90));
+        zeroes.addSegment(new TimeSegment("end", 0));
+        return zeroes;
+    }
+}
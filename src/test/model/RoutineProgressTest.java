@@ -0,0 +1,247 @@
+package model;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RoutineProgressTest {
+    private Routine routine;
+    private RepeatSegment outer, inner;
+    private TimeSegment t1, t2, t3;
+    private ManualSegment m1;
+    private RoutineDefinition definition;
+
+    @BeforeEach
+    public void runBefore() {
+        // outer (x2) --- inner (x3) --- t1 (1000)
+        //            |              \-- m1
+        //            \-- t2 (500)
+        // t3 (2000)
+        t1 = new TimeSegment("time 1", 1000);
+        m1 = new ManualSegment("man 1");
+        t2 = new TimeSegment("time 2", 500);
+        t3 = new TimeSegment("time 3", 2000);
+        inner = new RepeatSegment("inner", 3, new ArrayList<>(Arrays.asList(t1, m1)));
+        outer = new RepeatSegment("outer", 2, new ArrayList<>(Arrays.asList(inner, t2)));
+
+        routine = new Routine("progress routine");
+        routine.addSegment(outer);
+        routine.addSegment(t3);
+        definition = routine.getDefinition();
+    }
+
+    @Test
+    public void testConstruction() {
+        RoutineProgress progress = new RoutineProgress(definition);
+        assertEquals(definition, progress.getDefinition());
+        assertEquals(9000, definition.getTotalDuration());
+        assertFalse(progress.isComplete());
+        assertEquals("time 1", progress.getActiveName());
+        assertEquals(SegmentType.TIME, progress.getActiveType());
+        assertArrayEquals(new int[] {1, 1}, progress.getCurrentCycles());
+        assertEquals(0, progress.getElapsedTime());
+    }
+
+    @Test
+    public void testSessionsAreIndependent() {
+        RoutineProgress first = new RoutineProgress(definition);
+        RoutineProgress second = new RoutineProgress(definition);
+
+        first.advance(1000);
+        first.advance();
+        first.advance(300);
+        second.advance(600);
+
+        assertEquals(1300, first.getElapsedTime());
+        assertArrayEquals(new int[] {1, 2}, first.getCurrentCycles());
+        assertEquals(600, second.getElapsedTime());
+        assertArrayEquals(new int[] {1, 1}, second.getCurrentCycles());
+
+        // The routine itself is not changed
+        assertEquals(0, t1.getCurrentTime());
+        assertEquals(0, routine.elapsedTime());
+    }
+
+    @Test
+    public void testAdvanceMatchesRoutine() {
+        RoutineProgress progress = new RoutineProgress(definition);
+        long[] steps = {700, 0, 400, -1, 2500, -1, 1000, -1, 100, 900, -1, 5000, -1, 6000, -1, 6000, -1, 250, 3000};
+
+        for (long step : steps) {
+            AdvanceResult expected = step == -1 ? routine.advance() : routine.advance(step);
+            AdvanceResult actual = step == -1 ? progress.advance() : progress.advance(step);
+
+            assertEquals(expected.getSegmentsCompleted(), actual.getSegmentsCompleted());
+            assertEquals(expected.getCyclesCompleted(), actual.getCyclesCompleted());
+            assertEquals(expected.getUnusedTime(), actual.getUnusedTime());
+            assertEquals(expected.isRoutineCompleted(), actual.isRoutineCompleted());
+            assertEquals(routine.elapsedTime(), progress.getElapsedTime());
+            assertEquals(routine.isComplete(), progress.isComplete());
+            if (!routine.isComplete()) {
+                assertEquals(routine.getExactCurrentSegment().getName(), progress.getActiveName());
+            }
+        }
+        assertTrue(progress.isComplete());
+        assertEquals(9000, progress.getElapsedTime());
+    }
+
+    @Test
+    public void testSeekTo() {
+        RoutineProgress progress = new RoutineProgress(definition);
+
+        progress.seekTo(1500);
+        assertEquals("time 1", progress.getActiveName());
+        assertEquals(500, progress.getActiveTime());
+        assertArrayEquals(new int[] {1, 2}, progress.getCurrentCycles());
+        assertEquals(1500, progress.getElapsedTime());
+
+        // Exactly at a manual segment
+        progress.seekTo(3000);
+        assertEquals("man 1", progress.getActiveName());
+        assertEquals(SegmentType.MANUAL, progress.getActiveType());
+        assertArrayEquals(new int[] {1, 3}, progress.getCurrentCycles());
+
+        // Then carries on from there
+        progress.advance();
+        progress.advance(200);
+        assertEquals("time 2", progress.getActiveName());
+        assertEquals(3200, progress.getElapsedTime());
+
+        progress.seekTo(20000);
+        assertTrue(progress.isComplete());
+        progress.reset();
+        assertEquals(0, progress.getElapsedTime());
+        assertEquals("time 1", progress.getActiveName());
+    }
+
+    @Test
+    public void testDefinitionKeptUntilStructureChanges() {
+        RoutineProgress progress = new RoutineProgress(definition);
+        routine.advance(500);
+        assertSame(definition, routine.getDefinition());
+
+        // Changing the routine makes a new definition, sessions on the old one are unaffected
+        t3.setTotalTime(4000);
+        RoutineDefinition newDefinition = routine.getDefinition();
+        assertNotSame(definition, newDefinition);
+        assertEquals(11000, newDefinition.getTotalDuration());
+        assertEquals(9000, definition.getTotalDuration());
+
+        progress.seekTo(8000);
+        assertEquals("time 3", progress.getActiveName());
+        assertEquals(1000, progress.getActiveTime());
+    }
+
+    @Test
+    public void testManySessionsOfLargeRoutine() {
+        TimeSegment short1 = new TimeSegment("short 1", 10);
+        RepeatSegment innerBlock = new RepeatSegment("inner block", 1000,
+                new ArrayList<>(Arrays.asList(short1, new TimeSegment("short 2", 20))));
+        Routine big = new Routine("big");
+        big.addSegment(new RepeatSegment("outer block", 1000, new ArrayList<>(Arrays.asList(innerBlock))));
+        RoutineDefinition bigDefinition = big.getDefinition();
+
+        RoutineProgress[] sessions = new RoutineProgress[2000];
+        for (int i = 0; i < sessions.length; i++) {
+            sessions[i] = new RoutineProgress(bigDefinition);
+            sessions[i].advance(i * 1000L);
+        }
+        assertEquals(1999000, sessions[1999].getElapsedTime());
+        assertArrayEquals(new int[] {67, 634}, sessions[1999].getCurrentCycles());
+        assertEquals(0, short1.getCurrentTime());
+    }
+
+    @Test
+    public void testTimeline() {
+        List<TimelineEntry> entries = definition.timeline().collect(Collectors.toList());
+        assertEquals(15, entries.size());
+
+        assertEntry(entries.get(0), "time 1", 0, 1000, new int[] {1, 1});
+        assertEntry(entries.get(1), "man 1", 1000, 1000, new int[] {1, 1});
+        assertEquals(SegmentType.MANUAL, entries.get(1).getType());
+        assertEntry(entries.get(2), "time 1", 1000, 2000, new int[] {1, 2});
+        assertEntry(entries.get(6), "time 2", 3000, 3500, new int[] {1});
+        assertEntry(entries.get(7), "time 1", 3500, 4500, new int[] {2, 1});
+        assertEntry(entries.get(14), "time 3", 7000, 9000, new int[] {});
+        assertEquals(2000, entries.get(14).getDuration());
+
+        // Occurrences follow on from each other
+        for (int i = 1; i < entries.size(); i++) {
+            assertEquals(entries.get(i - 1).getEndTime(), entries.get(i).getStartTime());
+        }
+    }
+
+    @Test
+    public void testRemainingTimeline() {
+        RoutineProgress progress = new RoutineProgress(definition);
+        progress.advance(1000);
+        progress.advance();
+        progress.advance(300);
+
+        List<TimelineEntry> entries = progress.remainingTimeline().collect(Collectors.toList());
+        assertEquals(13, entries.size());
+        assertEntry(entries.get(0), "time 1", 1000, 2000, new int[] {1, 2});
+        assertEntry(entries.get(12), "time 3", 7000, 9000, new int[] {});
+
+        // Same from the segments of the routine itself
+        routine.advance(1000);
+        routine.advance();
+        routine.advance(300);
+        List<TimelineEntry> routineEntries = routine.remainingTimeline().collect(Collectors.toList());
+        assertEquals(13, routineEntries.size());
+        assertEntry(routineEntries.get(0), "time 1", 1000, 2000, new int[] {1, 2});
+        assertEntry(routineEntries.get(4), "time 2", 3000, 3500, new int[] {1});
+
+        progress.seekTo(100000);
+        assertEquals(0, progress.remainingTimeline().count());
+        routine.seekTo(100000);
+        assertEquals(0, routine.remainingTimeline().count());
+    }
+
+    @Test
+    public void testTimelineOfHugeRoutineIsLazy() {
+        // 1000 x 1000 x 1000 cycles, far too many occurrences to ever store
+        RepeatSegment innermost = new RepeatSegment("innermost", 1000,
+                new ArrayList<>(Arrays.asList(new TimeSegment("leaf", 10))));
+        RepeatSegment middle = new RepeatSegment("middle", 1000, new ArrayList<>(Arrays.asList(innermost)));
+        RepeatSegment outermost = new RepeatSegment("outermost", 1000, new ArrayList<>(Arrays.asList(middle)));
+        Routine huge = new Routine("huge");
+        huge.addSegment(outermost);
+
+        List<TimelineEntry> entries = huge.getDefinition().timeline().skip(1000).limit(3)
+                .collect(Collectors.toList());
+        assertEntry(entries.get(0), "leaf", 10000, 10010, new int[] {1, 2, 1});
+        assertEntry(entries.get(2), "leaf", 10020, 10030, new int[] {1, 2, 3});
+
+        RoutineProgress progress = new RoutineProgress(huge.getDefinition());
+        progress.seekTo(5000000005L);
+        TimelineEntry next = progress.remainingTimeline().findFirst().get();
+        assertEntry(next, "leaf", 5000000000L, 5000000010L, new int[] {501, 1, 1});
+    }
+
+    @Test
+    public void testDurationOfHugeRoutineSaturates() {
+        RepeatSegment inner = new RepeatSegment("inner", 2000000000,
+                new ArrayList<>(Arrays.asList(new TimeSegment("hour", 3600000))));
+        RepeatSegment outer = new RepeatSegment("outer", 2000000000, new ArrayList<>(Arrays.asList(inner)));
+        Routine huge = new Routine("huge");
+        huge.addSegment(outer);
+        huge.addSegment(new TimeSegment("after", 1000));
+
+        assertEquals(Long.MAX_VALUE, huge.getDefinition().getTotalDuration());
+    }
+
+    private void assertEntry(TimelineEntry entry, String name, long startTime, long endTime, int[] cycles) {
+        assertEquals(name, entry.getName());
+        assertEquals(startTime, entry.getStartTime());
+        assertEquals(endTime, entry.getEndTime());
+        assertArrayEquals(cycles, entry.getCycles());
+        assertEquals(cycles.length, entry.getDepth());
+    }
+}
@@ -0,0 +1,172 @@
+package model;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RoutineRunnerTest {
+    private static final long MILLI = 1000000;
+    private static final long TOLERANCE = 25 * MILLI; // how late a boundary may be published on a busy machine
+
+    private BlockingQueue<ProgressSnapshot> snapshots;
+
+    @BeforeEach
+    public void runBefore() {
+        snapshots = new LinkedBlockingQueue<>();
+    }
+
+    @Test
+    public void testCommands() throws InterruptedException {
+        // On a virtual clock the runner only wakes up for commands, as the next boundary is never reached
+        ManualClock clock = new ManualClock();
+        Routine routine = new Routine("commands");
+        routine.addSegment(new TimeSegment("time 1", 1000));
+        routine.addSegment(new ManualSegment("man 1"));
+        routine.addSegment(new TimeSegment("time 2", 1000));
+        RoutineRunner runner = new RoutineRunner(routine.getDefinition(), clock, 0, snapshots::add);
+        runner.start();
+        assertEquals(0, awaitSnapshot(s -> true).getElapsedTime());
+
+        clock.advanceMillis(300);
+        long command = runner.setRefreshRate(0); // does nothing but wake the runner up
+        ProgressSnapshot snapshot = awaitSnapshot(s -> s.getCommandsRun() >= command);
+        assertEquals(300, snapshot.getElapsedTime());
+        assertEquals(1, snapshot.getCommandsRun());
+
+        clock.advanceMillis(900); // up to the manual segment, the last 200ms are not used
+        long manual = runner.completeManual();
+        snapshot = awaitSnapshot(s -> s.getCommandsRun() >= manual);
+        assertEquals(1000, snapshot.getElapsedTime());
+        assertEquals("[2] +0ms", snapshot.getCheckpoint().toString());
+
+        long reset = runner.reset();
+        assertEquals(0, awaitSnapshot(s -> s.getCommandsRun() >= reset).getElapsedTime());
+
+        routine.seekTo(1500);
+        long restore = runner.restore(routine.checkpoint());
+        assertEquals(1500, awaitSnapshot(s -> s.getCommandsRun() >= restore).getElapsedTime());
+
+        long invalid = runner.restore(new ProgressCheckpoint(new int[] {5}, new int[0], 0));
+        assertEquals(1500, awaitSnapshot(s -> s.getCommandsRun() >= invalid).getElapsedTime());
+
+        clock.advanceMillis(100);
+        ProgressSnapshot last = runner.stop();
+        assertEquals(1600, last.getElapsedTime());
+        assertEquals(5, last.getCommandsRun());
+    }
+
+    @Test
+    public void testBoundariesOnTime() throws InterruptedException {
+        SystemClock clock = new SystemClock();
+        Routine routine = new Routine("boundaries");
+        for (int i = 0; i < 10; i++) {
+            routine.addSegment(new TimeSegment("time " + i, 30));
+        }
+
+        RoutineRunner runner = new RoutineRunner(routine.getDefinition(), clock, 0, snapshots::add);
+        long start = clock.nanoTime();
+        runner.start();
+        List<ProgressSnapshot> boundaries = awaitBoundaries(10);
+        runner.stop();
+
+        assertBoundariesOnTime(start, boundaries, 30);
+        assertTrue(boundaries.get(9).isComplete());
+        assertEquals(300, boundaries.get(9).getElapsedTime());
+    }
+
+    @Test
+    public void testStalledConsumerAndBusyThreadsDoNotDelayTiming() throws InterruptedException {
+        SystemClock clock = new SystemClock();
+        Routine routine = new Routine("stress");
+        for (int i = 0; i < 20; i++) {
+            routine.addSegment(new TimeSegment("time " + i, 25));
+        }
+
+        // Something like a UI thread which stalls for 300ms (e.g. in a long layout pass) before it gets to the
+        // snapshots handed over to it by the publisher, plus a thread hogging every core
+        BlockingQueue<ProgressSnapshot> handedOver = new LinkedBlockingQueue<>();
+        Thread slowConsumer = new Thread(() -> {
+            try {
+                Thread.sleep(300);
+                while (true) {
+                    snapshots.add(handedOver.take());
+                }
+            } catch (InterruptedException e) {
+                // done
+            }
+        });
+        List<Thread> hogs = new ArrayList<>();
+        for (int i = 0; i < Runtime.getRuntime().availableProcessors(); i++) {
+            hogs.add(new Thread(() -> {
+                long spins = 0;
+                while (!Thread.currentThread().isInterrupted()) {
+                    spins++;
+                }
+            }));
+        }
+        slowConsumer.start();
+        hogs.forEach(Thread::start);
+
+        try {
+            RoutineRunner runner = new RoutineRunner(routine.getDefinition(), clock, 100, handedOver::add);
+            long start = clock.nanoTime();
+            runner.start();
+            List<ProgressSnapshot> boundaries = awaitBoundaries(20);
+            ProgressSnapshot last = runner.stop();
+
+            assertBoundariesOnTime(start, boundaries, 25);
+            assertTrue(last.isComplete());
+            assertEquals(500, last.getElapsedTime());
+        } finally {
+            slowConsumer.interrupt();
+            hogs.forEach(Thread::interrupt);
+        }
+    }
+
+    // EFFECTS: Waits for the first snapshot matching the condition, failing if none comes within 5 seconds
+    private ProgressSnapshot awaitSnapshot(Predicate<ProgressSnapshot> condition) throws InterruptedException {
+        while (true) {
+            ProgressSnapshot snapshot = snapshots.poll(5, TimeUnit.SECONDS);
+            assertNotNull(snapshot, "No snapshot published");
+            if (condition.test(snapshot)) {
+                return snapshot;
+            }
+        }
+    }
+
+    // EFFECTS: Waits for the snapshots published at the given number of segment boundaries (i.e. each first
+    //          snapshot with a different active segment), and returns them in order
+    private List<ProgressSnapshot> awaitBoundaries(int count) throws InterruptedException {
+        List<ProgressSnapshot> boundaries = new ArrayList<>();
+        ProgressSnapshot previous = awaitSnapshot(s -> true);
+        while (boundaries.size() < count) {
+            ProgressSnapshot snapshot = awaitSnapshot(s -> true);
+            if (!snapshot.getCheckpoint().isAtSameSegment(previous.getCheckpoint())) {
+                boundaries.add(snapshot);
+            }
+            previous = snapshot;
+        }
+        return boundaries;
+    }
+
+    // EFFECTS: Asserts that the snapshot at the end of each segment of the given length was taken no earlier than
+    //          the end of the segment, and not much later, with the routine advanced by exactly the time passed
+    private void assertBoundariesOnTime(long start, List<ProgressSnapshot> boundaries, long segmentLength) {
+        for (int i = 0; i < boundaries.size(); i++) {
+            long boundary = start + (i + 1) * segmentLength * MILLI;
+            long lateness = boundaries.get(i).getTime() - boundary;
+            assertTrue(lateness >= 0, "Boundary " + i + " published early by " + -lateness + "ns");
+            assertTrue(lateness < TOLERANCE, "Boundary " + i + " published late by " + lateness + "ns");
+            long elapsed = boundaries.get(i).getElapsedTime() * MILLI;
+            assertTrue(elapsed >= (i + 1) * segmentLength * MILLI && elapsed <= boundary + lateness - start);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package model;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RoutineSimulatorTest {
+    private static final long TICK = 20;
+
+    private RoutineDefinition definition;
+    private RoutineSimulator simulator;
+
+    @BeforeEach
+    public void runBefore() {
+        // outer (x2) --- inner (x3) --- t1 (1000)
+        //            |              \-- m1
+        //            \-- t2 (500)
+        // t3 (2000)
+        TimeSegment t1 = new TimeSegment("time 1", 1000);
+        ManualSegment m1 = new ManualSegment("man 1");
+        TimeSegment t2 = new TimeSegment("time 2", 500);
+        TimeSegment t3 = new TimeSegment("time 3", 2000);
+        RepeatSegment inner = new RepeatSegment("inner", 3, new ArrayList<>(Arrays.asList(t1, m1)));
+        RepeatSegment outer = new RepeatSegment("outer", 2, new ArrayList<>(Arrays.asList(inner, t2)));
+
+        Routine routine = new Routine("simulated routine");
+        routine.addSegment(outer);
+        routine.addSegment(t3);
+        definition = routine.getDefinition();
+        simulator = new RoutineSimulator(definition, TICK);
+    }
+
+    @Test
+    public void testTrace() {
+        // Completed 10ms after the first manual segment is reached, takes effect on the next tick
+        for (long completion : new long[] {1010, 2030, 3050, 4570, 5590, 6610}) {
+            simulator.completeManualAt(completion);
+        }
+
+        SimulationTrace trace = simulator.run(Long.MAX_VALUE);
+        assertTrue(trace.isComplete());
+        List<SimulationEvent> events = trace.getEvents();
+        assertEquals(30, events.size());
+        assertEquals("0 STARTED time 1 [1, 1]", events.get(0).toString());
+        assertEquals("1000 ENDED time 1 [1, 1]", events.get(1).toString());
+        assertEquals("1000 STARTED man 1 [1, 1]", events.get(2).toString());
+        assertEquals("1020 ENDED man 1 [1, 1]", events.get(3).toString());
+        assertEquals("1020 STARTED time 1 [1, 2]", events.get(4).toString());
+        assertEquals(SimulationEvent.Kind.ENDED, events.get(29).getKind());
+        assertEquals("time 3", events.get(29).getEntry().getName());
+
+        // Each manual segment waited 20ms (10ms to the completion, then 10ms to the next tick)
+        assertEquals(9000 + 6 * 20, trace.getEndTime());
+        assertEquals(events.get(29).getTime(), trace.getEndTime());
+        assertEquals(trace.getEndTime() / TICK, trace.getTicks());
+    }
+
+    @Test
+    public void testStopsAtManualWithoutCompletion() {
+        simulator.completeManualAt(500); // before the manual segment is reached, does nothing
+        SimulationTrace trace = simulator.run(Long.MAX_VALUE);
+        assertFalse(trace.isComplete());
+        assertEquals(3, trace.getEvents().size());
+        assertEquals("1000 STARTED man 1 [1, 1]", trace.getEvents().get(2).toString());
+        assertEquals(1000, trace.getEndTime());
+        assertEquals(50, trace.getTicks());
+    }
+
+    @Test
+    public void testManualDelay() {
+        simulator.setManualDelay(30);
+        SimulationTrace trace = simulator.run(Long.MAX_VALUE);
+        assertTrue(trace.isComplete());
+        assertEquals(30, trace.getEvents().size());
+        assertEquals("1040 ENDED man 1 [1, 1]", trace.getEvents().get(3).toString());
+        // Each manual segment waited 40ms (30ms delay, then 10ms to the next tick)
+        assertEquals(9000 + 6 * 40, trace.getEndTime());
+
+        // Scripted completions still come first
+        simulator.completeManualAt(1010);
+        trace = simulator.run(Long.MAX_VALUE);
+        assertEquals("1020 ENDED man 1 [1, 1]", trace.getEvents().get(3).toString());
+        assertEquals(9000 + 20 + 5 * 40, trace.getEndTime());
+    }
+
+    @Test
+    public void testStopsAtTimeLimit() {
+        SimulationTrace trace = simulator.run(999);
+        assertFalse(trace.isComplete());
+        assertEquals(1, trace.getEvents().size());
+        assertEquals(999, trace.getEndTime());
+        assertEquals(50, trace.getTicks());
+    }
+
+    @Test
+    public void testMatchesTickByTickAdvance() {
+        long[] completions = {1500, 3000, 4700, 6500, 7930, 9999};
+        for (long completion : completions) {
+            simulator.completeManualAt(completion);
+        }
+        List<SimulationEvent> events = simulator.run(Long.MAX_VALUE).getEvents();
+
+        // Drive a session the same way as the timer in the app, counting the segments ended on each tick
+        RoutineProgress progress = new RoutineProgress(definition);
+        int nextCompletion = 0;
+        int nextEvent = 0;
+        long time = 0;
+        while (!progress.isComplete() && time < 100000) {
+            time += TICK;
+            long completed = progress.advance(TICK).getSegmentsCompleted();
+            while (nextCompletion < completions.length && completions[nextCompletion] <= time) {
+                nextCompletion++;
+                completed += progress.advance().getSegmentsCompleted();
+            }
+
+            long ended = 0;
+            for (; nextEvent < events.size() && events.get(nextEvent).getTime() <= time; nextEvent++) {
+                if (events.get(nextEvent).getKind() == SimulationEvent.Kind.ENDED) {
+                    ended++;
+                }
+            }
+            assertEquals(ended, completed, "at " + time + "ms");
+        }
+        assertTrue(progress.isComplete());
+        assertEquals(events.size(), nextEvent);
+    }
+
+    @Test
+    public void testLongRoutineAtMillisecondTicks() {
+        // 10 hour protocol of 50s work, 10s rest
+        RepeatSegment intervals = new RepeatSegment("intervals", 600, new ArrayList<>(Arrays.asList(
+                new TimeSegment("work", 50000), new TimeSegment("rest", 10000))));
+        Routine protocol = new Routine("protocol");
+        protocol.addSegment(intervals);
+
+        SimulationTrace trace = new RoutineSimulator(protocol.getDefinition(), 1).run(Long.MAX_VALUE);
+        assertTrue(trace.isComplete());
+        assertEquals(36000000, trace.getTicks());
+        assertEquals(2400, trace.getEvents().size());
+        assertEquals("35990000 STARTED rest [600]", trace.getEvents().get(2398).toString());
+    }
+}
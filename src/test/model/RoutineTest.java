@@ -5,6 +5,7 @@ import org.junit.jupiter.api.Test;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -154,6 +155,57 @@ public class RoutineTest {
         assertTrue(rn2.getSegments().isEmpty());
     }
 
+    @Test
+    public void testGetSegmentById() {
+        assertEquals(m2, rn3.getSegmentById(m2.getId()));
+        assertEquals(r2, rn3.getSegmentById(r2.getId()));
+        assertNull(rn1.getSegmentById(m2.getId()));
+        assertNotEquals(m1.getId(), m2.getId());
+
+        // Inserted segments are found, removed ones (and their emptied parents) are not
+        ManualSegment m3 = new ManualSegment("test");
+        rn3.insertSegmentAfter(m3, m2);
+        assertEquals(m3, rn3.getSegmentById(m3.getId()));
+        rn3.removeSegment(m2);
+        rn3.removeSegment(m3);
+        assertNull(rn3.getSegmentById(m2.getId()));
+        assertNull(rn3.getSegmentById(r3.getId()));
+        assertEquals(r2, rn3.getSegmentById(r2.getId()));
+    }
+
+    @Test
+    public void testEditsOnSharedSegment() {
+        // m1 was last added to rn2, but is still found in rn3
+        assertEquals(rn2, m1.getParent());
+        rn3.insertSegmentBefore(new ManualSegment("test"), m1);
+        assertEquals(3, r2.getSegments().size());
+        rn3.removeSegment(m1);
+        assertEquals(2, r2.getSegments().size());
+        assertEquals(Arrays.asList(m1), rn2.getSegments());
+    }
+
+    @Test
+    public void testEditsInLargeRoutine() {
+        Routine large = new Routine("large");
+        List<TimeSegment> targets = new ArrayList<>();
+        for (int i = 0; i < 50000; i++) {
+            TimeSegment target = new TimeSegment("time " + i, 10);
+            targets.add(target);
+            large.addSegment(new RepeatSegment("repeat " + i, 1, new ArrayList<>(Arrays.asList(target))));
+        }
+
+        // Each edit only looks at the group containing the segment
+        for (TimeSegment target : targets) {
+            large.insertSegmentAfter(new ManualSegment("man"), target);
+        }
+        for (TimeSegment target : targets) {
+            large.removeSegment(target);
+        }
+        assertEquals(50000, large.getSegments().size());
+        assertEquals(100000, large.getFlattenedSegments().size());
+        assertNull(large.getSegmentById(targets.get(0).getId()));
+    }
+
     @Test
     public void testAdvance() {
         // Already complete
@@ -196,4 +248,224 @@ public class RoutineTest {
         rn3.reset();
         assertEquals(m2, rn3.getExactCurrentSegment());
     }
+
+    @Test
+    public void testListener() {
+        List<String> events = new ArrayList<>();
+        RoutineListener listener = new RoutineListener() {
+            @Override
+            public void segmentProgressed(Segment segment, long elapsedTime) {
+                events.add("progressed " + segment.getName() + " " + elapsedTime);
+            }
+
+            @Override
+            public void segmentCompleted(Segment segment) {
+                events.add("completed " + segment.getName());
+            }
+
+            @Override
+            public void cycleAdvanced(RepeatSegment segment, int currentCycle) {
+                events.add("cycle " + segment.getName() + " " + currentCycle);
+            }
+
+            @Override
+            public void currentSegmentChanged(Segment currentSegment) {
+                events.add("current " + (currentSegment == null ? "none" : currentSegment.getName()));
+            }
+
+            @Override
+            public void structureChanged(StructureChange change, Segment segment, int[] path) {
+                events.add(change + " " + segment.getName() + " " + Arrays.toString(path));
+            }
+        };
+        rn3.addListener(listener);
+
+        rn3.advance();
+        assertEquals(Arrays.asList("completed man 2", "completed level 3", "current man 1"), events);
+
+        // Nothing changes while waiting on a manual segment
+        events.clear();
+        rn3.advance(500);
+        assertTrue(events.isEmpty());
+
+        rn3.advance();
+        rn3.advance(2500);
+        assertEquals(Arrays.asList("completed man 1", "completed level 2", "current time 1",
+                "progressed time 1 2000", "completed time 1", "progressed time 2 500", "current time 2"), events);
+
+        events.clear();
+        rn3.advance(500);
+        assertEquals(Arrays.asList("progressed time 2 1000", "completed time 2", "cycle level 1 2", "current man 2"),
+                events);
+
+        // Changes to the structure, with the path to the segment
+        events.clear();
+        rn3.insertSegmentAfter(new TimeSegment("new", 100), t1);
+        t2.setName("renamed");
+        rn3.removeSegment(m2);
+        assertEquals(Arrays.asList("INSERTED new [0, 2]", "EDITED renamed [0, 3]", "REMOVED level 3 [0, 0, 0]"),
+                events);
+
+        events.clear();
+        rn3.reset();
+        assertEquals(Arrays.asList("progressed single routine 0", "current man 1"), events);
+
+        rn3.removeListener(listener);
+        events.clear();
+        rn3.advance();
+        assertTrue(events.isEmpty());
+    }
+
+    @Test
+    public void testEdit() {
+        List<String> changes = new ArrayList<>();
+        rn3.addListener(new RoutineListener() {
+            @Override
+            public void segmentProgressed(Segment segment, long elapsedTime) {
+                changes.add("progressed");
+            }
+
+            @Override
+            public void segmentCompleted(Segment segment) {
+                changes.add("completed");
+            }
+
+            @Override
+            public void cycleAdvanced(RepeatSegment segment, int currentCycle) {
+                changes.add("cycle");
+            }
+
+            @Override
+            public void currentSegmentChanged(Segment currentSegment) {
+                changes.add("current");
+            }
+
+            @Override
+            public void structureChanged(StructureChange change, Segment segment, int[] path) {
+                changes.add(change + " " + segment.getName() + " " + path.length);
+            }
+        });
+        EventLog.getInstance().clear();
+
+        // Scale every time segment, then add many generated segments
+        rn3.edit(transaction -> {
+            for (Segment segment : rn3.getFlattenedSegments()) {
+                if (segment instanceof TimeSegment) {
+                    TimeSegment timeSegment = (TimeSegment) segment;
+                    transaction.setTotalTime(timeSegment, timeSegment.getTotalTime() * 9 / 10);
+                }
+            }
+            for (int i = 0; i < 200; i++) {
+                transaction.addSegment(new TimeSegment("generated " + i, 100));
+            }
+            transaction.insertSegmentBefore(new ManualSegment("first"), r1);
+            transaction.removeSegment(m2);
+        });
+
+        assertEquals(Arrays.asList("EDITED single routine 0"), changes);
+        List<Event> events = new ArrayList<>();
+        EventLog.getInstance().forEach(events::add);
+        assertEquals(2, events.size()); // the log was cleared, then the edit
+        assertEquals("Edited routine single routine: 201 added, 1 removed, 2 changed",
+                events.get(1).getDescription());
+
+        assertEquals(202, rn3.getSegments().size());
+        assertEquals(1800, t1.getTotalTime());
+        assertEquals(2 * 2700 + 200 * 100, rn3.getDuration());
+        assertEquals(Arrays.asList(m1), r2.getSegments());
+        assertNull(rn3.getSegmentById(m2.getId()));
+        assertEquals("first", rn3.getExactCurrentSegment().getName());
+    }
+
+    @Test
+    public void testEditRolledBack() {
+        rn3.advance();
+        rn3.advance();
+        rn3.advance(1500);
+        long duration = rn3.getDuration();
+        List<Segment> segments = rn3.getFlattenedSegments();
+
+        try {
+            rn3.edit(transaction -> {
+                transaction.setTotalTime(t1, 1000);
+                transaction.setNewRepeats(r1, 5);
+                transaction.setName(t2, "renamed");
+                transaction.addSegment(new TimeSegment("new", 100));
+                transaction.removeSegment(m2);
+                transaction.insertSegmentAfter(new ManualSegment("new manual"), m1);
+                transaction.removeSegment(new ManualSegment("not in routine"));
+            });
+            fail("Should have thrown for a segment not in the routine");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        assertEquals(segments, rn3.getFlattenedSegments());
+        assertEquals(duration, rn3.getDuration());
+        assertEquals(2000, t1.getTotalTime());
+        assertEquals(1500, t1.getCurrentTime());
+        assertEquals(2, r1.getTotalRepetitions());
+        assertEquals("time 2", t2.getName());
+        assertEquals(r3, m2.getParent());
+        assertEquals(m2, rn3.getSegmentById(m2.getId()));
+        assertEquals(t1, rn3.getExactCurrentSegment());
+        assertEquals(1500, rn3.elapsedTime());
+
+        // Only usable during the edit
+        RoutineTransaction[] saved = new RoutineTransaction[1];
+        rn3.edit(transaction -> saved[0] = transaction);
+        try {
+            saved[0].addSegment(new ManualSegment("too late"));
+            fail("Should not be usable after the edit");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testEditRolledBackAcrossCycle() {
+        TimeSegment a = new TimeSegment("a", 100);
+        TimeSegment b = new TimeSegment("b", 100);
+        RepeatSegment repeat = new RepeatSegment("repeat", 3, Arrays.asList(a, b));
+        Routine routine = new Routine("routine");
+        routine.addSegment(repeat);
+        routine.advance(150);
+
+        // Finishing b moves the repeat on to its next cycle, which must be undone too
+        try {
+            routine.edit(transaction -> {
+                transaction.setTotalTime(b, 30);
+                throw new IllegalStateException("cancelled");
+            });
+            fail("Should have passed on the exception");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertEquals(1, repeat.getCurrentRepetition());
+        assertEquals(100, a.getCurrentTime());
+        assertEquals(100, b.getTotalTime());
+        assertEquals(50, b.getCurrentTime());
+        assertEquals(b, routine.getExactCurrentSegment());
+        assertEquals(150, routine.elapsedTime());
+
+        try {
+            routine.edit(transaction -> {
+                transaction.setNewRepeats(repeat, 1);
+                transaction.setTotalTime(b, 30);
+                throw new IllegalStateException("cancelled");
+            });
+            fail("Should have passed on the exception");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertEquals(3, repeat.getTotalRepetitions());
+        assertEquals(1, repeat.getCurrentRepetition());
+        assertFalse(routine.isComplete());
+        assertEquals(150, routine.elapsedTime());
+
+        routine.advance(50);
+        assertEquals(2, repeat.getCurrentRepetition());
+        assertEquals(0, a.getCurrentTime());
+        assertEquals(200, routine.elapsedTime());
+    }
 }
@@ -0,0 +1,117 @@
+package model;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RoutineTimerTest {
+    private static final long MILLI = 1000000;
+
+    private Routine routine;
+    private ManualClock clock;
+    private RoutineTimer timer;
+
+    @BeforeEach
+    public void runBefore() {
+        // repeat (x2) --- t1 (1000)
+        //             \-- m1
+        // t2 (2500)
+        TimeSegment t1 = new TimeSegment("time 1", 1000);
+        ManualSegment m1 = new ManualSegment("man 1");
+        TimeSegment t2 = new TimeSegment("time 2", 2500);
+        routine = new Routine("timed routine");
+        routine.addSegment(new RepeatSegment("repeat", 2, new ArrayList<>(Arrays.asList(t1, m1))));
+        routine.addSegment(t2);
+
+        clock = new ManualClock();
+        clock.advanceMillis(12345);
+        timer = new RoutineTimer(routine, clock);
+    }
+
+    @Test
+    public void testTimeToNextBoundary() {
+        assertEquals(1000, routine.getTimeToNextBoundary());
+        routine.advance(400);
+        assertEquals(600, routine.getTimeToNextBoundary());
+        routine.advance(600);
+        assertEquals(-1, routine.getTimeToNextBoundary()); // waiting for man 1
+        routine.advance();
+        assertEquals(1000, routine.getTimeToNextBoundary());
+        routine.seekTo(routine.getDuration());
+        assertEquals(-1, routine.getTimeToNextBoundary());
+    }
+
+    @Test
+    public void testAdvanceExactlyAtBoundary() {
+        assertEquals(clock.nanoTime() + 1000 * MILLI, timer.getNextBoundary());
+
+        clock.advanceNanos(timer.getNextBoundary() - clock.nanoTime());
+        AdvanceResult result = timer.advance();
+        assertEquals(1, result.getSegmentsCompleted());
+        assertEquals("man 1", routine.getExactCurrentSegment().getName());
+        assertEquals(Long.MAX_VALUE, timer.getNextBoundary());
+    }
+
+    @Test
+    public void testBoundaryKeepsFractionsOfMilliseconds() {
+        clock.advanceNanos(300 * MILLI + 600000);
+        timer.advance();
+        assertEquals(300, routine.elapsedTime());
+        // 699.4ms left, not 700ms, because 0.6ms has passed but not been added to the routine yet
+        assertEquals(699 * MILLI + 400000, timer.getNextBoundary() - clock.nanoTime());
+
+        clock.advanceNanos(timer.getNextBoundary() - clock.nanoTime());
+        timer.advance();
+        assertEquals(1000, routine.elapsedTime());
+        assertEquals("man 1", routine.getExactCurrentSegment().getName());
+    }
+
+    @Test
+    public void testManualThenNextBoundary() {
+        clock.advanceMillis(1000);
+        timer.advance();
+        clock.advanceMillis(5000); // waiting for the manual segment does not count towards the next segment
+        timer.advance();
+        routine.advance();
+        assertEquals(clock.nanoTime() + 1000 * MILLI, timer.getNextBoundary());
+
+        clock.advanceMillis(1000);
+        timer.advance();
+        routine.advance();
+        assertEquals(clock.nanoTime() + 2500 * MILLI, timer.getNextBoundary());
+
+        clock.advanceMillis(2500);
+        assertTrue(timer.advance().isRoutineCompleted());
+        assertEquals(Long.MAX_VALUE, timer.getNextBoundary());
+    }
+
+    @Test
+    public void testRestart() {
+        clock.advanceMillis(200);
+        timer.advance();
+        clock.advanceMillis(10000); // paused
+        timer.restart();
+        assertEquals(clock.nanoTime() + 800 * MILLI, timer.getNextBoundary());
+        clock.advanceMillis(100);
+        timer.advance();
+        assertEquals(300, routine.elapsedTime());
+    }
+
+    @Test
+    public void testLateAdvanceCatchesUp() {
+        // Advanced long after the boundary, e.g. because the app was busy: the time is still exact
+        clock.advanceMillis(1000);
+        timer.advance();
+        routine.advance();
+        clock.advanceMillis(1700);
+        AdvanceResult result = timer.advance();
+        assertEquals(1, result.getSegmentsCompleted());
+        assertEquals(700, result.getUnusedTime()); // stopped at the second manual segment
+        assertEquals(2000, routine.elapsedTime());
+        assertEquals(Long.MAX_VALUE, timer.getNextBoundary());
+    }
+}
@@ -0,0 +1,137 @@
+package model;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import persistence.JsonWriter;
+import persistence.RoutineJsonKey;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SegmentWalkerTest {
+    private Routine routine;
+    private RepeatSegment r1;
+    private TimeSegment t1, t2;
+    private ManualSegment m1;
+
+    @BeforeEach
+    public void runBefore() {
+        // r1 (x2) --- t1 (1000)
+        //         \-- m1
+        // t2 (500)
+        t1 = new TimeSegment("time 1", 1000);
+        m1 = new ManualSegment("man 1");
+        t2 = new TimeSegment("time 2", 500);
+        r1 = new RepeatSegment("repeat 1", 2, new ArrayList<>(Arrays.asList(t1, m1)));
+
+        routine = new Routine("walked routine");
+        routine.addSegment(r1);
+        routine.addSegment(t2);
+    }
+
+    @Test
+    public void testWalkOrder() {
+        List<String> visits = new ArrayList<>();
+        SegmentWalker.walk(routine, new SegmentVisitor() {
+            @Override
+            public boolean enter(Segment segment) {
+                visits.add("enter " + segment.getName());
+                return true;
+            }
+
+            @Override
+            public void leave(SegmentGroup group) {
+                visits.add("leave " + group.getName());
+            }
+        });
+
+        assertEquals(Arrays.asList("enter walked routine", "enter repeat 1", "enter time 1", "enter man 1",
+                "leave repeat 1", "enter time 2", "leave walked routine"), visits);
+    }
+
+    @Test
+    public void testSkipChildren() {
+        List<Segment> entered = new ArrayList<>();
+        SegmentWalker.walk(routine, segment -> {
+            entered.add(segment);
+            return segment != r1;
+        });
+        assertEquals(Arrays.asList(routine, r1, t2), entered);
+
+        entered.clear();
+        SegmentWalker.walk(t1, segment -> entered.add(segment));
+        assertEquals(Arrays.asList(t1), entered);
+    }
+
+    @Test
+    public void testDeeplyNestedRoutine() throws IOException, InterruptedException {
+        // Binary counter 5000 repeat segments deep, far deeper than recursing through each level would allow
+        TimeSegment leaf = new TimeSegment("leaf", 10);
+        Segment segment = leaf;
+        for (int i = 0; i < 5000; i++) {
+            segment = new RepeatSegment("bit " + i, 2, new ArrayList<>(Arrays.asList(segment)));
+        }
+        Routine counter = new Routine("binary counter");
+        counter.addSegment(segment);
+        RepeatSegment bit0 = (RepeatSegment) leaf.getParent();
+        RepeatSegment bit1 = (RepeatSegment) bit0.getParent();
+
+        assertEquals(5001, counter.getFlattenedSegments().size());
+        assertEquals(10001, counter.getDefinition().getLength());
+        assertFalse(counter.isComplete());
+
+        // Counted up to 2 (binary 10), and 5ms into the next leaf
+        counter.advance(25);
+        assertEquals(25, counter.getElapsedTime());
+        assertEquals(1, bit0.getCurrentRepetition());
+        assertEquals(2, bit1.getCurrentRepetition());
+        assertEquals(5, leaf.getCurrentTime());
+
+        counter.reset();
+        assertEquals(0, counter.getElapsedTime());
+        assertEquals(1, bit1.getCurrentRepetition());
+
+        // Stored compactly and back again, on a thread with a small stack
+        runWithSmallStack(() -> {
+            CompactRoutine compact = CompactRoutine.of(counter);
+            assertEquals(5001, compact.size());
+            compact.advance(25);
+            assertEquals(25, compact.getElapsedTime());
+            Routine copy = compact.toRoutine();
+            assertEquals(5001, copy.getFlattenedSegments().size());
+            assertEquals(25, copy.getElapsedTime());
+            assertEquals(5, ((TimeSegment) copy.getExactCurrentSegment()).getCurrentTime());
+        });
+
+        // Encoded all the way down
+        StringWriter out = new StringWriter();
+        counter.encodeTo(new JsonWriter(out, false));
+        String text = out.toString();
+        assertEquals(5000, text.split("\"" + RoutineJsonKey.CHILDREN + "\":\\[", -1).length - 1);
+        assertTrue(text.contains("[{\"currentTime\":0,\"totalTime\":10,\"name\":\"leaf\",\"type\":\"TIME\"}]"));
+    }
+
+    // EFFECTS: Runs the check on a new thread with a stack far too small for recursing through every level of a
+    //          deeply nested routine, and rethrows anything it throws
+    private static void runWithSmallStack(Runnable check) throws InterruptedException {
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread thread = new Thread(null, () -> {
+            try {
+                check.run();
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        }, "small stack", 128 * 1024);
+        thread.start();
+        thread.join();
+        if (failure.get() != null) {
+            fail(failure.get());
+        }
+    }
+}
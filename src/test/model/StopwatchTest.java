@@ -0,0 +1,80 @@
+package model;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StopwatchTest {
+    private ManualClock clock;
+    private Stopwatch stopwatch;
+
+    @BeforeEach
+    public void runBefore() {
+        clock = new ManualClock();
+        clock.advanceMillis(5000); // the stopwatch should only count from when it is started
+        stopwatch = new Stopwatch(clock);
+    }
+
+    @Test
+    public void testConstructor() {
+        assertEquals(5000000000L, clock.nanoTime());
+        assertEquals(0, stopwatch.lap());
+    }
+
+    @Test
+    public void testLap() {
+        clock.advanceMillis(33);
+        assertEquals(33, stopwatch.lap());
+        assertEquals(0, stopwatch.lap());
+        clock.advanceMillis(1000);
+        assertEquals(1000, stopwatch.lap());
+    }
+
+    @Test
+    public void testCarriesFractionsOfMilliseconds() {
+        clock.advanceNanos(400000);
+        assertEquals(0, stopwatch.lap());
+        clock.advanceNanos(400000);
+        assertEquals(0, stopwatch.lap());
+        clock.advanceNanos(400000);
+        assertEquals(1, stopwatch.lap());
+        clock.advanceNanos(800000);
+        assertEquals(1, stopwatch.lap());
+    }
+
+    @Test
+    public void testNoDriftAtThirtyTicksPerSecond() {
+        // An hour of ticks 1/30th of a second apart, none of which is a whole number of milliseconds
+        long total = 0;
+        for (int i = 0; i < 30 * 3600; i++) {
+            clock.advanceNanos(1000000000L / 30);
+            long lap = stopwatch.lap();
+            assertTrue(lap == 33 || lap == 34);
+            total += lap;
+        }
+        assertEquals(3600 * 1000 - 1, total); // 36000ns short of an hour, from rounding down each 1/30th
+    }
+
+    @Test
+    public void testRestart() {
+        clock.advanceNanos(1500000);
+        stopwatch.restart();
+        clock.advanceNanos(600000);
+        assertEquals(0, stopwatch.lap());
+        clock.advanceNanos(600000);
+        assertEquals(1, stopwatch.lap());
+    }
+
+    @Test
+    public void testSystemClock() {
+        Stopwatch systemStopwatch = new Stopwatch(new SystemClock());
+        long total = 0;
+        for (int i = 0; i < 1000; i++) {
+            long lap = systemStopwatch.lap();
+            assertTrue(lap >= 0);
+            total += lap;
+        }
+        assertTrue(total < 60000);
+    }
+}
@@ -0,0 +1,119 @@
+package persistence;
+
+import org.junit.jupiter.api.Test;
+import persistence.JsonTokenizer.Token;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JsonTokenizerTest {
+
+    @Test
+    public void testTokens() throws IOException {
+        JsonTokenizer tokenizer = tokenizer("{\"a\": [1, -2.5e1, \"x\"], \"b\": {}, \"c\": [true, false, null]}");
+        assertEquals(Token.BEGIN_OBJECT, tokenizer.next());
+        assertEquals(Token.NAME, tokenizer.next());
+        assertEquals("a", tokenizer.getString());
+        assertEquals(Token.BEGIN_ARRAY, tokenizer.next());
+        assertEquals(Token.NUMBER, tokenizer.next());
+        assertEquals(1, tokenizer.getLong());
+        assertEquals(Token.NUMBER, tokenizer.next());
+        assertEquals(-25, tokenizer.getLong());
+        assertEquals(Token.STRING, tokenizer.next());
+        assertEquals("x", tokenizer.getString());
+        assertEquals(Token.END_ARRAY, tokenizer.next());
+        assertEquals(Token.NAME, tokenizer.next());
+        assertEquals(Token.BEGIN_OBJECT, tokenizer.next());
+        assertEquals(Token.END_OBJECT, tokenizer.next());
+        assertEquals(Token.NAME, tokenizer.next());
+        assertEquals(Token.BEGIN_ARRAY, tokenizer.next());
+        assertEquals(Token.TRUE, tokenizer.next());
+        assertEquals(Token.FALSE, tokenizer.next());
+        assertEquals(Token.NULL, tokenizer.next());
+        assertEquals(Token.END_ARRAY, tokenizer.next());
+        assertEquals(Token.END_OBJECT, tokenizer.next());
+        assertEquals(Token.END_DOCUMENT, tokenizer.next());
+    }
+
+    @Test
+    public void testEscapes() throws IOException {
+        JsonTokenizer tokenizer = tokenizer("\"a\\\"b\\\\c\\n\\u00e9\\ud83d\\ude00 \u00fc\"");
+        assertEquals(Token.STRING, tokenizer.next());
+        assertEquals("a\"b\\c\n\u00e9\ud83d\ude00 \u00fc", tokenizer.getString());
+    }
+
+    @Test
+    public void testSkipValue() throws IOException {
+        JsonTokenizer tokenizer = tokenizer("[{\"a\": [[1], {\"b\": 2}]}, 3]");
+        assertEquals(Token.BEGIN_ARRAY, tokenizer.next());
+        tokenizer.skipValue(tokenizer.next());
+        assertEquals(Token.NUMBER, tokenizer.next());
+        assertEquals(3, tokenizer.getLong());
+    }
+
+    @Test
+    public void testLongTextAcrossBuffers() throws IOException {
+        StringBuilder builder = new StringBuilder("[");
+        for (int i = 0; i < 5000; i++) {
+            builder.append(i).append(", ");
+        }
+        builder.append("\"").append(new String(new char[20000]).replace('\0', 'z')).append("\"]");
+
+        JsonTokenizer tokenizer = tokenizer(builder.toString());
+        assertEquals(Token.BEGIN_ARRAY, tokenizer.next());
+        for (int i = 0; i < 5000; i++) {
+            assertEquals(Token.NUMBER, tokenizer.next());
+            assertEquals(i, tokenizer.getLong());
+        }
+        assertEquals(Token.STRING, tokenizer.next());
+        assertEquals(20000, tokenizer.getString().length());
+        assertEquals(Token.END_ARRAY, tokenizer.next());
+        assertEquals(Token.END_DOCUMENT, tokenizer.next());
+    }
+
+    @Test
+    public void testErrorPositions() {
+        assertError("{\"a\": 1,\n \"b\" 2}", "Expected ':' at byte 14 (line 2)");
+        assertError("{\"a\": 1 \"b\": 2}", "Expected ',' or '}' at byte 8 (line 1)");
+        assertError("[1, 2,]", "Expected a value at byte 6 (line 1)");
+        assertError("[1]\n\nx", "Unexpected text after the end of the document at byte 5 (line 3)");
+        assertError("{\"a\": \"b", "Unterminated string at byte 8 (line 1)");
+        assertError("[tru]", "Expected true at byte 1 (line 1)");
+        assertError("[", "Unexpected end of the document at byte 1 (line 1)");
+    }
+
+    @Test
+    public void testNumberOutOfRange() throws IOException {
+        JsonTokenizer tokenizer = tokenizer("[99999999999999999999]");
+        tokenizer.next();
+        assertEquals(Token.NUMBER, tokenizer.next());
+        try {
+            tokenizer.getLong();
+            fail("IOException expected");
+        } catch (IOException e) {
+            assertEquals("Number 99999999999999999999 is out of range at byte 1 (line 1)", e.getMessage());
+        }
+    }
+
+    // EFFECTS: Returns a tokenizer reading the given text
+    private static JsonTokenizer tokenizer(String text) {
+        return new JsonTokenizer(Channels.newChannel(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8))));
+    }
+
+    // EFFECTS: Reads every token of the given text, checking that it fails with the given message
+    private static void assertError(String text, String message) {
+        JsonTokenizer tokenizer = tokenizer(text);
+        try {
+            while (tokenizer.next() != Token.END_DOCUMENT) {
+                // keep reading
+            }
+            fail("IOException expected");
+        } catch (IOException e) {
+            assertEquals(message, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package persistence;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JsonWriterTest {
+    private StringWriter out;
+
+    @BeforeEach
+    public void runBefore() {
+        out = new StringWriter();
+    }
+
+    @Test
+    public void testPrettyLayout() throws IOException {
+        JsonWriter writer = new JsonWriter(out, true);
+        writer.beginObject(3);
+        writer.name("a");
+        writer.beginArray(2);
+        writer.value(1);
+        writer.value(true);
+        writer.endArray();
+        writer.name("b");
+        writer.beginArray(1);
+        writer.beginObject(1);
+        writer.name("c");
+        writer.value("d");
+        writer.endObject();
+        writer.endArray();
+        writer.name("e");
+        writer.beginArray(0);
+        writer.endArray();
+        writer.endObject();
+
+        assertEquals("{\n    \"a\": [\n        1,\n        true\n    ],\n    \"b\": [{\"c\": \"d\"}],\n"
+                + "    \"e\": []\n}", out.toString());
+    }
+
+    @Test
+    public void testCompactLayout() throws IOException {
+        JsonWriter writer = new JsonWriter(out, false);
+        writer.beginArray(3);
+        writer.value("x</y");
+        writer.value(-5);
+        writer.beginObject(0);
+        writer.endObject();
+        writer.endArray();
+
+        assertEquals("[\"x<\\/y\",-5,{}]", out.toString());
+    }
+
+    @Test
+    public void testWrongSizes() throws IOException {
+        JsonWriter writer = new JsonWriter(out, true);
+        writer.beginArray(1);
+        writer.value(1);
+        try {
+            writer.value(2);
+            fail("IllegalStateException expected");
+        } catch (IllegalStateException e) {
+            // pass
+        }
+
+        JsonWriter writer2 = new JsonWriter(out, true);
+        writer2.beginObject(2);
+        writer2.name("a");
+        writer2.value(1);
+        try {
+            writer2.endObject();
+            fail("IllegalStateException expected");
+        } catch (IllegalStateException e) {
+            // pass
+        }
+    }
+
+    @Test
+    public void testValueWithoutName() throws IOException {
+        JsonWriter writer = new JsonWriter(out, true);
+        writer.beginObject(1);
+        try {
+            writer.value("a");
+            fail("IllegalStateException expected");
+        } catch (IllegalStateException e) {
+            // pass
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package persistence;
+
+import model.AnalysisIssue;
+import model.Event;
+import model.EventLog;
+import model.Routine;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LibraryValidatorTest {
+    private static final long TICK = 20;
+    private static final long MANUAL_DELAY = 30;
+
+    private List<Path> files;
+
+    @BeforeEach
+    public void runBefore() {
+        files = new ArrayList<>();
+        for (String name : new String[] {"testReaderInvalidRoutine", "testReaderGeneralRoutine",
+                "testReaderInconsistentRoutine", "testReaderEmptyRoutine"}) {
+            files.add(Paths.get("data", name + ".json"));
+        }
+    }
+
+    @Test
+    public void testValidate() {
+        LibraryValidator validator = new LibraryValidator(new ForkJoinPool(2), TICK, MANUAL_DELAY);
+        LibraryReport library = validator.validate(files);
+
+        List<RoutineReport> reports = library.getReports();
+        assertEquals(4, reports.size());
+        assertEquals(Paths.get("data", "testReaderEmptyRoutine.json"), reports.get(0).getFile());
+
+        RoutineReport empty = reports.get(0);
+        assertFalse(empty.isFailed());
+        assertEquals("Empty Name", empty.getName());
+        assertTrue(empty.isCompleted());
+        assertEquals(0, empty.getSimulatedTime());
+        assertTrue(empty.hasIssues(AnalysisIssue.Severity.WARNING));
+
+        // 52000ms of time segments, and 10 manual segments each waiting 40ms (the delay, then the next tick)
+        RoutineReport general = reports.get(1);
+        assertFalse(general.isFailed());
+        assertEquals("General Name", general.getName());
+        assertTrue(general.isCompleted());
+        assertEquals(52000 + 10 * 40, general.getSimulatedTime());
+        assertEquals(52000, general.getAnalysis().getTotalDuration());
+        assertFalse(general.hasIssues(AnalysisIssue.Severity.WARNING));
+
+        RoutineReport inconsistent = reports.get(2);
+        assertTrue(inconsistent.isFailed());
+        assertNull(inconsistent.getAnalysis());
+        assertTrue(inconsistent.getFailure().contains("cycle"));
+        assertTrue(reports.get(3).isFailed());
+
+        assertEquals(Arrays.asList(inconsistent, reports.get(3)), library.getFailures());
+        assertEquals(Arrays.asList(empty), library.getReportsWithIssues(AnalysisIssue.Severity.WARNING));
+        assertEquals(52400, library.getTotalSimulatedTime());
+        assertEquals("4 routines, 2 failed, 1 with warnings, 52400ms total", library.getSummary());
+    }
+
+    @Test
+    public void testEventsKeptOutOfSharedLog() {
+        EventLog.getInstance().clear();
+        LibraryValidator validator = new LibraryValidator(new ForkJoinPool(2), TICK, MANUAL_DELAY);
+        LibraryReport library = validator.validate(files);
+
+        assertTrue(library.getReports().get(1).getEventCount() > 0);
+        Iterator<?> events = EventLog.getInstance().iterator();
+        events.next(); // the log cleared event
+        assertFalse(events.hasNext());
+    }
+
+    @Test
+    public void testUnexpectedErrorFailsOnlyThatRoutine() throws Exception {
+        EventLog.getInstance().clear();
+        ForkJoinPool pool = new ForkJoinPool(1);
+        LibraryValidator validator = new LibraryValidator(pool, TICK, MANUAL_DELAY) {
+            @Override
+            Routine read(Path file) throws IOException {
+                if (file.toString().contains("General")) {
+                    throw new IllegalStateException("Broken reader");
+                }
+                return super.read(file);
+            }
+        };
+        LibraryReport library = validator.validate(files);
+
+        List<RoutineReport> reports = library.getReports();
+        assertEquals(4, reports.size());
+        assertTrue(reports.get(1).isFailed());
+        assertTrue(reports.get(1).getFailure().contains("Broken reader"));
+        assertFalse(reports.get(0).isFailed());
+        assertEquals(3, library.getFailures().size());
+
+        // the worker thread logs to the shared log again afterwards
+        pool.submit(() -> EventLog.getInstance().logEvent(new Event("After validating"))).get();
+        Iterator<Event> events = EventLog.getInstance().iterator();
+        events.next(); // the log cleared event
+        assertEquals("After validating", events.next().getDescription());
+    }
+
+    @Test
+    public void testParallelMatchesSequential() {
+        List<Path> manyFiles = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            manyFiles.addAll(files);
+        }
+
+        LibraryReport sequential = new LibraryValidator(new ForkJoinPool(1), TICK, MANUAL_DELAY).validate(manyFiles);
+        LibraryReport parallel = new LibraryValidator(new ForkJoinPool(4), TICK, MANUAL_DELAY).validate(manyFiles);
+        assertEquals(200, parallel.getReports().size());
+        for (int i = 0; i < 200; i++) {
+            assertEquals(sequential.getReports().get(i).toString(), parallel.getReports().get(i).toString());
+        }
+        assertEquals(50 * 52400, parallel.getTotalSimulatedTime());
+    }
+
+    @Test
+    public void testValidateDirectory() {
+        LibraryValidator validator = new LibraryValidator(ForkJoinPool.commonPool(), TICK, MANUAL_DELAY);
+        try {
+            LibraryReport library = validator.validateDirectory(Paths.get("data", "savedroutines"));
+            assertEquals(3, library.getReports().size());
+            assertTrue(library.getFailures().isEmpty());
+            assertEquals("General Routine.json: General Routine (", library.getReports().get(0).toString()
+                    .substring(0, 39));
+        } catch (IOException e) {
+            fail("Couldn't list directory");
+        }
+
+        try {
+            validator.validateDirectory(Paths.get("data", "noSuchDirectory"));
+            fail("IOException expected");
+        } catch (IOException e) {
+            // pass
+        }
+    }
+}
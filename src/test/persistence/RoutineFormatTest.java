@@ -0,0 +1,134 @@
+package persistence;
+
+import model.ManualSegment;
+import model.RepeatSegment;
+import model.Routine;
+import model.Segment;
+import model.TimeSegment;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RoutineFormatTest {
+    private static final String[] SAVED = {"General Routine", "Nested Routine", "Really Long Routine"};
+
+    private Path directory;
+
+    @BeforeEach
+    public void runBefore() throws IOException {
+        directory = Files.createTempDirectory("formats");
+        directory.toFile().deleteOnExit();
+    }
+
+    @Test
+    public void testForExtension() {
+        assertEquals(RoutineFormat.JSON, RoutineFormat.forExtension("a/b.json"));
+        assertEquals(RoutineFormat.BINARY, RoutineFormat.forExtension("b.wtr"));
+        assertNull(RoutineFormat.forExtension("b.txt"));
+    }
+
+    @Test
+    public void testRoundTripSavedRoutines() throws IOException {
+        for (String name : SAVED) {
+            Routine routine = RoutineFormat.JSON.read(Paths.get("data", "savedroutines", name + ".json").toString());
+            assertSameEncoding(routine, roundTrip(routine));
+        }
+    }
+
+    @Test
+    public void testRoundTripEdgeCases() throws IOException {
+        assertSameEncoding(new Routine(""), roundTrip(new Routine("")));
+
+        Routine routine = new Routine("Caf\u00e9 \ud83d\ude00 \"quoted\" </b>");
+        routine.addSegment(new TimeSegment("Same", 1L << 40, 1L << 39));
+        routine.addSegment(new TimeSegment("Same", 0, 0));
+        routine.addSegment(new ManualSegment("Done", true));
+        routine.addSegment(new ManualSegment("", false));
+        routine.addSegment(new RepeatSegment("Big", Integer.MAX_VALUE, new ArrayList<>(Arrays.asList(
+                new TimeSegment("Same", 300)))));
+        assertSameEncoding(routine, roundTrip(routine));
+    }
+
+    @Test
+    public void testRoundTripDeepNesting() throws IOException {
+        Segment inner = new ManualSegment("Inner");
+        for (int i = 0; i < 3000; i++) {
+            inner = new RepeatSegment("Level", 1, new ArrayList<>(Arrays.asList(inner, new TimeSegment("T", 5))));
+        }
+        Routine routine = new Routine("Deep");
+        routine.addSegment(inner);
+
+        Routine read = roundTrip(routine);
+        assertEquals(routine.getFlattenedSegments().size(), read.getFlattenedSegments().size());
+        assertEquals(routine.getDuration(), read.getDuration());
+    }
+
+    @Test
+    public void testConvertBothWays() throws IOException {
+        for (String name : SAVED) {
+            Path json = Paths.get("data", "savedroutines", name + ".json");
+            Path binary = directory.resolve(name + ".wtr");
+            Path back = directory.resolve(name + ".json");
+            RoutineConverter.convert(json.toString(), binary.toString());
+            RoutineConverter.convert(binary.toString(), back.toString());
+            binary.toFile().deleteOnExit();
+            back.toFile().deleteOnExit();
+
+            assertEquals(RoutineFormat.BINARY, RoutineFormat.detect(binary.toString()));
+            assertArrayEquals(Files.readAllBytes(json), Files.readAllBytes(back), name);
+            assertTrue(Files.size(binary) * 5 <= Files.size(json), name);
+        }
+    }
+
+    @Test
+    public void testConvertUnknownExtension() {
+        try {
+            RoutineConverter.convert("./data/testReaderGeneralRoutine.json", directory.resolve("a.txt").toString());
+            fail("IOException expected");
+        } catch (IOException e) {
+            // pass
+        }
+    }
+
+    @Test
+    public void testDetectIgnoresExtension() throws IOException {
+        Routine routine = RoutineFormat.JSON.read("./data/testReaderGeneralRoutine.json");
+        Path misnamed = directory.resolve("binary.json");
+        misnamed.toFile().deleteOnExit();
+        RoutineFormat.BINARY.write(routine, misnamed.toString());
+
+        assertEquals(RoutineFormat.BINARY, RoutineFormat.detect(misnamed.toString()));
+        assertEquals(RoutineFormat.JSON, RoutineFormat.detect("./data/testReaderEmptyRoutine.json"));
+        assertSameEncoding(routine, RoutineFormat.readAny(misnamed.toString()));
+    }
+
+    // EFFECTS: Returns the routine written in the binary format and read back
+    private Routine roundTrip(Routine routine) throws IOException {
+        Path file = Files.createTempFile(directory, "routine", ".wtr");
+        file.toFile().deleteOnExit();
+        RoutineFormat.BINARY.write(routine, file.toString());
+        return RoutineFormat.BINARY.read(file.toString());
+    }
+
+    // EFFECTS: Checks that both routines encode to the same JSON, i.e. have the same value for every RoutineJsonKey
+    //          of every segment, in order
+    private static void assertSameEncoding(Routine expected, Routine actual) throws IOException {
+        assertEquals(encode(expected), encode(actual));
+    }
+
+    // EFFECTS: Returns the routine encoded as compact JSON
+    private static String encode(Routine routine) throws IOException {
+        StringWriter out = new StringWriter();
+        routine.encodeTo(new JsonWriter(out, false));
+        return out.toString();
+    }
+}
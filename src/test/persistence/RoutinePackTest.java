@@ -0,0 +1,244 @@
+package persistence;
+
+import model.ManualSegment;
+import model.RepeatSegment;
+import model.Routine;
+import model.TimeSegment;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RoutinePackTest {
+    private static final Path SAVED = Paths.get("data", "savedroutines");
+
+    private Path directory;
+    private Path file;
+    private RoutinePack pack;
+
+    @BeforeEach
+    public void runBefore() throws IOException {
+        directory = Files.createTempDirectory("pack");
+        file = directory.resolve("library.wtrl");
+        pack = RoutinePack.open(file);
+    }
+
+    @AfterEach
+    public void runAfter() throws IOException {
+        pack.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        assertTrue(pack.getEntries().isEmpty());
+        assertNull(pack.find("Anything"));
+        assertEquals(0, pack.getGarbageSize());
+        try {
+            pack.read("Anything");
+            fail("IOException expected");
+        } catch (IOException e) {
+            // pass
+        }
+    }
+
+    @Test
+    public void testImportDirectory() throws IOException {
+        assertEquals(3, pack.importDirectory(SAVED));
+
+        List<RoutinePack.Entry> entries = pack.getEntries();
+        assertEquals(Arrays.asList("General Routine", "Nested Routine", "Really Long Routine"),
+                entries.stream().map(RoutinePack.Entry::getName).collect(Collectors.toList()));
+
+        for (RoutinePack.Entry entry : entries) {
+            Routine expected = RoutineFormat.JSON.read(SAVED.resolve(entry.getName() + ".json").toString());
+            assertEquals(expected.getDuration(), entry.getDuration());
+            assertEquals(expected.getFlattenedSegments().size(), entry.getSegmentCount());
+            assertEquals(encode(expected), encode(pack.read(entry.getName())));
+        }
+    }
+
+    @Test
+    public void testPutReplacesAndPersists() throws IOException {
+        pack.put(makeRoutine("B", 1000));
+        pack.put(makeRoutine("A", 2000));
+        pack.put(makeRoutine("B", 3000));
+
+        assertEquals(2, pack.getEntries().size());
+        assertEquals("A", pack.getEntries().get(0).getName());
+        assertEquals(3000 + 500, pack.find("B").getDuration());
+        assertTrue(pack.getGarbageSize() > 0);
+
+        pack.close();
+        pack = RoutinePack.open(file);
+        assertEquals(2, pack.getEntries().size());
+        assertEquals(3000, ((TimeSegment) pack.read("B").getSegments().get(0)).getTotalTime());
+        assertEquals(2000, ((TimeSegment) pack.read("A").getSegments().get(0)).getTotalTime());
+    }
+
+    @Test
+    public void testRemoveAndCompact() throws IOException {
+        pack.importDirectory(SAVED);
+        String longRoutine = encode(pack.read("Really Long Routine"));
+        assertTrue(pack.remove("Nested Routine"));
+        assertFalse(pack.remove("Nested Routine"));
+        assertNull(pack.find("Nested Routine"));
+
+        long garbage = pack.getGarbageSize();
+        long size = pack.getFileSize();
+        assertTrue(garbage > 0);
+
+        pack.compact();
+        assertEquals(0, pack.getGarbageSize());
+        assertEquals(size - garbage, pack.getFileSize());
+        assertEquals(2, pack.getEntries().size());
+        assertEquals(longRoutine, encode(pack.read("Really Long Routine")));
+
+        pack.close();
+        pack = RoutinePack.open(file);
+        assertEquals(longRoutine, encode(pack.read("Really Long Routine")));
+        assertFalse(Files.exists(directory.resolve("library.wtrl.tmp")));
+    }
+
+    @Test
+    public void testExportDirectory() throws IOException {
+        pack.importDirectory(SAVED);
+        Path json = Files.createDirectory(directory.resolve("json"));
+        Path binary = Files.createDirectory(directory.resolve("binary"));
+
+        assertEquals(3, pack.exportDirectory(json, RoutineFormat.JSON));
+        assertEquals(3, pack.exportDirectory(binary, RoutineFormat.BINARY));
+        for (RoutinePack.Entry entry : pack.getEntries()) {
+            String name = entry.getName();
+            assertArrayEquals(Files.readAllBytes(SAVED.resolve(name + ".json")),
+                    Files.readAllBytes(json.resolve(name + ".json")), name);
+            assertEquals(entry.getLength(), Files.size(binary.resolve(name + ".wtr")));
+            assertEquals(encode(pack.read(name)), encode(RoutineFormat.readAny(binary.resolve(name + ".wtr")
+                    .toString())));
+        }
+    }
+
+    @Test
+    public void testImportFailureAddsNothing() throws IOException {
+        Path source = Files.createDirectory(directory.resolve("source"));
+        Files.copy(Paths.get("data", "testReaderGeneralRoutine.json"), source.resolve("good.json"));
+        Files.copy(Paths.get("data", "testReaderInvalidRoutine.json"), source.resolve("bad.json"));
+        try {
+            pack.importDirectory(source);
+            fail("IOException expected");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().startsWith("bad.json: "));
+        }
+        assertTrue(pack.getEntries().isEmpty());
+    }
+
+    @Test
+    public void testDamagedFile() throws IOException {
+        pack.put(makeRoutine("A", 1000));
+        pack.close();
+
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[0] = 'X';
+        Files.write(file, bytes);
+        assertOpenFails(file);
+
+        Path other = directory.resolve("other.wtrl");
+        Files.copy(Paths.get("data", "testReaderGeneralRoutine.json"), other);
+        assertOpenFails(other);
+
+        pack = RoutinePack.open(directory.resolve("new.wtrl"));
+    }
+
+    @Test
+    public void testCutOffChangeIsRecovered() throws IOException {
+        pack.put(makeRoutine("A", 1000));
+        pack.put(makeRoutine("B", 2000));
+        long size = pack.getFileSize();
+        pack.put(makeRoutine("C", 3000));
+        pack.close();
+
+        byte[] bytes = Files.readAllBytes(file);
+        for (int cut = 1; cut < bytes.length - size; cut++) {
+            Files.write(file, Arrays.copyOf(bytes, bytes.length - cut));
+            pack = RoutinePack.open(file);
+            assertEquals(size, pack.getFileSize(), "cut " + cut);
+            assertEquals(Arrays.asList("A", "B"), pack.getEntries().stream().map(RoutinePack.Entry::getName)
+                    .collect(Collectors.toList()));
+            assertEquals(2000, ((TimeSegment) pack.read("B").getSegments().get(0)).getTotalTime());
+            pack.close();
+        }
+
+        Files.write(file, bytes);
+        Files.write(file, new byte[] {'W', 'T', 'R', 'I', 1, 2}, StandardOpenOption.APPEND);
+        pack = RoutinePack.open(file);
+        assertEquals(bytes.length, pack.getFileSize());
+        assertEquals(3, pack.getEntries().size());
+
+        pack.put(makeRoutine("D", 4000));
+        pack.close();
+        pack = RoutinePack.open(file);
+        assertEquals(4000, ((TimeSegment) pack.read("D").getSegments().get(0)).getTotalTime());
+    }
+
+    @Test
+    public void testFailedCompactKeepsLibraryOpen() throws IOException {
+        pack.put(makeRoutine("A", 1000));
+        pack.put(makeRoutine("A", 2000));
+        Path temporary = Files.createDirectory(directory.resolve("library.wtrl.tmp"));
+        Files.createFile(temporary.resolve("blocking"));
+        try {
+            pack.compact();
+            fail("IOException expected");
+        } catch (IOException e) {
+            // pass
+        }
+
+        assertEquals(2000, ((TimeSegment) pack.read("A").getSegments().get(0)).getTotalTime());
+        pack.put(makeRoutine("B", 3000));
+        assertEquals(2, pack.getEntries().size());
+    }
+
+    // EFFECTS: Checks that the pack file cannot be opened
+    private static void assertOpenFails(Path file) {
+        try {
+            RoutinePack.open(file).close();
+            fail("IOException expected");
+        } catch (IOException e) {
+            // pass
+        }
+    }
+
+    // EFFECTS: Returns a routine with the given name, a TimeSegment of the given length and a short repeat
+    private static Routine makeRoutine(String name, long time) {
+        Routine routine = new Routine(name);
+        routine.addSegment(new TimeSegment("Work", time));
+        routine.addSegment(new RepeatSegment("Sets", 1, new ArrayList<>(Arrays.asList(
+                new ManualSegment("Ready"), new TimeSegment("Rest", 500)))));
+        return routine;
+    }
+
+    // EFFECTS: Returns the routine encoded as (pretty) JSON
+    private static String encode(Routine routine) throws IOException {
+        StringWriter out = new StringWriter();
+        routine.encodeTo(new JsonWriter(out, true));
+        return out.toString();
+    }
+}
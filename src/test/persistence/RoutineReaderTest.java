@@ -8,6 +8,9 @@ import org.json.JSONException;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 
@@ -56,6 +59,14 @@ public class RoutineReaderTest {
         } catch (IOException e) {
             // pass
         }
+
+        RoutineReader reader3 = new RoutineReader("./data/testReaderInconsistentRoutine.json");
+        try {
+            reader3.read();
+            fail("Should have thrown IOException when a repeat segment is past its last cycle");
+        } catch (IOException e) {
+            assertEquals("Repeat segment Too many cycles is on cycle 5 of 3", e.getMessage());
+        }
     }
 
     @Test
@@ -87,4 +98,79 @@ public class RoutineReaderTest {
             fail("Couldn't read from file");
         }
     }
+
+    @Test
+    void testReaderFieldsInAnyOrder() {
+        Routine routine = readText("{\"segments\": [{\"children\": [{\"type\": \"MANUAL\", \"finished\": false, "
+                + "\"name\": \"M\"}], \"extra\": [1, {\"a\": null}], \"type\": \"REPEAT\", \"currentRepetitions\": 1, "
+                + "\"totalRepetitions\": 3, \"name\": \"R\"}], \"name\": \"Ordered\"}");
+        assertEquals("Ordered", routine.getName());
+        RepeatSegment repeat = (RepeatSegment) routine.getSegments().get(0);
+        assertEquals("R", repeat.getName());
+        assertEquals(1, repeat.getSegments().size());
+        assertEquals("M", repeat.getSegments().get(0).getName());
+    }
+
+    @Test
+    void testReaderErrorPositions() {
+        assertReadError("{\"name\": \"A\",\n \"segments\": [\n  {\"name\": \"T\", \"type\": \"TIME\", "
+                        + "\"totalTime\": 5}]}",
+                "Missing \"currentTime\" in object at byte 31 (line 3)");
+        assertReadError("{\"name\": \"A\", \"segments\": [{\"name\": \"X\", \"type\": \"BOB\"}]}",
+                "Invalid segment type \"BOB\" at byte 27 (line 1)");
+        assertReadError("{\"name\": 5, \"segments\": []}",
+                "Expected STRING for \"name\", found NUMBER at byte 9 (line 1)");
+        assertReadError("{\"name\": \"A\", \"segments\": [1]}",
+                "Expected a segment object at byte 27 (line 1)");
+        assertReadError("{\"name\": \"A\",\n\n\"segments\": [}",
+                "Expected a value at byte 28 (line 3)");
+        assertReadError("[]", "Expected a routine object at byte 0 (line 1)");
+    }
+
+    @Test
+    void testReaderDeepNesting() {
+        int depth = 2000;
+        StringBuilder builder = new StringBuilder("{\"name\": \"Deep\", \"segments\": [");
+        for (int i = 0; i < depth; i++) {
+            builder.append("{\"name\": \"R\", \"type\": \"REPEAT\", \"totalRepetitions\": 1, "
+                    + "\"currentRepetitions\": 1, \"children\": [");
+        }
+        builder.append("{\"name\": \"T\", \"type\": \"TIME\", \"totalTime\": 100, \"currentTime\": 0}");
+        for (int i = 0; i < depth; i++) {
+            builder.append("]}");
+        }
+        builder.append("]}");
+
+        Routine routine = readText(builder.toString());
+        assertEquals(depth + 1, routine.getFlattenedSegments().size());
+        assertEquals("T", routine.getExactCurrentSegment().getName());
+    }
+
+    // EFFECTS: Writes the text to a temporary file and returns the routine read from it, failing if it can't be read
+    private static Routine readText(String text) {
+        try {
+            return new RoutineReader(writeTemporary(text).toString()).read();
+        } catch (IOException e) {
+            fail("Couldn't read from file: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // EFFECTS: Writes the text to a temporary file, checking that reading it fails with the given message
+    private static void assertReadError(String text, String message) {
+        try {
+            new RoutineReader(writeTemporary(text).toString()).read();
+            fail("IOException expected");
+        } catch (IOException e) {
+            assertEquals(message, e.getMessage());
+        }
+    }
+
+    // EFFECTS: Writes the text to a new temporary file (deleted on exit) and returns its path
+    private static Path writeTemporary(String text) throws IOException {
+        Path file = Files.createTempFile("routine", ".json");
+        file.toFile().deleteOnExit();
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
 }
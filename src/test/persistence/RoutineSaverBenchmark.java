@@ -0,0 +1,75 @@
+package persistence;
+
+import model.Routine;
+import model.Segment;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Measures the latency of saving a routine with RoutineSaver at each durability level. Not run with the tests;
+// run its main method by hand, optionally with the directory to save into (e.g. on the disk being measured).
+public class RoutineSaverBenchmark {
+    private static final int WARMUP_SAVES = 50;
+    private static final int MEASURED_SAVES = 200;
+
+    // EFFECTS: Prints the median and 95th percentile latency of each durability level, for a small and a large
+    //          routine
+    public static void main(String[] args) throws IOException {
+        Path directory = args.length > 0 ? Paths.get(args[0]) : Files.createTempDirectory("benchmark");
+        Routine small = RoutineFormat.readAny("./data/savedroutines/General Routine.json");
+        Routine large = new Routine("Large");
+        for (int i = 0; i < 200; i++) {
+            for (Segment segment : RoutineFormat.readAny("./data/savedroutines/Really Long Routine.json")
+                    .getSegments()) {
+                large.addSegment(segment);
+            }
+        }
+
+        try {
+            for (Routine routine : Arrays.asList(small, large)) {
+                for (Durability durability : Durability.values()) {
+                    long[] latencies = measure(new RoutineSaver(durability, 0), routine,
+                            directory.resolve(routine.getName() + ".json"));
+                    System.out.printf("%-7s %-6s median %8.3fms  p95 %8.3fms%n", routine.getName(), durability,
+                            latencies[latencies.length / 2] / 1e6, latencies[latencies.length * 95 / 100] / 1e6);
+                }
+            }
+        } finally {
+            if (args.length == 0) {
+                deleteAll(directory);
+            }
+        }
+    }
+
+    // EFFECTS: Returns the sorted latencies (in nanoseconds) of saving the routine repeatedly with the saver
+    private static long[] measure(RoutineSaver saver, Routine routine, Path file) throws IOException {
+        for (int i = 0; i < WARMUP_SAVES; i++) {
+            saver.save(routine, file);
+        }
+        long[] latencies = new long[MEASURED_SAVES];
+        for (int i = 0; i < MEASURED_SAVES; i++) {
+            long start = System.nanoTime();
+            saver.save(routine, file);
+            latencies[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(latencies);
+        return latencies;
+    }
+
+    // EFFECTS: Deletes the directory and everything in it
+    private static void deleteAll(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            List<Path> paths = files.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+            for (Path path : paths) {
+                Files.delete(path);
+            }
+        }
+    }
+}
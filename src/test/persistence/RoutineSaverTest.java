@@ -0,0 +1,187 @@
+package persistence;
+
+import model.ManualSegment;
+import model.Routine;
+import model.TimeSegment;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RoutineSaverTest {
+    private Path directory;
+    private Path file;
+
+    @BeforeEach
+    public void runBefore() throws IOException {
+        directory = Files.createTempDirectory("saver");
+        file = directory.resolve("Routine.json");
+    }
+
+    @AfterEach
+    public void runAfter() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Test
+    public void testSaveEachDurability() throws IOException {
+        for (Durability durability : Durability.values()) {
+            Routine routine = makeRoutine(durability.name());
+            new RoutineSaver(durability, 0).save(routine, file);
+
+            assertEquals(durability.name(), RoutineFormat.readAny(file.toString()).getName());
+            assertEquals(1, listDirectory().size());
+        }
+    }
+
+    @Test
+    public void testSaveMatchesWriter() throws IOException {
+        Routine routine = RoutineFormat.readAny("./data/savedroutines/General Routine.json");
+        new RoutineSaver(Durability.FSYNC, 0).save(routine, file);
+        assertArrayEquals(Files.readAllBytes(Paths.get("data", "savedroutines", "General Routine.json")),
+                Files.readAllBytes(file));
+
+        Path binary = directory.resolve("Routine.wtr");
+        new RoutineSaver(Durability.FSYNC, 0).save(routine, binary);
+        assertEquals(RoutineFormat.BINARY, RoutineFormat.detect(binary.toString()));
+    }
+
+    @Test
+    public void testKeepsBackups() throws IOException {
+        RoutineSaver saver = new RoutineSaver(Durability.FLUSH, 2);
+        for (int version = 1; version <= 4; version++) {
+            saver.save(makeRoutine("Version " + version), file);
+        }
+
+        assertEquals("Version 4", RoutineFormat.readAny(file.toString()).getName());
+        assertEquals("Version 3", RoutineFormat.readAny(RoutineSaver.backupOf(file, 1).toString()).getName());
+        assertEquals("Version 2", RoutineFormat.readAny(RoutineSaver.backupOf(file, 2).toString()).getName());
+        assertFalse(Files.exists(RoutineSaver.backupOf(file, 3)));
+        assertEquals(3, listDirectory().size());
+    }
+
+    @Test
+    public void testFailedSaveKeepsOldFile() throws IOException {
+        new RoutineSaver(Durability.FSYNC, 1).save(makeRoutine("Old"), file);
+        byte[] old = Files.readAllBytes(file);
+
+        for (Durability durability : new Durability[] {Durability.FLUSH, Durability.FSYNC}) {
+            try {
+                new RoutineSaver(durability, 0).save(makeFailingRoutine(), file);
+                fail("IOException expected");
+            } catch (IOException e) {
+                assertEquals("Disk full", e.getMessage());
+            }
+            assertArrayEquals(old, Files.readAllBytes(file));
+            assertEquals(1, listDirectory().size());
+        }
+    }
+
+    @Test
+    public void testFailedSaveKeepsBackups() throws IOException {
+        RoutineSaver saver = new RoutineSaver(Durability.FLUSH, 2);
+        for (int version = 1; version <= 3; version++) {
+            saver.save(makeRoutine("Version " + version), file);
+        }
+        for (Durability durability : new Durability[] {Durability.FLUSH, Durability.NONE}) {
+            try {
+                new RoutineSaver(durability, 2).save(makeFailingRoutine(), file);
+                fail("IOException expected");
+            } catch (IOException e) {
+                // pass
+            }
+            assertEquals("Version 2", RoutineFormat.readAny(RoutineSaver.backupOf(file, 1).toString()).getName());
+            assertEquals("Version 1", RoutineFormat.readAny(RoutineSaver.backupOf(file, 2).toString()).getName());
+            assertEquals(3, listDirectory().size());
+        }
+    }
+
+    @Test
+    public void testKeepsPermissions() throws IOException {
+        if (!Files.getFileStore(directory).supportsFileAttributeView("posix")) {
+            return; // no POSIX permissions to keep
+        }
+        Path plain = Files.createFile(directory.resolve("Plain.json"));
+        for (Durability durability : Durability.values()) {
+            Path saved = directory.resolve(durability.name() + ".json");
+            new RoutineSaver(durability, 1).save(makeRoutine("New"), saved);
+            assertEquals(Files.getPosixFilePermissions(plain), Files.getPosixFilePermissions(saved));
+
+            Set<PosixFilePermission> shared = PosixFilePermissions.fromString("rw-rw-r--");
+            Files.setPosixFilePermissions(saved, shared);
+            new RoutineSaver(durability, 1).save(makeRoutine("Again"), saved);
+            assertEquals(shared, Files.getPosixFilePermissions(saved));
+        }
+    }
+
+    @Test
+    public void testFailedSaveWithoutDurability() throws IOException {
+        new RoutineSaver(Durability.NONE, 0).save(makeRoutine("Old"), file);
+        try {
+            new RoutineSaver(Durability.NONE, 0).save(makeFailingRoutine(), file);
+            fail("IOException expected");
+        } catch (IOException e) {
+            // pass
+        }
+        try {
+            RoutineFormat.readAny(file.toString());
+            fail("IOException expected, the file is cut off");
+        } catch (IOException e) {
+            // pass
+        }
+    }
+
+    @Test
+    public void testMissingDirectory() {
+        try {
+            new RoutineSaver(Durability.FSYNC, 0).save(makeRoutine("A"), directory.resolve("none").resolve("A.json"));
+            fail("IOException expected");
+        } catch (IOException e) {
+            // pass
+        }
+    }
+
+    // EFFECTS: Returns the files in the directory
+    private List<Path> listDirectory() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.collect(Collectors.toList());
+        }
+    }
+
+    // EFFECTS: Returns a small routine with the given name
+    private static Routine makeRoutine(String name) {
+        Routine routine = new Routine(name);
+        routine.addSegment(new TimeSegment("Work", 30000));
+        routine.addSegment(new ManualSegment("Next"));
+        return routine;
+    }
+
+    // EFFECTS: Returns a routine which fails part of the way through being encoded, as if the disk were full
+    private static Routine makeFailingRoutine() {
+        return new Routine("Failing") {
+            @Override
+            public void encodeTo(JsonSink sink) throws IOException {
+                sink.beginObject(2);
+                sink.member(RoutineJsonKey.NAME, getName());
+                throw new IOException("Disk full");
+            }
+        };
+    }
+}
@@ -3,12 +3,20 @@ package persistence;
 import model.ManualSegment;
 import model.RepeatSegment;
 import model.Routine;
+import model.Segment;
 import model.TimeSegment;
+import org.json.JSONArray;
+import org.json.JSONObject;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -80,4 +88,105 @@ public class RoutineWriterTest {
             fail("Exception should not have been thrown");
         }
     }
+
+    @Test
+    void testStreamingMatchesOrgJson() throws IOException {
+        Routine routine = new Routine("Odd \"names\" </b> \\ \t\u0001\u0085\u2028 caf\u00e9");
+        routine.addSegment(new RepeatSegment("One child", 3, new ArrayList<>(Arrays.asList(
+                new ManualSegment("Only", false))), 2));
+        routine.addSegment(new RepeatSegment("No children", 1, new ArrayList<>()));
+        routine.addSegment(new TimeSegment("", 500, 100));
+
+        assertEquals(orgJson(routine).toString(4), encode(routine, true));
+        assertEquals(orgJson(routine).toString(), encode(routine, false));
+    }
+
+    @Test
+    void testWriterMatchesSavedFiles() throws IOException {
+        for (String name : new String[] {"General Routine", "Nested Routine", "Really Long Routine"}) {
+            Path file = Paths.get("data", "savedroutines", name + ".json");
+            Routine routine = new RoutineReader(file.toString()).read();
+
+            Path copy = Files.createTempFile("routine", ".json");
+            copy.toFile().deleteOnExit();
+            RoutineWriter writer = new RoutineWriter(copy.toString());
+            writer.open();
+            writer.write(routine);
+            writer.close();
+
+            assertArrayEquals(Files.readAllBytes(file), Files.readAllBytes(copy), name);
+        }
+    }
+
+    @Test
+    void testWriterCompact() throws IOException {
+        Routine routine = new RoutineReader("./data/testReaderGeneralRoutine.json").read();
+        Path file = Files.createTempFile("routine", ".json");
+        file.toFile().deleteOnExit();
+        RoutineWriter writer = new RoutineWriter(file.toString(), false);
+        writer.open();
+        writer.write(routine);
+        writer.close();
+
+        String text = new String(Files.readAllBytes(file), "UTF-8");
+        assertFalse(text.contains(" \"") || text.contains("\n"));
+        Routine readRoutine = new RoutineReader(file.toString()).read();
+        assertEquals(routine.getFlattenedSegments().size(), readRoutine.getFlattenedSegments().size());
+        assertEquals(routine.getExactCurrentSegment().getName(), readRoutine.getExactCurrentSegment().getName());
+    }
+
+    @Test
+    void testStreamingDeepNesting() throws IOException {
+        Segment inner = new TimeSegment("Inner", 1000);
+        for (int i = 0; i < 300; i++) {
+            inner = new RepeatSegment("Level " + i, 1, new ArrayList<>(Arrays.asList(inner)));
+        }
+        Routine routine = new Routine("Deep");
+        routine.addSegment(inner);
+
+        String text = encode(routine, true);
+        assertTrue(text.startsWith("{\n    \"name\": \"Deep\",\n    \"segments\": [{\n"));
+        assertTrue(text.endsWith("}]\n}"));
+    }
+
+    // EFFECTS: Returns the routine encoded with a JsonWriter, pretty or compact
+    private static String encode(Routine routine, boolean pretty) throws IOException {
+        StringWriter out = new StringWriter();
+        routine.encodeTo(new JsonWriter(out, pretty));
+        return out.toString();
+    }
+
+    // EFFECTS: Returns the segment encoded as an org.json object, the way routines were saved before the writer
+    //          streamed them; used as the reference for the streamed layout
+    private static JSONObject orgJson(Segment segment) {
+        JSONObject object = new JSONObject();
+        object.put(RoutineJsonKey.NAME.toString(), segment.getName());
+        if (segment instanceof Routine) {
+            object.put(RoutineJsonKey.SEGMENTS.toString(), orgJson(((Routine) segment).getSegments()));
+            return object;
+        }
+
+        object.put(RoutineJsonKey.TYPE.toString(), segment.getType().name());
+        if (segment instanceof TimeSegment) {
+            object.put(RoutineJsonKey.TOTAL_TIME.toString(), ((TimeSegment) segment).getTotalTime());
+            object.put(RoutineJsonKey.CURRENT_TIME.toString(), ((TimeSegment) segment).getCurrentTime());
+        } else if (segment instanceof ManualSegment) {
+            object.put(RoutineJsonKey.FINISHED.toString(), segment.isComplete());
+        } else {
+            RepeatSegment repeat = (RepeatSegment) segment;
+            object.put(RoutineJsonKey.TOTAL_REPETITIONS.toString(), repeat.getTotalRepetitions());
+            object.put(RoutineJsonKey.CURRENT_REPETITIONS.toString(), repeat.getCurrentRepetition());
+            object.put(RoutineJsonKey.CHILDREN.toString(), orgJson(repeat.getSegments()));
+        }
+        return object;
+    }
+
+    // EFFECTS: Returns the segments encoded as an org.json array, as above
+    private static JSONArray orgJson(List<Segment> segments) {
+        JSONArray array = new JSONArray();
+        for (Segment segment : segments) {
+            array.put(orgJson(segment));
+        }
+        return array;
+    }
 }